@@ -36,11 +36,27 @@ import de.tu.darmstadt.lt.ner.feature.extractor.VornameListFeatureExtractor;
 import de.tu.darmstadt.lt.ner.feature.extractor.LTCharacterCategoryPatternFunction.PatternType;
 import de.tu.darmstadt.lt.ner.feature.extractor.LTCharacterNgramFeatureFunction.Orientation;
 import de.tu.darmstadt.lt.ner.feature.variables.MyFeatureFunctionExtractor;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 
 public class GetFeaturesFromConfigFile
 {
-    public static List<FeatureExtractor1<Token>> getFeatures(Properties aProp) throws IOException
+    /**
+     * @return whether the configuration key switches a feature on or off
+     */
+    public static boolean isFeatureSwitch(String key)
+    {
+        return key.startsWith("use") || key.equals("lookUpFeature") || key.equals("listFeature");
+    }
+
+    /**
+     * @param aLexicons
+     *            the lexicon source of the pipeline, which the lookup features read their word
+     *            lists from
+     */
+    public static List<FeatureExtractor1<Token>> getFeatures(Properties aProp,
+            NERReader aLexicons)
+        throws IOException
     {
         LTCharacterNgramFeatureFunction.Orientation fromLeft = Orientation.LEFT_TO_RIGHT;
         LTCharacterNgramFeatureFunction.Orientation fromRight = Orientation.RIGHT_TO_LEFT;
@@ -189,27 +205,27 @@ public class GetFeaturesFromConfigFile
 
         if (aProp.getProperty("useFirstNameFeature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new VornameListFeatureExtractor()));
+                    new VornameListFeatureExtractor(aLexicons)));
         }
 
         if (aProp.getProperty("useSimilarWord1Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new SimilarWord1Extractor()));
+                    new SimilarWord1Extractor(aLexicons)));
         }
 
         if (aProp.getProperty("useSimilarWord2Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new SimilarWord2Extractor()));
+                    new SimilarWord2Extractor(aLexicons)));
         }
 
         if (aProp.getProperty("useSimilarWord3Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new SimilarWord3Extractor()));
+                    new SimilarWord3Extractor(aLexicons)));
         }
 
         if (aProp.getProperty("useSimilarWord4Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new SimilarWord4Extractor()));
+                    new SimilarWord4Extractor(aLexicons)));
         }
 
         if (aProp.getProperty("useCamelCaseFeature").equals("1")) {
@@ -219,37 +235,37 @@ public class GetFeaturesFromConfigFile
         
         if (aProp.getProperty("useDBPediaPersonListFeature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new DBNachnamenListFeatureExtractor()));
+                    new DBNachnamenListFeatureExtractor(aLexicons)));
         }
         
         if (aProp.getProperty("useDBPediaLocationListFeature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new DBPersonListFeatureExtractor()));
+                    new DBPersonListFeatureExtractor(aLexicons)));
         }
         
         if (aProp.getProperty("useTopicClass100Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new TopicClass1FeatureExtractor()));
+                    new TopicClass1FeatureExtractor(aLexicons)));
         }
         
         if (aProp.getProperty("useTopicClass50Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new TopicClass50Feature1Extractor()));
+                    new TopicClass50Feature1Extractor(aLexicons)));
         }
         
         if (aProp.getProperty("useTopicClass200Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new TopicClass200Feature1Extractor()));
+                    new TopicClass200Feature1Extractor(aLexicons)));
         }
         
         if (aProp.getProperty("useTopicClass500Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new TopicClass500Feature1Extractor()));
+                    new TopicClass500Feature1Extractor(aLexicons)));
         }
         
         if (aProp.getProperty("useTopicClassUpper100Feature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new UperCasedTopicClass1FeatureExtractor()));
+                    new UperCasedTopicClass1FeatureExtractor(aLexicons)));
         }
         
         if (aProp.getProperty("useCharacterCategoryFeature").equals("1")) {
@@ -261,18 +277,18 @@ public class GetFeaturesFromConfigFile
         
         if (aProp.getProperty("useDBPediaPersonLastNameFeature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new DBNachnamenListFeatureExtractor()));
+                    new DBNachnamenListFeatureExtractor(aLexicons)));
         }
         
         /** Below are template features. Add them when fitting your need.*/
         if (aProp.getProperty("lookUpFeature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new TemplateLookupFeatureExtractor()));
+                    new TemplateLookupFeatureExtractor(aLexicons)));
         }
         
         if (aProp.getProperty("listFeature").equals("1")) {
             germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                    new TemplateBinaryFeatureExtractor()));
+                    new TemplateBinaryFeatureExtractor(aLexicons)));
         }
         
         return germaNERfeatures;
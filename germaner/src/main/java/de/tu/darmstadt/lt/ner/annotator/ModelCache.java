@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.annotator;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.CleartkSequenceAnnotator;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.crf.CrfStringOutcomeClassifierBuilder;
+import org.cleartk.ml.crfsuite.AttributeWhitelist;
+import org.cleartk.ml.viterbi.ViterbiClassifier;
+
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.ModelBundle;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+import de.tu.darmstadt.lt.ner.reader.ConllReader;
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
+import de.tu.darmstadt.lt.ner.writer.EvaluatedNERWriter;
+
+/**
+ * Hosts several models, e.g. one per domain or customer, in one process. Every model is a model
+ * directory or a {@link ModelBundle} with its own configuration: the one it was trained with, over
+ * the defaults of the cache. Classifiers are loaded when a pipeline first needs them. When the
+ * loaded models exceed the memory budget, the least recently used models that no pipeline is
+ * using are dropped, and loaded again when they are needed. The size of a model is estimated by
+ * the size of its serialized classifier. Models with the same data.zip share their lexicons, see
+ * {@link Lexicons}.
+ * <p>
+ * {@link #tag(String, File, File)} tags a file with a model; custom pipelines pass
+ * {@link #PARAM_MODEL_CACHE} and {@link #PARAM_CACHED_MODEL} to the {@link NERAnnotator}.
+ */
+public class ModelCache
+{
+    public static final String PARAM_MODEL_CACHE = "ModelCache";
+    public static final String PARAM_CACHED_MODEL = "CachedModel";
+
+    private static final Logger logger = UIMAFramework.getLogger(ModelCache.class);
+
+    private static final Map<String, ModelCache> caches = new HashMap<String, ModelCache>();
+
+    private final String name;
+    private final NERConfiguration defaults;
+    private final long budgetBytes;
+    private final Map<String, Model> models = new LinkedHashMap<String, Model>();
+    private long loadedBytes;
+    private long clock;
+    private int loads;
+    private int evictions;
+
+    private ModelCache(String name, NERConfiguration defaults)
+    {
+        this.name = name;
+        this.defaults = defaults;
+        this.budgetBytes = defaults.getModelCacheBudgetMB() * 1024 * 1024;
+    }
+
+    /**
+     * Returns the cache with the given name, creating it with the defaults, which also give the
+     * memory budget (<code>modelCacheBudgetMB</code>), if there is none.
+     */
+    public static synchronized ModelCache getOrCreate(String name, NERConfiguration defaults)
+    {
+        ModelCache cache = caches.get(name);
+        if (cache == null) {
+            cache = new ModelCache(name, defaults);
+            caches.put(name, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the cache with the given name, or <code>null</code> if there is none
+     */
+    public static synchronized ModelCache get(String name)
+    {
+        return caches.get(name);
+    }
+
+    /**
+     * Makes a model directory or bundle available under a name; the classifier is loaded when it
+     * is first used.
+     *
+     * @param dataZip
+     *            the lexicons of the model, or <code>null</code> for those of the bundle or the
+     *            data.zip on the classpath
+     */
+    public void register(String model, File source, File dataZip)
+        throws IOException
+    {
+        Properties properties = defaults.getProperties();
+        if (source.isDirectory()) {
+            File config = new File(source, GermaNERMain.MODEL_CONFIG);
+            if (config.exists()) {
+                properties.putAll(NERConfiguration.read(config).getProperties());
+            }
+        }
+        else {
+            properties.putAll(ModelBundle.open(source).getConfiguration());
+        }
+        Model entry = new Model(source, dataZip, NERConfiguration.of(properties),
+                estimateBytes(source));
+        synchronized (this) {
+            Model old = models.put(model, entry);
+            if (old != null && old.classifier != null) {
+                unload(model, old);
+            }
+        }
+    }
+
+    public synchronized File getSource(String model)
+    {
+        return getModel(model).source;
+    }
+
+    public synchronized NERConfiguration getConfiguration(String model)
+    {
+        return getModel(model).configuration;
+    }
+
+    /**
+     * Returns the classifier of a model, loading it if needed; {@link #release(String)} must be
+     * called when the caller does not use it any more.
+     */
+    public SequenceClassifier<String> acquire(String model)
+        throws IOException
+    {
+        Model entry;
+        synchronized (this) {
+            entry = getModel(model);
+            entry.users++;
+            entry.lastUsed = ++clock;
+        }
+        synchronized (entry) {
+            if (entry.classifier == null) {
+                SequenceClassifier<String> classifier;
+                try {
+                    classifier = ModelHolder.loadClassifier(entry.source);
+                }
+                catch (IOException e) {
+                    release(model);
+                    throw e;
+                }
+                synchronized (this) {
+                    entry.classifier = classifier;
+                    loadedBytes += entry.bytes;
+                    loads++;
+                    logger.log(Level.INFO, "Model cache " + name + ": loaded " + model + " ("
+                            + entry.bytes / 1024 + " KB, " + loadedBytes / 1024 + " KB in use)");
+                    evict();
+                }
+            }
+            return entry.classifier;
+        }
+    }
+
+    public synchronized void release(String model)
+    {
+        Model entry = getModel(model);
+        if (entry.users > 0) {
+            entry.users--;
+        }
+        entry.lastUsed = ++clock;
+        evict();
+    }
+
+    private Model getModel(String model)
+    {
+        Model entry = models.get(model);
+        if (entry == null) {
+            throw new IllegalArgumentException("no model " + model + " in the model cache " + name);
+        }
+        return entry;
+    }
+
+    /**
+     * Unloads idle models, the least recently used first, until the loaded ones fit the budget.
+     */
+    private void evict()
+    {
+        while (loadedBytes > budgetBytes) {
+            String victim = null;
+            for (Map.Entry<String, Model> entry : models.entrySet()) {
+                Model model = entry.getValue();
+                if (model.classifier != null && model.users == 0
+                        && (victim == null || model.lastUsed < models.get(victim).lastUsed)) {
+                    victim = entry.getKey();
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            unload(victim, models.get(victim));
+            evictions++;
+        }
+    }
+
+    private void unload(String model, Model entry)
+    {
+        entry.classifier = null;
+        loadedBytes -= entry.bytes;
+        logger.log(Level.INFO, "Model cache " + name + ": evicted " + model + " ("
+                + loadedBytes / 1024 + " KB in use)");
+        String lexiconSource = entry.getLexiconSource();
+        for (Model other : models.values()) {
+            if (other.classifier != null && other.getLexiconSource().equals(lexiconSource)) {
+                return;
+            }
+        }
+        Lexicons.release(lexiconSource);
+    }
+
+    public synchronized boolean isLoaded(String model)
+    {
+        return getModel(model).classifier != null;
+    }
+
+    public synchronized long getLoadedBytes()
+    {
+        return loadedBytes;
+    }
+
+    public long getBudgetBytes()
+    {
+        return budgetBytes;
+    }
+
+    public synchronized int getLoadCount()
+    {
+        return loads;
+    }
+
+    public synchronized int getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * Tags a file in the CoNLL format with a model of the cache and its configuration.
+     */
+    public void tag(String model, File testFile, File outputFile)
+        throws UIMAException, IOException
+    {
+        Model entry;
+        synchronized (this) {
+            entry = getModel(model);
+        }
+        NERConfiguration configuration = entry.configuration;
+        String bundle = entry.source.isDirectory() ? null : entry.source.getAbsolutePath();
+        String dataZip = entry.dataZip == null ? null : entry.dataZip.getAbsolutePath();
+        // the CRFsuite feature files of a bundled model are written next to the output
+        File workingDir = entry.source.isDirectory() ? entry.source
+                : outputFile.getAbsoluteFile().getParentFile();
+        runPipeline(
+                ConllReader.getCollectionReader(defaults, testFile),
+                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZip,
+                        NERReader.MODEL_BUNDLE, bundle, NERReader.PARAM_CONFIGURATION,
+                        configuration.toString()),
+                createEngine(NERAnnotator.class, NERAnnotator.FEATURE_FILE,
+                        workingDir.getAbsolutePath(), NERAnnotator.PARAM_CONFIGURATION,
+                        configuration.toString(), NERAnnotator.PARAM_DATA_ZIP_FILE, dataZip,
+                        PARAM_MODEL_CACHE, name, PARAM_CACHED_MODEL,
+                        model, CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+                        ModelCacheClassifierFactory.class.getName(),
+                        ViterbiClassifier.PARAM_STACK_SIZE, configuration.getStackSize(),
+                        ViterbiClassifier.PARAM_MIN_OUTCOME_SCORE,
+                        configuration.getMinOutcomeScore(), ViterbiClassifier.PARAM_BEAM_MARGIN,
+                        configuration.getBeamMargin()),
+                createEngine(EvaluatedNERWriter.class, EvaluatedNERWriter.OUTPUT_FILE, outputFile,
+                        EvaluatedNERWriter.IS_GOLD, false, EvaluatedNERWriter.WRITE_SCORES,
+                        configuration.isWriteScores()));
+    }
+
+    /**
+     * The size of the serialized classifier: model.jar, the attribute dictionary and the attribute
+     * whitelist of a model directory, the sections of a bundle except the lexicons.
+     */
+    private static long estimateBytes(File source)
+        throws IOException
+    {
+        if (source.isDirectory()) {
+            return new File(source, "model.jar").length()
+                    + new File(source, CrfStringOutcomeClassifierBuilder.ATTRIBUTES_NAME).length()
+                    + new File(source, AttributeWhitelist.FILE_NAME).length();
+        }
+        ModelBundle bundle = ModelBundle.open(source);
+        long bytes = 0;
+        for (String section : bundle.getSectionNames()) {
+            if (!section.equals(ModelBundle.DATA_ZIP_SECTION)) {
+                bytes += bundle.getSection(section).capacity();
+            }
+        }
+        return bytes;
+    }
+
+    private static class Model
+    {
+        private final File source;
+        private final File dataZip;
+        private final NERConfiguration configuration;
+        private final long bytes;
+        private volatile SequenceClassifier<String> classifier;
+        private int users;
+        private long lastUsed;
+
+        Model(File source, File dataZip, NERConfiguration configuration, long bytes)
+        {
+            this.source = source;
+            this.dataZip = dataZip;
+            this.configuration = configuration;
+            this.bytes = bytes;
+        }
+
+        String getLexiconSource()
+        {
+            return NERReader.getLexiconSource(source.isDirectory() ? null : source.getPath(),
+                    dataZip == null ? null : dataZip.getPath());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.annotator;
+
+import java.io.IOException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.fit.component.initialize.ConfigurationParameterInitializer;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.initializable.Initializable;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.SequenceClassifierFactory;
+import org.cleartk.util.ReflectionUtil;
+
+/**
+ * Takes the sequence classifier of a model from a {@link ModelCache}. The {@link NERAnnotator}
+ * releases it when it is destroyed.
+ */
+public class ModelCacheClassifierFactory<OUTCOME_TYPE>
+    implements SequenceClassifierFactory<OUTCOME_TYPE>, Initializable
+{
+    @ConfigurationParameter(name = ModelCache.PARAM_MODEL_CACHE, mandatory = true)
+    private String modelCacheName;
+
+    @ConfigurationParameter(name = ModelCache.PARAM_CACHED_MODEL, mandatory = true)
+    private String cachedModel;
+
+    @Override
+    public void initialize(UimaContext context)
+        throws ResourceInitializationException
+    {
+        ConfigurationParameterInitializer.initialize(this, context);
+    }
+
+    @Override
+    public SequenceClassifier<OUTCOME_TYPE> createClassifier()
+        throws IOException
+    {
+        ModelCache cache = ModelCache.get(modelCacheName);
+        if (cache == null) {
+            throw new IOException("there is no model cache " + modelCacheName);
+        }
+        return ReflectionUtil.uncheckedCast(cache.acquire(cachedModel));
+    }
+}
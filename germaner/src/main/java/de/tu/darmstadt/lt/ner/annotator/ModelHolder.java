@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.annotator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.initializable.InitializableFactory;
+import org.apache.uima.fit.pipeline.SimplePipeline;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.crfsuite.AttributeWhitelist;
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeClassifier;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.cleartk.util.ReflectionUtil;
+
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.ModelBundle;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+import de.tu.darmstadt.lt.ner.preprocessing.TagDictionary;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Holds the model of long-running tagging processes, so that a retrained model can replace it
+ * without restarting the JVM. {@link NERAnnotator}s that name the holder with
+ * {@link NERAnnotator#PARAM_MODEL_HOLDER} lease the current model for each document they tag: its
+ * classifier, the feature extractors of the configuration it was trained with and its tag
+ * dictionary. {@link #swap(File)} loads a model directory or {@link ModelBundle} in the background,
+ * tags a sample of the recently tagged sentences with it to warm it up, and then replaces the
+ * current model. Documents that already hold a lease finish on the old model, which is released
+ * once the last of them is done.
+ * <p>
+ * Only the words of the sampled sentences are kept. The warm-up reads them like a test file with
+ * the settings of the new model and extracts their features with its own feature extractors, so a
+ * model trained with other features is warmed up on the features it will tag with.
+ */
+public class ModelHolder
+{
+    private static final Logger logger = UIMAFramework.getLogger(ModelHolder.class);
+
+    private static final Map<String, ModelHolder> holders = new HashMap<String, ModelHolder>();
+
+    // every how many sentences one is kept for the warm-up
+    static final int SAMPLE_PERIOD = 8;
+
+    // how long a swap waits for the documents still tagging with the old model
+    static final long DRAIN_TIMEOUT_MINUTES = 10;
+
+    private final String name;
+    private final UimaContext context;
+    private final NERConfiguration config;
+    private final String dataZipFile;
+    private final int warmupSentences;
+    private final AtomicReference<Model> current = new AtomicReference<Model>();
+    private final Deque<List<String>> recentSentences = new ArrayDeque<List<String>>();
+    private final AtomicLong sentences = new AtomicLong();
+    private final ExecutorService swapper;
+    private final AtomicInteger swaps = new AtomicInteger();
+    private volatile SwapReport lastSwap;
+
+    private ModelHolder(String name, Model model, UimaContext context, NERConfiguration config,
+            String dataZipFile)
+    {
+        this.name = name;
+        this.context = context;
+        this.config = config;
+        this.dataZipFile = dataZipFile;
+        this.warmupSentences = config.getHotSwapWarmupSentences();
+        current.set(model);
+        swapper = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "model-swap-" + ModelHolder.this.name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the holder with the given name, creating it with the model if there is none. The
+     * context initializes the classifiers loaded later, e.g. with the decoding parameters, and the
+     * configuration is the one their own settings are added to.
+     *
+     * @param dataZipFile
+     *            the lexicons of the models loaded later, or <code>null</code> for those of the
+     *            bundle or the data.zip on the classpath
+     */
+    public static synchronized ModelHolder getOrCreate(String name,
+            SequenceClassifier<String> classifier, List<FeatureExtractor1<Token>> featureExtractors,
+            TagDictionary tagDictionary, String source, UimaContext context,
+            NERConfiguration config, String dataZipFile)
+    {
+        ModelHolder holder = holders.get(name);
+        if (holder == null) {
+            holder = new ModelHolder(name,
+                    new Model(classifier, featureExtractors, tagDictionary, source), context,
+                    config, dataZipFile);
+            holders.put(name, holder);
+        }
+        return holder;
+    }
+
+    /**
+     * @return the holder with the given name, or <code>null</code> if no annotator created it yet
+     */
+    public static synchronized ModelHolder get(String name)
+    {
+        return holders.get(name);
+    }
+
+    /**
+     * Leases the current model; the lease must be released when the document is tagged.
+     */
+    public Lease acquire()
+    {
+        while (true) {
+            Model model = current.get();
+            model.leases.incrementAndGet();
+            // a swap in between may have retired the model already
+            if (current.get() == model) {
+                return new Lease(model);
+            }
+            model.release();
+        }
+    }
+
+    /**
+     * Remembers the words of every {@value #SAMPLE_PERIOD}th sentence about to be tagged, the last
+     * <code>hotSwapWarmupSentences</code> of them, for warming up the next model.
+     */
+    public void record(Collection<Token> sentence)
+    {
+        if (warmupSentences <= 0 || sentences.getAndIncrement() % SAMPLE_PERIOD != 0) {
+            return;
+        }
+        List<String> words = new ArrayList<String>(sentence.size());
+        for (Token token : sentence) {
+            words.add(token.getCoveredText());
+        }
+        synchronized (recentSentences) {
+            if (recentSentences.size() == warmupSentences) {
+                recentSentences.removeFirst();
+            }
+            recentSentences.addLast(words);
+        }
+    }
+
+    /**
+     * Loads, warms up and installs the model of a model directory or bundle in the background. The
+     * returned future completes when the old model is drained.
+     */
+    public Future<SwapReport> swap(final File model)
+    {
+        final long requested = System.nanoTime();
+        return swapper.submit(new Callable<SwapReport>()
+        {
+            @Override
+            public SwapReport call()
+                throws Exception
+            {
+                return doSwap(model, requested);
+            }
+        });
+    }
+
+    private SwapReport doSwap(File source, long requested)
+        throws IOException, UIMAException, InterruptedException
+    {
+        long start = System.nanoTime();
+        NERConfiguration configuration = getModelConfiguration(source);
+        String modelBundle = source.isDirectory() ? null : source.getPath();
+        Model model = load(source, configuration, modelBundle);
+        long loaded = System.nanoTime();
+        int warmedUp = warmUp(model, configuration, modelBundle);
+        long warm = System.nanoTime();
+
+        Model old = current.getAndSet(model);
+        long swapped = System.nanoTime();
+        old.retire();
+        long drainMillis = -1;
+        if (old.drained.await(DRAIN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            drainMillis = (System.nanoTime() - swapped) / 1000000;
+            old.classifier = null;
+            old.featureExtractors = null;
+            old.tagDictionary = null;
+        }
+        else {
+            // the documents still tagging keep the old model until they release it
+            logger.log(Level.WARNING, "Model holder " + name + ": the old model " + old.source
+                    + " is still leased after " + DRAIN_TIMEOUT_MINUTES + " minutes");
+        }
+
+        SwapReport report = new SwapReport(source.getPath(), (start - requested) / 1000000,
+                (loaded - start) / 1000000, (warm - loaded) / 1000000, warmedUp,
+                (swapped - requested) / 1000000, drainMillis);
+        lastSwap = report;
+        swaps.incrementAndGet();
+        logger.log(Level.INFO, "Model holder " + name + ": " + report);
+        return report;
+    }
+
+    /**
+     * The configuration of the holder with the settings saved with the model, like
+     * {@link ModelCache} uses.
+     */
+    private NERConfiguration getModelConfiguration(File source)
+        throws IOException
+    {
+        if (source.isDirectory()) {
+            File configFile = new File(source, GermaNERMain.MODEL_CONFIG);
+            return configFile.exists()
+                    ? config.with(NERConfiguration.read(configFile).getProperties()) : config;
+        }
+        return config.with(ModelBundle.open(source).getConfiguration());
+    }
+
+    /**
+     * Loads the classifier of a model and builds its feature extractors from the configuration of
+     * the model.
+     */
+    private Model load(File source, NERConfiguration configuration, String modelBundle)
+        throws IOException, ResourceInitializationException
+    {
+        SequenceClassifier<String> classifier = loadClassifier(source);
+        if (context != null) {
+            InitializableFactory.initialize(classifier, context);
+        }
+        boolean useTagDictionary = config.isConstrainedDecoding()
+                && config.getTagDictionaryMinCount() > 0;
+        TagDictionary tagDictionary = null;
+        if (source.isDirectory()) {
+            File tagDictionaryFile = new File(source, TagDictionary.FILE_NAME);
+            if (useTagDictionary && tagDictionaryFile.exists()) {
+                tagDictionary = TagDictionary.read(tagDictionaryFile);
+            }
+        }
+        else {
+            ModelBundle bundle = ModelBundle.open(source);
+            if (useTagDictionary && bundle.hasSection(TagDictionary.FILE_NAME)) {
+                tagDictionary = TagDictionary
+                        .read(new InputStreamReader(bundle.openSection(TagDictionary.FILE_NAME)));
+            }
+        }
+        List<FeatureExtractor1<Token>> featureExtractors = GetFeaturesFromConfigFile.getFeatures(
+                configuration.getProperties(), new NERReader(modelBundle, dataZipFile));
+        return new Model(classifier, featureExtractors, tagDictionary, source.getPath());
+    }
+
+    /**
+     * Loads the classifier of a model directory or {@link ModelBundle}.
+     */
+    static SequenceClassifier<String> loadClassifier(File source)
+        throws IOException
+    {
+        Object classifier;
+        if (source.isDirectory()) {
+            classifier = JarClassifierBuilder.fromTrainingDirectory(source)
+                    .loadClassifierFromTrainingDirectory(source);
+            File whitelistFile = new File(source, AttributeWhitelist.FILE_NAME);
+            if (classifier instanceof CrfSuiteStringOutcomeClassifier && whitelistFile.exists()) {
+                ((CrfSuiteStringOutcomeClassifier) classifier)
+                        .setAttributeWhitelist(AttributeWhitelist.read(whitelistFile));
+            }
+        }
+        else {
+            classifier = ModelBundle.open(source).loadClassifier();
+        }
+        if (!(classifier instanceof SequenceClassifier)) {
+            throw new IOException(source + " does not hold a sequence classifier");
+        }
+        return ReflectionUtil.uncheckedCast(classifier);
+    }
+
+    /**
+     * Tags the sampled sentences with the new model: they are read as a test file with the
+     * settings of the model, which prepares its lookup features, and extracted with its feature
+     * extractors.
+     */
+    private int warmUp(Model model, NERConfiguration configuration, String modelBundle)
+        throws UIMAException
+    {
+        List<List<String>> sample;
+        synchronized (recentSentences) {
+            sample = new ArrayList<List<String>>(recentSentences);
+        }
+        if (sample.isEmpty()) {
+            return 0;
+        }
+        StringBuilder conll = new StringBuilder();
+        for (List<String> words : sample) {
+            for (String word : words) {
+                conll.append(word).append("\tO\n");
+            }
+            conll.append('\n');
+        }
+        JCas jCas = JCasFactory.createJCas();
+        jCas.createView(NERReader.CONLL_VIEW).setDocumentText(conll.toString());
+        SimplePipeline.runPipeline(jCas, AnalysisEngineFactory.createEngine(NERReader.class,
+                NERReader.DATA_ZIP_FILE, dataZipFile, NERReader.MODEL_BUNDLE, modelBundle,
+                NERReader.PARAM_CONFIGURATION, configuration.toString()));
+        for (List<List<Feature>> sentence : NERAnnotator.extractSentences(jCas,
+                model.featureExtractors)) {
+            model.classifier.classify(sentence);
+        }
+        return sample.size();
+    }
+
+    public String getSource()
+    {
+        return current.get().source;
+    }
+
+    public int getSwapCount()
+    {
+        return swaps.get();
+    }
+
+    /**
+     * @return the report of the last completed swap, or <code>null</code> if there was none
+     */
+    public SwapReport getLastSwap()
+    {
+        return lastSwap;
+    }
+
+    /**
+     * A classifier with its feature extractors and tag dictionary, and the number of documents
+     * tagging with it.
+     */
+    private static class Model
+    {
+        private volatile SequenceClassifier<String> classifier;
+        private volatile List<FeatureExtractor1<Token>> featureExtractors;
+        private volatile TagDictionary tagDictionary;
+        private final String source;
+        private final AtomicInteger leases = new AtomicInteger();
+        private final CountDownLatch drained = new CountDownLatch(1);
+        private volatile boolean retired;
+
+        Model(SequenceClassifier<String> classifier,
+                List<FeatureExtractor1<Token>> featureExtractors, TagDictionary tagDictionary,
+                String source)
+        {
+            this.classifier = classifier;
+            this.featureExtractors = featureExtractors;
+            this.tagDictionary = tagDictionary;
+            this.source = source;
+        }
+
+        void release()
+        {
+            if (leases.decrementAndGet() == 0 && retired) {
+                drained.countDown();
+            }
+        }
+
+        void retire()
+        {
+            retired = true;
+            if (leases.get() == 0) {
+                drained.countDown();
+            }
+        }
+    }
+
+    /**
+     * The model a document is tagged with.
+     */
+    public static class Lease
+    {
+        private final Model model;
+        private boolean released;
+
+        private Lease(Model model)
+        {
+            this.model = model;
+        }
+
+        public SequenceClassifier<String> getClassifier()
+        {
+            return model.classifier;
+        }
+
+        public List<FeatureExtractor1<Token>> getFeatureExtractors()
+        {
+            return model.featureExtractors;
+        }
+
+        /**
+         * @return the tag dictionary of the model, or <code>null</code> if it has none or
+         *         constrained decoding does not use one
+         */
+        public TagDictionary getTagDictionary()
+        {
+            return model.tagDictionary;
+        }
+
+        public void release()
+        {
+            if (!released) {
+                released = true;
+                model.release();
+            }
+        }
+    }
+
+    /**
+     * Durations of a swap in milliseconds: waiting for earlier swaps, loading, warming up, from the
+     * request until the new model tagged, and until the old model was drained, or -1 if it was
+     * still leased after {@value ModelHolder#DRAIN_TIMEOUT_MINUTES} minutes.
+     */
+    public static class SwapReport
+    {
+        public final String source;
+        public final long queuedMillis;
+        public final long loadMillis;
+        public final long warmupMillis;
+        public final int warmupSentences;
+        public final long swapLatencyMillis;
+        public final long drainMillis;
+
+        SwapReport(String source, long queuedMillis, long loadMillis, long warmupMillis,
+                int warmupSentences, long swapLatencyMillis, long drainMillis)
+        {
+            this.source = source;
+            this.queuedMillis = queuedMillis;
+            this.loadMillis = loadMillis;
+            this.warmupMillis = warmupMillis;
+            this.warmupSentences = warmupSentences;
+            this.swapLatencyMillis = swapLatencyMillis;
+            this.drainMillis = drainMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "swapped to " + source + " in " + swapLatencyMillis + "ms (queued "
+                    + queuedMillis + "ms, load " + loadMillis + "ms, warm-up " + warmupMillis
+                    + "ms on " + warmupSentences + " sentences), "
+                    + (drainMillis < 0 ? "old model still leased"
+                            : "old model drained in " + drainMillis + "ms");
+        }
+    }
+}
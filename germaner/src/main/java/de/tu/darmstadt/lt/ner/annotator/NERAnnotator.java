@@ -19,29 +19,59 @@ package de.tu.darmstadt.lt.ner.annotator;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.factory.initializable.InitializableFactory;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
 import org.cleartk.ml.CleartkProcessingException;
 import org.cleartk.ml.CleartkSequenceAnnotator;
+import org.cleartk.ml.ConstrainedSequenceClassifier;
+import org.cleartk.ml.Feature;
 import org.cleartk.ml.Instance;
+import org.cleartk.ml.ScoredSequenceClassifier;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.SequenceConstraints;
 import org.cleartk.ml.feature.extractor.CleartkExtractor;
 import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.cleartk.ml.feature.function.FeatureFunction;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.cleartk.ml.viterbi.ViterbiClassifier;
+import org.cleartk.util.ReflectionUtil;
 
+import de.tu.darmstadt.lt.ner.feature.extractor.FreeBaseFeatureExtractor;
+import de.tu.darmstadt.lt.ner.feature.extractor.PositionFeatureExtractor;
+import de.tu.darmstadt.lt.ner.feature.variables.MyFeatureFunctionExtractor;
+import de.tu.darmstadt.lt.ner.preprocessing.FeatureCache;
 import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.ModelBundle;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+import de.tu.darmstadt.lt.ner.preprocessing.TagDictionary;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
 import de.tu.darmstadt.lt.ner.types.GoldNamedEntity;
+import de.tu.darmstadt.lt.ner.types.NamedEntityScore;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
@@ -67,8 +97,104 @@ public class NERAnnotator
     @ConfigurationParameter(name = FEATURE_FILE, mandatory = false)
     private String classifierJarDir = null;
 
+    /**
+     * the file the CRFsuite features are written to for tagging, by default crfsuite in the
+     * {@link #FEATURE_FILE} directory, and those of a cascade model to this file with .cascade
+     * appended; pipelines that tag at the same time need one each
+     */
+    public static final String PARAM_CRFSUITE_FEATURE_FILE = "CrfSuiteFeatureFile";
+    @ConfigurationParameter(name = PARAM_CRFSUITE_FEATURE_FILE, mandatory = false)
+    private String crfSuiteFeatureFile = null;
+
+    public static final String PARAM_MODEL_BUNDLE = "ModelBundle";
+
+    /**
+     * if a {@link ModelBundle} is given, the features are configured and the tag dictionary is
+     * read from it, instead of from the configuration and the model directory
+     */
+    @ConfigurationParameter(name = PARAM_MODEL_BUNDLE, mandatory = false)
+    private String modelBundle = null;
+
+    public static final String PARAM_DATA_ZIP_FILE = "DataZipFile";
+
+    /**
+     * the data.zip the lookup features read their word lists from, unless the {@link ModelBundle}
+     * has them; by default the data.zip on the classpath
+     */
+    @ConfigurationParameter(name = PARAM_DATA_ZIP_FILE, mandatory = false)
+    private String dataZipFile = null;
+
+    // the lexicon source of the lookup features
+    private NERReader lexicons;
+
+    public static final String PARAM_MODEL_HOLDER = "ModelHolder";
+
+    /**
+     * if the name of a {@link ModelHolder} is given, every document is tagged with the model the
+     * holder currently leases, i.e. with its classifier, feature extractors and tag dictionary, so
+     * that the model can be swapped while tagging
+     */
+    @ConfigurationParameter(name = PARAM_MODEL_HOLDER, mandatory = false)
+    private String modelHolderName = null;
+
+    private ModelHolder modelHolder;
+
+    public static final String PARAM_CONFIGURATION = "Configuration";
+
+    /**
+     * the settings of this pipeline as written by {@link NERConfiguration#toString()}; without
+     * them the configuration loaded by GermaNERMain is used
+     */
+    @ConfigurationParameter(name = PARAM_CONFIGURATION, mandatory = false)
+    private String configurationText = null;
+
+    private NERConfiguration config;
+
+    /**
+     * if the name of a {@link ModelCache} and of a model registered with it are given, the
+     * classifier and the settings of the model are taken from the cache
+     */
+    @ConfigurationParameter(name = ModelCache.PARAM_MODEL_CACHE, mandatory = false)
+    private String modelCacheName = null;
+
+    @ConfigurationParameter(name = ModelCache.PARAM_CACHED_MODEL, mandatory = false)
+    private String cachedModel = null;
+
+    public static final String PARAM_TAGGING_STATS = "TaggingStats";
+
+    /**
+     * the name of a shared {@link TaggingStats} the counts of this annotator are added to when its
+     * collection is complete
+     */
+    @ConfigurationParameter(name = PARAM_TAGGING_STATS, mandatory = false)
+    private String taggingStatsName = null;
+
+    public static final String PARAM_FEATURE_CACHE = "FeatureCache";
+
+    /**
+     * when training, the directory the training instances are also written to as a
+     * {@link FeatureCache}
+     */
+    @ConfigurationParameter(name = PARAM_FEATURE_CACHE, mandatory = false)
+    private String featureCacheDir = null;
+
+    private FeatureCache.Writer featureCache;
+
     private List<FeatureExtractor1<Token>> featureExtractors;
 
+    private TagDictionary tagDictionary;
+
+    // the cheap first stage of a cascade, with the features of its own configuration
+    private ScoredSequenceClassifier<String> cascadeClassifier;
+    private List<FeatureExtractor1<Token>> cascadeFeatureExtractors;
+    private File cascadeModelDir;
+
+    // time spent in the classifier, tokens tagged and escalated sentences of this annotator
+    private final TaggingStats stats = new TaggingStats();
+
+    // the workers of writeInParallel, created with the first document and kept until the end
+    private ExecutorService trainingExecutor;
+
     @SuppressWarnings("unchecked")
     @Override
     public void initialize(UimaContext context)
@@ -78,12 +204,58 @@ public class NERAnnotator
         // load feature settings from a configuration file or from an xml file
         // if (GermaNERMain.getPropFile() != null) {
         try {
-            GermaNERMain.loadConfig();
-            featureExtractors = GetFeaturesFromConfigFile.getFeatures(GermaNERMain.getPropFile());
+            ModelCache cache = modelCacheName == null ? null : ModelCache.get(modelCacheName);
+            if (cache != null && cachedModel != null) {
+                // a cached model brings its own settings, features and tag dictionary
+                File source = cache.getSource(cachedModel);
+                if (source.isDirectory() && classifierJarDir == null) {
+                    classifierJarDir = source.getPath();
+                }
+                else if (!source.isDirectory() && modelBundle == null) {
+                    modelBundle = source.getPath();
+                }
+            }
+            if (configurationText != null) {
+                config = NERConfiguration.parse(configurationText);
+            }
+            else if (cache != null && cachedModel != null) {
+                config = cache.getConfiguration(cachedModel);
+            }
+            else {
+                if (GermaNERMain.getPropFile() == null) {
+                    GermaNERMain.initNERModel();
+                }
+                config = GermaNERMain.getConfiguration();
+            }
+            lexicons = new NERReader(modelBundle, dataZipFile);
+            if (modelBundle != null) {
+                initializeModelBundle(ModelBundle.open(new File(modelBundle)));
+            }
+            else {
+                featureExtractors = GetFeaturesFromConfigFile.getFeatures(config.getProperties(),
+                        lexicons);
+            }
+            if (!this.isTraining() && modelBundle == null && config.isConstrainedDecoding()
+                    && config.getTagDictionaryMinCount() > 0 && classifierJarDir != null
+                    && new File(classifierJarDir, TagDictionary.FILE_NAME).exists()) {
+                tagDictionary = TagDictionary
+                        .read(new File(classifierJarDir, TagDictionary.FILE_NAME));
+            }
+            if (this.isTraining() && featureCacheDir != null) {
+                featureCache = new FeatureCache.Writer(new File(featureCacheDir));
+            }
+            if (!this.isTraining() && modelHolderName != null) {
+                modelHolder = ModelHolder.getOrCreate(modelHolderName, classifier,
+                        featureExtractors, tagDictionary,
+                        modelBundle != null ? modelBundle : classifierJarDir, context, config,
+                        dataZipFile);
+            }
+            if (!this.isTraining() && !config.getCascadeModelDir().isEmpty()) {
+                initializeCascade(context, new File(config.getCascadeModelDir()));
+            }
         }
         catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            throw new ResourceInitializationException(e);
         }
         // }
         /*
@@ -94,9 +266,90 @@ public class NERAnnotator
 
     }
 
+    @Override
+    public void destroy()
+    {
+        if (trainingExecutor != null) {
+            // the collection was not completed
+            trainingExecutor.shutdownNow();
+            trainingExecutor = null;
+        }
+        if (!this.isTraining() && modelCacheName != null && cachedModel != null) {
+            ModelCache cache = ModelCache.get(modelCacheName);
+            if (cache != null) {
+                cache.release(cachedModel);
+            }
+        }
+        super.destroy();
+    }
+
+    /**
+     * Builds the feature extractors from the configuration the bundled model was trained with and
+     * reads its tag dictionary, both from the mapped bundle.
+     */
+    private void initializeModelBundle(ModelBundle bundle)
+        throws IOException
+    {
+        featureExtractors = GetFeaturesFromConfigFile.getFeatures(bundle.getConfiguration(),
+                lexicons);
+        if (!this.isTraining() && config.isConstrainedDecoding()
+                && config.getTagDictionaryMinCount() > 0
+                && bundle.hasSection(TagDictionary.FILE_NAME)) {
+            tagDictionary = TagDictionary
+                    .read(new InputStreamReader(bundle.openSection(TagDictionary.FILE_NAME)));
+        }
+    }
+
+    /**
+     * Loads the first-stage model of the cascade and builds its feature extractors from the
+     * configuration saved with it.
+     */
+    private void initializeCascade(UimaContext context, File modelDir)
+        throws IOException, ResourceInitializationException
+    {
+        File configFile = new File(modelDir, GermaNERMain.MODEL_CONFIG);
+        if (!configFile.exists()) {
+            throw new ResourceInitializationException(new IOException(
+                    "the cascade model directory " + modelDir + " has no " + configFile.getName()));
+        }
+        cascadeFeatureExtractors = GetFeaturesFromConfigFile
+                .getFeatures(NERConfiguration.read(configFile).getProperties(), lexicons);
+        SequenceClassifier<String> sequenceClassifier = ReflectionUtil
+                .uncheckedCast(JarClassifierBuilder.fromTrainingDirectory(modelDir)
+                        .loadClassifierFromTrainingDirectory(modelDir));
+        if (!(sequenceClassifier instanceof ScoredSequenceClassifier)) {
+            throw new ResourceInitializationException(new IllegalArgumentException(
+                    "the cascade model in " + modelDir + " cannot score its labels"));
+        }
+        InitializableFactory.initialize(sequenceClassifier, context);
+        cascadeClassifier = (ScoredSequenceClassifier<String>) sequenceClassifier;
+        cascadeModelDir = modelDir;
+    }
+
     @Override
     public void process(JCas jCas)
         throws AnalysisEngineProcessException
+    {
+        // the whole document is tagged with the model leased now, even if it is swapped meanwhile
+        ModelHolder.Lease lease = null;
+        if (modelHolder != null) {
+            lease = modelHolder.acquire();
+            classifier = lease.getClassifier();
+            featureExtractors = lease.getFeatureExtractors();
+            tagDictionary = lease.getTagDictionary();
+        }
+        try {
+            processSentences(jCas);
+        }
+        finally {
+            if (lease != null) {
+                lease.release();
+            }
+        }
+    }
+
+    private void processSentences(JCas jCas)
+        throws AnalysisEngineProcessException
     {
         Map<Sentence, Collection<Token>> sentencesTokens = JCasUtil.indexCovered(jCas,
                 Sentence.class, Token.class);
@@ -112,80 +365,341 @@ public class NERAnnotator
         });
 
         Map<Integer, List<Instance<String>>> sentencesInstances = new LinkedHashMap<Integer, List<Instance<String>>>();
+        Map<Integer, List<List<Feature>>> sentencesExtracted = new HashMap<Integer, List<List<Feature>>>();
         List<Sentence> sentenceList = new ArrayList<>();
         int index = 0;
         int it = 1;
+        // with a cascade, sentences first get only the features of the cheap model
+        List<FeatureExtractor1<Token>> extractors = cascadeClassifier != null
+                ? cascadeFeatureExtractors : featureExtractors;
+        if (this.isTraining() && config.getTrainingThreads() > 1) {
+            writeInParallel(jCas, sentences, sentencesTokens, extractors);
+            return;
+        }
         for (Sentence sentence : sentences) {
-            List<Instance<String>> instances = new ArrayList<Instance<String>>();
-            for (Token token : sentencesTokens.get(sentence)) {
-                Instance<String> instance = new Instance<String>();
-                for (FeatureExtractor1<Token> extractor : this.featureExtractors) {
-                    if (extractor instanceof CleartkExtractor) {
-                        instance.addAll((((CleartkExtractor) extractor).extractWithin(jCas, token,
-                                sentence)));
-                    }
-                    else {
-                        instance.addAll(extractor.extract(jCas, token));
-                    }
-                }
-
-                if (this.isTraining()) {
-                    GoldNamedEntity goldNE = JCasUtil
-                            .selectCovered(jCas, GoldNamedEntity.class, token).get(0);
-                    instance.setOutcome(goldNE.getNamedEntityType());
-                }
+            Collection<Token> tokens = sentencesTokens.get(sentence);
+            List<List<Feature>> extracted = null;
+            List<Instance<String>> instances;
+            if (cascadeClassifier != null) {
+                // escalated sentences are extracted again with the full feature set, so the
+                // order-dependent features are taken once for both passes
+                extracted = extractOrderDependent(jCas, tokens, featureExtractors, null, null);
+                instances = extractInstances(jCas, sentence, tokens, extractors,
+                        extractOrderDependent(jCas, tokens, extractors, featureExtractors,
+                                extracted));
+            }
+            else {
+                instances = extractInstances(jCas, sentence, tokens, extractors);
+            }
 
-                // add the instance to the list !!!
-                instances.add(instance);
+            if (this.isTraining()) {
+                setGoldOutcomes(jCas, sentencesTokens.get(sentence), instances);
             }
 
             // differentiate between training and classifying
             if (this.isTraining()) {
-                this.dataWriter.write(instances);
+                writeTrainingInstances(instances);
             }
             // do tagging every 10,000 sentences, in favour of memory consumption
             else if (index > 0 && index % 10000 == 0) {
-                File featureFile = null;
-                if (classifierJarDir != null) {
-                    featureFile = new File(classifierJarDir, "crfsuite");
-                }
+                File featureFile = getTaggingFeatureFile();
                 sentencesInstances.put(index, instances);
+                sentencesExtracted.put(index, extracted);
                 sentenceList.add(sentence);
 
-                classify(jCas, sentencesTokens, sentencesInstances, sentenceList, index, it,
-                        featureFile);
+                classify(jCas, sentencesTokens, sentencesInstances, sentencesExtracted,
+                        sentenceList, index, it, featureFile);
 
                 System.out.println(it * index + " sentences are classified");
                 it++;
                 // re-initialize for next iteration
                 sentenceList.clear();
                 sentencesInstances.clear();
+                sentencesExtracted.clear();
                 index = 0;
 
             }
             else {
                 sentencesInstances.put(index, instances);
+                sentencesExtracted.put(index, extracted);
                 sentenceList.add(sentence);
                 index++;
             }
         }
         // the last portion of the sentences
         if (!this.isTraining() && index > 0) {
-            File featureFile = null;
-            if (classifierJarDir != null) {
-                featureFile = new File(classifierJarDir, "crfsuite");
+            classify(jCas, sentencesTokens, sentencesInstances, sentencesExtracted, sentenceList,
+                    index, it, getTaggingFeatureFile());
+        }
+    }
+
+    private File getTaggingFeatureFile()
+    {
+        if (crfSuiteFeatureFile != null) {
+            return new File(crfSuiteFeatureFile);
+        }
+        return classifierJarDir == null ? null : new File(classifierJarDir, "crfsuite");
+    }
+
+    private static List<Instance<String>> extractInstances(JCas jCas, Sentence sentence,
+            Collection<Token> tokens, List<FeatureExtractor1<Token>> extractors)
+                throws CleartkProcessingException
+    {
+        return extractInstances(jCas, sentence, tokens, extractors, null);
+    }
+
+    /**
+     * The features of every sentence of a document in the order of the text, extracted like those
+     * of the documents this annotator tags; {@link ModelHolder} warms up new models with them.
+     */
+    static List<List<List<Feature>>> extractSentences(JCas jCas,
+            List<FeatureExtractor1<Token>> extractors)
+                throws CleartkProcessingException
+    {
+        Map<Sentence, Collection<Token>> sentencesTokens = JCasUtil.indexCovered(jCas,
+                Sentence.class, Token.class);
+        List<List<List<Feature>>> sentences = new ArrayList<List<List<Feature>>>();
+        for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+            List<List<Feature>> features = new ArrayList<List<Feature>>();
+            for (Instance<String> instance : extractInstances(jCas, sentence,
+                    sentencesTokens.get(sentence), extractors)) {
+                features.add(instance.getFeatures());
+            }
+            sentences.add(features);
+        }
+        return sentences;
+    }
+
+    /**
+     * @param extracted
+     *            if not <code>null</code>, features already extracted for each token and
+     *            extractor, or <code>null</code> where the extractor still has to be applied
+     */
+    private static List<Instance<String>> extractInstances(JCas jCas, Sentence sentence,
+            Collection<Token> tokens, List<FeatureExtractor1<Token>> extractors,
+            List<List<Feature>> extracted)
+                throws CleartkProcessingException
+    {
+        List<Instance<String>> instances = new ArrayList<Instance<String>>();
+        int i = 0;
+        for (Token token : tokens) {
+            Instance<String> instance = new Instance<String>();
+            for (FeatureExtractor1<Token> extractor : extractors) {
+                List<Feature> features = extracted == null ? null : extracted.get(i);
+                i++;
+                if (features != null) {
+                    instance.addAll(features);
+                }
+                else if (extractor instanceof CleartkExtractor) {
+                    instance.addAll((((CleartkExtractor) extractor).extractWithin(jCas, token,
+                            sentence)));
+                }
+                else {
+                    instance.addAll(extractor.extract(jCas, token));
+                }
+            }
+            instances.add(instance);
+        }
+        return instances;
+    }
+
+    private void writeTrainingInstances(List<Instance<String>> instances)
+        throws CleartkProcessingException
+    {
+        this.dataWriter.write(instances);
+        if (featureCache != null) {
+            try {
+                featureCache.add(instances);
+            }
+            catch (IOException e) {
+                getContext().getLogger().log(Level.WARNING,
+                        "The features are not cached: " + e.getMessage());
+                featureCache.abort();
+                featureCache = null;
+            }
+        }
+    }
+
+    private static void setGoldOutcomes(JCas jCas, Collection<Token> tokens,
+            List<Instance<String>> instances)
+    {
+        setOutcomes(getGoldOutcomes(jCas, tokens), instances);
+    }
+
+    private static List<String> getGoldOutcomes(JCas jCas, Collection<Token> tokens)
+    {
+        List<String> outcomes = new ArrayList<String>(tokens.size());
+        for (Token token : tokens) {
+            outcomes.add(JCasUtil.selectCovered(jCas, GoldNamedEntity.class, token).get(0)
+                    .getNamedEntityType());
+        }
+        return outcomes;
+    }
+
+    private static void setOutcomes(List<String> outcomes, List<Instance<String>> instances)
+    {
+        for (int t = 0; t < outcomes.size(); t++) {
+            instances.get(t).setOutcome(outcomes.get(t));
+        }
+    }
+
+    /**
+     * The position and Freebase features are taken from queues the reader fills in token order,
+     * so they have to be extracted in order as well. Returns the class of such a feature function
+     * of the extractor, or <code>null</code> if it has none.
+     */
+    private static Class<?> getOrderDependentFunction(FeatureExtractor1<Token> extractor)
+    {
+        if (extractor instanceof MyFeatureFunctionExtractor) {
+            for (FeatureFunction function : ((MyFeatureFunctionExtractor) extractor)
+                    .getFeatureFunctions()) {
+                if (function instanceof PositionFeatureExtractor
+                        || function instanceof FreeBaseFeatureExtractor) {
+                    return function.getClass();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the order-dependent features of each token of a sentence in the layout expected
+     * by {@link #extractInstances}, or returns <code>null</code> if there are none. Where
+     * <code>sharedExtractors</code> has an extractor of the same kind, its features in
+     * <code>shared</code> are reused, since taking them again would consume the entries of the
+     * next tokens.
+     */
+    private static List<List<Feature>> extractOrderDependent(JCas jCas, Collection<Token> tokens,
+            List<FeatureExtractor1<Token>> extractors,
+            List<FeatureExtractor1<Token>> sharedExtractors, List<List<Feature>> shared)
+                throws CleartkProcessingException
+    {
+        // per extractor: -2 if not order dependent, -1 to extract, else the shared extractor
+        int[] source = new int[extractors.size()];
+        boolean anyOrderDependent = false;
+        for (int e = 0; e < source.length; e++) {
+            Class<?> function = getOrderDependentFunction(extractors.get(e));
+            source[e] = function == null ? -2 : -1;
+            anyOrderDependent |= function != null;
+            for (int f = 0; function != null && shared != null
+                    && f < sharedExtractors.size(); f++) {
+                if (function.equals(getOrderDependentFunction(sharedExtractors.get(f)))) {
+                    source[e] = f;
+                    break;
+                }
+            }
+        }
+        if (!anyOrderDependent) {
+            return null;
+        }
+        List<List<Feature>> extracted = new ArrayList<List<Feature>>();
+        int t = 0;
+        for (Token token : tokens) {
+            for (int e = 0; e < source.length; e++) {
+                if (source[e] == -2) {
+                    extracted.add(null);
+                }
+                else if (source[e] == -1) {
+                    extracted.add(extractors.get(e).extract(jCas, token));
+                }
+                else {
+                    extracted.add(shared.get(t * sharedExtractors.size() + source[e]));
+                }
+            }
+            t++;
+        }
+        return extracted;
+    }
+
+    /**
+     * Extracts the training instances of the sentences with <code>trainingThreads</code> workers
+     * and hands them to the data writer in the order of the sentences, so the training file is the
+     * same as the one written by a single thread. Features that depend on the order of the tokens
+     * and the gold labels are taken by this thread.
+     * <p>
+     * The workers still read the CAS while they extract the other features, e.g. the tokens around
+     * a token. This relies on the CAS only being read while the sentences are extracted: UIMA
+     * supports reading one CAS from several threads as long as none of them changes it, and
+     * neither this thread nor the extractors add to the CAS before all sentences are written.
+     */
+    private void writeInParallel(final JCas jCas, List<Sentence> sentences,
+            final Map<Sentence, Collection<Token>> sentencesTokens,
+            final List<FeatureExtractor1<Token>> extractors)
+                throws AnalysisEngineProcessException
+    {
+        int threads = config.getTrainingThreads();
+        // sentences extracted ahead of the writer, bounding the instances held in memory
+        int window = threads * 64;
+        if (trainingExecutor == null) {
+            trainingExecutor = Executors.newFixedThreadPool(threads);
+        }
+        Deque<Future<List<Instance<String>>>> pending = new ArrayDeque<Future<List<Instance<String>>>>();
+        try {
+            for (final Sentence sentence : sentences) {
+                final Collection<Token> tokens = sentencesTokens.get(sentence);
+                final List<List<Feature>> extracted = extractOrderDependent(jCas, tokens,
+                        extractors, null, null);
+                final List<String> outcomes = getGoldOutcomes(jCas, tokens);
+                pending.add(trainingExecutor.submit(new Callable<List<Instance<String>>>()
+                {
+                    @Override
+                    public List<Instance<String>> call()
+                        throws CleartkProcessingException
+                    {
+                        List<Instance<String>> instances = extractInstances(jCas, sentence,
+                                tokens, extractors, extracted);
+                        setOutcomes(outcomes, instances);
+                        return instances;
+                    }
+                }));
+                if (pending.size() >= window) {
+                    writeTrainingInstances(pending.removeFirst().get());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeTrainingInstances(pending.removeFirst().get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisEngineProcessException(e);
+        }
+        catch (ExecutionException e) {
+            throw new AnalysisEngineProcessException(e.getCause());
+        }
+        finally {
+            // after a failure, the sentences still queued are not written
+            for (Future<List<Instance<String>>> sentence : pending) {
+                sentence.cancel(true);
             }
-            classify(jCas, sentencesTokens, sentencesInstances, sentenceList, index, it,
-                    featureFile);
         }
     }
 
     private void classify(JCas jCas, Map<Sentence, Collection<Token>> sentencesTokens,
-            Map<Integer, List<Instance<String>>> sentencesInstances, List<Sentence> sentenceList,
+            Map<Integer, List<Instance<String>>> sentencesInstances,
+            Map<Integer, List<List<Feature>>> sentencesExtracted, List<Sentence> sentenceList,
             int index, int it, File featureFile)
                 throws CleartkProcessingException
     {
-        List<String> namedEntities = this.classify(sentencesInstances, featureFile);
+        long start = System.nanoTime();
+        List<Double> scores = config.isWriteScores() ? new ArrayList<Double>() : null;
+        List<String> namedEntities;
+        if (cascadeClassifier != null) {
+            namedEntities = classifyCascade(jCas, sentencesTokens, sentencesInstances,
+                    sentencesExtracted, sentenceList, featureFile, scores);
+        }
+        else {
+            namedEntities = decode(sentencesTokens, sentencesInstances, sentenceList,
+                    featureFile, scores);
+        }
+        if (scores != null && scores.size() != namedEntities.size()) {
+            scores = null;
+        }
+        long tokens = 0;
+        for (List<Instance<String>> instances : sentencesInstances.values()) {
+            tokens += instances.size();
+        }
+        stats.addClassification(System.nanoTime() - start, tokens);
         try {
             FileUtils.copyFile(featureFile,
                     new File(featureFile.getAbsolutePath() + ".test" + it * index));
@@ -198,10 +712,219 @@ public class NERAnnotator
                 NamedEntity namedEntity = new NamedEntity(jCas, token.getBegin(), token.getEnd());
                 namedEntity.setValue(namedEntities.get(i));
                 namedEntity.addToIndexes();
+                if (scores != null) {
+                    NamedEntityScore score = new NamedEntityScore(jCas, token.getBegin(),
+                            token.getEnd());
+                    score.setScore(scores.get(i));
+                    score.addToIndexes();
+                }
 
                 i++;
             }
             i++;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tags the sentences with the classifier of this annotator, under constraints if enabled, and
+     * adds the score of every label to <code>scores</code> if it is not null and the classifier can
+     * score.
+     */
+    private List<String> decode(Map<Sentence, Collection<Token>> sentencesTokens,
+            Map<Integer, List<Instance<String>>> sentencesInstances, List<Sentence> sentenceList,
+            File featureFile, List<Double> scores)
+                throws CleartkProcessingException
+    {
+        if (modelHolder != null) {
+            for (Sentence sentence : sentenceList) {
+                modelHolder.record(sentencesTokens.get(sentence));
+            }
+        }
+        if (config.isConstrainedDecoding()
+                && classifier instanceof ConstrainedSequenceClassifier) {
+            return classifyConstrained(sentencesTokens, sentencesInstances, sentenceList);
+        }
+        if (scores != null && classifier instanceof ScoredSequenceClassifier) {
+            return this.classify(sentencesInstances, featureFile, scores);
+        }
+        return this.classify(sentencesInstances, featureFile);
+    }
+
+    /**
+     * Tags all sentences with the cascade model, and re-tags the sentences whose least probable
+     * label is below the cascade threshold with the full feature set and the classifier of this
+     * annotator. Like the batch classification, sentences are separated by a null outcome.
+     * <code>sentencesExtracted</code> holds the order-dependent features of the full feature set
+     * of each sentence, which cannot be extracted a second time.
+     */
+    private List<String> classifyCascade(JCas jCas,
+            Map<Sentence, Collection<Token>> sentencesTokens,
+            Map<Integer, List<Instance<String>>> sentencesInstances,
+            Map<Integer, List<List<Feature>>> sentencesExtracted, List<Sentence> sentenceList,
+            File featureFile, List<Double> scores)
+                throws CleartkProcessingException
+    {
+        List<Double> cheapScores = new ArrayList<Double>();
+        List<String> cheap = cascadeClassifier.classify(toFeatures(sentencesInstances),
+                crfSuiteFeatureFile != null ? new File(crfSuiteFeatureFile + ".cascade")
+                        : new File(cascadeModelDir, "crfsuite"),
+                cheapScores);
+
+        // pick the sentences to escalate
+        Map<Integer, List<Instance<String>>> escalatedInstances = new LinkedHashMap<Integer, List<Instance<String>>>();
+        List<Sentence> escalatedList = new ArrayList<Sentence>();
+        boolean[] escalated = new boolean[sentenceList.size()];
+        int i = 0;
+        int s = 0;
+        for (Map.Entry<Integer, List<Instance<String>>> entry : sentencesInstances.entrySet()) {
+            List<Instance<String>> instances = entry.getValue();
+            for (int t = 0; t < instances.size(); t++) {
+                if (cheapScores.get(i + t) < config.getCascadeThreshold()) {
+                    escalated[s] = true;
+                }
+            }
+            if (escalated[s]) {
+                Sentence sentence = sentenceList.get(s);
+                escalatedInstances.put(s, extractInstances(jCas, sentence,
+                        sentencesTokens.get(sentence), featureExtractors,
+                        sentencesExtracted.get(entry.getKey())));
+                escalatedList.add(sentence);
+            }
+            i += instances.size() + 1;
+            s++;
+        }
+        stats.addCascade(sentenceList.size(), escalatedList.size());
+        if (escalatedList.isEmpty()) {
+            if (scores != null) {
+                scores.addAll(cheapScores);
+            }
+            return cheap;
+        }
+
+        List<Double> fullScores = scores == null ? null : new ArrayList<Double>();
+        List<String> full = decode(sentencesTokens, escalatedInstances, escalatedList, featureFile,
+                fullScores);
+        if (fullScores != null && fullScores.size() != full.size()) {
+            fullScores = null;
+        }
+
+        // merge, taking escalated sentences from the full model
+        List<String> namedEntities = new ArrayList<String>(cheap.size());
+        i = 0;
+        int j = 0;
+        s = 0;
+        for (List<Instance<String>> instances : sentencesInstances.values()) {
+            if (s > 0) {
+                namedEntities.add(null);
+                if (scores != null) {
+                    scores.add(0.0);
+                }
+            }
+            int n = instances.size();
+            if (escalated[s]) {
+                namedEntities.addAll(full.subList(j, j + n));
+                if (scores != null && fullScores != null) {
+                    scores.addAll(fullScores.subList(j, j + n));
+                }
+                j += n + 1;
+            }
+            else {
+                namedEntities.addAll(cheap.subList(i, i + n));
+                if (scores != null) {
+                    scores.addAll(cheapScores.subList(i, i + n));
+                }
+            }
+            i += n + 1;
+            s++;
+        }
+        return namedEntities;
+    }
+
+    private static Map<Integer, List<List<Feature>>> toFeatures(
+            Map<Integer, List<Instance<String>>> sentencesInstances)
+    {
+        Map<Integer, List<List<Feature>>> features = new LinkedHashMap<Integer, List<List<Feature>>>();
+        for (Map.Entry<Integer, List<Instance<String>>> entry : sentencesInstances.entrySet()) {
+            List<List<Feature>> sentenceFeatures = new ArrayList<List<Feature>>();
+            for (Instance<String> instance : entry.getValue()) {
+                sentenceFeatures.add(instance.getFeatures());
+            }
+            features.put(entry.getKey(), sentenceFeatures);
+        }
+        return features;
+    }
+
+    /**
+     * Classifies sentence by sentence under the BIO transition rules and the tag dictionary, with
+     * the same null outcome between sentences as the batch classification.
+     */
+    private List<String> classifyConstrained(Map<Sentence, Collection<Token>> sentencesTokens,
+            Map<Integer, List<Instance<String>>> sentencesInstances, List<Sentence> sentenceList)
+                throws CleartkProcessingException
+    {
+        ConstrainedSequenceClassifier<String> constrainedClassifier =
+                (ConstrainedSequenceClassifier<String>) classifier;
+        List<String> namedEntities = new ArrayList<String>();
+        int s = 0;
+        for (List<Instance<String>> instances : sentencesInstances.values()) {
+            List<Set<String>> allowedLabels = null;
+            if (tagDictionary != null) {
+                allowedLabels = new ArrayList<Set<String>>();
+                for (Token token : sentencesTokens.get(sentenceList.get(s))) {
+                    allowedLabels.add(tagDictionary.getLabels(token.getCoveredText(),
+                            config.getTagDictionaryMinCount()));
+                }
+            }
+            List<List<Feature>> features = new ArrayList<List<Feature>>();
+            for (Instance<String> instance : instances) {
+                features.add(instance.getFeatures());
+            }
+            if (s > 0) {
+                namedEntities.add(null);
+            }
+            namedEntities.addAll(constrainedClassifier.classify(features,
+                    new SequenceConstraints(true, allowedLabels)));
+            s++;
+        }
+        return namedEntities;
+    }
+
+    @Override
+    public void collectionProcessComplete()
+        throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        if (trainingExecutor != null) {
+            trainingExecutor.shutdown();
+            trainingExecutor = null;
+        }
+        if (featureCache != null) {
+            try {
+                featureCache.close();
+                getContext().getLogger().log(Level.INFO,
+                        "Training features cached in " + featureCacheDir);
+            }
+            catch (IOException e) {
+                featureCache.abort();
+                throw new AnalysisEngineProcessException(e);
+            }
+            featureCache = null;
+        }
+        if (!this.isTraining() && classifier instanceof ViterbiClassifier) {
+            ViterbiClassifier<?> viterbi = (ViterbiClassifier<?>) classifier;
+            stats.addBeam(viterbi.getDecodedElements(), viterbi.getAverageBeamWidth());
+            getContext().getLogger().log(Level.INFO,
+                    "Average beam width: " + viterbi.getAverageBeamWidth());
+        }
+        if (cascadeClassifier != null) {
+            getContext().getLogger().log(Level.INFO,
+                    "Cascade: " + stats.getEscalatedSentences() + " of "
+                            + stats.getCascadeSentences()
+                            + " sentences escalated to the full model ("
+                            + String.format("%.1f", 100 * stats.getEscalationShare()) + "%)");
+        }
+        if (taggingStatsName != null) {
+            TaggingStats.getOrCreate(taggingStatsName).addAll(stats);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.annotator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts what an {@link NERAnnotator} tagged: the time spent in the classifier and the tokens
+ * tagged, the beam width of a ViterbiClassifier and the sentences a cascade re-tagged with the full
+ * model. Every annotator counts for itself and logs its counts when its collection is complete; if
+ * it is given the name of a shared instance with <code>taggingStats</code>, it also adds its counts
+ * to that, so that e.g. a benchmark can read the sum over all shards of a run.
+ */
+public class TaggingStats
+{
+    private static final Map<String, TaggingStats> shared = new HashMap<String, TaggingStats>();
+
+    private long classificationTime;
+    private long classifiedTokens;
+    private long beamElements;
+    private double beamStates;
+    private long cascadeSentences;
+    private long escalatedSentences;
+
+    /**
+     * Returns the shared instance with the given name, creating it if there is none.
+     */
+    public static synchronized TaggingStats getOrCreate(String name)
+    {
+        TaggingStats stats = shared.get(name);
+        if (stats == null) {
+            stats = new TaggingStats();
+            shared.put(name, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Forgets the shared instance with the given name.
+     */
+    public static synchronized void remove(String name)
+    {
+        shared.remove(name);
+    }
+
+    public synchronized void addClassification(long time, long tokens)
+    {
+        classificationTime += time;
+        classifiedTokens += tokens;
+    }
+
+    public synchronized void addBeam(long elements, double averageWidth)
+    {
+        beamElements += elements;
+        beamStates += elements * averageWidth;
+    }
+
+    public synchronized void addCascade(long sentences, long escalated)
+    {
+        cascadeSentences += sentences;
+        escalatedSentences += escalated;
+    }
+
+    /**
+     * Adds the counts of another instance to these.
+     */
+    public void addAll(TaggingStats other)
+    {
+        long time;
+        long tokens;
+        long elements;
+        double states;
+        long sentences;
+        long escalated;
+        synchronized (other) {
+            time = other.classificationTime;
+            tokens = other.classifiedTokens;
+            elements = other.beamElements;
+            states = other.beamStates;
+            sentences = other.cascadeSentences;
+            escalated = other.escalatedSentences;
+        }
+        synchronized (this) {
+            classificationTime += time;
+            classifiedTokens += tokens;
+            beamElements += elements;
+            beamStates += states;
+            cascadeSentences += sentences;
+            escalatedSentences += escalated;
+        }
+    }
+
+    /**
+     * @return the time spent in the classifier, in nanoseconds
+     */
+    public synchronized long getClassificationTime()
+    {
+        return classificationTime;
+    }
+
+    public synchronized long getClassifiedTokens()
+    {
+        return classifiedTokens;
+    }
+
+    /**
+     * @return the average number of candidate paths per token kept by the ViterbiClassifier, or 0
+     *         if the classifier is not a ViterbiClassifier
+     */
+    public synchronized double getAverageBeamWidth()
+    {
+        return beamElements == 0 ? 0 : beamStates / beamElements;
+    }
+
+    public synchronized long getCascadeSentences()
+    {
+        return cascadeSentences;
+    }
+
+    public synchronized long getEscalatedSentences()
+    {
+        return escalatedSentences;
+    }
+
+    /**
+     * @return the share of sentences that the cascade re-tagged with the full model, or 0 without
+     *         a cascade
+     */
+    public synchronized double getEscalationShare()
+    {
+        return cascadeSentences == 0 ? 0 : (double) escalatedSentences / cascadeSentences;
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.eval;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tu.darmstadt.lt.ner.annotator.TaggingStats;
+import de.tu.darmstadt.lt.ner.preprocessing.ChangeColon;
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+
+/**
+ * Tags the same test file with several trained model directories, e.g. one trained with
+ * classifier=crfsuite and one with classifier=perceptron, and reports the throughput of the
+ * classifier, the average beam width of ViterbiClassifier models and the entity F1 of each.
+ *
+ * <pre>
+ * BackendBenchmark [-r data.zip] [-s stackSize,...] testFile modelDirectory...
+ * </pre>
+ *
+ * The tokens/sec column only counts the time spent in the classifier; the total time also includes
+ * reading the test file and feature extraction, which is the same for all models.
+ */
+public class BackendBenchmark
+{
+    public static void main(String[] args)
+        throws Exception
+    {
+        String dataZipFile = null;
+        List<Integer> stackSizes = new ArrayList<Integer>();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-r")) {
+                dataZipFile = args[i + 1];
+            }
+            else if (args[i].equals("-s")) {
+                for (String stackSize : args[i + 1].split(",")) {
+                    stackSizes.add(Integer.parseInt(stackSize.trim()));
+                }
+            }
+        }
+        if (args.length - i < 2) {
+            System.err.println("USAGE: BackendBenchmark [-r data.zip] [-s stackSize,...] "
+                    + "testFile modelDirectory...");
+            System.exit(1);
+        }
+        GermaNERMain.initNERModel();
+        NERConfiguration configuration = GermaNERMain.getConfiguration();
+        if (stackSizes.isEmpty()) {
+            stackSizes.add(configuration.getStackSize());
+        }
+
+        File testFile = new File(args[i]);
+        File normalizedTestFile = new File(testFile.getAbsolutePath() + ".normalized");
+        new ChangeColon().normalize(testFile.getAbsolutePath(),
+                normalizedTestFile.getAbsolutePath());
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-40s %5s %6s %9s %9s %9s %11s %9s %7s %7s %7s%n",
+                "model", "stack", "beam", "tokens", "total(s)", "tag(s)", "tokens/sec",
+                "escalated", "P", "R", "F1"));
+        for (int m = i + 1; m < args.length; m++) {
+            File modelDirectory = new File(args[m]);
+            for (int stackSize : stackSizes) {
+                File outputFile = new File(modelDirectory, "benchmark-" + stackSize + ".tsv");
+                // the annotators of this run, one per shard, add their counts to these
+                String statsName = BackendBenchmark.class.getName() + "-" + m + "-" + stackSize;
+                TaggingStats stats = TaggingStats.getOrCreate(statsName);
+                long start = System.nanoTime();
+                GermaNERMain.classifyTestFile(modelDirectory, null, normalizedTestFile,
+                        outputFile, null, null, dataZipFile,
+                        configuration.with("stackSize", String.valueOf(stackSize))
+                                .with("taggingStats", statsName));
+                double total = (System.nanoTime() - start) / 1e9;
+                TaggingStats.remove(statsName);
+                double tagging = stats.getClassificationTime() / 1e9;
+                long tokens = stats.getClassifiedTokens();
+                NEREvaluation evaluation = NEREvaluation.evaluate(normalizedTestFile, outputFile);
+                report.append(String.format(
+                        "%-40s %5d %6.2f %9d %9.2f %9.2f %11.0f %9.3f %7.4f %7.4f %7.4f%n",
+                        modelDirectory.getName(), stackSize, stats.getAverageBeamWidth(),
+                        tokens, total, tagging, tagging > 0 ? tokens / tagging : 0,
+                        stats.getEscalationShare(), evaluation.getPrecision(),
+                        evaluation.getRecall(), evaluation.getF1()));
+            }
+        }
+        System.out.print(report);
+    }
+}
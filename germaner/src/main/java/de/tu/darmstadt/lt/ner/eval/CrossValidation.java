@@ -0,0 +1,428 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.cleartk.ml.crfsuite.CrfSuiteWrapper;
+
+import de.tu.darmstadt.lt.ner.preprocessing.ChangeColon;
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+
+/**
+ * Tunes the CRFsuite training parameters with k-fold cross-validation. The training file is split
+ * into k folds at sentence boundaries, sentence i going to fold i mod k, and the features of the
+ * training and test part of every fold are extracted once, as CRFsuite data files. Every parameter
+ * set of the grid, or of a random sample of it, is then trained and evaluated on every fold with
+ * the crfsuite program, several runs in parallel.
+ *
+ * <pre>
+ * CrossValidation [-k folds] [-a algorithm,...] [-p name=value,value...]... [-n samples] [-s seed]
+ *                 [-j parallelRuns] [-r data.zip] trainFile workDirectory
+ * </pre>
+ *
+ * For example <code>-a lbfgs -p c1=0,0.05,0.1 -p c2=0.1,1 -p max_iterations=100</code> is a grid of
+ * six parameter sets. The report, also written to report.txt in the work directory, ranks the
+ * parameter sets by their mean entity F1 and gives the standard deviation over the folds, the mean
+ * training time and the mean size of the model file.
+ */
+public class CrossValidation
+{
+    public static void main(String[] args)
+        throws Exception
+    {
+        int k = 5;
+        int samples = 0;
+        long seed = 1;
+        int parallelRuns = Runtime.getRuntime().availableProcessors();
+        String dataZipFile = null;
+        List<List<List<String>>> grid = new ArrayList<List<List<String>>>();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-k")) {
+                k = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-a")) {
+                grid.add(dimension("-a", "", args[i + 1]));
+            }
+            else if (args[i].equals("-p")) {
+                String[] nameValues = args[i + 1].split("=", 2);
+                grid.add(dimension("-p", nameValues[0] + "=", nameValues[1]));
+            }
+            else if (args[i].equals("-n")) {
+                samples = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-s")) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+            else if (args[i].equals("-j")) {
+                parallelRuns = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-r")) {
+                dataZipFile = args[i + 1];
+            }
+        }
+        if (args.length - i != 2 || k < 2) {
+            System.err.println("USAGE: CrossValidation [-k folds] [-a algorithm,...] "
+                    + "[-p name=value,value...]... [-n samples] [-s seed] [-j parallelRuns] "
+                    + "[-r data.zip] trainFile workDirectory");
+            System.exit(1);
+        }
+        File trainFile = new File(args[i]);
+        File workDirectory = new File(args[i + 1]);
+        workDirectory.mkdirs();
+
+        List<List<String>> parameterSets = product(grid);
+        if (samples > 0 && samples < parameterSets.size()) {
+            Collections.shuffle(parameterSets, new Random(seed));
+            parameterSets = parameterSets.subList(0, samples);
+        }
+
+        List<Fold> folds = extractFolds(trainFile, k, workDirectory, dataZipFile);
+
+        final List<Result> results = new ArrayList<Result>();
+        for (List<String> parameters : parameterSets) {
+            results.add(new Result(parameters));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelRuns);
+        List<Future<?>> runs = new ArrayList<Future<?>>();
+        for (int p = 0; p < results.size(); p++) {
+            for (final Fold fold : folds) {
+                final Result result = results.get(p);
+                final File modelFile = new File(fold.directory, "model-" + p + ".crfsuite");
+                runs.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws IOException
+                    {
+                        long start = System.nanoTime();
+                        train(result.parameters, fold.trainingData, modelFile);
+                        double seconds = (System.nanoTime() - start) / 1e9;
+                        NEREvaluation evaluation = evaluate(modelFile, fold.testData);
+                        result.add(evaluation.getF1(), seconds, modelFile.length());
+                        System.out.println(fold.directory.getName() + " "
+                                + result.getParameters() + ": F1 "
+                                + String.format("%.4f", evaluation.getF1()));
+                        return null;
+                    }
+                }));
+            }
+        }
+        executor.shutdown();
+        try {
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Collections.sort(results, new Comparator<Result>()
+        {
+            @Override
+            public int compare(Result r1, Result r2)
+            {
+                return Double.compare(r2.getMeanF1(), r1.getMeanF1());
+            }
+        });
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%4s %7s %7s %9s %12s  %s%n", "rank", "F1", "stddev",
+                "train(s)", "model bytes", "parameters"));
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+            report.append(String.format("%4d %7.4f %7.4f %9.2f %12d  %s%n", r + 1,
+                    result.getMeanF1(), result.getF1Deviation(), result.getMeanSeconds(),
+                    result.getMeanModelBytes(), result.getParameters()));
+        }
+        FileUtils.writeStringToFile(new File(workDirectory, "report.txt"), report.toString(),
+                "UTF-8");
+        System.out.print(report);
+    }
+
+    /**
+     * The values of one parameter, e.g. <code>-p c2=</code> with the values
+     * <code>0.1,1</code>.
+     */
+    private static List<List<String>> dimension(String option, String prefix, String values)
+    {
+        List<List<String>> dimension = new ArrayList<List<String>>();
+        for (String value : values.split(",")) {
+            dimension.add(Arrays.asList(option, prefix + value.trim()));
+        }
+        return dimension;
+    }
+
+    private static List<List<String>> product(List<List<List<String>>> grid)
+    {
+        List<List<String>> parameterSets = new ArrayList<List<String>>();
+        parameterSets.add(new ArrayList<String>());
+        for (List<List<String>> dimension : grid) {
+            List<List<String>> extended = new ArrayList<List<String>>();
+            for (List<String> parameters : parameterSets) {
+                for (List<String> value : dimension) {
+                    List<String> combined = new ArrayList<String>(parameters);
+                    combined.addAll(value);
+                    extended.add(combined);
+                }
+            }
+            parameterSets = extended;
+        }
+        return parameterSets;
+    }
+
+    /**
+     * Splits the training file into k folds and extracts the CRFsuite data of the training and test
+     * part of each.
+     */
+    static List<Fold> extractFolds(File trainFile, int k, File workDirectory, String dataZipFile)
+        throws Exception
+    {
+        GermaNERMain.initNERModel();
+        NERConfiguration configuration = GermaNERMain.getConfiguration()
+                .with("classifier", "crfsuite").with("streamTraining", "0")
+                // only the Java CRF trainer stops early, and the folds are only extracted
+                .with("holdoutFile", "").with("trainingTimeBudgetMinutes", "0");
+
+        File normalizedFile = new File(workDirectory, trainFile.getName() + ".normalized");
+        new ChangeColon().normalize(trainFile.getAbsolutePath(), normalizedFile.getAbsolutePath());
+        List<String> sentences = readSentences(normalizedFile);
+        List<Fold> folds = new ArrayList<Fold>();
+        for (int f = 0; f < k; f++) {
+            File directory = new File(workDirectory, "fold" + f);
+            StringBuilder train = new StringBuilder();
+            StringBuilder test = new StringBuilder();
+            for (int s = 0; s < sentences.size(); s++) {
+                (s % k == f ? test : train).append(sentences.get(s)).append('\n');
+            }
+            File trainPart = new File(directory, "train.tsv");
+            File testPart = new File(directory, "test.tsv");
+            FileUtils.writeStringToFile(trainPart, train.toString(), "UTF-8");
+            FileUtils.writeStringToFile(testPart, test.toString(), "UTF-8");
+            folds.add(new Fold(directory, extract(trainPart, new File(directory, "train"),
+                    dataZipFile, configuration), extractUnfiltered(testPart,
+                    new File(directory, "test"), dataZipFile, configuration)));
+        }
+        return folds;
+    }
+
+    /**
+     * @return the sentences of a CoNLL file, each with its lines and an empty line at the end
+     */
+    static List<String> readSentences(File file)
+        throws IOException
+    {
+        List<String> sentences = new ArrayList<String>();
+        StringBuilder sentence = new StringBuilder();
+        LineIterator it = FileUtils.lineIterator(file, "UTF-8");
+        try {
+            while (it.hasNext()) {
+                String line = it.next();
+                if (line.trim().isEmpty()) {
+                    if (sentence.length() > 0) {
+                        sentences.add(sentence.toString());
+                        sentence.setLength(0);
+                    }
+                    continue;
+                }
+                sentence.append(line).append('\n');
+            }
+        }
+        finally {
+            LineIterator.closeQuietly(it);
+        }
+        if (sentence.length() > 0) {
+            sentences.add(sentence.toString());
+        }
+        return sentences;
+    }
+
+    /**
+     * Extracts the features of a CoNLL file with the gold labels, as a CRFsuite data file.
+     */
+    static File extract(File conllFile, File directory, String dataZipFile,
+            NERConfiguration configuration)
+        throws Exception
+    {
+        directory.mkdirs();
+        GermaNERMain.writeModel(conllFile, directory, dataZipFile, configuration);
+        return new File(directory, "crfsuite.training");
+    }
+
+    /**
+     * Extracts the features of a test part with all their attributes, as they are when tagging:
+     * <code>minAttributeFrequency</code> applies to the training data, and attributes the model
+     * does not know are ignored by CRFsuite anyway.
+     */
+    static File extractUnfiltered(File conllFile, File directory, String dataZipFile,
+            NERConfiguration configuration)
+        throws Exception
+    {
+        return extract(conllFile, directory, dataZipFile,
+                configuration.with("minAttributeFrequency", "1"));
+    }
+
+    static void train(List<String> parameters, File trainingData, File modelFile)
+        throws IOException
+    {
+        // a model left from an earlier run must not pass for this one
+        modelFile.delete();
+        new CrfSuiteWrapper().trainClassifier(modelFile.getPath(), trainingData.getPath(),
+                parameters.toArray(new String[parameters.size()]));
+        if (!modelFile.exists()) {
+            throw new IOException("crfsuite did not train " + modelFile + " with " + parameters);
+        }
+    }
+
+    /**
+     * Tags a CRFsuite data file and compares the tags with its labels.
+     */
+    static NEREvaluation evaluate(File modelFile, File testData)
+        throws IOException
+    {
+        List<List<String>> gold = new ArrayList<List<String>>();
+        List<String> sentence = new ArrayList<String>();
+        int lines = 0;
+        LineIterator it = FileUtils.lineIterator(testData, "UTF-8");
+        try {
+            while (it.hasNext()) {
+                String line = it.next();
+                if (line.isEmpty()) {
+                    if (!sentence.isEmpty()) {
+                        gold.add(sentence);
+                        sentence = new ArrayList<String>();
+                        lines++;
+                    }
+                    continue;
+                }
+                sentence.add(line.substring(0, line.indexOf('\t') < 0 ? line.length()
+                        : line.indexOf('\t')));
+                lines++;
+            }
+        }
+        finally {
+            LineIterator.closeQuietly(it);
+        }
+        if (!sentence.isEmpty()) {
+            gold.add(sentence);
+        }
+        else if (lines > 0) {
+            // crfsuite does not print the empty line after the last sentence
+            lines--;
+        }
+        List<String> tags = new CrfSuiteWrapper().classifyFeatures(testData, modelFile, lines);
+        NEREvaluation evaluation = new NEREvaluation();
+        int t = 0;
+        for (List<String> labels : gold) {
+            evaluation.add(labels, tags.subList(t, t + labels.size()));
+            // skip the empty line between sentences
+            t += labels.size() + 1;
+        }
+        return evaluation;
+    }
+
+    static class Fold
+    {
+        final File directory;
+        final File trainingData;
+        final File testData;
+
+        Fold(File directory, File trainingData, File testData)
+        {
+            this.directory = directory;
+            this.trainingData = trainingData;
+            this.testData = testData;
+        }
+    }
+
+    /**
+     * The results of one parameter set over all folds.
+     */
+    static class Result
+    {
+        final List<String> parameters;
+        private final List<Double> f1 = new ArrayList<Double>();
+        private double seconds;
+        private long modelBytes;
+
+        Result(List<String> parameters)
+        {
+            this.parameters = parameters;
+        }
+
+        synchronized void add(double foldF1, double foldSeconds, long foldModelBytes)
+        {
+            f1.add(foldF1);
+            seconds += foldSeconds;
+            modelBytes += foldModelBytes;
+        }
+
+        String getParameters()
+        {
+            StringBuilder text = new StringBuilder();
+            for (String parameter : parameters) {
+                text.append(text.length() > 0 ? " " : "").append(parameter);
+            }
+            return text.length() > 0 ? text.toString() : "(defaults)";
+        }
+
+        synchronized double getMeanF1()
+        {
+            double sum = 0;
+            for (double value : f1) {
+                sum += value;
+            }
+            return f1.isEmpty() ? 0 : sum / f1.size();
+        }
+
+        synchronized double getF1Deviation()
+        {
+            double mean = getMeanF1();
+            double sum = 0;
+            for (double value : f1) {
+                sum += (value - mean) * (value - mean);
+            }
+            return f1.isEmpty() ? 0 : Math.sqrt(sum / f1.size());
+        }
+
+        synchronized double getMeanSeconds()
+        {
+            return f1.isEmpty() ? 0 : seconds / f1.size();
+        }
+
+        synchronized long getMeanModelBytes()
+        {
+            return f1.isEmpty() ? 0 : modelBytes / f1.size();
+        }
+    }
+}
@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.eval;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.encoder.features.BooleanEncoder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.encoder.features.NameNumberFeaturesEncoder;
+import org.cleartk.ml.encoder.features.NumberEncoder;
+import org.cleartk.ml.encoder.features.StringEncoder;
+import org.cleartk.ml.feature.extractor.CleartkExtractor;
+import org.cleartk.ml.feature.extractor.FeatureExtractor1;
+import org.cleartk.util.ReflectionUtil;
+
+import de.tu.darmstadt.lt.ner.annotator.GetFeaturesFromConfigFile;
+import de.tu.darmstadt.lt.ner.preprocessing.ChangeColon;
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+import de.tu.darmstadt.lt.ner.reader.ConllReader;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
+import de.tu.darmstadt.lt.ner.types.GoldNamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Measures what each feature switched on in the configuration contributes. The features of the
+ * training and the test file are extracted once, each feature marked with the configuration key
+ * that produced it, and the time spent in the extractors of each key is measured. The training and
+ * test data without the features of one key are then derived by dropping these features, and a
+ * CRFsuite model is trained and evaluated for all features and for every key left out, several in
+ * parallel.
+ *
+ * <pre>
+ * FeatureAblation [-j parallelRuns] [-r data.zip] trainFile testFile workDirectory
+ * </pre>
+ *
+ * The report lists for each key the extraction time, including loading its lexicons on first use,
+ * the entity F1 without its features and the difference to the F1 with all features, the keys
+ * whose removal loses the most F1 first. The time the reader spends on the Freebase n-gram lists
+ * is not included in the cost of useFreeBase.
+ */
+public class FeatureAblation
+{
+    private static final String ALL = "(all features)";
+
+    // extraction time per key in nanoseconds, summed by the KeyedFeatureWriter
+    private static final Map<String, Long> costs = new LinkedHashMap<String, Long>();
+    private static long tokens;
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        int parallelRuns = Runtime.getRuntime().availableProcessors();
+        String dataZipFile = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-j")) {
+                parallelRuns = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-r")) {
+                dataZipFile = args[i + 1];
+            }
+        }
+        if (args.length - i != 3) {
+            System.err.println("USAGE: FeatureAblation [-j parallelRuns] [-r data.zip] "
+                    + "trainFile testFile workDirectory");
+            System.exit(1);
+        }
+        File workDirectory = new File(args[i + 2]);
+        workDirectory.mkdirs();
+
+        GermaNERMain.initNERModel();
+        NERConfiguration configuration = GermaNERMain.getConfiguration();
+        final List<String> keys = new ArrayList<String>();
+        for (String key : new TreeSet<String>(configuration.getProperties()
+                .stringPropertyNames())) {
+            if (GetFeaturesFromConfigFile.isFeatureSwitch(key) && configuration.isSet(key)) {
+                keys.add(key);
+            }
+        }
+        File trainData = extract(new File(args[i]), new File(workDirectory, "train.keyed"),
+                configuration, dataZipFile);
+        File testData = extract(new File(args[i + 1]), new File(workDirectory, "test.keyed"),
+                configuration, dataZipFile);
+
+        List<String> runs = new ArrayList<String>();
+        runs.add(ALL);
+        runs.addAll(keys);
+        final Map<String, Double> f1 = Collections.synchronizedMap(new LinkedHashMap<String, Double>());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelRuns);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int r = 0; r < runs.size(); r++) {
+            final String left = runs.get(r);
+            final int dropped = keys.indexOf(left);
+            final File directory = new File(workDirectory, "run" + r);
+            directory.mkdirs();
+            final File train = trainData;
+            final File test = testData;
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                    throws IOException
+                {
+                    File trainPart = project(train, dropped, new File(directory, "train.crfsuite"));
+                    File testPart = project(test, dropped, new File(directory, "test.crfsuite"));
+                    File modelFile = new File(directory, "model.crfsuite");
+                    CrossValidation.train(Collections.<String> emptyList(), trainPart, modelFile);
+                    f1.put(left, CrossValidation.evaluate(modelFile, testPart).getF1());
+                    System.out.println("without " + left + ": F1 "
+                            + String.format("%.4f", f1.get(left)));
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        final double allF1 = f1.get(ALL);
+        Collections.sort(keys, new Comparator<String>()
+        {
+            @Override
+            public int compare(String k1, String k2)
+            {
+                return Double.compare(f1.get(k1), f1.get(k2));
+            }
+        });
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-32s %10s %10s %9s %9s%n", "left out", "extract(s)",
+                "us/token", "F1", "delta F1"));
+        report.append(String.format("%-32s %10s %10s %9.4f %9s%n", ALL, "", "", allF1, ""));
+        for (String key : keys) {
+            double seconds = costs.get(key) / 1e9;
+            report.append(String.format("%-32s %10.2f %10.2f %9.4f %+9.4f%n", key, seconds,
+                    tokens > 0 ? seconds * 1e6 / tokens : 0, f1.get(key), f1.get(key) - allF1));
+        }
+        FileUtils.writeStringToFile(new File(workDirectory, "report.txt"), report.toString(),
+                "UTF-8");
+        System.out.print(report);
+    }
+
+    /**
+     * Extracts the features of a CoNLL file, marked with the keys that produced them.
+     */
+    private static File extract(File conllFile, File keyedFile, NERConfiguration configuration,
+            String dataZipFile)
+        throws Exception
+    {
+        File normalizedFile = new File(keyedFile.getPath() + ".normalized");
+        new ChangeColon().normalize(conllFile.getAbsolutePath(), normalizedFile.getAbsolutePath());
+        runPipeline(
+                ConllReader.getCollectionReader(configuration, normalizedFile),
+                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile,
+                        NERReader.PARAM_CONFIGURATION, configuration.toString()),
+                createEngine(KeyedFeatureWriter.class, KeyedFeatureWriter.PARAM_CONFIGURATION,
+                        configuration.toString(), KeyedFeatureWriter.PARAM_DATA_ZIP_FILE,
+                        dataZipFile, KeyedFeatureWriter.PARAM_OUTPUT_FILE,
+                        keyedFile.getAbsolutePath()));
+        return keyedFile;
+    }
+
+    /**
+     * Writes the CRFsuite data of a keyed file without the features of one key.
+     *
+     * @param dropped
+     *            the index of the key to leave out, or -1 to keep all features
+     */
+    static File project(File keyedFile, int dropped, File crfsuiteFile)
+        throws IOException
+    {
+        String droppedKey = dropped + "|";
+        LineIterator it = FileUtils.lineIterator(keyedFile, "UTF-8");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(crfsuiteFile),
+                "UTF-8"));
+        try {
+            while (it.hasNext()) {
+                String line = it.next();
+                if (line.isEmpty()) {
+                    out.write('\n');
+                    continue;
+                }
+                String[] columns = line.split("\t");
+                out.write(columns[0]);
+                for (int c = 1; c < columns.length; c++) {
+                    if (!columns[c].startsWith(droppedKey)) {
+                        out.write('\t');
+                        out.write(columns[c], columns[c].indexOf('|') + 1,
+                                columns[c].length() - columns[c].indexOf('|') - 1);
+                    }
+                }
+                out.write('\n');
+            }
+        }
+        finally {
+            out.close();
+            LineIterator.closeQuietly(it);
+        }
+        return crfsuiteFile;
+    }
+
+    private static synchronized void addCost(String key, long nanos)
+    {
+        Long cost = costs.get(key);
+        costs.put(key, cost == null ? nanos : cost + nanos);
+    }
+
+    /**
+     * Writes the gold label and the CRFsuite attributes of every token, each attribute prefixed
+     * with the index of its key and <code>|</code>, and an empty line after each sentence. The
+     * extractors of every key switched on are run separately and timed.
+     */
+    public static class KeyedFeatureWriter
+        extends JCasAnnotator_ImplBase
+    {
+        public static final String PARAM_CONFIGURATION = "Configuration";
+        @ConfigurationParameter(name = PARAM_CONFIGURATION, mandatory = true)
+        private String configurationText;
+
+        public static final String PARAM_DATA_ZIP_FILE = "DataZipFile";
+        @ConfigurationParameter(name = PARAM_DATA_ZIP_FILE, mandatory = false)
+        private String dataZipFile;
+
+        public static final String PARAM_OUTPUT_FILE = "OutputFile";
+        @ConfigurationParameter(name = PARAM_OUTPUT_FILE, mandatory = true)
+        private File outputFile;
+
+        private final List<String> keys = new ArrayList<String>();
+        private final List<List<FeatureExtractor1<Token>>> extractors = new ArrayList<List<FeatureExtractor1<Token>>>();
+        // the encoder of the CRFsuite data writer, so that the attributes are the same
+        private final NameNumberFeaturesEncoder encoder = new NameNumberFeaturesEncoder(false,
+                false);
+        private Writer out;
+
+        @Override
+        public void initialize(UimaContext context)
+            throws ResourceInitializationException
+        {
+            super.initialize(context);
+            NERConfiguration configuration = NERConfiguration.parse(configurationText);
+            NERReader lexicons = new NERReader(null, dataZipFile);
+            try {
+                for (String key : new TreeSet<String>(configuration.getProperties()
+                        .stringPropertyNames())) {
+                    if (GetFeaturesFromConfigFile.isFeatureSwitch(key) && configuration.isSet(key)) {
+                        // the extractors the key adds when it is the only feature switched on
+                        Properties only = configuration.getProperties();
+                        for (String other : only.stringPropertyNames()) {
+                            if (GetFeaturesFromConfigFile.isFeatureSwitch(other)) {
+                                only.setProperty(other, other.equals(key) ? "1" : "0");
+                            }
+                        }
+                        keys.add(key);
+                        extractors.add(GetFeaturesFromConfigFile.getFeatures(only, lexicons));
+                    }
+                }
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile),
+                        "UTF-8"));
+            }
+            catch (IOException e) {
+                throw new ResourceInitializationException(e);
+            }
+            encoder.addEncoder(new NumberEncoder());
+            encoder.addEncoder(new BooleanEncoder());
+            encoder.addEncoder(new StringEncoder());
+        }
+
+        @Override
+        public void process(JCas jCas)
+            throws AnalysisEngineProcessException
+        {
+            long[] nanos = new long[keys.size()];
+            long documentTokens = 0;
+            try {
+                for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+                    for (Token token : JCasUtil.selectCovered(jCas, Token.class, sentence)) {
+                        out.write(JCasUtil.selectCovered(jCas, GoldNamedEntity.class, token).get(0)
+                                .getNamedEntityType());
+                        for (int k = 0; k < keys.size(); k++) {
+                            long start = System.nanoTime();
+                            List<Feature> features = extract(jCas, sentence, token,
+                                    extractors.get(k));
+                            nanos[k] += System.nanoTime() - start;
+                            for (NameNumber nameNumber : encoder.encodeAll(features)) {
+                                out.write('\t');
+                                out.write(k + "|" + nameNumber.name);
+                            }
+                        }
+                        out.write('\n');
+                        documentTokens++;
+                    }
+                    out.write('\n');
+                }
+            }
+            catch (IOException e) {
+                throw new AnalysisEngineProcessException(e);
+            }
+            for (int k = 0; k < keys.size(); k++) {
+                addCost(keys.get(k), nanos[k]);
+            }
+            synchronized (FeatureAblation.class) {
+                tokens += documentTokens;
+            }
+        }
+
+        private static List<Feature> extract(JCas jCas, Sentence sentence, Token token,
+                List<FeatureExtractor1<Token>> extractors)
+            throws CleartkProcessingException
+        {
+            List<Feature> features = new ArrayList<Feature>();
+            for (FeatureExtractor1<Token> extractor : extractors) {
+                if (extractor instanceof CleartkExtractor) {
+                    CleartkExtractor<Token, Token> cleartkExtractor = ReflectionUtil
+                            .uncheckedCast(extractor);
+                    features.addAll(cleartkExtractor.extractWithin(jCas, token, sentence));
+                }
+                else {
+                    features.addAll(extractor.extract(jCas, token));
+                }
+            }
+            return features;
+        }
+
+        @Override
+        public void collectionProcessComplete()
+            throws AnalysisEngineProcessException
+        {
+            super.collectionProcessComplete();
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                throw new AnalysisEngineProcessException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.eval;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.cleartk.ml.crf.AttributeDictionary;
+import org.cleartk.ml.crf.CrfModel;
+import org.cleartk.ml.crf.CrfStringOutcomeClassifierBuilder;
+import org.cleartk.ml.crf.CrfSuiteModelReader;
+import org.cleartk.ml.jar.EncodingJarClassifierBuilder;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+
+import de.tu.darmstadt.lt.ner.preprocessing.ChangeColon;
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.TagDictionary;
+
+/**
+ * Shrinks a trained CRFsuite or Java CRF model: state features whose absolute weight is below a
+ * threshold are removed, together with the attributes left without features, and the remaining
+ * weights are optionally quantized to 16 or 8 bits. The result is written to a new model directory
+ * as a Java CRF model, with the encoders, MANIFEST.MF, model.jar and the attribute dictionary
+ * rewritten, and tags like any other model directory.
+ *
+ * <pre>
+ * ModelPruner [-w minWeight] [-b 64|16|8] [-t heldOutFile] [-r data.zip] modelDirectory outputDirectory
+ * </pre>
+ *
+ * The report compares the number of attributes and state features, the size of model.jar, the time
+ * to load the classifier and, with a held-out CoNLL file, the entity F1 before and after.
+ */
+public class ModelPruner
+{
+    private static final String CRFSUITE_MODEL_NAME = "crfsuite.model";
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        double minWeight = 0;
+        int weightBits = 64;
+        File testFile = null;
+        String dataZipFile = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-w")) {
+                minWeight = Double.parseDouble(args[i + 1]);
+            }
+            else if (args[i].equals("-b")) {
+                weightBits = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-t")) {
+                testFile = new File(args[i + 1]);
+            }
+            else if (args[i].equals("-r")) {
+                dataZipFile = args[i + 1];
+            }
+        }
+        if (args.length - i != 2) {
+            System.err.println("USAGE: ModelPruner [-w minWeight] [-b 64|16|8] [-t heldOutFile] "
+                    + "[-r data.zip] modelDirectory outputDirectory");
+            System.exit(1);
+        }
+        File modelDirectory = new File(args[i]);
+        File outputDirectory = new File(args[i + 1]);
+        outputDirectory.mkdirs();
+
+        CrfModel model = readModel(modelDirectory, outputDirectory);
+        if (model == null) {
+            System.err.println(modelDirectory + " holds neither a CRFsuite nor a Java CRF model");
+            System.exit(1);
+        }
+        CrfModel pruned = weightBits == 64 ? model : model.quantize(weightBits);
+        pruned = pruned.prune(minWeight);
+
+        CrfStringOutcomeClassifierBuilder builder = new CrfStringOutcomeClassifierBuilder();
+        pruned.write(builder.getModelFile(outputDirectory), weightBits);
+        AttributeDictionary.write(builder.getAttributeDictionaryFile(outputDirectory), pruned);
+        builder.saveManifest(outputDirectory);
+        builder.packageClassifier(outputDirectory);
+        // the files next to model.jar that tagging reads
+        for (String name : new String[] { "feature.xml", TagDictionary.FILE_NAME,
+                GermaNERMain.MODEL_CONFIG }) {
+            if (new File(modelDirectory, name).exists()) {
+                FileUtils.copyFile(new File(modelDirectory, name), new File(outputDirectory, name));
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-20s %14s %14s%n", "", "before", "after"));
+        report.append(String.format("%-20s %14d %14d%n", "attributes", model.getNumAttributes(),
+                pruned.getNumAttributes()));
+        report.append(String.format("%-20s %14d %14d%n", "state features",
+                model.getNumFeatures(), pruned.getNumFeatures()));
+        report.append(String.format("%-20s %14d %14d%n", "model.jar bytes",
+                JarClassifierBuilder.getModelJarFile(modelDirectory).length(),
+                JarClassifierBuilder.getModelJarFile(outputDirectory).length()));
+        report.append(String.format("%-20s %14.3f %14.3f%n", "load time (s)",
+                loadTime(modelDirectory), loadTime(outputDirectory)));
+        if (testFile != null) {
+            GermaNERMain.initNERModel();
+            File normalizedTestFile = new File(testFile.getAbsolutePath() + ".normalized");
+            new ChangeColon().normalize(testFile.getAbsolutePath(),
+                    normalizedTestFile.getAbsolutePath());
+            report.append(String.format("%-20s %14.4f %14.4f%n", "F1",
+                    f1(modelDirectory, normalizedTestFile, dataZipFile),
+                    f1(outputDirectory, normalizedTestFile, dataZipFile)));
+        }
+        System.out.print(report);
+    }
+
+    /**
+     * Reads the CRF model from model.jar, and copies the encoders to the output directory.
+     */
+    static CrfModel readModel(File modelDirectory, File outputDirectory)
+        throws IOException
+    {
+        CrfModel model = null;
+        JarInputStream in = new JarInputStream(
+                new FileInputStream(JarClassifierBuilder.getModelJarFile(modelDirectory)));
+        try {
+            JarEntry entry;
+            while ((entry = in.getNextJarEntry()) != null) {
+                if (entry.getName().equals("encoders.ser")) {
+                    copy(in, EncodingJarClassifierBuilder.getEncodersFile(outputDirectory));
+                }
+                else if (entry.getName().equals(CrfStringOutcomeClassifierBuilder.MODEL_NAME)) {
+                    model = CrfModel.read(in);
+                }
+                else if (entry.getName().equals(CRFSUITE_MODEL_NAME)) {
+                    File crfsuiteModel = File.createTempFile("model", ".crfsuite");
+                    try {
+                        copy(in, crfsuiteModel);
+                        model = CrfSuiteModelReader.read(crfsuiteModel);
+                    }
+                    finally {
+                        crfsuiteModel.delete();
+                    }
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return model;
+    }
+
+    private static void copy(JarInputStream in, File file)
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            IOUtils.copyLarge(in, out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static double loadTime(File modelDirectory)
+        throws IOException
+    {
+        long start = System.nanoTime();
+        JarClassifierBuilder.fromTrainingDirectory(modelDirectory)
+                .loadClassifierFromTrainingDirectory(modelDirectory);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static double f1(File modelDirectory, File testFile, String dataZipFile)
+        throws Exception
+    {
+        File outputFile = new File(modelDirectory, "pruning-test.tsv");
+        GermaNERMain.classifyTestFile(modelDirectory, testFile, outputFile, null, null,
+                dataZipFile);
+        return NEREvaluation.evaluate(testFile, outputFile).getF1();
+    }
+}
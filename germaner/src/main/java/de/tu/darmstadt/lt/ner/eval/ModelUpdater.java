@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.eval;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.ml.crf.AttributeDictionary;
+import org.cleartk.ml.crf.CrfModel;
+import org.cleartk.ml.crf.CrfStringOutcomeClassifierBuilder;
+import org.cleartk.ml.crf.CrfTrainer;
+
+import de.tu.darmstadt.lt.ner.preprocessing.ChangeColon;
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+import de.tu.darmstadt.lt.ner.preprocessing.TagDictionary;
+
+/**
+ * Updates a trained model with newly annotated sentences instead of training again on the whole
+ * corpus. The features of the new sentences are extracted with the settings of the model, and a
+ * Java CRF is trained for a few iterations on them, mixed with a random sample of the training
+ * data of the model, starting from the weights of the model (CRFsuite or Java CRF). The result is
+ * a Java CRF model directory that tags like any other.
+ *
+ * <pre>
+ * ModelUpdater [-i iterations] [-s replaySentences] [-seed n] [-r data.zip] modelDirectory newSentences outputDirectory
+ * </pre>
+ *
+ * By default 30 iterations are run on twice as many old sentences as new ones. The training data
+ * of the output directory is the old training data followed by the new sentences, so that the
+ * next update can sample from all of it, and the tag dictionary holds both as well.
+ */
+public class ModelUpdater
+{
+    public static void main(String[] args)
+        throws Exception
+    {
+        int iterations = 30;
+        int replaySentences = -1;
+        long seed = 1;
+        String dataZipFile = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-i")) {
+                iterations = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-s")) {
+                replaySentences = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("-seed")) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+            else if (args[i].equals("-r")) {
+                dataZipFile = args[i + 1];
+            }
+        }
+        if (args.length - i != 3) {
+            System.err.println("USAGE: ModelUpdater [-i iterations] [-s replaySentences] "
+                    + "[-seed n] [-r data.zip] modelDirectory newSentences outputDirectory");
+            System.exit(1);
+        }
+        File modelDirectory = new File(args[i]);
+        File newSentences = new File(args[i + 1]);
+        File outputDirectory = new File(args[i + 2]);
+        outputDirectory.mkdirs();
+        long start = System.currentTimeMillis();
+
+        // the features of the new sentences have to be those the model was trained with
+        GermaNERMain.initNERModel();
+        NERConfiguration configuration = GermaNERMain.getConfiguration();
+        File modelConfig = new File(modelDirectory, GermaNERMain.MODEL_CONFIG);
+        if (modelConfig.exists()) {
+            Properties properties = new Properties();
+            InputStream in = new FileInputStream(modelConfig);
+            try {
+                properties.load(in);
+            }
+            finally {
+                in.close();
+            }
+            configuration = configuration.with(properties);
+        }
+        configuration = configuration.with("classifier", "crf");
+
+        File normalizedFile = new File(outputDirectory, newSentences.getName() + ".normalized");
+        new ChangeColon().normalize(newSentences.getAbsolutePath(),
+                normalizedFile.getAbsolutePath());
+        GermaNERMain.writeModel(normalizedFile, outputDirectory, dataZipFile, configuration);
+        File tagDictionaryFile = new File(modelDirectory, TagDictionary.FILE_NAME);
+        if (tagDictionaryFile.exists()) {
+            TagDictionary tagDictionary = TagDictionary.read(tagDictionaryFile);
+            tagDictionary.addAll(TagDictionary.build(normalizedFile));
+            tagDictionary.write(new File(outputDirectory, TagDictionary.FILE_NAME));
+        }
+
+        CrfStringOutcomeClassifierBuilder builder = new CrfStringOutcomeClassifierBuilder();
+        File newData = builder.getTrainingDataFile(outputDirectory);
+        File oldData = builder.getTrainingDataFile(modelDirectory);
+        List<String> sentences = readSequences(newData);
+        int newCount = sentences.size();
+        if (replaySentences < 0) {
+            replaySentences = 2 * newCount;
+        }
+        if (oldData.exists()) {
+            sentences.addAll(sample(oldData, replaySentences, new Random(seed)));
+        }
+        else {
+            System.err.println(oldData + " does not exist, training on the new sentences only");
+        }
+        File updateData = new File(outputDirectory, "crfsuite.update");
+        writeSequences(sentences, updateData, false);
+        if (oldData.exists()) {
+            // the whole corpus, for the next update or a full training
+            File corpus = new File(outputDirectory, "crfsuite.corpus");
+            FileUtils.copyFile(oldData, corpus);
+            writeSequences(readSequences(newData), corpus, true);
+            newData.delete();
+            FileUtils.moveFile(corpus, newData);
+        }
+
+        CrfModel model = ModelPruner.readModel(modelDirectory, outputDirectory);
+        if (model == null) {
+            System.err.println(modelDirectory + " holds neither a CRFsuite nor a Java CRF model");
+            System.exit(1);
+        }
+        List<String> trainingArgs = GermaNERMain.getTrainingArguments(outputDirectory,
+                configuration);
+        trainingArgs.add("-p");
+        trainingArgs.add("max_iterations=" + iterations);
+        CrfTrainer trainer = new CrfTrainer();
+        trainer.setArguments(trainingArgs.toArray(new String[trainingArgs.size()]));
+        CrfModel updated = trainer.train(updateData, model);
+        updateData.delete();
+
+        updated.write(builder.getModelFile(outputDirectory));
+        AttributeDictionary.write(builder.getAttributeDictionaryFile(outputDirectory), updated);
+        builder.saveManifest(outputDirectory);
+        builder.packageClassifier(outputDirectory);
+        System.out.println("Updated " + modelDirectory + " with " + newCount + " new and "
+                + (sentences.size() - newCount) + " replayed sentences in "
+                + (System.currentTimeMillis() - start) / 1000.0 + " seconds: "
+                + model.getNumFeatures() + " state features before, " + updated.getNumFeatures()
+                + " after");
+    }
+
+    /**
+     * Reads the sequences of a file in the training data format, each with its lines and the
+     * empty line after it.
+     */
+    private static List<String> readSequences(File file)
+        throws IOException
+    {
+        final List<String> sequences = new ArrayList<String>();
+        forEachSequence(file, new SequenceHandler()
+        {
+            @Override
+            public void sequence(String sequence)
+            {
+                sequences.add(sequence);
+            }
+        });
+        return sequences;
+    }
+
+    /**
+     * Draws a uniform random sample of the sequences of a file (reservoir sampling), so that the
+     * old training data does not have to fit into memory.
+     */
+    private static List<String> sample(File file, final int size, final Random random)
+        throws IOException
+    {
+        final List<String> sample = new ArrayList<String>(size);
+        forEachSequence(file, new SequenceHandler()
+        {
+            private int seen;
+
+            @Override
+            public void sequence(String sequence)
+            {
+                seen++;
+                if (sample.size() < size) {
+                    sample.add(sequence);
+                }
+                else {
+                    int j = random.nextInt(seen);
+                    if (j < size) {
+                        sample.set(j, sequence);
+                    }
+                }
+            }
+        });
+        return sample;
+    }
+
+    private interface SequenceHandler
+    {
+        void sequence(String sequence);
+    }
+
+    private static void forEachSequence(File file, SequenceHandler handler)
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            StringBuilder sequence = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (sequence.length() > 0) {
+                        handler.sequence(sequence.append('\n').toString());
+                        sequence.setLength(0);
+                    }
+                    continue;
+                }
+                sequence.append(line).append('\n');
+            }
+            if (sequence.length() > 0) {
+                handler.sequence(sequence.append('\n').toString());
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static void writeSequences(List<String> sequences, File file, boolean append)
+        throws IOException
+    {
+        Writer out = new BufferedWriter(new FileWriter(file, append));
+        try {
+            for (String sequence : sequences) {
+                out.write(sequence);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
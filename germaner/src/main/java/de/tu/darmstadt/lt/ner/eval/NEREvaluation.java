@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+
+/**
+ * Entity level precision, recall and F1 as computed by the CoNLL evaluation script: an entity is
+ * correct if its type and both of its boundaries are correct. Labels are BIO (or IO) encoded, e.g.
+ * B-PER, I-PER and O.
+ */
+public class NEREvaluation
+{
+    private long tokens;
+    private long correctTokens;
+    private long goldEntities;
+    private long predictedEntities;
+    private long correctEntities;
+
+    /**
+     * Adds one sentence.
+     */
+    public void add(List<String> gold, List<String> predicted)
+    {
+        if (gold.size() != predicted.size()) {
+            throw new IllegalArgumentException("expected " + gold.size() + " predictions, found "
+                    + predicted.size());
+        }
+        for (int i = 0; i < gold.size(); i++) {
+            tokens++;
+            if (gold.get(i).equals(predicted.get(i))) {
+                correctTokens++;
+            }
+        }
+        Set<String> goldChunks = chunks(gold);
+        Set<String> predictedChunks = chunks(predicted);
+        goldEntities += goldChunks.size();
+        predictedEntities += predictedChunks.size();
+        for (String chunk : predictedChunks) {
+            if (goldChunks.contains(chunk)) {
+                correctEntities++;
+            }
+        }
+    }
+
+    public void add(NEREvaluation other)
+    {
+        tokens += other.tokens;
+        correctTokens += other.correctTokens;
+        goldEntities += other.goldEntities;
+        predictedEntities += other.predictedEntities;
+        correctEntities += other.correctEntities;
+    }
+
+    /**
+     * Entities as "begin:end:type" strings, end exclusive. I- after O or after an entity of another
+     * type starts a new entity, as in the CoNLL script.
+     */
+    static Set<String> chunks(List<String> labels)
+    {
+        Set<String> chunks = new HashSet<String>();
+        int begin = -1;
+        String type = null;
+        for (int i = 0; i <= labels.size(); i++) {
+            String label = i < labels.size() ? labels.get(i) : "O";
+            String prefix = label.length() > 1 && label.charAt(1) == '-' ? label.substring(0, 1)
+                    : "";
+            String labelType = prefix.isEmpty() ? null : label.substring(2);
+            boolean inside = prefix.equals("I") && labelType.equals(type);
+            if (type != null && !inside) {
+                chunks.add(begin + ":" + i + ":" + type);
+                type = null;
+            }
+            if (labelType != null && !inside) {
+                begin = i;
+                type = labelType;
+            }
+        }
+        return chunks;
+    }
+
+    public long getTokens()
+    {
+        return tokens;
+    }
+
+    public double getTokenAccuracy()
+    {
+        return tokens == 0 ? 0 : (double) correctTokens / tokens;
+    }
+
+    public double getPrecision()
+    {
+        return predictedEntities == 0 ? 0 : (double) correctEntities / predictedEntities;
+    }
+
+    public double getRecall()
+    {
+        return goldEntities == 0 ? 0 : (double) correctEntities / goldEntities;
+    }
+
+    public double getF1()
+    {
+        double p = getPrecision();
+        double r = getRecall();
+        return p + r == 0 ? 0 : 2 * p * r / (p + r);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("P=%.4f R=%.4f F1=%.4f accuracy=%.4f", getPrecision(), getRecall(),
+                getF1(), getTokenAccuracy());
+    }
+
+    /**
+     * Compares the last column of a gold file in the training data format with the last column of
+     * the tagger output, sentence by sentence; a trailing score column is ignored.
+     */
+    public static NEREvaluation evaluate(File goldFile, File predictedFile)
+        throws IOException
+    {
+        List<List<String>> gold = readLastColumn(goldFile);
+        List<List<String>> predicted = readLastColumn(predictedFile);
+        if (gold.size() != predicted.size()) {
+            throw new IllegalArgumentException(goldFile + " has " + gold.size()
+                    + " sentences but " + predictedFile + " has " + predicted.size());
+        }
+        NEREvaluation evaluation = new NEREvaluation();
+        for (int i = 0; i < gold.size(); i++) {
+            evaluation.add(gold.get(i), predicted.get(i));
+        }
+        return evaluation;
+    }
+
+    private static boolean isScore(String column)
+    {
+        try {
+            Double.parseDouble(column);
+            return true;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    static List<List<String>> readLastColumn(File file)
+        throws IOException
+    {
+        List<List<String>> sentences = new ArrayList<List<String>>();
+        List<String> sentence = new ArrayList<String>();
+        LineIterator it = FileUtils.lineIterator(file, "UTF-8");
+        try {
+            while (it.hasNext()) {
+                String line = it.next().trim();
+                if (line.isEmpty()) {
+                    if (!sentence.isEmpty()) {
+                        sentences.add(sentence);
+                        sentence = new ArrayList<String>();
+                    }
+                    continue;
+                }
+                String[] columns = line.split("\\s+");
+                int label = columns.length - 1;
+                // skip the score column written with writeScores=1
+                if (label > 1 && isScore(columns[label])) {
+                    label--;
+                }
+                sentence.add(columns[label]);
+            }
+        }
+        finally {
+            LineIterator.closeQuietly(it);
+        }
+        if (!sentence.isEmpty()) {
+            sentences.add(sentence);
+        }
+        return sentences;
+    }
+}
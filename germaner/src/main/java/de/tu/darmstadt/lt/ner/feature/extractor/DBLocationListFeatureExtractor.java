@@ -18,72 +18,53 @@
 package de.tu.darmstadt.lt.ner.feature.extractor;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 
 public class DBLocationListFeatureExtractor
     implements FeatureFunction
 {
 
-    static Map<String, String> dbLocationNameList = new HashMap<String, String>();
-    static int i = 0;
+    private final transient Map<String, String> dbLocationNameList;
 
-    public DBLocationListFeatureExtractor()
+    public DBLocationListFeatureExtractor(NERReader aLexicons)
+        throws IOException
     {
-
-    }
-
-    public static final String DEFAULT_NAME = "DBPLocationName";
-
-    @Override
-    public List<Feature> apply(Feature feature)
-    {
-
-        if (i == 0) {
-            BufferedReader br;
-            try {
-                NERReader reader = new NERReader();
-              br = (BufferedReader) reader.getReader("location_wiki.list");
+        dbLocationNameList = Lexicons.get(aLexicons, "location_wiki.list", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
                 String input;
-                while ((input = br.readLine()) != null) {
+                while ((input = reader.readLine()) != null) {
                     String[] sep = input.split("\\t");
                     for (int i = 0; i < sep.length; i++) {
                         if (i == 0) {
-                            dbLocationNameList.put(sep[0], "B-LocationName");
+                            lexicon.put(sep[0], "B-LocationName");
                         }
                         else {
-                            dbLocationNameList.put(sep[0], "I-LocationName");
+                            lexicon.put(sep[0], "I-LocationName");
                         }
                     }
                 }
-                br.close();
-            }
-            catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (FileNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
             }
+        });
+    }
 
-            i++;
-        }
+    public static final String DEFAULT_NAME = "DBPLocationName";
 
+    @Override
+    public List<Feature> apply(Feature feature)
+    {
         Object featureValue = feature.getValue();
 
         String value = featureValue.toString();
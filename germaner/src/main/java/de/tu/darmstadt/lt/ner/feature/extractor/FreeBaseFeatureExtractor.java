@@ -45,7 +45,7 @@ public class FreeBaseFeatureExtractor
                 return Collections.singletonList(new Feature("FreeBase", "FreeBase_null"));
             }
 
-            String k = FreeBaseFeature.freebaseFeature.remove();
+            String k = FreeBaseFeature.freebaseFeature.get().remove();
 
             String value = featureValue.toString();
             if (value == null || value.length() == 0) {
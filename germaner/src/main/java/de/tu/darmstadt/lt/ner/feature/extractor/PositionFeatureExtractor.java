@@ -44,7 +44,7 @@ public class PositionFeatureExtractor
             if (featureValue == null) {
                 return Collections.singletonList(new Feature("Position", -1));
             }
-            int k = PositionFeature.posistion.remove();
+            int k = PositionFeature.posistion.get().remove();
 
             String value = featureValue.toString();
             if (value == null || value.length() == 0) {
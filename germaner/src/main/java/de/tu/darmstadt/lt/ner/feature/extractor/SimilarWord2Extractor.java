@@ -18,30 +18,39 @@
 package de.tu.darmstadt.lt.ner.feature.extractor;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 
 public class SimilarWord2Extractor
     implements FeatureFunction
 {
 
-    static Map<String, String> simWord2 = new HashMap<String, String>();
-    static int i = 0;
+    private final transient Map<String, String> simWord2;
 
-    public SimilarWord2Extractor()
+    public SimilarWord2Extractor(NERReader aLexicons)
         throws IOException
     {
-        // read
+        simWord2 = Lexicons.get(aLexicons, "200k_2d_wordlists", "2", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
+                String input;
+                while ((input = reader.readLine()) != null) {
+                    String[] sep = input.split("\\t");
+                    lexicon.put(sep[0], sep[2]);
+                }
+            }
+        });
     }
 
     public static final String DEFAULT_NAME = "SimilarWord2";
@@ -49,35 +58,6 @@ public class SimilarWord2Extractor
     @Override
     public List<Feature> apply(Feature feature)
     {
-
-        if (i == 0) {
-            BufferedReader br;
-            try {
-                NERReader reader = new NERReader();
-                br = (BufferedReader) reader.getReader("200k_2d_wordlists");
-                String input;
-                while ((input = br.readLine()) != null) {
-                    String[] sep = input.split("\\t");
-                    simWord2.put(sep[0], sep[2]);
-                }
-                br.close();
-            }
-            catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (FileNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-
-            i++;
-        }
-
         Object featureValue = feature.getValue();
 
         if (featureValue == null) {
@@ -18,69 +18,50 @@
 package de.tu.darmstadt.lt.ner.feature.extractor;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 
 public class TemplateBinaryFeatureExtractor
     implements FeatureFunction
 {
 
-    static List<String> list = new ArrayList<>();
-    static int i = 0;
+    private final transient Map<String, String> entries;
 
-    public TemplateBinaryFeatureExtractor()
+    public TemplateBinaryFeatureExtractor(NERReader aLexicons)
         throws IOException
     {
-        // read
-    }
-
-    public static final String DEFAULT_NAME = "BINARYFEATURE";
-
-    @Override
-    public List<Feature> apply(Feature feature)
-    {
-
-        if (i == 0) {
-            BufferedReader br;
-            try {
-                NERReader reader = new NERReader();
-                // ListFileName - assumption is to have a file where every feature is presented in a single line
-                br = (BufferedReader) reader.getReader("listFile.tsv");
+        // ListFileName - assumption is to have a file where every feature is presented in a single line
+        entries = Lexicons.get(aLexicons, "listFile.tsv", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
                 String input;
-                
+
                 // if the features are separated anything than new line, change this code
-                while ((input = br.readLine()) != null) {                 
+                while ((input = reader.readLine()) != null) {
                   if (input.trim().isEmpty()){
                       continue;
                   }
-                  list.add(input.trim());
+                  lexicon.put(input.trim(), "true");
                 }
-                br.close();
-            }
-            catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (FileNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
             }
+        });
+    }
 
-            i++;
-        }
+    public static final String DEFAULT_NAME = "BINARYFEATURE";
 
+    @Override
+    public List<Feature> apply(Feature feature)
+    {
         Object featureValue = feature.getValue();
 
         if (featureValue == null) {
@@ -91,7 +72,7 @@ public class TemplateBinaryFeatureExtractor
             return Collections.singletonList(new Feature("BINARYFEATURE", "false"));
         }
 
-        if (list.contains(value)) {
+        if (entries.containsKey(value)) {
             return Collections.singletonList(new Feature("BINARYFEATURE", "true"));
         }
         return Collections.singletonList(new Feature("BINARYFEATURE", "false"));
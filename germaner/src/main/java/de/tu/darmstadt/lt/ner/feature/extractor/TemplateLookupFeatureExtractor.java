@@ -18,70 +18,49 @@
 package de.tu.darmstadt.lt.ner.feature.extractor;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 
 public class TemplateLookupFeatureExtractor
     implements FeatureFunction
 {
 
-    static Map<String, String> lookUp = new HashMap<String, String>();
-    static int i = 0;
+    private final transient Map<String, String> lookUp;
 
-    public TemplateLookupFeatureExtractor()
+    public TemplateLookupFeatureExtractor(NERReader aLexicons)
         throws IOException
     {
-        // read
-    }
-
-    public static final String DEFAULT_NAME = "LOOKUPFEATURE";
-
-    @Override
-    public List<Feature> apply(Feature feature)
-    {
-
-        if (i == 0) {
-            BufferedReader br;
-            try {
-                NERReader reader = new NERReader();
-                // lookUpFileName
-                br = (BufferedReader) reader.getReader("lookUpFile.tsv");
+        lookUp = Lexicons.get(aLexicons, "lookUpFile.tsv", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
                 String input;
-                while ((input = br.readLine()) != null) {                 
+                while ((input = reader.readLine()) != null) {
                     // assuming the file is separated by TAB character. change it accordingly
                     String[] sep = input.split("\\t");
-                    // get the vale from the second line (if the feature is not in the second 
+                    // get the vale from the second line (if the feature is not in the second
                     //column change sep[1] to sep[x]
-                    lookUp.put(sep[0], sep[1]);
+                    lexicon.put(sep[0], sep[1]);
                 }
-                br.close();
-            }
-            catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (FileNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
             }
+        });
+    }
 
-            i++;
-        }
+    public static final String DEFAULT_NAME = "LOOKUPFEATURE";
 
+    @Override
+    public List<Feature> apply(Feature feature)
+    {
         Object featureValue = feature.getValue();
 
         if (featureValue == null) {
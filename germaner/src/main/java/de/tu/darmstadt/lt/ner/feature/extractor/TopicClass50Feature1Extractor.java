@@ -18,30 +18,39 @@
 package de.tu.darmstadt.lt.ner.feature.extractor;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 
 public class TopicClass50Feature1Extractor
     implements FeatureFunction
 {
 
-    static Map<String, String> topicClass1 = new HashMap<String, String>();
-    static int i = 0;
+    private final transient Map<String, String> topicClass1;
 
-    public TopicClass50Feature1Extractor()
+    public TopicClass50Feature1Extractor(NERReader aLexicons)
         throws IOException
     {
-        // read
+        topicClass1 = Lexicons.get(aLexicons, "topicCluster50.txt", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
+                String input;
+                while ((input = reader.readLine()) != null) {
+                    String[] sep = input.split("\\t");
+                    lexicon.put(sep[0], sep[1]);
+                }
+            }
+        });
     }
 
     public static final String DEFAULT_NAME = "TopicClass50";
@@ -49,36 +58,6 @@ public class TopicClass50Feature1Extractor
     @Override
     public List<Feature> apply(Feature feature)
     {
-
-        if (i == 0) {
-            BufferedReader br;
-            try {
-                NERReader reader = new NERReader();
-                br = (BufferedReader) reader.getReader("topicCluster50.txt");
-                String input;
-                while ((input = br.readLine()) != null) {
-                    String[] sep = input.split("\\t");
-                    topicClass1.put(sep[0], sep[1]);
-                }
-                br.close();
-            }
-            catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (FileNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            // System.out.println("Size:"+simWord1.size());
-
-            i++;
-        }
-
         Object featureValue = feature.getValue();
 
         if (featureValue == null) {
@@ -18,29 +18,39 @@
 package de.tu.darmstadt.lt.ner.feature.extractor;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.cleartk.ml.Feature;
 import org.cleartk.ml.feature.function.FeatureFunction;
 
+import de.tu.darmstadt.lt.ner.reader.Lexicons;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 
 public class VornameListFeatureExtractor
     implements FeatureFunction
 {
 
-    static Map<String, String> dbVorNamen = new HashMap<String, String>();
-    static int i = 0;
+    private final transient Map<String, String> dbVorNamen;
 
-    public VornameListFeatureExtractor()
+    public VornameListFeatureExtractor(NERReader aLexicons)
+        throws IOException
     {
-
+        dbVorNamen = Lexicons.get(aLexicons, "vornameList.txt", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
+                String input;
+                while ((input = reader.readLine()) != null) {
+                    String[] sep = input.split("\\t");
+                    lexicon.put(sep[0], "true");
+                }
+            }
+        });
     }
 
     public static final String DEFAULT_NAME = "DBVorNamen";
@@ -48,35 +58,6 @@ public class VornameListFeatureExtractor
     @Override
     public List<Feature> apply(Feature feature)
     {
-
-        if (i == 0) {
-            BufferedReader br;
-            try {
-                NERReader reader = new NERReader();
-                br = (BufferedReader) reader.getReader("vornameList.txt");
-                String input;
-                while ((input = br.readLine()) != null) {
-                    String[] sep = input.split("\\t");
-                    dbVorNamen.put(sep[0], "true");
-                }
-                br.close();
-            }
-            catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (FileNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-
-            i++;
-        }
-
         Object featureValue = feature.getValue();
 
         String value = featureValue.toString();
@@ -21,6 +21,14 @@ import java.util.LinkedList;
 
 public class FreeBaseFeature {
 
-	public static LinkedList<String> freebaseFeature=new LinkedList<String>();
+	// one queue per thread: pipelines that tag shards of a file at the same time each fill
+	// and empty their own
+	public static final ThreadLocal<LinkedList<String>> freebaseFeature =
+			new ThreadLocal<LinkedList<String>>() {
+		@Override
+		protected LinkedList<String> initialValue() {
+			return new LinkedList<String>();
+		}
+	};
 
 }
@@ -73,6 +73,11 @@ public class MyFeatureFunctionExtractor
         return returnValues;
     }
 
+    public FeatureFunction[] getFeatureFunctions()
+    {
+        return featureFunctions;
+    }
+
     private FeatureExtractor1<Token> extractor;
 
     private FeatureFunction[] featureFunctions;
@@ -21,6 +21,14 @@ import java.util.LinkedList;
 
 public class PositionFeature {
 	
-	public static LinkedList<Integer> posistion=new LinkedList<Integer>();
+	// one queue per thread: pipelines that tag shards of a file at the same time each fill
+	// and empty their own
+	public static final ThreadLocal<LinkedList<Integer>> posistion =
+			new ThreadLocal<LinkedList<Integer>>() {
+		@Override
+		protected LinkedList<Integer> initialValue() {
+			return new LinkedList<Integer>();
+		}
+	};
 
 }
@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.preprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.Instance;
+import org.cleartk.ml.SequenceDataWriter;
+
+import de.tu.darmstadt.lt.ner.annotator.GetFeaturesFromConfigFile;
+
+/**
+ * The training instances extracted from a training file, kept on disk so that training again with
+ * other classifier settings does not extract the features again. A cache is a directory named by
+ * {@link #key(File, NERConfiguration, String)}, a hash of the training file, the feature settings
+ * and the lexicons; it holds dictionary-encoded int columns:
+ * <ul>
+ * <li><code>sequences.col</code>: the number of tokens of each sentence</li>
+ * <li><code>counts.col</code>: the number of features of each token</li>
+ * <li><code>families.col</code> and <code>values.col</code>: the feature name (family) and the
+ * value of each feature, the value numbered within its family</li>
+ * <li><code>outcomes.col</code>: the label of each token</li>
+ * </ul>
+ * and <code>dictionary</code>, the names, values and labels the numbers stand for. Replaying the
+ * columns into a data writer writes the same training data as the extraction did.
+ */
+public class FeatureCache
+{
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SEQUENCES = "sequences.col";
+    private static final String COUNTS = "counts.col";
+    private static final String FAMILIES = "families.col";
+    private static final String VALUES = "values.col";
+    private static final String OUTCOMES = "outcomes.col";
+    private static final String DICTIONARY = "dictionary";
+
+    // value types, so that e.g. the integer 1 and the string "1" stay different features
+    private static final char NULL = 'N';
+    private static final char STRING = 'S';
+    private static final char INTEGER = 'I';
+    private static final char LONG = 'L';
+    private static final char DOUBLE = 'D';
+    private static final char FLOAT = 'F';
+    private static final char BOOLEAN = 'B';
+
+    /**
+     * The cache key: a hash of the training file, the settings that select features
+     * (<code>use*</code>, <code>lookUpFeature</code>, <code>listFeature</code>) and data.zip, or the
+     * data.zip on the classpath if none is given.
+     */
+    public static String key(File trainingFile, NERConfiguration configuration, String dataZipFile)
+        throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(("GermaNER feature cache " + FORMAT_VERSION + "\n").getBytes("UTF-8"));
+        update(digest, new FileInputStream(trainingFile));
+        Map<String, String> settings = new TreeMap<String, String>();
+        for (String name : configuration.getProperties().stringPropertyNames()) {
+            if (GetFeaturesFromConfigFile.isFeatureSwitch(name)) {
+                settings.put(name, configuration.getProperty(name, "").trim());
+            }
+        }
+        digest.update(settings.toString().getBytes("UTF-8"));
+        InputStream lexicons = dataZipFile != null ? new FileInputStream(dataZipFile)
+                : ClassLoader.getSystemResourceAsStream("data.zip");
+        if (lexicons != null) {
+            update(digest, lexicons);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b & 0xff));
+        }
+        return key.toString();
+    }
+
+    private static void update(MessageDigest digest, InputStream in)
+        throws IOException
+    {
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return whether the cache directory is complete; it is only renamed to its final name when
+     *         it has been written completely
+     */
+    public static boolean exists(File directory)
+    {
+        return new File(directory, DICTIONARY).exists();
+    }
+
+    /**
+     * Writes the cached instances to a data writer, sentence by sentence, and finishes it.
+     *
+     * @return the number of sentences
+     */
+    public static int replay(File directory, SequenceDataWriter<String> dataWriter)
+        throws IOException, CleartkProcessingException
+    {
+        DataInputStream in = open(directory, DICTIONARY);
+        List<String> names = new ArrayList<String>();
+        List<List<Object>> values = new ArrayList<List<Object>>();
+        List<String> outcomes = new ArrayList<String>();
+        try {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("the feature cache " + directory + " has another format");
+            }
+            int numFamilies = in.readInt();
+            for (int f = 0; f < numFamilies; f++) {
+                names.add(in.readBoolean() ? in.readUTF() : null);
+                int numValues = in.readInt();
+                List<Object> familyValues = new ArrayList<Object>(numValues);
+                for (int v = 0; v < numValues; v++) {
+                    familyValues.add(readValue(in));
+                }
+                values.add(familyValues);
+            }
+            int numOutcomes = in.readInt();
+            for (int o = 0; o < numOutcomes; o++) {
+                outcomes.add(in.readUTF());
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        DataInputStream sequences = open(directory, SEQUENCES);
+        DataInputStream counts = open(directory, COUNTS);
+        DataInputStream families = open(directory, FAMILIES);
+        DataInputStream familyValues = open(directory, VALUES);
+        DataInputStream outcomeColumn = open(directory, OUTCOMES);
+        int numSequences = 0;
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = sequences.readInt();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                List<Instance<String>> instances = new ArrayList<Instance<String>>(length);
+                for (int t = 0; t < length; t++) {
+                    Instance<String> instance = new Instance<String>();
+                    int count = counts.readInt();
+                    for (int i = 0; i < count; i++) {
+                        int family = families.readInt();
+                        instance.add(new Feature(names.get(family),
+                                values.get(family).get(familyValues.readInt())));
+                    }
+                    instance.setOutcome(outcomes.get(outcomeColumn.readInt()));
+                    instances.add(instance);
+                }
+                dataWriter.write(instances);
+                numSequences++;
+            }
+        }
+        finally {
+            sequences.close();
+            counts.close();
+            families.close();
+            familyValues.close();
+            outcomeColumn.close();
+        }
+        dataWriter.finish();
+        return numSequences;
+    }
+
+    private static DataInputStream open(File directory, String column)
+        throws IOException
+    {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(new File(
+                directory, column)), 1 << 16));
+    }
+
+    private static Object readValue(DataInputStream in)
+        throws IOException
+    {
+        char type = in.readChar();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return in.readUTF();
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case DOUBLE:
+            return in.readDouble();
+        case FLOAT:
+            return in.readFloat();
+        case BOOLEAN:
+            return in.readBoolean();
+        default:
+            throw new IOException("unknown value type " + type + " in the feature cache");
+        }
+    }
+
+    /**
+     * Writes the instances of a training run to a cache directory. The columns are written to a
+     * temporary directory that replaces the cache directory when {@link #close()} is called.
+     */
+    public static class Writer
+    {
+        private final File directory;
+        private final File tmpDirectory;
+        private final DataOutputStream sequences;
+        private final DataOutputStream counts;
+        private final DataOutputStream families;
+        private final DataOutputStream values;
+        private final DataOutputStream outcomes;
+
+        private final Map<String, Integer> familyIndex = new HashMap<String, Integer>();
+        private final List<String> familyNames = new ArrayList<String>();
+        private final List<Map<Object, Integer>> valueIndex = new ArrayList<Map<Object, Integer>>();
+        private final List<List<Object>> familyValues = new ArrayList<List<Object>>();
+        private final Map<String, Integer> outcomeIndex = new HashMap<String, Integer>();
+        private final List<String> outcomeNames = new ArrayList<String>();
+
+        public Writer(File directory)
+            throws IOException
+        {
+            this.directory = directory;
+            tmpDirectory = new File(directory.getPath() + ".tmp");
+            FileUtils.deleteDirectory(tmpDirectory);
+            if (!tmpDirectory.mkdirs()) {
+                throw new IOException("could not create " + tmpDirectory);
+            }
+            sequences = create(SEQUENCES);
+            counts = create(COUNTS);
+            families = create(FAMILIES);
+            values = create(VALUES);
+            outcomes = create(OUTCOMES);
+        }
+
+        private DataOutputStream create(String column)
+            throws IOException
+        {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(
+                    tmpDirectory, column)), 1 << 16));
+        }
+
+        public void add(List<Instance<String>> instances)
+            throws IOException
+        {
+            sequences.writeInt(instances.size());
+            for (Instance<String> instance : instances) {
+                counts.writeInt(instance.getFeatures().size());
+                for (Feature feature : instance.getFeatures()) {
+                    int family = getFamily(feature.getName());
+                    families.writeInt(family);
+                    values.writeInt(getValue(family, feature.getValue()));
+                }
+                outcomes.writeInt(getOutcome(instance.getOutcome()));
+            }
+        }
+
+        private int getFamily(String name)
+        {
+            Integer family = familyIndex.get(name);
+            if (family == null) {
+                family = familyNames.size();
+                familyIndex.put(name, family);
+                familyNames.add(name);
+                valueIndex.add(new HashMap<Object, Integer>());
+                familyValues.add(new ArrayList<Object>());
+            }
+            return family;
+        }
+
+        private int getValue(int family, Object value)
+            throws IOException
+        {
+            if (value != null && !(value instanceof String || value instanceof Integer
+                    || value instanceof Long || value instanceof Double
+                    || value instanceof Float || value instanceof Boolean)) {
+                throw new IOException("feature values of type " + value.getClass().getName()
+                        + " cannot be cached");
+            }
+            Map<Object, Integer> index = valueIndex.get(family);
+            Integer id = index.get(value);
+            if (id == null) {
+                id = familyValues.get(family).size();
+                index.put(value, id);
+                familyValues.get(family).add(value);
+            }
+            return id;
+        }
+
+        private int getOutcome(String outcome)
+        {
+            Integer id = outcomeIndex.get(outcome);
+            if (id == null) {
+                id = outcomeNames.size();
+                outcomeIndex.put(outcome, id);
+                outcomeNames.add(outcome);
+            }
+            return id;
+        }
+
+        /**
+         * Writes the dictionary and moves the columns to the cache directory.
+         */
+        public void close()
+            throws IOException
+        {
+            closeColumns();
+            DataOutputStream out = create(DICTIONARY);
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(familyNames.size());
+                for (int f = 0; f < familyNames.size(); f++) {
+                    out.writeBoolean(familyNames.get(f) != null);
+                    if (familyNames.get(f) != null) {
+                        out.writeUTF(familyNames.get(f));
+                    }
+                    out.writeInt(familyValues.get(f).size());
+                    for (Object value : familyValues.get(f)) {
+                        writeValue(out, value);
+                    }
+                }
+                out.writeInt(outcomeNames.size());
+                for (String outcome : outcomeNames) {
+                    out.writeUTF(outcome);
+                }
+            }
+            finally {
+                out.close();
+            }
+            FileUtils.deleteDirectory(directory);
+            if (!tmpDirectory.renameTo(directory)) {
+                throw new IOException("could not move " + tmpDirectory + " to " + directory);
+            }
+        }
+
+        /**
+         * Drops the columns written so far, e.g. when the extraction failed.
+         */
+        public void abort()
+        {
+            try {
+                closeColumns();
+            }
+            catch (IOException e) {
+                // deleted anyway
+            }
+            FileUtils.deleteQuietly(tmpDirectory);
+        }
+
+        private void closeColumns()
+            throws IOException
+        {
+            sequences.close();
+            counts.close();
+            families.close();
+            values.close();
+            outcomes.close();
+        }
+
+        private static void writeValue(DataOutputStream out, Object value)
+            throws IOException
+        {
+            if (value == null) {
+                out.writeChar(NULL);
+            }
+            else if (value instanceof String) {
+                out.writeChar(STRING);
+                out.writeUTF((String) value);
+            }
+            else if (value instanceof Integer) {
+                out.writeChar(INTEGER);
+                out.writeInt((Integer) value);
+            }
+            else if (value instanceof Long) {
+                out.writeChar(LONG);
+                out.writeLong((Long) value);
+            }
+            else if (value instanceof Double) {
+                out.writeChar(DOUBLE);
+                out.writeDouble((Double) value);
+            }
+            else if (value instanceof Float) {
+                out.writeChar(FLOAT);
+                out.writeFloat((Float) value);
+            }
+            else {
+                out.writeChar(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            }
+        }
+    }
+}
@@ -54,6 +54,7 @@ import de.tu.darmstadt.lt.ner.feature.extractor.TopicClass50Feature1Extractor;
 import de.tu.darmstadt.lt.ner.feature.extractor.UperCasedTopicClass1FeatureExtractor;
 import de.tu.darmstadt.lt.ner.feature.extractor.VornameListFeatureExtractor;
 import de.tu.darmstadt.lt.ner.feature.variables.MyFeatureFunctionExtractor;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 
 public class Features2Xml
@@ -64,6 +65,8 @@ public class Features2Xml
         LTCharacterNgramFeatureFunction.Orientation fromLeft = Orientation.LEFT_TO_RIGHT;
         LTCharacterNgramFeatureFunction.Orientation fromRight = Orientation.RIGHT_TO_LEFT;
         List<FeatureExtractor1<Token>> germaNERfeatures = new ArrayList<FeatureExtractor1<Token>>();
+        // the lexicons are not written, so those on the classpath will do
+        NERReader lexicons = new NERReader();
 
         // German Word feature
         germaNERfeatures
@@ -217,7 +220,7 @@ public class Features2Xml
 
         // Vorname List Feature
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new VornameListFeatureExtractor()));
+                new VornameListFeatureExtractor(lexicons)));
 
         // Position Feature
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
@@ -229,16 +232,16 @@ public class Features2Xml
 
         // DT similar word
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new SimilarWord1Extractor()));
+                new SimilarWord1Extractor(lexicons)));
 
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new SimilarWord2Extractor()));
+                new SimilarWord2Extractor(lexicons)));
 
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new SimilarWord3Extractor()));
+                new SimilarWord3Extractor(lexicons)));
 
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new SimilarWord4Extractor()));
+                new SimilarWord4Extractor(lexicons)));
 
         // camelcase an all upercase word
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
@@ -246,30 +249,30 @@ public class Features2Xml
 
         // DB Nachnamen
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new DBNachnamenListFeatureExtractor()));
+                new DBNachnamenListFeatureExtractor(lexicons)));
         // DB Person list
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new DBPersonListFeatureExtractor()));
+                new DBPersonListFeatureExtractor(lexicons)));
         // DB Location
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new DBLocationListFeatureExtractor()));
+                new DBLocationListFeatureExtractor(lexicons)));
 
         // topic class features
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new TopicClass1FeatureExtractor()));
+                new TopicClass1FeatureExtractor(lexicons)));
 
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new TopicClass50Feature1Extractor()));
+                new TopicClass50Feature1Extractor(lexicons)));
         
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new TopicClass200Feature1Extractor()));
+                new TopicClass200Feature1Extractor(lexicons)));
 
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new TopicClass500Feature1Extractor()));
+                new TopicClass500Feature1Extractor(lexicons)));
 
         // topic class features - focused on upper case tokens
         germaNERfeatures.add(new MyFeatureFunctionExtractor(new CoveredTextExtractor<Token>(),
-                new UperCasedTopicClass1FeatureExtractor()));
+                new UperCasedTopicClass1FeatureExtractor(lexicons)));
 
         // Character Category
 
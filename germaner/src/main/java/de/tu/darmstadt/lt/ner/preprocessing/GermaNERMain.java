@@ -26,10 +26,13 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.apache.uima.UIMAException;
@@ -39,13 +42,24 @@ import org.apache.uima.fit.pipeline.SimplePipeline;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.cleartk.ml.CleartkSequenceAnnotator;
+import org.cleartk.ml.SequenceDataWriter;
+import org.cleartk.ml.crf.CrfSequenceJarClassifierFactory;
+import org.cleartk.ml.crf.CrfStringOutcomeClassifierBuilder;
+import org.cleartk.ml.crf.CrfStringOutcomeDataWriter;
+import org.cleartk.ml.crfsuite.CrfSuiteFilteringDataWriter;
+import org.cleartk.ml.crfsuite.CrfSuiteFilteringDataWriterFactory;
+import org.cleartk.ml.crfsuite.CrfSuiteStreamingDataWriter;
+import org.cleartk.ml.crfsuite.CrfSuiteStreamingDataWriterFactory;
 import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeDataWriter;
 import org.cleartk.ml.jar.DefaultSequenceDataWriterFactory;
 import org.cleartk.ml.jar.DirectoryDataWriterFactory;
 import org.cleartk.ml.jar.GenericJarClassifierFactory;
-import org.cleartk.util.cr.FilesCollectionReader;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.cleartk.ml.perceptron.PerceptronStringOutcomeDataWriter;
+import org.cleartk.ml.viterbi.ViterbiClassifier;
 
 import de.tu.darmstadt.lt.ner.annotator.NERAnnotator;
+import de.tu.darmstadt.lt.ner.reader.ConllReader;
 import de.tu.darmstadt.lt.ner.reader.NERReader;
 import de.tu.darmstadt.lt.ner.writer.EvaluatedNERWriter;
 import de.tu.darmstadt.lt.ner.writer.SentenceToCRFTestFileWriter;
@@ -54,6 +68,15 @@ public class GermaNERMain
 {
     private static final Logger LOG = Logger.getLogger(GermaNERMain.class.getName());
     static File modelDirectory;
+    /**
+     * name of the copy of the configuration that is saved with a trained model
+     */
+    public static final String MODEL_CONFIG = "config.properties";
+    /**
+     * the features of the held-out file, in the training data format
+     */
+    public static final String HOLDOUT_DATA = "crfsuite.holdout";
+
     static InputStream configFile = null;
     static Properties prop;
 
@@ -93,62 +116,432 @@ public class GermaNERMain
     public static void writeModel(File NER_TagFile, File modelDirectory, String dataZipFile)
         throws UIMAException, IOException
     {
+        writeModel(NER_TagFile, modelDirectory, dataZipFile, getConfiguration());
+    }
+
+    /**
+     * Like {@link #writeModel(File, File, String)}, with the given settings instead of those of the
+     * configuration file.
+     */
+    public static void writeModel(File NER_TagFile, File modelDirectory, String dataZipFile,
+            NERConfiguration configuration)
+        throws UIMAException, IOException
+    {
+        // before the features are extracted, which can take longer than training
+        checkTrainingSettings(configuration);
+        if (configuration.isStreamTraining() && configuration.getMinAttributeFrequency() > 1
+                && getDataWriterClass(configuration) == CrfSuiteStringOutcomeDataWriter.class) {
+            UIMAFramework.getLogger().log(Level.WARNING, "streamTraining is ignored with "
+                    + "minAttributeFrequency above 1: the attributes have to be counted before "
+                    + "CRFsuite can read any data, so the model is trained from a training file");
+        }
+        File featureCache = null;
+        if (!configuration.getFeatureCacheDir().isEmpty()) {
+            featureCache = new File(configuration.getFeatureCacheDir(),
+                    FeatureCache.key(NER_TagFile, configuration, dataZipFile));
+        }
+        if (featureCache != null && FeatureCache.exists(featureCache)) {
+            // same training file, features and lexicons: only the training data is written
+            int sentences = FeatureCache.replay(featureCache,
+                    createDataWriter(modelDirectory, configuration));
+            UIMAFramework.getLogger().log(Level.INFO,
+                    "Reused the features of " + sentences + " sentences cached in " + featureCache);
+        }
+        else {
+            extractTrainingData(NER_TagFile, modelDirectory, dataZipFile, configuration,
+                    featureCache);
+        }
+        // only the Java CRF trainer evaluates a held-out file, checked above
+        if (!configuration.getHoldoutFile().isEmpty()) {
+            writeHoldoutData(new File(configuration.getHoldoutFile()), modelDirectory, dataZipFile,
+                    configuration);
+        }
+        // the labels of each word, for constrained decoding
+        TagDictionary.build(NER_TagFile)
+                .write(new File(modelDirectory, TagDictionary.FILE_NAME));
+        // the feature settings of the model, so that it can be the first stage of a cascade
+        OutputStream out = new FileOutputStream(new File(modelDirectory, MODEL_CONFIG));
+        try {
+            configuration.getProperties().store(out,
+                    "GermaNER configuration this model was trained with");
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void extractTrainingData(File NER_TagFile, File modelDirectory,
+            String dataZipFile, NERConfiguration configuration, File featureCache)
+                throws UIMAException, IOException
+    {
+        List<Object> parameters = new ArrayList<Object>(Arrays.<Object> asList(
+                NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE,
+                modelDirectory.getAbsolutePath() + "/feature.xml", NERAnnotator.PARAM_CONFIGURATION,
+                configuration.toString(), NERAnnotator.PARAM_DATA_ZIP_FILE, dataZipFile,
+                CleartkSequenceAnnotator.PARAM_IS_TRAINING, true,
+                DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
+                modelDirectory.getAbsolutePath()));
+        if (featureCache != null) {
+            parameters.addAll(Arrays.<Object> asList(NERAnnotator.PARAM_FEATURE_CACHE,
+                    featureCache.getAbsolutePath()));
+        }
+        if (isStreamingTraining(configuration)) {
+            // CRFsuite reads the training data while it is extracted and trains at the end
+            parameters.addAll(Arrays.<Object> asList(
+                    CleartkSequenceAnnotator.PARAM_DATA_WRITER_FACTORY_CLASS_NAME,
+                    CrfSuiteStreamingDataWriterFactory.class.getName(),
+                    CrfSuiteStreamingDataWriterFactory.PARAM_TEE,
+                    configuration.isStreamTrainingTee(),
+                    CrfSuiteStreamingDataWriterFactory.PARAM_TRAINING_ARGUMENTS,
+                    getTrainingArguments(modelDirectory, configuration)
+                            .toArray(new String[0]),
+                    CrfSuiteFilteringDataWriterFactory.PARAM_MIN_ATTRIBUTE_FREQUENCY,
+                    configuration.getMinAttributeFrequency(),
+                    CrfSuiteFilteringDataWriterFactory.PARAM_ATTRIBUTE_SKETCH_MB,
+                    configuration.getAttributeSketchMB()));
+        }
+        else if (getDataWriterClass(configuration) == CrfSuiteStringOutcomeDataWriter.class) {
+            // drops the attributes below minAttributeFrequency before they are written
+            parameters.addAll(Arrays.<Object> asList(
+                    CleartkSequenceAnnotator.PARAM_DATA_WRITER_FACTORY_CLASS_NAME,
+                    CrfSuiteFilteringDataWriterFactory.class.getName(),
+                    CrfSuiteFilteringDataWriterFactory.PARAM_MIN_ATTRIBUTE_FREQUENCY,
+                    configuration.getMinAttributeFrequency(),
+                    CrfSuiteFilteringDataWriterFactory.PARAM_ATTRIBUTE_SKETCH_MB,
+                    configuration.getAttributeSketchMB()));
+        }
+        else {
+            parameters.addAll(Arrays.<Object> asList(
+                    DefaultSequenceDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
+                    getDataWriterClass(configuration)));
+        }
+        runPipeline(
+                ConllReader.getCollectionReader(configuration, NER_TagFile),
+                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile,
+                        NERReader.PARAM_CONFIGURATION, configuration.toString()),
+                createEngine(NERAnnotator.class, parameters.toArray()));
+    }
+
+    /**
+     * Extracts the features of the held-out file into {@link #HOLDOUT_DATA}, without the attribute
+     * cut-off, so that the trainer can evaluate the model while it is trained.
+     */
+    private static void writeHoldoutData(File holdoutFile, File modelDirectory,
+            String dataZipFile, NERConfiguration configuration)
+                throws UIMAException, IOException
+    {
+        File holdoutDirectory = new File(modelDirectory, "holdout");
+        holdoutDirectory.mkdirs();
+        File normalizedFile = new File(holdoutDirectory, holdoutFile.getName() + ".normalized");
+        new ChangeColon().normalize(holdoutFile.getAbsolutePath(),
+                normalizedFile.getAbsolutePath());
         runPipeline(
-                FilesCollectionReader.getCollectionReaderWithSuffixes(NER_TagFile.getAbsolutePath(),
-                        NERReader.CONLL_VIEW, NER_TagFile.getName()),
-                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile),
+                ConllReader.getCollectionReader(configuration, normalizedFile),
+                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile,
+                        NERReader.PARAM_CONFIGURATION, configuration.toString()),
                 createEngine(NERAnnotator.class, NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE,
-                        modelDirectory.getAbsolutePath() + "/feature.xml",
+                        holdoutDirectory.getAbsolutePath() + "/feature.xml",
+                        NERAnnotator.PARAM_CONFIGURATION, configuration.toString(),
+                        NERAnnotator.PARAM_DATA_ZIP_FILE, dataZipFile,
                         CleartkSequenceAnnotator.PARAM_IS_TRAINING, true,
                         DirectoryDataWriterFactory.PARAM_OUTPUT_DIRECTORY,
-                        modelDirectory.getAbsolutePath(),
+                        holdoutDirectory.getAbsolutePath(),
                         DefaultSequenceDataWriterFactory.PARAM_DATA_WRITER_CLASS_NAME,
-                        CrfSuiteStringOutcomeDataWriter.class));
+                        CrfStringOutcomeDataWriter.class));
+        File holdoutData = new File(modelDirectory, HOLDOUT_DATA);
+        holdoutData.delete();
+        FileUtils.moveFile(
+                new File(holdoutDirectory, CrfStringOutcomeClassifierBuilder.TRAINING_NAME),
+                holdoutData);
+        FileUtils.deleteDirectory(holdoutDirectory);
+    }
 
+    /**
+     * The data writer the training pipeline would use, for writing cached features.
+     */
+    @SuppressWarnings("unchecked")
+    private static SequenceDataWriter<String> createDataWriter(File modelDirectory,
+            NERConfiguration configuration)
+        throws IOException
+    {
+        if (isStreamingTraining(configuration)) {
+            return new CrfSuiteStreamingDataWriter(modelDirectory,
+                    configuration.isStreamTrainingTee(), configuration.getMinAttributeFrequency(),
+                    configuration.getAttributeSketchMB(),
+                    getTrainingArguments(modelDirectory, configuration).toArray(new String[0]));
+        }
+        if (getDataWriterClass(configuration) == CrfSuiteStringOutcomeDataWriter.class) {
+            return new CrfSuiteFilteringDataWriter(modelDirectory,
+                    configuration.getMinAttributeFrequency(), configuration.getAttributeSketchMB());
+        }
+        try {
+            return (SequenceDataWriter<String>) getDataWriterClass(configuration)
+                    .getConstructor(File.class).newInstance(modelDirectory);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IOException("could not create the data writer", e);
+        }
+    }
+
+    /**
+     * The data writer decides which classifier builder, and hence which trainer, Train uses.
+     */
+    static Class<?> getDataWriterClass(NERConfiguration configuration)
+    {
+        if ("crf".equals(configuration.getClassifier())) {
+            return CrfStringOutcomeDataWriter.class;
+        }
+        if ("perceptron".equals(configuration.getClassifier())) {
+            return PerceptronStringOutcomeDataWriter.class;
+        }
+        return CrfSuiteStringOutcomeDataWriter.class;
+    }
+
+    /**
+     * With <code>streamTraining=1</code> a CRFsuite model is trained while writeModel extracts the
+     * features, instead of from a training file afterwards. An attribute cut-off needs all
+     * features before any can be written, so it trains from a training file.
+     */
+    static boolean isStreamingTraining(NERConfiguration configuration)
+    {
+        return configuration.isStreamTraining() && configuration.getMinAttributeFrequency() <= 1
+                && getDataWriterClass(configuration) == CrfSuiteStringOutcomeDataWriter.class;
     }
 
     public static void trainModel(File modelDirectory)
         throws Exception
     {
-        org.cleartk.ml.jar.Train.main(modelDirectory.getAbsolutePath());
+        trainModel(modelDirectory, getConfiguration());
     }
 
+    /**
+     * Trains the model of the training data that
+     * {@link #writeModel(File, File, String, NERConfiguration)} wrote with the same settings.
+     */
+    public static void trainModel(File modelDirectory, NERConfiguration configuration)
+        throws Exception
+    {
+        if (isStreamingTraining(configuration)) {
+            // the streaming data writer has trained the model already
+            JarClassifierBuilder.fromTrainingDirectory(modelDirectory)
+                    .packageClassifier(modelDirectory);
+        }
+        else {
+            List<String> args = new ArrayList<String>();
+            args.add(modelDirectory.getAbsolutePath());
+            args.addAll(getTrainingArguments(modelDirectory, configuration));
+            org.cleartk.ml.jar.Train.main(args.toArray(new String[args.size()]));
+        }
+    }
+
+    /**
+     * CRFsuite cannot stop on a held-out score or keep an intermediate model, and the perceptron
+     * has neither, so a held-out file or a time budget is an error for any classifier but the Java
+     * CRF instead of being ignored.
+     *
+     * @throws IllegalArgumentException
+     *             if <code>holdoutFile</code> or <code>trainingTimeBudgetMinutes</code> is set for
+     *             a classifier that cannot use it
+     */
+    static void checkTrainingSettings(NERConfiguration configuration)
+    {
+        if (getDataWriterClass(configuration) == CrfStringOutcomeDataWriter.class) {
+            return;
+        }
+        if (!configuration.getHoldoutFile().isEmpty()) {
+            throw new IllegalArgumentException("holdoutFile needs classifier=crf, not "
+                    + configuration.getClassifier());
+        }
+        if (configuration.getTrainingTimeBudgetMinutes() > 0) {
+            throw new IllegalArgumentException("trainingTimeBudgetMinutes needs classifier=crf, "
+                    + "not " + configuration.getClassifier());
+        }
+    }
+
+    /**
+     * The iteration and time budget and the held-out evaluation as trainer parameters. CRFsuite
+     * only gets the iteration budget; early stopping needs the Java CRF trainer.
+     *
+     * @throws IllegalArgumentException
+     *             see {@link #checkTrainingSettings(NERConfiguration)}
+     */
+    public static List<String> getTrainingArguments(File modelDirectory,
+            NERConfiguration configuration)
+    {
+        List<String> args = new ArrayList<String>();
+        if (configuration.getTrainingMaxIterations() > 0) {
+            args.addAll(Arrays.asList("-p",
+                    "max_iterations=" + configuration.getTrainingMaxIterations()));
+        }
+        checkTrainingSettings(configuration);
+        if (getDataWriterClass(configuration) != CrfStringOutcomeDataWriter.class) {
+            return args;
+        }
+        File holdoutData = new File(modelDirectory, HOLDOUT_DATA);
+        if (!configuration.getHoldoutFile().isEmpty() && holdoutData.exists()) {
+            args.addAll(Arrays.asList("-p", "holdout=" + holdoutData.getAbsolutePath(), "-p",
+                    "holdout_period=" + configuration.getHoldoutPeriod(), "-p",
+                    "holdout_patience=" + configuration.getHoldoutPatience()));
+        }
+        if (configuration.getTrainingTimeBudgetMinutes() > 0) {
+            args.addAll(Arrays.asList("-p",
+                    "max_seconds=" + configuration.getTrainingTimeBudgetMinutes() * 60));
+        }
+        return args;
+    }
+
+    /**
+     * Tags the test file with model.jar in the model directory.
+     */
     public static void classifyTestFile(File aClassifierJarPath, File testPosFile, File outputFile,
             File aNodeResultFile, List<Integer> aSentencesIds, String dataZipFile)
                 throws UIMAException, IOException
     {
+        classifyTestFile(aClassifierJarPath, null, testPosFile, outputFile, aNodeResultFile,
+                aSentencesIds, dataZipFile);
+    }
+
+    /**
+     * Tags the test file with the model bundle, or with model.jar in the model directory if
+     * <code>aModelBundle</code> is <code>null</code>.
+     */
+    public static void classifyTestFile(File aClassifierJarPath, String aModelBundle,
+            File testPosFile, File outputFile, File aNodeResultFile, List<Integer> aSentencesIds,
+            String dataZipFile)
+                throws UIMAException, IOException
+    {
+        classifyTestFile(aClassifierJarPath, aModelBundle, testPosFile, outputFile,
+                aNodeResultFile, aSentencesIds, dataZipFile, getConfiguration());
+    }
+
+    /**
+     * Like {@link #classifyTestFile(File, String, File, File, File, List, String)}, with the given
+     * settings instead of those of the configuration file.
+     */
+    public static void classifyTestFile(File aClassifierJarPath, String aModelBundle,
+            File testPosFile, File outputFile, File aNodeResultFile, List<Integer> aSentencesIds,
+            String dataZipFile, NERConfiguration configuration)
+                throws UIMAException, IOException
+    {
+        if (configuration.getTaggingThreads() > 1) {
+            ShardedTagger.tag(aClassifierJarPath, aModelBundle, testPosFile, outputFile,
+                    aNodeResultFile, aSentencesIds, dataZipFile, configuration);
+            return;
+        }
         runPipeline(
-                FilesCollectionReader.getCollectionReaderWithSuffixes(testPosFile.getAbsolutePath(),
-                        NERReader.CONLL_VIEW, testPosFile.getName()),
-                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile),
-                createEngine(NERAnnotator.class, NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE,
-                        aClassifierJarPath.getAbsolutePath() + "/feature.xml",
-                        NERAnnotator.FEATURE_FILE, aClassifierJarPath.getAbsolutePath(),
-                        GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
-                        aClassifierJarPath.getAbsolutePath() + "/model.jar"),
+                ConllReader.getCollectionReader(configuration, testPosFile),
+                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile,
+                        NERReader.MODEL_BUNDLE, aModelBundle, NERReader.PARAM_CONFIGURATION,
+                        getReaderConfiguration(aModelBundle, configuration).toString()),
+                createEngine(NERAnnotator.class, getClassifierParameters(aClassifierJarPath,
+                        aModelBundle, dataZipFile, configuration)),
                 createEngine(EvaluatedNERWriter.class, EvaluatedNERWriter.OUTPUT_FILE, outputFile,
                         EvaluatedNERWriter.IS_GOLD, false, EvaluatedNERWriter.NOD_OUTPUT_FILE,
-                        aNodeResultFile, EvaluatedNERWriter.SENTENCES_ID, aSentencesIds));
+                        aNodeResultFile, EvaluatedNERWriter.SENTENCES_ID, aSentencesIds,
+                        EvaluatedNERWriter.WRITE_SCORES, configuration.isWriteScores()));
     }
 
+    /**
+     * Tags the test file with the configured model bundle, or with the model of the configured
+     * model directory.
+     */
     public static void classifyTestFile(File testPosFile, File outputFile, File aNodeResultFile,
             List<Integer> aSentencesIds)
                 throws UIMAException, IOException
     {
         initNERModel();
-        setModelDir();
-        runPipeline(
-                FilesCollectionReader.getCollectionReaderWithSuffixes(testPosFile.getAbsolutePath(),
-                        NERReader.CONLL_VIEW, testPosFile.getName()),
-                createEngine(NERReader.class),
-                createEngine(NERAnnotator.class, NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE,
-                        modelDirectory.getAbsolutePath() + "/feature.xml",
-                        NERAnnotator.FEATURE_FILE, modelDirectory.getAbsolutePath(),
-                        GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
-                        modelDirectory.getAbsolutePath() + "/model.jar"),
-                createEngine(EvaluatedNERWriter.class, EvaluatedNERWriter.OUTPUT_FILE, outputFile,
-                        EvaluatedNERWriter.IS_GOLD, false, EvaluatedNERWriter.NOD_OUTPUT_FILE,
-                        aNodeResultFile, EvaluatedNERWriter.SENTENCES_ID, aSentencesIds));
+        NERConfiguration configuration = getConfiguration();
+        setModelDir(configuration);
+        classifyTestFile(modelDirectory, getModelBundle(configuration), testPosFile, outputFile,
+                aNodeResultFile, aSentencesIds, null, configuration);
+    }
+
+    /**
+     * The parameters of the tagging {@link NERAnnotator}: the model is loaded from the model
+     * bundle if it is not <code>null</code>, otherwise from model.jar in the model directory, and
+     * the lookup features read the lexicons of the bundle or of <code>dataZipFile</code>.
+     */
+    static Object[] getClassifierParameters(File aClassifierJarPath, String aModelBundle,
+            String dataZipFile, NERConfiguration configuration)
+    {
+        List<Object> parameters = new ArrayList<Object>(Arrays.<Object> asList(
+                NERAnnotator.PARAM_FEATURE_EXTRACTION_FILE,
+                aClassifierJarPath.getAbsolutePath() + "/feature.xml", NERAnnotator.FEATURE_FILE,
+                aClassifierJarPath.getAbsolutePath(), NERAnnotator.PARAM_CONFIGURATION,
+                configuration.toString(), NERAnnotator.PARAM_DATA_ZIP_FILE, dataZipFile,
+                ViterbiClassifier.PARAM_STACK_SIZE,
+                configuration.getStackSize(), ViterbiClassifier.PARAM_MIN_OUTCOME_SCORE,
+                configuration.getMinOutcomeScore(), ViterbiClassifier.PARAM_BEAM_MARGIN,
+                configuration.getBeamMargin()));
+        if (!configuration.getTaggingStats().isEmpty()) {
+            parameters.addAll(Arrays.<Object> asList(NERAnnotator.PARAM_TAGGING_STATS,
+                    configuration.getTaggingStats()));
+        }
+        if (aModelBundle != null) {
+            parameters.addAll(Arrays.<Object> asList(NERAnnotator.PARAM_MODEL_BUNDLE,
+                    aModelBundle, CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+                    ModelBundleClassifierFactory.class.getName(),
+                    ModelBundleClassifierFactory.PARAM_MODEL_BUNDLE, aModelBundle));
+        }
+        else {
+            parameters.addAll(Arrays.<Object> asList(
+                    CleartkSequenceAnnotator.PARAM_CLASSIFIER_FACTORY_CLASS_NAME,
+                    CrfSequenceJarClassifierFactory.class.getName(),
+                    GenericJarClassifierFactory.PARAM_CLASSIFIER_JAR_PATH,
+                    aClassifierJarPath.getAbsolutePath() + "/model.jar"));
+        }
+        return parameters.toArray();
+    }
+
+    /**
+     * The settings of the command line run as a pipeline configuration. Tools that change a
+     * setting, e.g. BackendBenchmark, derive their own with {@link NERConfiguration#with}.
+     */
+    public static NERConfiguration getConfiguration()
+    {
+        return NERConfiguration.of(prop == null ? new Properties() : prop);
+    }
+
+    /**
+     * The reader prepares the lookup features the model was trained with, so a bundled model
+     * brings its own feature settings.
+     */
+    static NERConfiguration getReaderConfiguration(String aModelBundle,
+            NERConfiguration configuration)
+        throws IOException
+    {
+        if (aModelBundle != null) {
+            return NERConfiguration.of(ModelBundle.open(new File(aModelBundle))
+                    .getConfiguration());
+        }
+        return configuration;
+    }
+
+    /**
+     * @return the path of the configured model bundle if it exists, otherwise <code>null</code>
+     */
+    static String getModelBundle(NERConfiguration configuration)
+    {
+        String modelBundle = configuration.getModelBundle();
+        if (modelBundle.isEmpty() || !new File(modelBundle).exists()) {
+            return null;
+        }
+        return new File(modelBundle).getAbsolutePath();
+    }
+
+    /**
+     * Bundles the trained model, and the lexicons if a data.zip file is given, if a model bundle is
+     * configured.
+     */
+    static void writeModelBundle(File modelDirectory, String dataZipFile,
+            NERConfiguration configuration)
+        throws IOException
+    {
+        if (configuration.getModelBundle().isEmpty()) {
+            return;
+        }
+        ModelBundle.write(modelDirectory, dataZipFile == null ? null : new File(dataZipFile),
+                new File(configuration.getModelBundle()), System.currentTimeMillis());
     }
 
     /**
@@ -241,7 +634,8 @@ public class GermaNERMain
         }
 
         try {
-            setModelDir();
+            NERConfiguration configuration = getConfiguration();
+            setModelDir(configuration);
 
             File outputtmpFile = new File(modelDirectory, "result.tmp");
             File outputFile = null;
@@ -272,10 +666,12 @@ public class GermaNERMain
                 c.normalize(Configuration.trainFileName,
                         Configuration.trainFileName + ".normalized");
                 System.out.println("Start model generation");
-                writeModel(new File(Configuration.trainFileName + ".normalized"), modelDirectory, dataZipeFile);
+                writeModel(new File(Configuration.trainFileName + ".normalized"), modelDirectory,
+                        dataZipeFile, configuration);
                 System.out.println("Start model generation -- done");
                 System.out.println("Start training");
-                trainModel(modelDirectory);
+                trainModel(modelDirectory, configuration);
+                writeModelBundle(modelDirectory, dataZipeFile, configuration);
                 System.out.println("Start training ---done");
             }
             else if (Configuration.mode.equals("ft") && Configuration.trainFileName != null
@@ -284,15 +680,17 @@ public class GermaNERMain
                         Configuration.trainFileName + ".normalized");
                 c.normalize(Configuration.testFileName, Configuration.testFileName + ".normalized");
                 System.out.println("Start model generation");
-                writeModel(new File(Configuration.trainFileName + ".normalized"), modelDirectory, dataZipeFile);
+                writeModel(new File(Configuration.trainFileName + ".normalized"), modelDirectory,
+                        dataZipeFile, configuration);
                 System.out.println("Start model generation -- done");
                 System.out.println("Start training");
-                trainModel(modelDirectory);
+                trainModel(modelDirectory, configuration);
+                writeModelBundle(modelDirectory, dataZipeFile, configuration);
                 System.out.println("Start training ---done");
                 System.out.println("Start tagging");
-                classifyTestFile(modelDirectory,
+                classifyTestFile(modelDirectory, getModelBundle(configuration),
                         new File(Configuration.testFileName + ".normalized"), outputtmpFile, null,
-                        null, dataZipeFile);
+                        null, dataZipeFile, configuration);
                 System.out.println("Start tagging ---done");
 
                 // re-normalized the colon changed text
@@ -301,9 +699,9 @@ public class GermaNERMain
             else {
                 c.normalize(Configuration.testFileName, Configuration.testFileName + ".normalized");
                 System.out.println("Start tagging");
-                classifyTestFile(modelDirectory,
+                classifyTestFile(modelDirectory, getModelBundle(configuration),
                         new File(Configuration.testFileName + ".normalized"), outputtmpFile, null,
-                        null, dataZipeFile);
+                        null, dataZipeFile, configuration);
                 // re-normalized the colon changed text
                 c.deNormalize(outputtmpFile.getAbsolutePath(), outputFile.getAbsolutePath());
 
@@ -322,12 +720,16 @@ public class GermaNERMain
 
     }
 
-    private static void setModelDir()
+    private static void setModelDir(NERConfiguration configuration)
         throws IOException, FileNotFoundException
     {
         modelDirectory = (Configuration.modelDir == null || Configuration.modelDir.isEmpty())
                 ? new File("output") : new File(Configuration.modelDir);
         modelDirectory.mkdirs();
+        // a bundled model needs no files in the model directory
+        if (getModelBundle(configuration) != null) {
+            return;
+        }
 
         if (!new File(modelDirectory, "model.jar").exists()) {
             IOUtils.copyLarge(ClassLoader.getSystemResourceAsStream("model/model.jar"),
@@ -368,4 +770,4 @@ public class GermaNERMain
         Configuration.usePosition = prop.getProperty("usePosition").equals("1") ? true : false;
         Configuration.useFreeBase = prop.getProperty("useFreeBase").equals("1") ? true : false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.preprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import org.apache.commons.io.IOUtils;
+import org.cleartk.ml.crf.AttributeDictionary;
+import org.cleartk.ml.crf.CrfStringOutcomeClassifierBuilder;
+import org.cleartk.ml.crfsuite.AttributeWhitelist;
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeClassifier;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.cleartk.ml.jar.MappedJarInputStream;
+
+/**
+ * A trained model in a single file: the entries of model.jar (the manifest, the encoders and the
+ * weights), the CRF attribute dictionary, the feature configuration, the tag dictionary and the
+ * lexicons of data.zip. Each of them is a section that starts at a page boundary, so that
+ * {@link #open(File)} maps the sections with {@link FileChannel#map} and nothing is extracted to
+ * temporary files. Only the CRFsuite backend still writes its model to a temporary file, because
+ * the crfsuite binary reads it from disk.
+ *
+ * <pre>
+ * long magic "GERMANER", int formatVersion, int numSections, long modelVersion
+ * numSections x { byte[48] name (UTF-8, zero padded), long offset, long length }
+ * sections, each padded to a multiple of PAGE_SIZE
+ * </pre>
+ *
+ * The entries of model.jar are stored under {@link #JAR_PREFIX}, its manifest first.
+ */
+public class ModelBundle
+{
+    private static final long MAGIC = 0x4745524D414E4552L; // "GERMANER"
+    public static final int FORMAT_VERSION = 1;
+    public static final int PAGE_SIZE = 4096;
+    private static final int HEADER_BYTES = 24;
+    private static final int NAME_BYTES = 48;
+    private static final int ENTRY_BYTES = NAME_BYTES + 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final String JAR_PREFIX = "model.jar/";
+    public static final String MANIFEST_SECTION = JAR_PREFIX + JarFile.MANIFEST_NAME;
+    public static final String FEATURE_SECTION = "feature.xml";
+    public static final String DATA_ZIP_SECTION = "data.zip";
+
+    /**
+     * the files of a model directory that are bundled besides model.jar, in this order
+     */
+    private static final List<String> MODEL_FILES = Arrays.asList(
+            CrfStringOutcomeClassifierBuilder.ATTRIBUTES_NAME, FEATURE_SECTION,
+            GermaNERMain.MODEL_CONFIG, TagDictionary.FILE_NAME, AttributeWhitelist.FILE_NAME);
+
+    private final File file;
+    private final int formatVersion;
+    private final long modelVersion;
+    private final Map<String, ByteBuffer> sections;
+
+    private ModelBundle(File file, int formatVersion, long modelVersion,
+            Map<String, ByteBuffer> sections)
+    {
+        this.file = file;
+        this.formatVersion = formatVersion;
+        this.modelVersion = modelVersion;
+        this.sections = sections;
+    }
+
+    /**
+     * Maps the sections of a bundle; their pages are only read when they are used.
+     */
+    public static ModelBundle open(File file)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), HEADER_BYTES));
+            if (header.remaining() < HEADER_BYTES || header.getLong(0) != MAGIC) {
+                throw new IOException(file + " is not a GermaNER model bundle");
+            }
+            int formatVersion = header.getInt(8);
+            if (formatVersion > FORMAT_VERSION) {
+                throw new IOException("unsupported model bundle version " + formatVersion
+                        + " in " + file);
+            }
+            int numSections = header.getInt(12);
+            long modelVersion = header.getLong(16);
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES,
+                    (long) numSections * ENTRY_BYTES);
+            Map<String, ByteBuffer> sections = new LinkedHashMap<String, ByteBuffer>();
+            byte[] name = new byte[NAME_BYTES];
+            for (int i = 0; i < numSections; i++) {
+                table.get(name);
+                long offset = table.getLong();
+                long length = table.getLong();
+                if (offset + length > channel.size()) {
+                    throw new IOException("the model bundle " + file + " is truncated");
+                }
+                int nameLength = 0;
+                while (nameLength < NAME_BYTES && name[nameLength] != 0) {
+                    nameLength++;
+                }
+                // the mappings stay valid after the channel is closed
+                sections.put(new String(name, 0, nameLength, UTF_8),
+                        channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+            return new ModelBundle(file, formatVersion, modelVersion, sections);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getFormatVersion()
+    {
+        return formatVersion;
+    }
+
+    /**
+     * @return the version the bundle was written with, by default the time of writing
+     */
+    public long getModelVersion()
+    {
+        return modelVersion;
+    }
+
+    public Set<String> getSectionNames()
+    {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    public boolean hasSection(String name)
+    {
+        return sections.containsKey(name);
+    }
+
+    /**
+     * @return a read-only view of the mapped section, or <code>null</code> if there is none
+     */
+    public ByteBuffer getSection(String name)
+    {
+        ByteBuffer section = sections.get(name);
+        return section == null ? null : section.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a stream over the mapped section, or <code>null</code> if there is none
+     */
+    public InputStream openSection(String name)
+    {
+        ByteBuffer section = getSection(name);
+        return section == null ? null : new ByteBufferInputStream(section);
+    }
+
+    /**
+     * @return the GermaNER configuration the model was trained with
+     */
+    public Properties getConfiguration()
+        throws IOException
+    {
+        InputStream in = openSection(GermaNERMain.MODEL_CONFIG);
+        if (in == null) {
+            throw new IOException("the model bundle has no " + GermaNERMain.MODEL_CONFIG);
+        }
+        Properties properties = new Properties();
+        properties.load(in);
+        return properties;
+    }
+
+    /**
+     * @return the entries of model.jar, read from the mapped sections
+     */
+    public JarInputStream openModelJar()
+        throws IOException
+    {
+        if (!hasSection(MANIFEST_SECTION)) {
+            throw new IOException("the model bundle has no " + MANIFEST_SECTION);
+        }
+        Manifest manifest = new Manifest(openSection(MANIFEST_SECTION));
+        Map<String, ByteBuffer> entries = new LinkedHashMap<String, ByteBuffer>();
+        for (String name : sections.keySet()) {
+            if (name.startsWith(JAR_PREFIX) && !name.equals(MANIFEST_SECTION)) {
+                entries.put(name.substring(JAR_PREFIX.length()), getSection(name));
+            }
+        }
+        return new MappedJarInputStream(manifest, entries);
+    }
+
+    /**
+     * Loads the classifier of the bundle. A Java CRF model looks its attribute names up in the
+     * mapped attribute dictionary, and a CRFsuite model filters its attributes with the bundled
+     * whitelist.
+     */
+    public Object loadClassifier()
+        throws IOException
+    {
+        JarInputStream modelStream = openModelJar();
+        JarClassifierBuilder<?> builder = JarClassifierBuilder
+                .fromManifest(modelStream.getManifest());
+        if (builder instanceof CrfStringOutcomeClassifierBuilder
+                && hasSection(CrfStringOutcomeClassifierBuilder.ATTRIBUTES_NAME)) {
+            ((CrfStringOutcomeClassifierBuilder) builder)
+                    .setAttributeDictionary(AttributeDictionary.map(
+                            getSection(CrfStringOutcomeClassifierBuilder.ATTRIBUTES_NAME)));
+        }
+        Object classifier = MappedJarInputStream.loadClassifier(builder, modelStream);
+        if (classifier instanceof CrfSuiteStringOutcomeClassifier
+                && hasSection(AttributeWhitelist.FILE_NAME)) {
+            ((CrfSuiteStringOutcomeClassifier) classifier).setAttributeWhitelist(
+                    AttributeWhitelist.read(openSection(AttributeWhitelist.FILE_NAME)));
+        }
+        return classifier;
+    }
+
+    /**
+     * Writes the model in a model directory, and the lexicons if dataZip is not <code>null</code>,
+     * into a bundle.
+     */
+    public static void write(File modelDir, File dataZip, File bundle, long modelVersion)
+        throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        List<Object> contents = new ArrayList<Object>();
+        JarInputStream jar = new JarInputStream(
+                new FileInputStream(JarClassifierBuilder.getModelJarFile(modelDir)));
+        try {
+            if (jar.getManifest() == null) {
+                throw new IOException("model.jar in " + modelDir + " has no manifest");
+            }
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+            jar.getManifest().write(manifest);
+            names.add(MANIFEST_SECTION);
+            contents.add(manifest.toByteArray());
+            JarEntry entry;
+            while ((entry = jar.getNextJarEntry()) != null) {
+                names.add(JAR_PREFIX + entry.getName());
+                contents.add(IOUtils.toByteArray(jar));
+            }
+        }
+        finally {
+            jar.close();
+        }
+        for (String name : MODEL_FILES) {
+            File file = new File(modelDir, name);
+            if (file.exists()) {
+                names.add(name);
+                contents.add(file);
+            }
+        }
+        if (dataZip != null) {
+            names.add(DATA_ZIP_SECTION);
+            contents.add(dataZip);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(bundle, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + names.size() * ENTRY_BYTES);
+            header.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(names.size())
+                    .putLong(modelVersion);
+            long offset = align(header.capacity());
+            for (int i = 0; i < names.size(); i++) {
+                byte[] name = names.get(i).getBytes(UTF_8);
+                if (name.length > NAME_BYTES) {
+                    throw new IllegalArgumentException("section name too long: " + names.get(i));
+                }
+                long length = writeSection(channel, offset, contents.get(i));
+                header.put(Arrays.copyOf(name, NAME_BYTES)).putLong(offset).putLong(length);
+                offset = align(offset + length);
+            }
+            header.flip();
+            channel.write(header, 0);
+            // pad the last section, so that every section ends on a page boundary too
+            if (channel.size() < offset) {
+                channel.write(ByteBuffer.allocate(1), offset - 1);
+            }
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static long writeSection(FileChannel channel, long offset, Object content)
+        throws IOException
+    {
+        if (content instanceof byte[]) {
+            ByteBuffer buffer = ByteBuffer.wrap((byte[]) content);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return position - offset;
+        }
+        // transferFrom does not write past the end of the file, so the section is copied
+        FileInputStream in = new FileInputStream((File) content);
+        try {
+            FileChannel source = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            long position = offset;
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+            }
+            return position - offset;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static long align(long offset)
+    {
+        return (offset + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    private static class ByteBufferInputStream
+        extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Bundles a trained model directory.
+     *
+     * <pre>
+     * ModelBundle [-r data.zip] [-v modelVersion] modelDirectory bundleFile
+     * </pre>
+     */
+    public static void main(String[] args)
+        throws IOException
+    {
+        String usage = "USAGE: ModelBundle [-r data.zip] [-v modelVersion] modelDirectory bundleFile";
+        File dataZip = null;
+        long modelVersion = System.currentTimeMillis();
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-r") && i + 1 < args.length) {
+                dataZip = new File(args[++i]);
+            }
+            else if (args[i].equals("-v") && i + 1 < args.length) {
+                modelVersion = Long.parseLong(args[++i]);
+            }
+            else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        write(new File(files.get(0)), dataZip, new File(files.get(1)), modelVersion);
+        ModelBundle bundle = open(new File(files.get(1)));
+        for (String name : bundle.getSectionNames()) {
+            System.out.println(String.format("%-40s %12d", name,
+                    bundle.sections.get(name).capacity()));
+        }
+    }
+}
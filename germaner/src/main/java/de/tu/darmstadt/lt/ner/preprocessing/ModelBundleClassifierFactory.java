@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.preprocessing;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.fit.component.initialize.ConfigurationParameterInitializer;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.initializable.Initializable;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.SequenceClassifierFactory;
+import org.cleartk.util.ReflectionUtil;
+
+/**
+ * Loads the sequence classifier of a {@link ModelBundle} instead of a model.jar file.
+ */
+public class ModelBundleClassifierFactory<OUTCOME_TYPE>
+    implements SequenceClassifierFactory<OUTCOME_TYPE>, Initializable
+{
+    public static final String PARAM_MODEL_BUNDLE = "modelBundle";
+
+    @ConfigurationParameter(name = PARAM_MODEL_BUNDLE, mandatory = true)
+    private String modelBundle;
+
+    @Override
+    public void initialize(UimaContext context)
+        throws ResourceInitializationException
+    {
+        ConfigurationParameterInitializer.initialize(this, context);
+    }
+
+    public void setModelBundle(String modelBundle)
+    {
+        this.modelBundle = modelBundle;
+    }
+
+    @Override
+    public SequenceClassifier<OUTCOME_TYPE> createClassifier()
+        throws IOException
+    {
+        Object classifier = ModelBundle.open(new File(modelBundle)).loadClassifier();
+        if (!(classifier instanceof SequenceClassifier)) {
+            throw new IOException("the model bundle " + modelBundle
+                    + " does not hold a sequence classifier");
+        }
+        return ReflectionUtil.uncheckedCast(classifier);
+    }
+}
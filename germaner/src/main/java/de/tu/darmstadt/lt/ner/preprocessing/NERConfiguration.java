@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.preprocessing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+/**
+ * The settings of one tagging or training pipeline, read once from a configuration file. Every
+ * pipeline can have its own, so that differently configured models can be used in one JVM; a
+ * setting is changed by deriving a new configuration with {@link #with(String, String)}. The
+ * annotators receive it as text, see {@link #toString()} and {@link #parse(String)}.
+ */
+public final class NERConfiguration
+{
+    private final Properties properties;
+
+    private final String classifier;
+    private final int stackSize;
+    private final float minOutcomeScore;
+    private final float beamMargin;
+    private final boolean constrainedDecoding;
+    private final int tagDictionaryMinCount;
+    private final String cascadeModelDir;
+    private final double cascadeThreshold;
+    private final boolean writeScores;
+    private final String modelBundle;
+    private final int hotSwapWarmupSentences;
+    private final long modelCacheBudgetMB;
+    private final int trainingThreads;
+    private final boolean streamTraining;
+    private final boolean streamTrainingTee;
+    private final String featureCacheDir;
+    private final int minAttributeFrequency;
+    private final int attributeSketchMB;
+    private final String holdoutFile;
+    private final int holdoutPeriod;
+    private final int holdoutPatience;
+    private final int trainingMaxIterations;
+    private final double trainingTimeBudgetMinutes;
+    private final int maxSentencesPerCas;
+    private final int maxTokensPerCas;
+    private final int taggingThreads;
+    private final String taggingStats;
+
+    private NERConfiguration(Properties aProperties)
+    {
+        properties = new Properties();
+        properties.putAll(aProperties);
+        classifier = properties.getProperty("classifier", "crfsuite");
+        stackSize = Integer.parseInt(properties.getProperty("stackSize", "1"));
+        minOutcomeScore = Float.parseFloat(properties.getProperty("minOutcomeScore", "-Infinity"));
+        beamMargin = Float.parseFloat(properties.getProperty("beamMargin", "Infinity"));
+        constrainedDecoding = isSet("constrainedDecoding");
+        tagDictionaryMinCount = Integer
+                .parseInt(properties.getProperty("tagDictionaryMinCount", "0"));
+        cascadeModelDir = properties.getProperty("cascadeModelDir", "");
+        cascadeThreshold = Double.parseDouble(properties.getProperty("cascadeThreshold", "0.9"));
+        writeScores = isSet("writeScores");
+        modelBundle = properties.getProperty("modelBundle", "");
+        hotSwapWarmupSentences = Integer
+                .parseInt(properties.getProperty("hotSwapWarmupSentences", "200"));
+        modelCacheBudgetMB = Long.parseLong(properties.getProperty("modelCacheBudgetMB", "1024"));
+        trainingThreads = Integer.parseInt(properties.getProperty("trainingThreads", "1"));
+        streamTraining = isSet("streamTraining");
+        streamTrainingTee = isSet("streamTrainingTee");
+        featureCacheDir = properties.getProperty("featureCacheDir", "").trim();
+        minAttributeFrequency = Integer
+                .parseInt(properties.getProperty("minAttributeFrequency", "1"));
+        attributeSketchMB = Integer.parseInt(properties.getProperty("attributeSketchMB", "32"));
+        holdoutFile = properties.getProperty("holdoutFile", "").trim();
+        holdoutPeriod = Integer.parseInt(properties.getProperty("holdoutPeriod", "5"));
+        holdoutPatience = Integer.parseInt(properties.getProperty("holdoutPatience", "3"));
+        trainingMaxIterations = Integer
+                .parseInt(properties.getProperty("trainingMaxIterations", "0"));
+        trainingTimeBudgetMinutes = Double
+                .parseDouble(properties.getProperty("trainingTimeBudgetMinutes", "0"));
+        maxSentencesPerCas = Integer
+                .parseInt(properties.getProperty("maxSentencesPerCas", "1000"));
+        maxTokensPerCas = Integer.parseInt(properties.getProperty("maxTokensPerCas", "0"));
+        taggingThreads = Integer.parseInt(properties.getProperty("taggingThreads", "1"));
+        taggingStats = properties.getProperty("taggingStats", "").trim();
+    }
+
+    public static NERConfiguration of(Properties properties)
+    {
+        return new NERConfiguration(properties);
+    }
+
+    public static NERConfiguration read(InputStream in)
+        throws IOException
+    {
+        Properties properties = new Properties();
+        properties.load(in);
+        return new NERConfiguration(properties);
+    }
+
+    public static NERConfiguration read(File file)
+        throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try {
+            return read(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a configuration written by {@link #toString()}.
+     */
+    public static NERConfiguration parse(String text)
+    {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(text));
+        }
+        catch (IOException e) {
+            // a StringReader does not fail
+            throw new IllegalStateException(e);
+        }
+        return new NERConfiguration(properties);
+    }
+
+    /**
+     * @return a copy of this configuration in which the key has the value
+     */
+    public NERConfiguration with(String key, String value)
+    {
+        Properties copy = getProperties();
+        copy.setProperty(key, value);
+        return new NERConfiguration(copy);
+    }
+
+    /**
+     * @return a copy of this configuration in which the given settings replace the present ones
+     */
+    public NERConfiguration with(Properties settings)
+    {
+        Properties copy = getProperties();
+        copy.putAll(settings);
+        return new NERConfiguration(copy);
+    }
+
+    /**
+     * @return whether the key, e.g. a feature switch like <code>useFreeBase</code>, is set to 1
+     */
+    public boolean isSet(String key)
+    {
+        return "1".equals(properties.getProperty(key, "0").trim());
+    }
+
+    public String getProperty(String key, String defaultValue)
+    {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    /**
+     * @return a copy of the settings, e.g. for {@link de.tu.darmstadt.lt.ner.annotator.GetFeaturesFromConfigFile}
+     */
+    public Properties getProperties()
+    {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    public String getClassifier()
+    {
+        return classifier;
+    }
+
+    public int getStackSize()
+    {
+        return stackSize;
+    }
+
+    public float getMinOutcomeScore()
+    {
+        return minOutcomeScore;
+    }
+
+    public float getBeamMargin()
+    {
+        return beamMargin;
+    }
+
+    public boolean isConstrainedDecoding()
+    {
+        return constrainedDecoding;
+    }
+
+    public int getTagDictionaryMinCount()
+    {
+        return tagDictionaryMinCount;
+    }
+
+    public String getCascadeModelDir()
+    {
+        return cascadeModelDir;
+    }
+
+    public double getCascadeThreshold()
+    {
+        return cascadeThreshold;
+    }
+
+    public boolean isWriteScores()
+    {
+        return writeScores;
+    }
+
+    public String getModelBundle()
+    {
+        return modelBundle;
+    }
+
+    public int getHotSwapWarmupSentences()
+    {
+        return hotSwapWarmupSentences;
+    }
+
+    public long getModelCacheBudgetMB()
+    {
+        return modelCacheBudgetMB;
+    }
+
+    /**
+     * @return the number of threads that extract the features of the training data
+     */
+    public int getTrainingThreads()
+    {
+        return trainingThreads;
+    }
+
+    public boolean isStreamTraining()
+    {
+        return streamTraining;
+    }
+
+    public boolean isStreamTrainingTee()
+    {
+        return streamTrainingTee;
+    }
+
+    /**
+     * @return the directory of the {@link FeatureCache}s, or an empty string for no caching
+     */
+    public String getFeatureCacheDir()
+    {
+        return featureCacheDir;
+    }
+
+    /**
+     * @return how often an attribute must occur in the training data to be kept, 1 to keep all
+     */
+    public int getMinAttributeFrequency()
+    {
+        return minAttributeFrequency;
+    }
+
+    /**
+     * @return the memory of the sketch that counts the attributes for the frequency cut-off
+     */
+    public int getAttributeSketchMB()
+    {
+        return attributeSketchMB;
+    }
+
+    /**
+     * @return the held-out CoNLL file for early stopping, or an empty string for none
+     */
+    public String getHoldoutFile()
+    {
+        return holdoutFile;
+    }
+
+    /**
+     * @return the number of training iterations between two evaluations on the held-out file
+     */
+    public int getHoldoutPeriod()
+    {
+        return holdoutPeriod;
+    }
+
+    /**
+     * @return the number of evaluations without a better held-out F1 after which training stops
+     */
+    public int getHoldoutPatience()
+    {
+        return holdoutPatience;
+    }
+
+    /**
+     * @return the maximum number of training iterations, 0 for the default of the trainer
+     */
+    public int getTrainingMaxIterations()
+    {
+        return trainingMaxIterations;
+    }
+
+    /**
+     * @return the minutes after which training stops, 0 for no limit
+     */
+    public double getTrainingTimeBudgetMinutes()
+    {
+        return trainingTimeBudgetMinutes;
+    }
+
+    /**
+     * @return how many sentences a CAS holds at most, 0 for one CAS per file
+     */
+    public int getMaxSentencesPerCas()
+    {
+        return maxSentencesPerCas;
+    }
+
+    /**
+     * @return after how many tokens a CAS ends with the current sentence, 0 for no limit
+     */
+    public int getMaxTokensPerCas()
+    {
+        return maxTokensPerCas;
+    }
+
+    /**
+     * @return into how many shards a file is split that are tagged at the same time
+     */
+    public int getTaggingThreads()
+    {
+        return taggingThreads;
+    }
+
+    /**
+     * @return the name of the shared {@link de.tu.darmstadt.lt.ner.annotator.TaggingStats} the
+     *         tagging annotators add their counts to, or an empty string for none
+     */
+    public String getTaggingStats()
+    {
+        return taggingStats;
+    }
+
+    /**
+     * @return the settings in the properties file format
+     */
+    @Override
+    public String toString()
+    {
+        StringWriter out = new StringWriter();
+        try {
+            properties.store(out, null);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.preprocessing;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.util.Level;
+
+import de.tu.darmstadt.lt.ner.annotator.NERAnnotator;
+import de.tu.darmstadt.lt.ner.reader.ConllReader;
+import de.tu.darmstadt.lt.ner.reader.ConllScanner;
+import de.tu.darmstadt.lt.ner.reader.NERReader;
+import de.tu.darmstadt.lt.ner.writer.EvaluatedNERWriter;
+
+/**
+ * Tags one large file with <code>taggingThreads</code> pipelines at the same time. The file is
+ * split at sentence boundaries into as many shards, each found by a thread that scans for the
+ * first blank line after an even split of the bytes. Every shard is tagged by a pipeline of its
+ * own, with its own {@link NERAnnotator}, classifier and CRFsuite feature file, into an output
+ * file of its own; the outputs are then joined in the order of the shards. All shards are tagged
+ * with the same configuration, which the caller reads once.
+ * <p>
+ * The lookup features load their lexicons when the pipelines are created, and the position and
+ * Freebase features are queued per thread.
+ */
+class ShardedTagger
+{
+    private final File modelDirectory;
+    private final String modelBundle;
+    private final File testFile;
+    private final String dataZipFile;
+    private final NERConfiguration configuration;
+    private final File workDirectory;
+
+    private ShardedTagger(File modelDirectory, String modelBundle, File testFile,
+            String dataZipFile, NERConfiguration configuration, File workDirectory)
+    {
+        this.modelDirectory = modelDirectory;
+        this.modelBundle = modelBundle;
+        this.testFile = testFile;
+        this.dataZipFile = dataZipFile;
+        this.configuration = configuration;
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * Tags the test file in <code>taggingThreads</code> shards of the configuration.
+     */
+    static void tag(File modelDirectory, String modelBundle, File testFile, File outputFile,
+            File nodOutputFile, List<Integer> sentenceIds, String dataZipFile,
+            NERConfiguration configuration)
+        throws UIMAException, IOException
+    {
+        long start = System.currentTimeMillis();
+        int threads = configuration.getTaggingThreads();
+        File workDirectory = new File(outputFile.getAbsolutePath() + ".shards");
+        workDirectory.mkdirs();
+        ShardedTagger tagger = new ShardedTagger(modelDirectory, modelBundle, testFile,
+                dataZipFile, configuration, workDirectory);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long[] splits = tagger.split(threads, executor);
+            int shards = splits.length - 1;
+            int[] firstSentences = null;
+            if (nodOutputFile != null && sentenceIds != null) {
+                // the sentence IDs of a shard start after the sentences of the shards before it
+                firstSentences = tagger.countSentences(splits, executor);
+            }
+
+            List<File> outputs = new ArrayList<File>();
+            List<File> nodOutputs = new ArrayList<File>();
+            List<Pipeline> pipelines = new ArrayList<Pipeline>();
+            for (int s = 0; s < shards; s++) {
+                File output = new File(workDirectory, "shard" + s);
+                File nodOutput = null;
+                List<Integer> ids = null;
+                if (firstSentences != null) {
+                    nodOutput = new File(workDirectory, "shard" + s + ".nod");
+                    ids = new ArrayList<Integer>(sentenceIds.subList(
+                            Math.min(firstSentences[s], sentenceIds.size()),
+                            Math.min(firstSentences[s + 1], sentenceIds.size())));
+                    nodOutputs.add(nodOutput);
+                }
+                outputs.add(output);
+                // the components are created here, one after the other, and run in parallel
+                pipelines.add(tagger.createPipeline(splits[s], splits[s + 1], output, nodOutput,
+                        ids, new File(workDirectory, "crfsuite" + s)));
+            }
+            for (Future<Void> pipeline : executor.invokeAll(pipelines)) {
+                pipeline.get();
+            }
+            join(outputs, outputFile);
+            if (nodOutputFile != null && !nodOutputs.isEmpty()) {
+                join(nodOutputs, nodOutputFile);
+            }
+            UIMAFramework.getLogger().log(Level.INFO, "Tagged " + testFile + " in " + shards
+                    + " shards in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof UIMAException) {
+                throw (UIMAException) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(workDirectory);
+        }
+    }
+
+    /**
+     * @return the offsets at which the shards start, and the length of the file; every shard
+     *         starts at the start of a sentence
+     */
+    private long[] split(int shards, ExecutorService executor)
+        throws InterruptedException, ExecutionException
+    {
+        final long length = testFile.length();
+        List<Future<Long>> boundaries = new ArrayList<Future<Long>>();
+        for (int s = 1; s < shards; s++) {
+            final long offset = length / shards * s;
+            boundaries.add(executor.submit(new Callable<Long>()
+            {
+                @Override
+                public Long call()
+                    throws IOException
+                {
+                    ConllScanner scanner = ConllScanner.open(testFile, offset, length);
+                    try {
+                        // the first line may be the rest of a line before the offset
+                        scanner.nextLine();
+                        while (scanner.nextLine()) {
+                            if (scanner.isBlank()) {
+                                return scanner.getNextLineOffset();
+                            }
+                        }
+                        return length;
+                    }
+                    finally {
+                        scanner.close();
+                    }
+                }
+            }));
+        }
+        List<Long> splits = new ArrayList<Long>();
+        splits.add(0L);
+        for (Future<Long> boundary : boundaries) {
+            long split = boundary.get();
+            // shards without a sentence boundary in them are joined with the next one
+            if (split > splits.get(splits.size() - 1) && split < length) {
+                splits.add(split);
+            }
+        }
+        splits.add(length);
+        long[] offsets = new long[splits.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = splits.get(i);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the number of the first sentence of each shard, and of all sentences at the end
+     */
+    private int[] countSentences(final long[] splits, ExecutorService executor)
+        throws InterruptedException, ExecutionException
+    {
+        List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+        for (int s = 0; s < splits.length - 1; s++) {
+            final int shard = s;
+            counts.add(executor.submit(new Callable<Integer>()
+            {
+                @Override
+                public Integer call()
+                    throws IOException
+                {
+                    ConllScanner scanner = ConllScanner.open(testFile, splits[shard],
+                            splits[shard + 1]);
+                    try {
+                        int sentences = 0;
+                        boolean inSentence = false;
+                        while (scanner.nextLine()) {
+                            if (!scanner.isBlank()) {
+                                inSentence = true;
+                            }
+                            else if (inSentence) {
+                                sentences++;
+                                inSentence = false;
+                            }
+                        }
+                        return inSentence ? sentences + 1 : sentences;
+                    }
+                    finally {
+                        scanner.close();
+                    }
+                }
+            }));
+        }
+        int[] firstSentences = new int[splits.length];
+        for (int s = 0; s < counts.size(); s++) {
+            firstSentences[s + 1] = firstSentences[s] + counts.get(s).get();
+        }
+        return firstSentences;
+    }
+
+    private Pipeline createPipeline(long start, long end, File outputFile,
+            File nodOutputFile, List<Integer> sentenceIds, File featureFile)
+        throws UIMAException, IOException
+    {
+        List<Object> annotatorParameters = new ArrayList<Object>(Arrays.asList(
+                GermaNERMain.getClassifierParameters(modelDirectory, modelBundle, dataZipFile,
+                        configuration)));
+        annotatorParameters.add(NERAnnotator.PARAM_CRFSUITE_FEATURE_FILE);
+        annotatorParameters.add(featureFile.getAbsolutePath());
+        CollectionReader reader = ConllReader
+                .getCollectionReader(configuration, testFile, start, end);
+        return new Pipeline(reader,
+                createEngine(NERReader.class, NERReader.DATA_ZIP_FILE, dataZipFile,
+                        NERReader.MODEL_BUNDLE, modelBundle,
+                        NERReader.PARAM_CONFIGURATION,
+                        GermaNERMain.getReaderConfiguration(modelBundle, configuration)
+                                .toString()),
+                createEngine(NERAnnotator.class, annotatorParameters.toArray()),
+                createEngine(EvaluatedNERWriter.class, EvaluatedNERWriter.OUTPUT_FILE,
+                        outputFile, EvaluatedNERWriter.IS_GOLD, false,
+                        EvaluatedNERWriter.NOD_OUTPUT_FILE, nodOutputFile,
+                        EvaluatedNERWriter.SENTENCES_ID, sentenceIds,
+                        EvaluatedNERWriter.WRITE_SCORES, configuration.isWriteScores()));
+    }
+
+    private static class Pipeline
+        implements Callable<Void>
+    {
+        private final CollectionReader reader;
+        private final AnalysisEngine[] engines;
+
+        Pipeline(CollectionReader reader, AnalysisEngine... engines)
+        {
+            this.reader = reader;
+            this.engines = engines;
+        }
+
+        @Override
+        public Void call()
+            throws UIMAException, IOException
+        {
+            runPipeline(reader, engines);
+            return null;
+        }
+    }
+
+    private static void join(List<File> files, File target)
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream(target);
+        try {
+            for (File file : files) {
+                if (file.exists()) {
+                    FileUtils.copyFile(file, out);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.preprocessing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The labels each word was seen with in the training data. Frequent words can then be restricted
+ * to these labels when decoding; rare words are not restricted, since their training labels are
+ * not reliable. The dictionary is saved as {@link #FILE_NAME} in the model directory, one word per
+ * line followed by its count and its labels, tab separated.
+ */
+public class TagDictionary
+{
+    public static final String FILE_NAME = "tagdictionary.txt";
+
+    private final Map<String, Integer> counts = new HashMap<String, Integer>();
+    private final Map<String, Set<String>> labels = new HashMap<String, Set<String>>();
+
+    public void add(String word, String label)
+    {
+        Integer count = counts.get(word);
+        counts.put(word, count == null ? 1 : count + 1);
+        Set<String> wordLabels = labels.get(word);
+        if (wordLabels == null) {
+            wordLabels = new TreeSet<String>();
+            labels.put(word, wordLabels);
+        }
+        wordLabels.add(label);
+    }
+
+    /**
+     * Adds the counts and labels of another dictionary, e.g. of newly annotated sentences.
+     */
+    public void addAll(TagDictionary other)
+    {
+        for (Map.Entry<String, Integer> entry : other.counts.entrySet()) {
+            String word = entry.getKey();
+            Integer count = counts.get(word);
+            counts.put(word, count == null ? entry.getValue() : count + entry.getValue());
+            Set<String> wordLabels = labels.get(word);
+            if (wordLabels == null) {
+                wordLabels = new TreeSet<String>();
+                labels.put(word, wordLabels);
+            }
+            wordLabels.addAll(other.labels.get(word));
+        }
+    }
+
+    /**
+     * @return the labels of the word if it was seen at least minCount times, otherwise
+     *         <code>null</code>
+     */
+    public Set<String> getLabels(String word, int minCount)
+    {
+        Integer count = counts.get(word);
+        if (count == null || count < minCount) {
+            return null;
+        }
+        return Collections.unmodifiableSet(labels.get(word));
+    }
+
+    public int size()
+    {
+        return counts.size();
+    }
+
+    /**
+     * Builds the dictionary from a file in the training data format: the word in the first and the
+     * label in the last tab separated column, sentences separated by empty lines.
+     */
+    public static TagDictionary build(File trainingFile)
+        throws IOException
+    {
+        TagDictionary dictionary = new TagDictionary();
+        BufferedReader br = new BufferedReader(new FileReader(trainingFile));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] columns = line.split("\\t");
+                if (line.trim().isEmpty() || columns.length < 2) {
+                    continue;
+                }
+                dictionary.add(columns[0], columns[columns.length - 1].trim());
+            }
+        }
+        finally {
+            br.close();
+        }
+        return dictionary;
+    }
+
+    public void write(File file)
+        throws IOException
+    {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+        try {
+            for (Map.Entry<String, Integer> entry : new TreeMap<String, Integer>(counts)
+                    .entrySet()) {
+                bw.write(entry.getKey() + "\t" + entry.getValue());
+                for (String label : labels.get(entry.getKey())) {
+                    bw.write("\t" + label);
+                }
+                bw.write("\n");
+            }
+        }
+        finally {
+            bw.close();
+        }
+    }
+
+    public static TagDictionary read(File file)
+        throws IOException
+    {
+        return read(new FileReader(file));
+    }
+
+    public static TagDictionary read(Reader reader)
+        throws IOException
+    {
+        TagDictionary dictionary = new TagDictionary();
+        BufferedReader br = new BufferedReader(reader);
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] columns = line.split("\\t");
+                if (columns.length < 3) {
+                    continue;
+                }
+                Set<String> wordLabels = new TreeSet<String>();
+                for (int i = 2; i < columns.length; i++) {
+                    wordLabels.add(columns[i]);
+                }
+                dictionary.counts.put(columns[0], Integer.parseInt(columns[1]));
+                dictionary.labels.put(columns[0], wordLabels);
+            }
+        }
+        finally {
+            br.close();
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.fit.component.JCasCollectionReader_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
+
+/**
+ * Reads CoNLL files in UTF-8 for the {@link NERReader}. Instead of the text of a file, the
+ * {@link NERReader#CONLL_VIEW} gets its URI, and the {@link NERReader} memory-maps the file and
+ * scans it with a {@link ConllScanner}: only the document text and the annotations are kept in
+ * the heap, not the file content, its lines and their columns.
+ * <p>
+ * With {@link #PARAM_MAX_SENTENCES} or {@link #PARAM_MAX_TOKENS}, a file is split at sentence
+ * boundaries into several CASes, which are read in the order of the file; the URI then ends
+ * with the byte range of the CAS, e.g. <code>file:/data/test.tsv#1024-2048</code>. So the
+ * memory of a pipeline does not grow with the size of the file.
+ */
+public class ConllReader
+    extends JCasCollectionReader_ImplBase
+{
+    public static final String PARAM_FILES = "files";
+    @ConfigurationParameter(name = PARAM_FILES, mandatory = true)
+    private String[] files;
+
+    /**
+     * the most sentences of a CAS, 0 for no limit
+     */
+    public static final String PARAM_MAX_SENTENCES = "maxSentences";
+    @ConfigurationParameter(name = PARAM_MAX_SENTENCES, mandatory = false, defaultValue = "0")
+    private int maxSentences;
+
+    /**
+     * a CAS ends with the sentence in which it reaches this number of tokens, 0 for no limit
+     */
+    public static final String PARAM_MAX_TOKENS = "maxTokens";
+    @ConfigurationParameter(name = PARAM_MAX_TOKENS, mandatory = false, defaultValue = "0")
+    private int maxTokens;
+
+    /**
+     * only the bytes from start to end of the files, <code>start-end</code>, e.g. a shard of a
+     * file that starts at the start of a sentence
+     */
+    public static final String PARAM_RANGE = "range";
+    @ConfigurationParameter(name = PARAM_RANGE, mandatory = false)
+    private String range;
+
+    private long rangeStart;
+    private long rangeEnd;
+    private int current;
+    private File file;
+    private ConllScanner scanner;
+    private String next;
+
+    /**
+     * Reads each file into one CAS.
+     */
+    public static CollectionReader getCollectionReader(File... aFiles)
+        throws ResourceInitializationException
+    {
+        return getCollectionReader(0, 0, aFiles);
+    }
+
+    /**
+     * Reads the files into CASes of the size the configuration allows.
+     */
+    public static CollectionReader getCollectionReader(NERConfiguration configuration,
+            File... aFiles)
+        throws ResourceInitializationException
+    {
+        return getCollectionReader(configuration.getMaxSentencesPerCas(),
+                configuration.getMaxTokensPerCas(), aFiles);
+    }
+
+    public static CollectionReader getCollectionReader(int maxSentences, int maxTokens,
+            File... aFiles)
+        throws ResourceInitializationException
+    {
+        String[] paths = new String[aFiles.length];
+        for (int i = 0; i < aFiles.length; i++) {
+            paths[i] = aFiles[i].getAbsolutePath();
+        }
+        return CollectionReaderFactory.createReader(ConllReader.class, PARAM_FILES, paths,
+                PARAM_MAX_SENTENCES, maxSentences, PARAM_MAX_TOKENS, maxTokens);
+    }
+
+    /**
+     * Reads the bytes from <code>start</code> to <code>end</code> of a file into CASes of the size
+     * the configuration allows.
+     */
+    public static CollectionReader getCollectionReader(NERConfiguration configuration,
+            File aFile, long start, long end)
+        throws ResourceInitializationException
+    {
+        return CollectionReaderFactory.createReader(ConllReader.class, PARAM_FILES,
+                new String[] { aFile.getAbsolutePath() }, PARAM_MAX_SENTENCES,
+                configuration.getMaxSentencesPerCas(), PARAM_MAX_TOKENS,
+                configuration.getMaxTokensPerCas(), PARAM_RANGE, start + "-" + end);
+    }
+
+    @Override
+    public void initialize(UimaContext context)
+        throws ResourceInitializationException
+    {
+        super.initialize(context);
+        current = 0;
+        rangeStart = 0;
+        rangeEnd = Long.MAX_VALUE;
+        if (range != null) {
+            int dash = range.indexOf('-');
+            rangeStart = Long.parseLong(range.substring(0, dash));
+            rangeEnd = Long.parseLong(range.substring(dash + 1));
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+        throws IOException, CollectionException
+    {
+        if (next == null) {
+            next = nextUri();
+        }
+        return next != null;
+    }
+
+    @Override
+    public void getNext(JCas jCas)
+        throws IOException, CollectionException
+    {
+        if (!hasNext()) {
+            throw new CollectionException(new IOException("no more input"));
+        }
+        try {
+            jCas.createView(NERReader.CONLL_VIEW).setSofaDataURI(next, "text/plain");
+        }
+        catch (CASException e) {
+            throw new CollectionException(e);
+        }
+        next = null;
+    }
+
+    /**
+     * @return the URI of the next CAS, with its byte range if the files are split, or
+     *         <code>null</code> at the end of the input
+     */
+    private String nextUri()
+        throws IOException
+    {
+        while (true) {
+            if (scanner == null) {
+                if (current == files.length) {
+                    return null;
+                }
+                file = new File(files[current++]);
+                if (!file.isFile()) {
+                    throw new IOException("no such file: " + file);
+                }
+                if (maxSentences <= 0 && maxTokens <= 0) {
+                    return range == null ? file.toURI().toString()
+                            : file.toURI().toString() + "#" + rangeStart + "-"
+                                    + Math.min(rangeEnd, file.length());
+                }
+                scanner = ConllScanner.open(file, rangeStart, rangeEnd);
+            }
+            long start = scanner.getNextLineOffset();
+            int sentences = 0;
+            int tokens = 0;
+            boolean inSentence = false;
+            boolean more;
+            while ((more = scanner.nextLine())) {
+                if (!scanner.isBlank()) {
+                    tokens++;
+                    inSentence = true;
+                }
+                else if (inSentence) {
+                    sentences++;
+                    inSentence = false;
+                    if ((maxSentences > 0 && sentences >= maxSentences)
+                            || (maxTokens > 0 && tokens >= maxTokens)) {
+                        break;
+                    }
+                }
+            }
+            long end = scanner.getNextLineOffset();
+            if (!more) {
+                scanner.close();
+                scanner = null;
+            }
+            // blank lines at the end of a file make no CAS
+            if (tokens > 0) {
+                return file.toURI().toString() + "#" + start + "-" + end;
+            }
+        }
+    }
+
+    /**
+     * Opens a scanner over the file, or the byte range of the file, that a URI of this reader
+     * refers to.
+     */
+    static ConllScanner open(String uri)
+        throws IOException
+    {
+        int hash = uri.lastIndexOf('#');
+        if (hash < 0) {
+            return ConllScanner.open(new File(URI.create(uri)));
+        }
+        String range = uri.substring(hash + 1);
+        int dash = range.indexOf('-');
+        long start = Long.parseLong(range.substring(0, dash));
+        long end = Long.parseLong(range.substring(dash + 1));
+        return ConllScanner.open(new File(URI.create(uri.substring(0, hash))), start, end);
+    }
+
+    @Override
+    public Progress[] getProgress()
+    {
+        return new Progress[] { new ProgressImpl(current, files.length, Progress.ENTITIES) };
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (scanner != null) {
+            scanner.close();
+            scanner = null;
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scans CoNLL input in UTF-8 line by line without making Strings of the lines: the word (the
+ * first column) is decoded straight into the document text, and the label (the last column) is
+ * one of a few shared Strings. Files are memory-mapped in windows, so the input does not have to
+ * fit into the heap, whatever its size.
+ */
+public class ConllScanner
+    implements Closeable
+{
+    private static final int WINDOW = 1 << 28;
+    // beyond this, e.g. for a file without tabs, labels are not shared any more
+    private static final int MAX_LABELS = 256;
+
+    private final FileChannel channel;
+    private final long end;
+    private ByteBuffer buffer;
+    private long bufferStart;
+    private int next;
+    private int lineStart;
+    private int lineEnd;
+    private int wordEnd;
+    private int labelStart;
+    private final List<byte[]> labelBytes = new ArrayList<byte[]>();
+    private final List<String> labels = new ArrayList<String>();
+
+    /**
+     * Scans text that is already in memory.
+     */
+    public ConllScanner(ByteBuffer buffer)
+    {
+        this.channel = null;
+        this.buffer = buffer;
+        this.bufferStart = 0;
+        this.end = buffer.limit();
+        this.next = buffer.position();
+    }
+
+    private ConllScanner(FileChannel channel, long start, long end)
+        throws IOException
+    {
+        this.channel = channel;
+        this.end = end;
+        map(start);
+    }
+
+    public static ConllScanner open(File file)
+        throws IOException
+    {
+        return open(file, 0, file.length());
+    }
+
+    /**
+     * Scans the bytes from <code>start</code> to <code>end</code> of a file, which should begin
+     * at the start of a line.
+     */
+    public static ConllScanner open(File file, long start, long end)
+        throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return new ConllScanner(in.getChannel(), start, Math.min(end, in.length()));
+        }
+        catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private void map(long position)
+        throws IOException
+    {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(WINDOW, end - position));
+        bufferStart = position;
+        next = 0;
+    }
+
+    /**
+     * Moves to the next line.
+     *
+     * @return <code>false</code> at the end of the input
+     */
+    public boolean nextLine()
+        throws IOException
+    {
+        while (true) {
+            int limit = buffer.limit();
+            if (next >= limit && bufferStart + limit >= end) {
+                return false;
+            }
+            int i = next;
+            while (i < limit && buffer.get(i) != '\n') {
+                i++;
+            }
+            if (i == limit && bufferStart + limit < end) {
+                // the line goes on in the next window
+                if (next == 0) {
+                    throw new IOException("line at byte " + bufferStart + " is longer than "
+                            + WINDOW + " bytes");
+                }
+                map(bufferStart + next);
+                continue;
+            }
+            lineStart = next;
+            lineEnd = i;
+            next = i < limit ? i + 1 : i;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            wordEnd = lineStart;
+            while (wordEnd < lineEnd && buffer.get(wordEnd) != '\t') {
+                wordEnd++;
+            }
+            labelStart = lineEnd;
+            while (labelStart > lineStart && buffer.get(labelStart - 1) != '\t') {
+                labelStart--;
+            }
+            return true;
+        }
+    }
+
+    public boolean isBlank()
+    {
+        return lineEnd == lineStart;
+    }
+
+    /**
+     * @return the offset of the current line in the file
+     */
+    public long getLineOffset()
+    {
+        return bufferStart + lineStart;
+    }
+
+    /**
+     * @return the offset of the line after the current one in the file
+     */
+    public long getNextLineOffset()
+    {
+        return bufferStart + next;
+    }
+
+    /**
+     * Appends the word of the current line, the text before the first tab, to a document text.
+     */
+    public void appendWord(StringBuilder text)
+    {
+        decode(lineStart, wordEnd, text);
+    }
+
+    /**
+     * @return the label of the current line, the text after the last tab
+     */
+    public String getLabel()
+    {
+        int length = lineEnd - labelStart;
+        for (int i = 0; i < labelBytes.size(); i++) {
+            byte[] bytes = labelBytes.get(i);
+            if (bytes.length == length && matches(bytes)) {
+                return labels.get(i);
+            }
+        }
+        StringBuilder text = new StringBuilder(length);
+        decode(labelStart, lineEnd, text);
+        String label = text.toString();
+        if (labels.size() < MAX_LABELS) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(labelStart + i);
+            }
+            labelBytes.add(bytes);
+            labels.add(label);
+        }
+        return label;
+    }
+
+    private boolean matches(byte[] bytes)
+    {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != buffer.get(labelStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes UTF-8; malformed bytes become U+FFFD.
+     */
+    private void decode(int from, int to, StringBuilder text)
+    {
+        int i = from;
+        while (i < to) {
+            int b = buffer.get(i++);
+            if (b >= 0) {
+                text.append((char) b);
+                continue;
+            }
+            int length;
+            int codePoint;
+            if ((b & 0xE0) == 0xC0) {
+                length = 1;
+                codePoint = b & 0x1F;
+            }
+            else if ((b & 0xF0) == 0xE0) {
+                length = 2;
+                codePoint = b & 0x0F;
+            }
+            else if ((b & 0xF8) == 0xF0) {
+                length = 3;
+                codePoint = b & 0x07;
+            }
+            else {
+                text.append('\uFFFD');
+                continue;
+            }
+            int k = 0;
+            for (; k < length && i < to && (buffer.get(i) & 0xC0) == 0x80; k++, i++) {
+                codePoint = (codePoint << 6) | (buffer.get(i) & 0x3F);
+            }
+            if (k < length || codePoint > Character.MAX_CODE_POINT) {
+                text.append('\uFFFD');
+            }
+            else {
+                text.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.reader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The word lists that {@link NERReader} and the lookup feature functions load from data.zip,
+ * parsed once per lexicon source and shared by all pipelines, so that pipelines of several models
+ * with the same lexicons keep a single copy of them.
+ */
+public final class Lexicons
+{
+    /**
+     * Turns the lines of a word list into a map.
+     */
+    public interface Parser
+    {
+        void parse(BufferedReader reader, Map<String, String> lexicon)
+            throws IOException;
+    }
+
+    private static final Map<String, Map<String, String>> lexicons = new HashMap<String, Map<String, String>>();
+
+    private Lexicons()
+    {
+    }
+
+    /**
+     * @return the read-only lexicon <code>name</code> of the source, parsed when first requested
+     */
+    public static Map<String, String> get(NERReader source, String name, Parser parser)
+        throws IOException
+    {
+        return get(source, name, null, parser);
+    }
+
+    /**
+     * @param variant
+     *            names the way the word list is parsed, if it is parsed into several lexicons,
+     *            e.g. one for each of its columns
+     * @return the read-only lexicon <code>name</code> of the source, parsed when first requested
+     */
+    public static synchronized Map<String, String> get(NERReader source, String name,
+            String variant, Parser parser)
+        throws IOException
+    {
+        String key = source.getLexiconSource() + "!" + name
+                + (variant == null ? "" : "#" + variant);
+        Map<String, String> lexicon = lexicons.get(key);
+        if (lexicon == null) {
+            BufferedReader reader = (BufferedReader) source.getReader(name);
+            if (reader == null) {
+                throw new IOException("there is no " + name + " in " + source.getLexiconSource());
+            }
+            Map<String, String> parsed = new HashMap<String, String>();
+            try {
+                parser.parse(reader, parsed);
+            }
+            finally {
+                reader.close();
+            }
+            lexicon = Collections.unmodifiableMap(parsed);
+            lexicons.put(key, lexicon);
+        }
+        return lexicon;
+    }
+
+    /**
+     * Drops the lexicons of a source, e.g. when no loaded model uses it any more.
+     */
+    public static synchronized void release(String lexiconSource)
+    {
+        for (Iterator<String> keys = lexicons.keySet().iterator(); keys.hasNext();) {
+            if (keys.next().startsWith(lexiconSource + "!")) {
+                keys.remove();
+            }
+        }
+    }
+
+    public static synchronized int size()
+    {
+        return lexicons.size();
+    }
+}
@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -44,7 +46,9 @@ import org.apache.uima.util.Logger;
 import de.tu.darmstadt.lt.ner.feature.variables.ClarkPosInduction;
 import de.tu.darmstadt.lt.ner.feature.variables.FreeBaseFeature;
 import de.tu.darmstadt.lt.ner.feature.variables.PositionFeature;
-import de.tu.darmstadt.lt.ner.preprocessing.Configuration;
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.ModelBundle;
+import de.tu.darmstadt.lt.ner.preprocessing.NERConfiguration;
 import de.tu.darmstadt.lt.ner.types.GoldNamedEntity;
 import de.tu.darmstadt.lt.ner.util.GenerateNgram;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
@@ -61,7 +65,40 @@ public class NERReader
     
     public static final String DATA_ZIP_FILE = "datazipfile";
     @ConfigurationParameter(name = DATA_ZIP_FILE, mandatory = false)
-    private static String datazipfile = null;
+    private String datazipfile = null;
+
+    /**
+     * a {@link ModelBundle} whose lexicons are read instead of data.zip, if it has them
+     */
+    public static final String MODEL_BUNDLE = "modelBundle";
+    @ConfigurationParameter(name = MODEL_BUNDLE, mandatory = false)
+    private String modelBundle = null;
+
+    /**
+     * the settings of this pipeline as written by {@link NERConfiguration#toString()}; without
+     * them the configuration loaded by GermaNERMain is used
+     */
+    public static final String PARAM_CONFIGURATION = "configuration";
+    @ConfigurationParameter(name = PARAM_CONFIGURATION, mandatory = false)
+    private String configurationText = null;
+    private NERConfiguration configuration;
+
+    private static final Map<String, ModelBundle> bundles = new HashMap<String, ModelBundle>();
+
+    public NERReader()
+    {
+    }
+
+    /**
+     * A reader that only serves as the lexicon source of the feature functions of a pipeline,
+     * with the word lists of the model bundle if it has them, otherwise of the data.zip file, or of
+     * the data.zip on the classpath if neither is given.
+     */
+    public NERReader(String aModelBundle, String aDataZipFile)
+    {
+        modelBundle = aModelBundle;
+        datazipfile = aDataZipFile;
+    }
 
     @Override
     public void initialize(UimaContext context)
@@ -69,6 +106,20 @@ public class NERReader
     {
         super.initialize(context);
         logger = context.getLogger();
+        try {
+            if (configurationText != null) {
+                configuration = NERConfiguration.parse(configurationText);
+            }
+            else {
+                if (GermaNERMain.getPropFile() == null) {
+                    GermaNERMain.initNERModel();
+                }
+                configuration = NERConfiguration.of(GermaNERMain.getPropFile());
+            }
+        }
+        catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
     }
 
     @Override
@@ -76,29 +127,21 @@ public class NERReader
         throws AnalysisEngineProcessException
     {
         JCas docView;
-        String tbText;
+        ConllScanner lines;
         try {
             docView = jcas.getView(CAS.NAME_DEFAULT_SOFA);
-            tbText = jcas.getView(CONLL_VIEW).getDocumentText();
+            lines = openScanner(jcas.getView(CONLL_VIEW));
         }
         catch (CASException e) {
             throw new AnalysisEngineProcessException(e);
         }
-        // a new sentence always starts with a new line
-        if (tbText.charAt(0) != '\n') {
-            tbText = "\n" + tbText;
+        catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
         }
 
-        String[] tokens = tbText.split("(\r\n|\n)");
-        Sentence sentence = null;
-        int idx = 0;
-        Token token = null;
-        GoldNamedEntity NamedEntityTag;
-        String NamedEntity;
-        boolean initSentence = false;
-        StringBuffer docText = new StringBuffer();
-
-        if (Configuration.useFreeBase) {
+        boolean useFreeBase = configuration.isSet("useFreeBase");
+        boolean usePosition = configuration.isSet("usePosition");
+        if (useFreeBase) {
             try {
                 useFreaBase();
             }
@@ -107,7 +150,7 @@ public class NERReader
             }
         }
 
-        if (Configuration.useClarkPosInduction) {
+        if (configuration.isSet("useClarkPosInduction")) {
             try {
                 useClarkPosInduction();
             }
@@ -115,80 +158,82 @@ public class NERReader
                 // TODO
             }
         }
+
+        Sentence sentence = null;
+        Token token = null;
+        GoldNamedEntity NamedEntityTag;
+        // a new sentence always starts with a new line
+        boolean initSentence = true;
+        StringBuilder docText = new StringBuilder();
         StringBuffer sentenceSb = new StringBuffer();
+        boolean fine = logger.isLoggable(Level.FINE);
 
         int positionIndex = 0;
-        for (String line : tokens) {
-
-            // new sentence if there's a new line
-            if (line.equals("")) {
-                if (sentence != null && token != null) {
-                    terminateSentence(sentence, token, docText);
-                    docText.append("\n");
-                    idx++;
-                    if (Configuration.useFreeBase) {
-                        getngramBasedFreebaseList(sentenceSb);
+        try {
+            while (lines.nextLine()) {
+
+                // new sentence if there's a new line
+                if (lines.isBlank()) {
+                    if (sentence != null && token != null) {
+                        terminateSentence(sentence, token, docText);
+                        docText.append("\n");
+                        if (useFreeBase) {
+                            getngramBasedFreebaseList(sentenceSb);
+                        }
+                        positionIndex = 0;
+                        // further blank lines do not end it again
+                        token = null;
                     }
-                    positionIndex = 0;
+                    // init new sentence with the next recognized token
+                    initSentence = true;
+                    sentenceSb = new StringBuffer();
                 }
-                // init new sentence with the next recognized token
-                initSentence = true;
-                sentenceSb = new StringBuffer();
-            }
-            else {
-                String[] tag = line.split("\\t");
-                String word = tag[0];
-                NamedEntity = tag[tag.length - 1];
+                else {
+                    if (usePosition) {
+                        PositionFeature.posistion.get().add(positionIndex);
+                        positionIndex++;
+                    }
 
-                if (Configuration.usePosition) {
-                    PositionFeature.posistion.add(positionIndex);
-                    positionIndex++;
-                }
+                    int idx = docText.length();
+                    lines.appendWord(docText);
+                    int wordEnd = docText.length();
+                    if (useFreeBase) {
+                        sentenceSb.append(docText, idx, wordEnd).append(' ');
+                    }
 
-                docText.append(word);
-                sentenceSb.append(word + " ");
-
-                // if (!word.matches("^(\\p{Punct}).*")) {
-                token = new Token(docView, idx, idx + word.length());
-                NamedEntityTag = new GoldNamedEntity(docView, idx, idx + word.length());
-                // sw=new SimilarWord1(docView, idx, idx + word.length());
-                docText.append(" ");
-                idx++;
-
-                // start new sentence
-                if (initSentence) {
-                    sentence = new Sentence(docView);
-                    sentence.setBegin(token.getBegin());
-                    initSentence = false;
+                    token = new Token(docView, idx, wordEnd);
+                    NamedEntityTag = new GoldNamedEntity(docView, idx, wordEnd);
+                    docText.append(" ");
+
+                    // start new sentence
+                    if (initSentence) {
+                        sentence = new Sentence(docView);
+                        sentence.setBegin(token.getBegin());
+                        initSentence = false;
+                    }
+                    NamedEntityTag.setNamedEntityType(lines.getLabel());
+
+                    NamedEntityTag.addToIndexes();
+                    token.addToIndexes();
+
+                    if (fine) {
+                        logger.log(Level.FINE, "Token: [" + docText.substring(idx, wordEnd) + "]"
+                                + idx + "\t" + wordEnd + "\tNamedEntity: "
+                                + NamedEntityTag.getNamedEntityType());
+                    }
                 }
-                // increment actual index of text
-                idx += word.length();
-                NamedEntityTag.setNamedEntityType(NamedEntity);
-
-                // sw.setValue(tag[16]);
-
-                // sw.addToIndexes();
-
-                NamedEntityTag.addToIndexes();
-                token.addToIndexes();
-
-                logger.log(Level.FINE,
-                        "Token: [" + docText.substring(token.getBegin(), token.getEnd()) + "]"
-                                + token.getBegin() + "\t" + token.getEnd());
-                logger.log(
-                        Level.FINE,
-                        "NamedEnity: ["
-                                + docText.substring(NamedEntityTag.getBegin(),
-                                        NamedEntityTag.getEnd()) + "]" + NamedEntityTag.getBegin()
-                                + "\t" + NamedEntityTag.getEnd());
             }
+            lines.close();
         }
-        if (!sentenceSb.toString().isEmpty()) {
-            if (Configuration.useFreeBase) {
+        catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+        if (sentenceSb.length() > 0) {
+            if (useFreeBase) {
                 getngramBasedFreebaseList(sentenceSb);
             }
         }
-        
+
         if (sentence != null && token != null) {
             terminateSentence(sentence, token, docText);
         }
@@ -196,6 +241,21 @@ public class NERReader
         docView.setSofaDataString(docText.toString(), "text/plain");
     }
 
+    /**
+     * The CoNLL view holds the text of the document, or the URI of a file or a part of it when it
+     * is read by {@link ConllReader}; files are memory-mapped.
+     */
+    private static ConllScanner openScanner(JCas conllView)
+        throws IOException
+    {
+        String text = conllView.getDocumentText();
+        if (text == null && conllView.getSofaDataURI() != null) {
+            return ConllReader.open(conllView.getSofaDataURI());
+        }
+        return new ConllScanner(ByteBuffer.wrap(text == null ? new byte[0]
+                : text.getBytes(StandardCharsets.UTF_8)));
+    }
+
     private void getngramBasedFreebaseList(StringBuffer sentenceSb)
     {
         // do 1-5 gram freebase checklists
@@ -209,12 +269,12 @@ public class NERReader
                         }
                         if (nGramToken.contains(sentToken) && freebaseMap.get(nGramToken) != null) {
                             if (nGramToken.startsWith(sentToken)) {
-                                FreeBaseFeature.freebaseFeature.add("B-"
+                                FreeBaseFeature.freebaseFeature.get().add("B-"
                                         + freebaseMap.get(nGramToken));
                                 continue outer;
                             }
                             else {
-                                FreeBaseFeature.freebaseFeature.add("I-"
+                                FreeBaseFeature.freebaseFeature.get().add("I-"
                                         + freebaseMap.get(nGramToken));
                                 continue outer;
                             }
@@ -222,68 +282,112 @@ public class NERReader
                     }
                 }
                 catch (Exception e) {
-                    FreeBaseFeature.freebaseFeature.add("none");
+                    FreeBaseFeature.freebaseFeature.get().add("none");
                     continue outer;
                 }
             }
-            FreeBaseFeature.freebaseFeature.add("none");
+            FreeBaseFeature.freebaseFeature.get().add("none");
         }
     }
 
-    private void terminateSentence(Sentence sentence, Token token, StringBuffer docText)
+    private void terminateSentence(Sentence sentence, Token token, StringBuilder docText)
     {
         sentence.setEnd(token.getEnd());
         sentence.addToIndexes();
-        logger.log(Level.FINE,
-                "Sentence:[" + docText.substring(sentence.getBegin(), sentence.getEnd()) + "]\t"
-                        + sentence.getBegin() + "\t" + sentence.getEnd());
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "Sentence:["
+                    + docText.substring(sentence.getBegin(), sentence.getEnd()) + "]\t"
+                    + sentence.getBegin() + "\t" + sentence.getEnd());
+        }
     }
 
     private void useFreaBase()
         throws Exception
     {
-
-        BufferedReader reader = (BufferedReader) getReader("freebase_2502.txt3");
-        String line;
-        while ((line = reader.readLine()) != null) {
-            try {
-                StringTokenizer st = new StringTokenizer(line, "\t");
-                freebaseMap.put(st.nextToken(), st.nextToken());
-            }
-            catch (Exception e) {
-               // System.out.println("Warning: check if the freebase list file is correct, Some entries are wrong. " + e.getMessage());
+        freebaseMap = Lexicons.get(this, "freebase_2502.txt3", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        StringTokenizer st = new StringTokenizer(line, "\t");
+                        lexicon.put(st.nextToken(), st.nextToken());
+                    }
+                    catch (Exception e) {
+                       // System.out.println("Warning: check if the freebase list file is correct, Some entries are wrong. " + e.getMessage());
+                    }
+                }
             }
-        }
+        });
     }
 
     public void useClarkPosInduction()
         throws Exception
     {
-        BufferedReader reader = (BufferedReader) getReader("clark10m256");
-        String line;
-        while ((line = reader.readLine()) != null) {
-            try {
-                String[] sample = line.split("\\t");
-                String word = sample[0];
-                // the class is mostly at the end of the column
-                String wordClass = sample[sample.length - 1];
-                ClarkPosInduction.posInduction.put(word, wordClass);
+        ClarkPosInduction.posInduction = Lexicons.get(this, "clark10m256", new Lexicons.Parser()
+        {
+            @Override
+            public void parse(BufferedReader reader, Map<String, String> lexicon)
+                throws IOException
+            {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        String[] sample = line.split("\\t");
+                        String word = sample[0];
+                        // the class is mostly at the end of the column
+                        String wordClass = sample[sample.length - 1];
+                        lexicon.put(word, wordClass);
+                    }
+                    catch (Exception e) {
+                       // System.out.println("Warning: check if the clark POS induction list file is correct "
+                         //       + e.getMessage());
+                    }
+                }
             }
-            catch (Exception e) {
-               // System.out.println("Warning: check if the clark POS induction list file is correct "
-                 //       + e.getMessage());
+        });
+    }
+
+    /**
+     * @return where the lexicons of this reader come from: its model bundle or data.zip file, or
+     *         the data.zip on the classpath
+     */
+    public String getLexiconSource()
+    {
+        return getLexiconSource(modelBundle, datazipfile);
+    }
+
+    public static String getLexiconSource(String bundleFile, String zipFile)
+    {
+        try {
+            if (bundleFile != null
+                    && getModelBundle(bundleFile).hasSection(ModelBundle.DATA_ZIP_SECTION)) {
+                return "bundle:" + new File(bundleFile).getCanonicalPath();
+            }
+            if (zipFile != null) {
+                return "zip:" + new File(zipFile).getCanonicalPath();
             }
         }
-
-        reader.close();
+        catch (IOException e) {
+            // not readable, getReader reports it
+        }
+        return "classpath";
     }
 
     public Reader getReader(String aName)
         throws IOException
     {
+        String source = getLexiconSource();
     	InputStream is;
-    	if (datazipfile!=null) {
-    		 is = new FileInputStream(new File(datazipfile));
+    	if (source.startsWith("bundle:")) {
+    		is = getModelBundle(source.substring("bundle:".length()))
+    		        .openSection(ModelBundle.DATA_ZIP_SECTION);
+    	}
+    	else if (source.startsWith("zip:")) {
+    		 is = new FileInputStream(new File(source.substring("zip:".length())));
     	}
     	else{
     		 is = ClassLoader.getSystemResourceAsStream("data.zip");
@@ -301,4 +405,16 @@ public class NERReader
         }
         return null;
     }
-}
\ No newline at end of file
+
+    private static synchronized ModelBundle getModelBundle(String bundleFile)
+        throws IOException
+    {
+        String path = new File(bundleFile).getCanonicalPath();
+        ModelBundle bundle = bundles.get(path);
+        if (bundle == null) {
+            bundle = ModelBundle.open(new File(path));
+            bundles.put(path, bundle);
+        }
+        return bundle;
+    }
+}
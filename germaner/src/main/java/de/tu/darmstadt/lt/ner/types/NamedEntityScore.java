@@ -0,0 +1,117 @@
+
+
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package de.tu.darmstadt.lt.ner.types;
+
+import org.apache.uima.jcas.JCas; 
+import org.apache.uima.jcas.JCasRegistry;
+import org.apache.uima.jcas.cas.TOP_Type;
+
+import org.apache.uima.jcas.tcas.Annotation;
+
+
+/** 
+ * Updated by JCasGen Sun Oct 18 21:30:12 CEST 2026
+ * XML source: src/main/resources/desc/type/NamedEntityScore.xml
+ * @generated */
+public class NamedEntityScore extends Annotation {
+  /** @generated
+   * @ordered 
+   */
+  @SuppressWarnings ("hiding")
+  public final static int typeIndexID = JCasRegistry.register(NamedEntityScore.class);
+  /** @generated
+   * @ordered 
+   */
+  @SuppressWarnings ("hiding")
+  public final static int type = typeIndexID;
+  /** @generated
+   * @return index of the type  
+   */
+  @Override
+  public              int getTypeIndexID() {return typeIndexID;}
+ 
+  /** Never called.  Disable default constructor
+   * @generated */
+  protected NamedEntityScore() {/* intentionally empty block */}
+    
+  /** Internal - constructor used by generator 
+   * @generated
+   * @param addr low level Feature Structure reference
+   * @param type the type of this Feature Structure 
+   */
+  public NamedEntityScore(int addr, TOP_Type type) {
+    super(addr, type);
+    readObject();
+  }
+  
+  /** @generated
+   * @param jcas JCas to which this Feature Structure belongs 
+   */
+  public NamedEntityScore(JCas jcas) {
+    super(jcas);
+    readObject();   
+  } 
+
+  /** @generated
+   * @param jcas JCas to which this Feature Structure belongs
+   * @param begin offset to the begin spot in the SofA
+   * @param end offset to the end spot in the SofA 
+  */  
+  public NamedEntityScore(JCas jcas, int begin, int end) {
+    super(jcas);
+    setBegin(begin);
+    setEnd(end);
+    readObject();
+  }   
+
+  /** 
+   * <!-- begin-user-doc -->
+   * Write your own initialization here
+   * <!-- end-user-doc -->
+   *
+   * @generated modifiable 
+   */
+  private void readObject() {/*default - does nothing empty block */}
+     
+ 
+    
+  //*--------------*
+  //* Feature: Score
+
+  /** getter for Score - gets 
+   * @generated
+   * @return value of the feature 
+   */
+  public double getScore() {
+    if (NamedEntityScore_Type.featOkTst && ((NamedEntityScore_Type)jcasType).casFeat_Score == null)
+      jcasType.jcas.throwFeatMissing("Score", "de.tu.darmstadt.lt.ner.types.NamedEntityScore");
+    return jcasType.ll_cas.ll_getDoubleValue(addr, ((NamedEntityScore_Type)jcasType).casFeatCode_Score);}
+    
+  /** setter for Score - sets  
+   * @generated
+   * @param v value to set into the feature 
+   */
+  public void setScore(double v) {
+    if (NamedEntityScore_Type.featOkTst && ((NamedEntityScore_Type)jcasType).casFeat_Score == null)
+      jcasType.jcas.throwFeatMissing("Score", "de.tu.darmstadt.lt.ner.types.NamedEntityScore");
+    jcasType.ll_cas.ll_setDoubleValue(addr, ((NamedEntityScore_Type)jcasType).casFeatCode_Score, v);}    
+  }
+
+    
\ No newline at end of file
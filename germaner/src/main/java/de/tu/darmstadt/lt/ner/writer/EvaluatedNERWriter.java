@@ -25,17 +25,21 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.fit.component.JCasConsumer_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 
 import de.tu.darmstadt.lt.ner.types.GoldNamedEntity;
+import de.tu.darmstadt.lt.ner.types.NamedEntityScore;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 
@@ -58,6 +62,14 @@ public class EvaluatedNERWriter
     @ConfigurationParameter(name = SENTENCES_ID, mandatory = false)
     private List<String> sentencesId = null;
 
+    /**
+     * append the probability of the predicted label, from the {@link NamedEntityScore} annotations
+     * of the NERAnnotator, as an extra column
+     */
+    public static final String WRITE_SCORES = "writeScores";
+    @ConfigurationParameter(name = WRITE_SCORES, mandatory = false)
+    private boolean writeScores = false;
+
     public static final String LF = System.getProperty("line.separator");
     public static final String TAB = "\t";
     private static final String ORG = "ORG";
@@ -69,20 +81,40 @@ public class EvaluatedNERWriter
     private static final String TYPE_SEP = "$";
     private static final String ENT_SEP = ",";
 
+    // the output of all CASes goes to one file, in the order of the CASes
+    private FileWriter outputWriter;
+    private FileWriter nodOutputWriter;
+    private int sentenceIndex;
+
+    @Override
+    public void initialize(UimaContext context)
+        throws ResourceInitializationException
+    {
+        super.initialize(context);
+        outputWriter = null;
+        nodOutputWriter = null;
+        sentenceIndex = 0;
+    }
+
     @Override
     public void process(JCas jCas)
         throws AnalysisEngineProcessException
     {
         try {
-            FileWriter outputWriter = new FileWriter(OutputFile);
+            if (outputWriter == null) {
+                outputWriter = new FileWriter(OutputFile);
+                if (nodOutputFile != null) {
+                    nodOutputWriter = new FileWriter(nodOutputFile);
+                }
+            }
             Map<Sentence, Collection<NamedEntity>> sentencesNER = JCasUtil.indexCovered(jCas,
                     Sentence.class, NamedEntity.class);
 
-            FileWriter nodOutputWriter = null;
-            if (nodOutputFile != null) {
-                nodOutputWriter = new FileWriter(nodOutputFile);
+            Map<NamedEntity, Collection<NamedEntityScore>> nerScores = null;
+            if (writeScores) {
+                nerScores = JCasUtil.indexCovered(jCas, NamedEntity.class,
+                        NamedEntityScore.class);
             }
-            int sentenceIndex = 0;
 
             List<Sentence> sentences = new ArrayList<Sentence>(sentencesNER.keySet());
             // sort sentences by sentence
@@ -115,6 +147,11 @@ public class EvaluatedNERWriter
                     }
                     sb.append(" ");
                     sb.append(neAnnotation.getValue());
+                    if (nerScores != null && !nerScores.get(neAnnotation).isEmpty()) {
+                        sb.append(" ");
+                        sb.append(String.format(Locale.ROOT, "%.4f",
+                                nerScores.get(neAnnotation).iterator().next().getScore()));
+                    }
                     sb.append(LF);
                     outputWriter.write(sb.toString());
 
@@ -172,17 +209,31 @@ public class EvaluatedNERWriter
                 }
                 sentenceIndex++;
             }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void collectionProcessComplete()
+        throws AnalysisEngineProcessException
+    {
+        super.collectionProcessComplete();
+        if (outputWriter == null) {
+            return;
+        }
+        try {
             outputWriter.close();
             if (nodOutputWriter != null) {
                 nodOutputWriter.close();
             }
-
-            getContext().getLogger().log(Level.INFO,
-                    "Output written to: " + OutputFile.getAbsolutePath());
         }
         catch (IOException e) {
-            e.printStackTrace();
+            throw new AnalysisEngineProcessException(e);
         }
+        getContext().getLogger().log(Level.INFO,
+                "Output written to: " + OutputFile.getAbsolutePath());
     }
 
     private String listNames(List<String> aNameLists)
@@ -191,4 +191,26 @@ public abstract class CleartkSequenceAnnotator<OUTCOME_TYPE> extends JCasAnnotat
     return this.classifier.classify(instanceFeaturesMap, featureFile);
   }
 
+  /**
+   * Like {@link #classify(Map, File)}, and adds the score of every outcome to <code>scores</code>;
+   * requires a {@link ScoredSequenceClassifier}.
+   */
+  protected List<OUTCOME_TYPE> classify(
+      Map<Integer, List<Instance<OUTCOME_TYPE>>> instances,
+      File featureFile,
+      List<Double> scores) throws CleartkProcessingException {
+    Map<Integer, List<List<Feature>>> instanceFeaturesMap = new LinkedHashMap<Integer, List<List<Feature>>>();
+    for (int i : instances.keySet()) {
+      List<List<Feature>> instanceFeatures = new ArrayList<List<Feature>>();
+      for (Instance<OUTCOME_TYPE> instance : instances.get(i)) {
+        instanceFeatures.add(instance.getFeatures());
+      }
+      instanceFeaturesMap.put(i, instanceFeatures);
+    }
+    return ((ScoredSequenceClassifier<OUTCOME_TYPE>) this.classifier).classify(
+        instanceFeaturesMap,
+        featureFile,
+        scores);
+  }
+
 }
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml;
+
+import java.util.List;
+
+/**
+ * A sequence classifier that can decode under {@link SequenceConstraints}, so that it only
+ * considers valid outcomes at every element. If the constraints leave no outcome for an element,
+ * e.g. because the tag dictionary contradicts the BIO rules, the element is decoded without its
+ * tag dictionary entry, and if that does not help, without any constraint.
+ */
+public interface ConstrainedSequenceClassifier<OUTCOME_TYPE> extends
+    SequenceClassifier<OUTCOME_TYPE> {
+
+  public List<OUTCOME_TYPE> classify(List<List<Feature>> features, SequenceConstraints constraints)
+      throws CleartkProcessingException;
+}
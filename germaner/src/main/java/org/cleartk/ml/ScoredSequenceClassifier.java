@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sequence classifier that can report how confident it is in each outcome it assigns, e.g. the
+ * marginal probability of the outcome, at a small extra cost over classification.
+ */
+public interface ScoredSequenceClassifier<OUTCOME_TYPE> extends SequenceClassifier<OUTCOME_TYPE> {
+
+  /**
+   * Classifies like {@link SequenceClassifier#classify(Map, File)} and adds the score of every
+   * returned outcome to <code>scores</code>, so that both lists have the same size. The
+   * <code>null</code> outcomes separating sequences get a score of 0.
+   */
+  public List<OUTCOME_TYPE> classify(
+      Map<Integer, List<List<Feature>>> features,
+      File featureFile,
+      List<Double> scores) throws CleartkProcessingException;
+}
@@ -51,7 +51,8 @@ public interface SequenceClassifier<OUTCOME_TYPE> {
    * 
    * @param features
    *          a list of features for each member in the sequence
-   * @return a list of the classifications made.
+   * @return a list of the classifications made, the outcomes of consecutive sequences separated by
+   *         one <code>null</code> outcome.
    */
   public List<OUTCOME_TYPE> classify(Map<Integer, List<List<Feature>>> features, File featureFile)
       throws CleartkProcessingException;
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Restricts the outcomes a {@link ConstrainedSequenceClassifier} may assign to a sequence. With
+ * BIO transitions, an I-X outcome must follow B-X or I-X and cannot start the sequence. A tag
+ * dictionary restricts single elements to the outcomes they were seen with in the training data;
+ * elements without an entry may take any outcome.
+ */
+public class SequenceConstraints {
+
+  private static final String INSIDE = "I-";
+
+  private static final String BEGIN = "B-";
+
+  private final boolean bioTransitions;
+
+  private final List<Set<String>> allowedOutcomes;
+
+  /**
+   * @param bioTransitions
+   *          whether the BIO transition rules apply
+   * @param allowedOutcomes
+   *          the allowed outcomes per element, with <code>null</code> for elements that may take any
+   *          outcome; may be <code>null</code> itself
+   */
+  public SequenceConstraints(boolean bioTransitions, List<Set<String>> allowedOutcomes) {
+    this.bioTransitions = bioTransitions;
+    this.allowedOutcomes = allowedOutcomes;
+  }
+
+  public boolean hasBioTransitions() {
+    return bioTransitions;
+  }
+
+  public boolean isAllowedStart(String outcome) {
+    return !bioTransitions || !outcome.startsWith(INSIDE);
+  }
+
+  public boolean isAllowedTransition(String previous, String outcome) {
+    if (!bioTransitions || !outcome.startsWith(INSIDE)) {
+      return true;
+    }
+    return previous.equals(outcome)
+        || previous.equals(BEGIN + outcome.substring(INSIDE.length()));
+  }
+
+  /**
+   * @return whether element t is restricted by the tag dictionary
+   */
+  public boolean isRestricted(int t) {
+    return allowedOutcomes != null && t < allowedOutcomes.size() && allowedOutcomes.get(t) != null;
+  }
+
+  public boolean isAllowed(int t, String outcome) {
+    return !isRestricted(t) || allowedOutcomes.get(t).contains(outcome);
+  }
+}
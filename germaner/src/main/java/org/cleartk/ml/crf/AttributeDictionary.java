@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A read-only map from attribute names to the attribute indices of a {@link CrfModel}, stored in a
+ * binary file that is memory-mapped instead of read, so that loading a model with millions of
+ * attributes neither decodes nor hashes their names up front.
+ * <p>
+ * The file holds the names as a sorted pool of UTF-8 strings with offsets, and a minimal perfect
+ * hash built with the hash-and-displace method: a first hash picks a bucket, whose displacement
+ * seed makes a second hash put every name of the bucket into its own slot. A lookup therefore
+ * hashes the name twice and compares it with at most one name of the pool.
+ *
+ * <pre>
+ * int magic, version, numNames, numBuckets, tableSize
+ * int[numBuckets] seeds
+ * int[tableSize]  slots: pool position, or -1
+ * int[numNames]   pool position to attribute index
+ * int[numNames]   attribute index to pool position
+ * int[numNames + 1] pool offsets
+ * byte[] pool
+ * </pre>
+ */
+public class AttributeDictionary {
+
+  private static final int MAGIC = 0x4A434144; // "JCAD"
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_INTS = 5;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int MAX_SEED = 1 << 24;
+
+  private final int numNames;
+
+  private final int numBuckets;
+
+  private final int tableSize;
+
+  private final IntBuffer seeds;
+
+  private final IntBuffer slots;
+
+  private final IntBuffer indices;
+
+  private final IntBuffer positions;
+
+  private final IntBuffer offsets;
+
+  private final ByteBuffer pool;
+
+  private AttributeDictionary(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("not a CRF attribute dictionary");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("unsupported CRF attribute dictionary version " + buffer.getInt(4));
+    }
+    numNames = buffer.getInt(8);
+    numBuckets = buffer.getInt(12);
+    tableSize = buffer.getInt(16);
+    int position = HEADER_INTS * 4;
+    seeds = slice(buffer, position, numBuckets);
+    position += numBuckets * 4;
+    slots = slice(buffer, position, tableSize);
+    position += tableSize * 4;
+    indices = slice(buffer, position, numNames);
+    position += numNames * 4;
+    positions = slice(buffer, position, numNames);
+    position += numNames * 4;
+    offsets = slice(buffer, position, numNames + 1);
+    position += (numNames + 1) * 4;
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(position);
+    pool = duplicate.slice();
+  }
+
+  private static IntBuffer slice(ByteBuffer buffer, int position, int length) {
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(position);
+    duplicate.limit(position + length * 4);
+    return duplicate.slice().asIntBuffer();
+  }
+
+  /**
+   * Maps the dictionary file into memory; pages are only read when lookups touch them.
+   */
+  public static AttributeDictionary open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      return map(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads the dictionary from a buffer holding the file contents from its current position on,
+   * e.g. a section of a mapped model bundle. The buffer is not copied.
+   */
+  public static AttributeDictionary map(ByteBuffer buffer) throws IOException {
+    return new AttributeDictionary(buffer.slice());
+  }
+
+  public int size() {
+    return numNames;
+  }
+
+  /**
+   * @return the attribute index of the name, or -1 if the model does not know it
+   */
+  public int getIndex(String name) {
+    if (numNames == 0) {
+      return -1;
+    }
+    byte[] bytes = name.getBytes(UTF_8);
+    int bucket = (int) ((hash(bytes, 0) & 0xFFFFFFFFL) % numBuckets);
+    int slot = (int) ((hash(bytes, seeds.get(bucket)) & 0xFFFFFFFFL) % tableSize);
+    int position = slots.get(slot);
+    if (position < 0 || !equals(position, bytes)) {
+      return -1;
+    }
+    return indices.get(position);
+  }
+
+  public String getName(int index) {
+    int position = positions.get(index);
+    int start = offsets.get(position);
+    byte[] bytes = new byte[offsets.get(position + 1) - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = pool.get(start + i);
+    }
+    return new String(bytes, UTF_8);
+  }
+
+  private boolean equals(int position, byte[] bytes) {
+    int start = offsets.get(position);
+    if (offsets.get(position + 1) - start != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (pool.get(start + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes a dictionary for the attributes of the model.
+   */
+  public static void write(File file, CrfModel model) throws IOException {
+    int n = model.getNumAttributes();
+    final byte[][] names = new byte[n][];
+    Integer[] order = new Integer[n];
+    for (int a = 0; a < n; a++) {
+      names[a] = model.getAttribute(a).getBytes(UTF_8);
+      order[a] = a;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return compareBytes(names[a], names[b]);
+      }
+    });
+    int[] indices = new int[n];
+    int[] positions = new int[n];
+    int[] offsets = new int[n + 1];
+    byte[][] pool = new byte[n][];
+    for (int p = 0; p < n; p++) {
+      indices[p] = order[p];
+      positions[order[p]] = p;
+      pool[p] = names[order[p]];
+      offsets[p + 1] = offsets[p] + pool[p].length;
+    }
+
+    // hash and displace: place the largest buckets first, while the table is still empty
+    int numBuckets = Math.max(1, n / 4);
+    int tableSize = Math.max(1, n + n / 4);
+    int[] seeds;
+    int[] slots;
+    while (true) {
+      seeds = new int[numBuckets];
+      slots = new int[tableSize];
+      if (place(pool, numBuckets, tableSize, seeds, slots)) {
+        break;
+      }
+      tableSize += tableSize / 8 + 1;
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(n);
+      out.writeInt(numBuckets);
+      out.writeInt(tableSize);
+      for (int[] ints : new int[][] { seeds, slots, indices, positions, offsets }) {
+        for (int i : ints) {
+          out.writeInt(i);
+        }
+      }
+      for (byte[] name : pool) {
+        out.write(name);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static boolean place(byte[][] pool, int numBuckets, int tableSize, int[] seeds, int[] slots) {
+    List<List<Integer>> buckets = new ArrayList<List<Integer>>(numBuckets);
+    for (int b = 0; b < numBuckets; b++) {
+      buckets.add(new ArrayList<Integer>());
+    }
+    for (int p = 0; p < pool.length; p++) {
+      buckets.get((int) ((hash(pool[p], 0) & 0xFFFFFFFFL) % numBuckets)).add(p);
+    }
+    Integer[] bucketOrder = new Integer[numBuckets];
+    for (int b = 0; b < numBuckets; b++) {
+      bucketOrder[b] = b;
+    }
+    final List<List<Integer>> sizes = buckets;
+    Arrays.sort(bucketOrder, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return sizes.get(b).size() - sizes.get(a).size();
+      }
+    });
+    Arrays.fill(slots, -1);
+    int[] bucketSlots = new int[pool.length];
+    for (int b : bucketOrder) {
+      List<Integer> bucket = buckets.get(b);
+      if (bucket.isEmpty()) {
+        break;
+      }
+      boolean placed = false;
+      for (int seed = 1; seed < MAX_SEED && !placed; seed++) {
+        placed = true;
+        for (int i = 0; i < bucket.size(); i++) {
+          int slot = (int) ((hash(pool[bucket.get(i)], seed) & 0xFFFFFFFFL) % tableSize);
+          boolean taken = slots[slot] >= 0;
+          for (int j = 0; j < i && !taken; j++) {
+            taken = bucketSlots[j] == slot;
+          }
+          if (taken) {
+            placed = false;
+            break;
+          }
+          bucketSlots[i] = slot;
+        }
+        if (placed) {
+          seeds[b] = seed;
+          for (int i = 0; i < bucket.size(); i++) {
+            slots[bucketSlots[i]] = bucket.get(i);
+          }
+        }
+      }
+      if (!placed) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int compareBytes(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  /**
+   * MurmurHash3 (32 bit) of the bytes.
+   */
+  @SuppressWarnings("fallthrough")
+  static int hash(byte[] bytes, int seed) {
+    int h = seed;
+    int i = 0;
+    for (; i + 4 <= bytes.length; i += 4) {
+      int k = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16
+          | (bytes[i + 3] & 0xFF) << 24;
+      h ^= mixK(k);
+      h = Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+    }
+    int k = 0;
+    switch (bytes.length - i) {
+      case 3:
+        k ^= (bytes[i + 2] & 0xFF) << 16;
+        // fall through
+      case 2:
+        k ^= (bytes[i + 1] & 0xFF) << 8;
+        // fall through
+      case 1:
+        k ^= bytes[i] & 0xFF;
+        h ^= mixK(k);
+    }
+    h ^= bytes.length;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private static int mixK(int k) {
+    k *= 0xCC9E2D51;
+    k = Integer.rotateLeft(k, 15);
+    return k * 0x1B873593;
+  }
+}
@@ -0,0 +1,702 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.encoder.features.NameNumber;
+
+/**
+ * A linear-chain CRF model with sparse state features and dense label transitions, laid out the
+ * same way as a CRFsuite 1st-order model: a state feature exists only for an (attribute, label)
+ * pair that was observed in the training data.
+ * <p>
+ * The weight vector starts with the <code>numLabels * numLabels</code> transition weights (indexed
+ * by <code>previous * numLabels + current</code>), followed by one weight per state feature. The
+ * state features of attribute <code>a</code> occupy the range
+ * <code>[attributeOffsets[a], attributeOffsets[a + 1])</code> of {@link #featureLabels}.
+ */
+public class CrfModel {
+
+  private static final int MAGIC = 0x4A435246; // "JCRF"
+
+  private static final int VERSION = 2;
+
+  private final String[] labels;
+
+  // null when the names are looked up in an attribute dictionary instead
+  private final String[] attributes;
+
+  private final AttributeDictionary attributeDictionary;
+
+  private final int[] attributeOffsets;
+
+  private final int[] featureLabels;
+
+  private final double[] weights;
+
+  private Map<String, Integer> labelIndex;
+
+  private Map<String, Integer> attributeIndex;
+
+  private double[] expTransitions;
+
+  public CrfModel(
+      String[] labels,
+      String[] attributes,
+      int[] attributeOffsets,
+      int[] featureLabels,
+      double[] weights) {
+    this(labels, attributes, null, attributeOffsets, featureLabels, weights);
+  }
+
+  private CrfModel(
+      String[] labels,
+      String[] attributes,
+      AttributeDictionary attributeDictionary,
+      int[] attributeOffsets,
+      int[] featureLabels,
+      double[] weights) {
+    this.labels = labels;
+    this.attributes = attributes;
+    this.attributeDictionary = attributeDictionary;
+    this.attributeOffsets = attributeOffsets;
+    this.featureLabels = featureLabels;
+    this.weights = weights;
+    int numAttributes = attributes != null ? attributes.length : attributeDictionary.size();
+    if (attributeOffsets.length != numAttributes + 1
+        || weights.length != labels.length * labels.length + featureLabels.length) {
+      throw new IllegalArgumentException("inconsistent CRF model dimensions");
+    }
+  }
+
+  public int getNumLabels() {
+    return labels.length;
+  }
+
+  public String getLabel(int label) {
+    return labels[label];
+  }
+
+  public String[] getLabels() {
+    return labels;
+  }
+
+  public int getLabelIndex(String label) {
+    if (labelIndex == null) {
+      Map<String, Integer> index = new HashMap<String, Integer>();
+      for (int i = 0; i < labels.length; i++) {
+        index.put(labels[i], i);
+      }
+      labelIndex = index;
+    }
+    Integer i = labelIndex.get(label);
+    return i == null ? -1 : i;
+  }
+
+  public int getNumAttributes() {
+    return attributeOffsets.length - 1;
+  }
+
+  public String getAttribute(int attribute) {
+    return attributes != null ? attributes[attribute] : attributeDictionary.getName(attribute);
+  }
+
+  /**
+   * @return the index of the attribute, or -1 if the attribute was never seen in training
+   */
+  public int getAttributeIndex(String attribute) {
+    if (attributeDictionary != null) {
+      return attributeDictionary.getIndex(attribute);
+    }
+    if (attributeIndex == null) {
+      Map<String, Integer> index = new HashMap<String, Integer>(attributes.length * 2);
+      for (int i = 0; i < attributes.length; i++) {
+        index.put(attributes[i], i);
+      }
+      attributeIndex = index;
+    }
+    Integer i = attributeIndex.get(attribute);
+    return i == null ? -1 : i;
+  }
+
+  public int getNumFeatures() {
+    return featureLabels.length;
+  }
+
+  public int[] getAttributeOffsets() {
+    return attributeOffsets;
+  }
+
+  public int[] getFeatureLabels() {
+    return featureLabels;
+  }
+
+  public double[] getWeights() {
+    return weights;
+  }
+
+  public double getTransition(int previous, int current) {
+    return weights[previous * labels.length + current];
+  }
+
+  /**
+   * Maps the encoded features of one token to attribute indices, dropping unknown attributes.
+   */
+  public int[] toAttributes(List<NameNumber> features) {
+    int[] buffer = new int[features.size()];
+    int n = 0;
+    for (NameNumber nn : features) {
+      int a = getAttributeIndex(nn.name);
+      if (a >= 0) {
+        buffer[n++] = a;
+      }
+    }
+    if (n == buffer.length) {
+      return buffer;
+    }
+    int[] result = new int[n];
+    System.arraycopy(buffer, 0, result, 0, n);
+    return result;
+  }
+
+  /**
+   * Adds the state scores of the given token attributes to <code>scores</code>, which must have
+   * one slot per label.
+   */
+  public void addStateScores(int[] tokenAttributes, double[] scores) {
+    int offset = labels.length * labels.length;
+    for (int a : tokenAttributes) {
+      for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+        scores[featureLabels[k]] += weights[offset + k];
+      }
+    }
+  }
+
+  /**
+   * @return a <code>[sequence length][numLabels]</code> matrix of state scores
+   */
+  public double[][] computeStateScores(int[][] sequence) {
+    double[][] scores = new double[sequence.length][labels.length];
+    for (int t = 0; t < sequence.length; t++) {
+      addStateScores(sequence[t], scores[t]);
+    }
+    return scores;
+  }
+
+  /**
+   * Finds the highest-scoring label sequence for the given attribute sequence.
+   *
+   * @return one label index per token
+   */
+  public int[] viterbi(int[][] sequence) {
+    return viterbi(computeStateScores(sequence), null, null, null);
+  }
+
+  /**
+   * Finds the highest-scoring label sequence for the given state scores that satisfies the
+   * constraints. Labels that are not allowed are never expanded, so constraints also make decoding
+   * cheaper. If no label is possible at a token, its label restriction is ignored, and if that
+   * does not help either, the transition restriction as well.
+   *
+   * @param state
+   *          the state scores, see {@link #computeStateScores(int[][])}
+   * @param allowedStart
+   *          which labels may start the sequence, or <code>null</code> for all
+   * @param allowedTransitions
+   *          which transitions are allowed, indexed by <code>previous * numLabels + current</code>,
+   *          or <code>null</code> for all
+   * @param allowedLabels
+   *          which labels are allowed per token, or <code>null</code> (also per token) for all
+   * @return one label index per token
+   */
+  public int[] viterbi(
+      double[][] state,
+      boolean[] allowedStart,
+      boolean[] allowedTransitions,
+      boolean[][] allowedLabels) {
+    int length = state.length;
+    int numLabels = labels.length;
+    int[] path = new int[length];
+    if (length == 0) {
+      return path;
+    }
+    double[] previous = new double[numLabels];
+    double[] current = new double[numLabels];
+    int[][] backPointers = new int[length][numLabels];
+    boolean[] allowed0 = allowedLabels == null ? null : allowedLabels[0];
+    if (!startRow(state[0], allowedStart, allowed0, previous)
+        && !startRow(state[0], allowedStart, null, previous)) {
+      startRow(state[0], null, null, previous);
+    }
+    for (int t = 1; t < length; t++) {
+      boolean[] allowed = allowedLabels == null ? null : allowedLabels[t];
+      if (!relaxRow(previous, state[t], allowedTransitions, allowed, current, backPointers[t])
+          && !relaxRow(previous, state[t], allowedTransitions, null, current, backPointers[t])) {
+        relaxRow(previous, state[t], null, null, current, backPointers[t]);
+      }
+      double[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    int argBest = 0;
+    for (int j = 1; j < numLabels; j++) {
+      if (previous[j] > previous[argBest]) {
+        argBest = j;
+      }
+    }
+    path[length - 1] = argBest;
+    for (int t = length - 1; t > 0; t--) {
+      path[t - 1] = backPointers[t][path[t]];
+    }
+    return path;
+  }
+
+  /**
+   * @return whether any label is possible
+   */
+  private static boolean startRow(
+      double[] state,
+      boolean[] allowedStart,
+      boolean[] allowed,
+      double[] scores) {
+    boolean possible = false;
+    for (int j = 0; j < scores.length; j++) {
+      if ((allowedStart == null || allowedStart[j]) && (allowed == null || allowed[j])) {
+        scores[j] = state[j];
+        possible = true;
+      } else {
+        scores[j] = Double.NEGATIVE_INFINITY;
+      }
+    }
+    return possible;
+  }
+
+  /**
+   * @return whether any label is reachable
+   */
+  private boolean relaxRow(
+      double[] previous,
+      double[] state,
+      boolean[] allowedTransitions,
+      boolean[] allowed,
+      double[] current,
+      int[] backPointers) {
+    int numLabels = labels.length;
+    boolean possible = false;
+    for (int j = 0; j < numLabels; j++) {
+      double best = Double.NEGATIVE_INFINITY;
+      int argBest = 0;
+      if (allowed == null || allowed[j]) {
+        for (int i = 0; i < numLabels; i++) {
+          if (previous[i] == Double.NEGATIVE_INFINITY
+              || (allowedTransitions != null && !allowedTransitions[i * numLabels + j])) {
+            continue;
+          }
+          double score = previous[i] + weights[i * numLabels + j];
+          if (score > best) {
+            best = score;
+            argBest = i;
+          }
+        }
+      }
+      current[j] = best + state[j];
+      backPointers[j] = argBest;
+      possible |= best != Double.NEGATIVE_INFINITY;
+    }
+    return possible;
+  }
+
+  /**
+   * Computes the marginal probability of every label at every token with the forward-backward
+   * algorithm, from the same state scores that {@link #viterbi(double[][], boolean[], boolean[],
+   * boolean[][])} decodes. Scores are exponentiated relative to their maximum and the forward and
+   * backward vectors are rescaled per token, so long sequences neither overflow nor underflow.
+   *
+   * @param state
+   *          the state scores, see {@link #computeStateScores(int[][])}
+   * @return a <code>[sequence length][numLabels]</code> matrix of marginal probabilities
+   */
+  public double[][] marginals(double[][] state) {
+    int length = state.length;
+    int numLabels = labels.length;
+    double[][] marginals = new double[length][numLabels];
+    if (length == 0) {
+      return marginals;
+    }
+    double[] expTransitions = getExpTransitions();
+    double[][] expState = new double[length][numLabels];
+    for (int t = 0; t < length; t++) {
+      double max = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < numLabels; j++) {
+        max = Math.max(max, state[t][j]);
+      }
+      for (int j = 0; j < numLabels; j++) {
+        expState[t][j] = Math.exp(state[t][j] - max);
+      }
+    }
+
+    double[][] alpha = new double[length][numLabels];
+    double[] scale = new double[length];
+    System.arraycopy(expState[0], 0, alpha[0], 0, numLabels);
+    scale[0] = normalize(alpha[0]);
+    for (int t = 1; t < length; t++) {
+      for (int i = 0; i < numLabels; i++) {
+        double a = alpha[t - 1][i];
+        if (a == 0) {
+          continue;
+        }
+        for (int j = 0; j < numLabels; j++) {
+          alpha[t][j] += a * expTransitions[i * numLabels + j];
+        }
+      }
+      for (int j = 0; j < numLabels; j++) {
+        alpha[t][j] *= expState[t][j];
+      }
+      scale[t] = normalize(alpha[t]);
+    }
+
+    double[] beta = new double[numLabels];
+    double[] nextBeta = new double[numLabels];
+    Arrays.fill(beta, 1.0);
+    for (int t = length - 1; t >= 0; t--) {
+      for (int j = 0; j < numLabels; j++) {
+        marginals[t][j] = alpha[t][j] * beta[j];
+      }
+      normalize(marginals[t]);
+      if (t == 0) {
+        break;
+      }
+      for (int i = 0; i < numLabels; i++) {
+        double b = 0;
+        for (int j = 0; j < numLabels; j++) {
+          b += expTransitions[i * numLabels + j] * expState[t][j] * beta[j];
+        }
+        nextBeta[i] = b / scale[t];
+      }
+      double[] swap = beta;
+      beta = nextBeta;
+      nextBeta = swap;
+    }
+    return marginals;
+  }
+
+  private double[] getExpTransitions() {
+    double[] exp = expTransitions;
+    if (exp == null) {
+      int numTransitions = labels.length * labels.length;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < numTransitions; i++) {
+        max = Math.max(max, weights[i]);
+      }
+      exp = new double[numTransitions];
+      for (int i = 0; i < numTransitions; i++) {
+        exp[i] = Math.exp(weights[i] - max);
+      }
+      expTransitions = exp;
+    }
+    return exp;
+  }
+
+  /**
+   * Scales the values to sum to 1.
+   *
+   * @return the sum before scaling
+   */
+  private static double normalize(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    if (sum > 0) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] /= sum;
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Returns a copy without the state features whose absolute weight is below
+   * <code>minWeight</code> or zero, and without the attributes that have no state feature left.
+   * The transitions are kept.
+   */
+  public CrfModel prune(double minWeight) {
+    int numTransitions = labels.length * labels.length;
+    int numFeatures = 0;
+    int numAttributes = 0;
+    for (int a = 0; a < getNumAttributes(); a++) {
+      int kept = 0;
+      for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+        if (keep(weights[numTransitions + k], minWeight)) {
+          kept++;
+        }
+      }
+      numFeatures += kept;
+      numAttributes += kept > 0 ? 1 : 0;
+    }
+    String[] prunedAttributes = new String[numAttributes];
+    int[] prunedOffsets = new int[numAttributes + 1];
+    int[] prunedLabels = new int[numFeatures];
+    double[] prunedWeights = new double[numTransitions + numFeatures];
+    System.arraycopy(weights, 0, prunedWeights, 0, numTransitions);
+    int b = 0;
+    int n = 0;
+    for (int a = 0; a < getNumAttributes(); a++) {
+      int start = n;
+      for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+        double weight = weights[numTransitions + k];
+        if (keep(weight, minWeight)) {
+          prunedLabels[n] = featureLabels[k];
+          prunedWeights[numTransitions + n] = weight;
+          n++;
+        }
+      }
+      if (n > start) {
+        prunedAttributes[b] = getAttribute(a);
+        prunedOffsets[b] = start;
+        b++;
+      }
+    }
+    prunedOffsets[numAttributes] = n;
+    return new CrfModel(labels, prunedAttributes, prunedOffsets, prunedLabels, prunedWeights);
+  }
+
+  private static boolean keep(double weight, double minWeight) {
+    return weight != 0 && Math.abs(weight) >= minWeight;
+  }
+
+  /**
+   * Returns a copy whose state feature weights are rounded to the values that
+   * {@link #write(OutputStream, int)} can store with the given number of bits, so that the copy
+   * tags exactly like the model read back from such a file. Weights that round to zero can then be
+   * removed with {@link #prune(double)}.
+   */
+  public CrfModel quantize(int weightBits) {
+    double scale = quantizationScale(weightBits);
+    double[] quantized = weights.clone();
+    if (scale > 0) {
+      for (int k = labels.length * labels.length; k < quantized.length; k++) {
+        quantized[k] = Math.round(quantized[k] / scale) * scale;
+      }
+    }
+    return new CrfModel(
+        labels,
+        attributes,
+        attributeDictionary,
+        attributeOffsets,
+        featureLabels,
+        quantized);
+  }
+
+  /**
+   * @return the weight of one quantization step, or 0 for unquantized 64 bit weights
+   */
+  private double quantizationScale(int weightBits) {
+    if (weightBits == 64) {
+      return 0;
+    }
+    if (weightBits != 8 && weightBits != 16) {
+      throw new IllegalArgumentException("weights can be stored with 64, 16 or 8 bits, not "
+          + weightBits);
+    }
+    double max = 0;
+    for (int k = labels.length * labels.length; k < weights.length; k++) {
+      max = Math.max(max, Math.abs(weights[k]));
+    }
+    return max / ((1 << (weightBits - 1)) - 1);
+  }
+
+  public void write(File modelFile) throws IOException {
+    write(modelFile, 64);
+  }
+
+  public void write(File modelFile, int weightBits) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(modelFile));
+    try {
+      write(out, weightBits);
+    } finally {
+      out.close();
+    }
+  }
+
+  public void write(OutputStream outputStream) throws IOException {
+    write(outputStream, 64);
+  }
+
+  /**
+   * Writes the model. The transitions are always stored as doubles; the state feature weights are
+   * stored as doubles or, with 16 or 8 bits, as multiples of a common step, see
+   * {@link #quantize(int)}.
+   */
+  public void write(OutputStream outputStream, int weightBits) throws IOException {
+    double scale = quantizationScale(weightBits);
+    if (labels.length > 0xFFFF) {
+      throw new IOException("too many labels: " + labels.length);
+    }
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(weightBits);
+    out.writeInt(labels.length);
+    for (String label : labels) {
+      out.writeUTF(label);
+    }
+    for (int i = 0; i < labels.length * labels.length; i++) {
+      out.writeDouble(weights[i]);
+    }
+    int offset = labels.length * labels.length;
+    out.writeInt(getNumAttributes());
+    out.writeInt(featureLabels.length);
+    if (weightBits != 64) {
+      out.writeDouble(scale);
+    }
+    for (int a = 0; a < getNumAttributes(); a++) {
+      out.writeUTF(getAttribute(a));
+      out.writeInt(attributeOffsets[a + 1] - attributeOffsets[a]);
+      for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+        out.writeShort(featureLabels[k]);
+        double weight = weights[offset + k];
+        if (weightBits == 64) {
+          out.writeDouble(weight);
+        } else {
+          long q = scale > 0 ? Math.round(weight / scale) : 0;
+          if (weightBits == 16) {
+            out.writeShort((int) q);
+          } else {
+            out.writeByte((int) q);
+          }
+        }
+      }
+    }
+    out.flush();
+  }
+
+  public static CrfModel read(File modelFile) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(modelFile));
+    try {
+      return read(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads a model from the stream without closing it, so that it can be used on a jar entry.
+   * Models written before weights could be quantized (version 1) are read as well.
+   */
+  public static CrfModel read(InputStream inputStream) throws IOException {
+    return read(inputStream, null);
+  }
+
+  /**
+   * Like {@link #read(InputStream)}, but the attribute names in the stream are skipped and looked
+   * up in the given dictionary, if any, which must have been written for this model.
+   */
+  public static CrfModel read(InputStream inputStream, AttributeDictionary attributeDictionary)
+      throws IOException {
+    DataInputStream in = new DataInputStream(inputStream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a CRF model file");
+    }
+    int version = in.readInt();
+    if (version != 1 && version != VERSION) {
+      throw new IOException("unsupported CRF model version " + version);
+    }
+    int weightBits = version == 1 ? 64 : in.readInt();
+    String[] labels = new String[in.readInt()];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = in.readUTF();
+    }
+    int numTransitions = labels.length * labels.length;
+    double[] transitions = new double[numTransitions];
+    for (int i = 0; i < numTransitions; i++) {
+      transitions[i] = in.readDouble();
+    }
+    int numAttributes = in.readInt();
+    if (attributeDictionary != null && attributeDictionary.size() != numAttributes) {
+      throw new IOException("the attribute dictionary has " + attributeDictionary.size()
+          + " attributes, but the model " + numAttributes);
+    }
+    String[] attributes = attributeDictionary == null ? new String[numAttributes] : null;
+    int numFeatures = in.readInt();
+    double scale = weightBits == 64 ? 0 : in.readDouble();
+    int[] attributeOffsets = new int[numAttributes + 1];
+    int[] featureLabels = new int[numFeatures];
+    double[] weights = new double[numTransitions + numFeatures];
+    System.arraycopy(transitions, 0, weights, 0, numTransitions);
+    int k = 0;
+    for (int a = 0; a < numAttributes; a++) {
+      if (attributes != null) {
+        attributes[a] = in.readUTF();
+      } else {
+        skipFully(in, in.readUnsignedShort());
+      }
+      int n = in.readInt();
+      attributeOffsets[a] = k;
+      for (int i = 0; i < n; i++, k++) {
+        featureLabels[k] = version == 1 ? in.readInt() : in.readUnsignedShort();
+        switch (weightBits) {
+          case 64:
+            weights[numTransitions + k] = in.readDouble();
+            break;
+          case 16:
+            weights[numTransitions + k] = in.readShort() * scale;
+            break;
+          case 8:
+            weights[numTransitions + k] = in.readByte() * scale;
+            break;
+          default:
+            throw new IOException("unsupported weight size " + weightBits);
+        }
+      }
+    }
+    attributeOffsets[numAttributes] = k;
+    return new CrfModel(
+        labels,
+        attributes,
+        attributeDictionary,
+        attributeOffsets,
+        featureLabels,
+        weights);
+  }
+
+  private static void skipFully(DataInputStream in, int n) throws IOException {
+    while (n > 0) {
+      int skipped = in.skipBytes(n);
+      if (skipped <= 0) {
+        in.readByte();
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarInputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.crfsuite.AttributeWhitelist;
+import org.cleartk.ml.crfsuite.CrfSuiteStringOutcomeClassifier;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.cleartk.ml.jar.SequenceJarClassifierFactory;
+import org.cleartk.util.ReflectionUtil;
+
+/**
+ * Loads sequence classifiers like the {@link SequenceJarClassifierFactory}, but when model.jar is
+ * a file with an {@link AttributeDictionary} next to it, a Java CRF model maps the dictionary
+ * instead of reading its attribute names. Other models are loaded as usual; a CRFsuite model with
+ * an {@link AttributeWhitelist} next to model.jar filters the attributes it tags with.
+ */
+public class CrfSequenceJarClassifierFactory<OUTCOME_TYPE> extends
+    SequenceJarClassifierFactory<OUTCOME_TYPE> {
+
+  private String jarPath;
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+    super.initialize(context);
+    jarPath = (String) context.getConfigParameterValue(PARAM_CLASSIFIER_JAR_PATH);
+  }
+
+  @Override
+  public void setClassifierJarPath(String classifierJarPath) {
+    super.setClassifierJarPath(classifierJarPath);
+    jarPath = classifierJarPath;
+  }
+
+  @Override
+  public SequenceClassifier<OUTCOME_TYPE> createClassifier() throws IOException {
+    File jarFile = jarPath == null ? null : new File(jarPath);
+    if (jarFile == null || !jarFile.isFile()) {
+      return super.createClassifier();
+    }
+    File dictionaryFile = new File(
+        jarFile.getAbsoluteFile().getParentFile(),
+        CrfStringOutcomeClassifierBuilder.ATTRIBUTES_NAME);
+    SequenceClassifier<OUTCOME_TYPE> classifier;
+    if (!dictionaryFile.exists()) {
+      classifier = super.createClassifier();
+    } else {
+      InputStream stream = new BufferedInputStream(new FileInputStream(jarFile));
+      try {
+        JarInputStream modelStream = new JarInputStream(stream);
+        JarClassifierBuilder<?> builder = JarClassifierBuilder.fromManifest(
+            modelStream.getManifest());
+        if (builder instanceof CrfStringOutcomeClassifierBuilder) {
+          ((CrfStringOutcomeClassifierBuilder) builder).setAttributeDictionary(dictionaryFile);
+        }
+        classifier = ReflectionUtil.uncheckedCast(builder.loadClassifier(modelStream));
+      } finally {
+        stream.close();
+      }
+    }
+    File whitelistFile = new File(
+        jarFile.getAbsoluteFile().getParentFile(),
+        AttributeWhitelist.FILE_NAME);
+    if (classifier instanceof CrfSuiteStringOutcomeClassifier && whitelistFile.exists()) {
+      ((CrfSuiteStringOutcomeClassifier) classifier).setAttributeWhitelist(
+          AttributeWhitelist.read(whitelistFile));
+    }
+    return classifier;
+  }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.ConstrainedSequenceClassifier;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.ScoredSequenceClassifier;
+import org.cleartk.ml.SequenceConstraints;
+import org.cleartk.ml.encoder.features.FeaturesEncoder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.encoder.outcome.OutcomeEncoder;
+import org.cleartk.ml.jar.SequenceClassifier_ImplBase;
+
+/**
+ * Tags sequences in-process with a {@link CrfModel} trained by the {@link CrfTrainer}, instead of
+ * writing a feature file and calling the CRFsuite binary.
+ */
+public class CrfStringOutcomeClassifier extends
+    SequenceClassifier_ImplBase<List<NameNumber>, String, String> implements
+    ConstrainedSequenceClassifier<String>, ScoredSequenceClassifier<String> {
+
+  protected CrfModel model;
+
+  private boolean[] bioStart;
+
+  private boolean[] bioTransitions;
+
+  public CrfStringOutcomeClassifier(
+      FeaturesEncoder<List<NameNumber>> featuresEncoder,
+      OutcomeEncoder<String, String> outcomeEncoder,
+      CrfModel model) {
+    super(featuresEncoder, outcomeEncoder);
+    this.model = model;
+  }
+
+  public CrfModel getModel() {
+    return model;
+  }
+
+  @Override
+  public List<String> classify(List<List<Feature>> features) throws CleartkProcessingException {
+    List<String> outcomes = new ArrayList<String>(features.size());
+    for (int label : model.viterbi(encode(features))) {
+      outcomes.add(outcomeEncoder.decode(model.getLabel(label)));
+    }
+    return outcomes;
+  }
+
+  /**
+   * Returns the marginal probability of every outcome for every member of the sequence.
+   */
+  @Override
+  public List<Map<String, Double>> score(List<List<Feature>> features)
+      throws CleartkProcessingException {
+    double[][] marginals = model.marginals(model.computeStateScores(encode(features)));
+    List<Map<String, Double>> scores = new ArrayList<Map<String, Double>>(marginals.length);
+    for (double[] tokenMarginals : marginals) {
+      Map<String, Double> tokenScores = new LinkedHashMap<String, Double>();
+      for (int j = 0; j < tokenMarginals.length; j++) {
+        tokenScores.put(outcomeEncoder.decode(model.getLabel(j)), tokenMarginals[j]);
+      }
+      scores.add(tokenScores);
+    }
+    return scores;
+  }
+
+  @Override
+  public List<String> classify(List<List<Feature>> features, SequenceConstraints constraints)
+      throws CleartkProcessingException {
+    int numLabels = model.getNumLabels();
+    boolean[] allowedStart = null;
+    boolean[] allowedTransitions = null;
+    if (constraints.hasBioTransitions()) {
+      if (bioTransitions == null) {
+        boolean[] start = new boolean[numLabels];
+        boolean[] transitions = new boolean[numLabels * numLabels];
+        for (int j = 0; j < numLabels; j++) {
+          start[j] = constraints.isAllowedStart(model.getLabel(j));
+          for (int i = 0; i < numLabels; i++) {
+            transitions[i * numLabels + j] = constraints.isAllowedTransition(
+                model.getLabel(i),
+                model.getLabel(j));
+          }
+        }
+        bioStart = start;
+        bioTransitions = transitions;
+      }
+      allowedStart = bioStart;
+      allowedTransitions = bioTransitions;
+    }
+    boolean[][] allowedLabels = new boolean[features.size()][];
+    for (int t = 0; t < allowedLabels.length; t++) {
+      if (constraints.isRestricted(t)) {
+        allowedLabels[t] = new boolean[numLabels];
+        for (int j = 0; j < numLabels; j++) {
+          allowedLabels[t][j] = constraints.isAllowed(t, model.getLabel(j));
+        }
+      }
+    }
+    int[] labels = model.viterbi(
+        model.computeStateScores(encode(features)),
+        allowedStart,
+        allowedTransitions,
+        allowedLabels);
+    List<String> outcomes = new ArrayList<String>(labels.length);
+    for (int label : labels) {
+      outcomes.add(outcomeEncoder.decode(model.getLabel(label)));
+    }
+    return outcomes;
+  }
+
+  /**
+   * Classifies several sequences, separated by a <code>null</code> outcome.
+   */
+  @Override
+  public List<String> classify(Map<Integer, List<List<Feature>>> features, File featureFile)
+      throws CleartkProcessingException {
+    List<String> outcomes = new ArrayList<String>();
+    boolean first = true;
+    for (List<List<Feature>> sequence : features.values()) {
+      if (!first) {
+        outcomes.add(null);
+      }
+      outcomes.addAll(classify(sequence));
+      first = false;
+    }
+    return outcomes;
+  }
+
+  /**
+   * Classifies several sequences like {@link #classify(Map, File)} and adds the marginal
+   * probability of each decoded outcome. The state scores are computed once per sequence and shared
+   * by the Viterbi and the forward-backward pass.
+   */
+  @Override
+  public List<String> classify(
+      Map<Integer, List<List<Feature>>> features,
+      File featureFile,
+      List<Double> scores) throws CleartkProcessingException {
+    List<String> outcomes = new ArrayList<String>();
+    boolean first = true;
+    for (List<List<Feature>> sequence : features.values()) {
+      if (!first) {
+        outcomes.add(null);
+        scores.add(0.0);
+      }
+      first = false;
+      double[][] state = model.computeStateScores(encode(sequence));
+      int[] labels = model.viterbi(state, null, null, null);
+      double[][] marginals = model.marginals(state);
+      for (int t = 0; t < labels.length; t++) {
+        outcomes.add(outcomeEncoder.decode(model.getLabel(labels[t])));
+        scores.add(marginals[t][labels[t]]);
+      }
+    }
+    return outcomes;
+  }
+
+  protected int[][] encode(List<List<Feature>> features) throws CleartkProcessingException {
+    int[][] sequence = new int[features.size()][];
+    for (int t = 0; t < sequence.length; t++) {
+      sequence[t] = model.toAttributes(featuresEncoder.encodeAll(features.get(t)));
+    }
+    return sequence;
+  }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.jar.JarStreams;
+import org.cleartk.ml.jar.SequenceClassifierBuilder_ImplBase;
+
+/**
+ * Trains and packages a {@link CrfStringOutcomeClassifier}. The training data file has the same
+ * name and format as the one of the CRFsuite classifier builder, so a directory written for
+ * CRFsuite can be trained with the Java trainer as well, see {@link #main(String...)}.
+ */
+public class CrfStringOutcomeClassifierBuilder extends
+    SequenceClassifierBuilder_ImplBase<CrfStringOutcomeClassifier, List<NameNumber>, String, String> {
+
+  public static final String MODEL_NAME = "crf.model";
+
+  public static final String TRAINING_NAME = "crfsuite.training";
+
+  /**
+   * The {@link AttributeDictionary} written next to model.jar; classifiers loaded with a model
+   * directory, or with the {@link CrfSequenceJarClassifierFactory}, map it instead of reading the
+   * attribute names from the model.
+   */
+  public static final String ATTRIBUTES_NAME = "crf.attributes";
+
+  static Logger logger = UIMAFramework.getLogger(CrfStringOutcomeClassifierBuilder.class);
+
+  private CrfModel model;
+
+  private File attributeDictionaryFile;
+
+  private AttributeDictionary attributeDictionary;
+
+  @Override
+  public File getTrainingDataFile(File dir) {
+    return new File(dir, TRAINING_NAME);
+  }
+
+  public File getModelFile(File dir) {
+    return new File(dir, MODEL_NAME);
+  }
+
+  public File getAttributeDictionaryFile(File dir) {
+    return new File(dir, ATTRIBUTES_NAME);
+  }
+
+  /**
+   * Makes the classifiers loaded afterwards look attribute names up in the given dictionary.
+   */
+  public void setAttributeDictionary(File attributeDictionaryFile) {
+    this.attributeDictionaryFile = attributeDictionaryFile;
+  }
+
+  /**
+   * Makes the classifiers loaded afterwards look attribute names up in an opened dictionary, e.g.
+   * one mapped from a model bundle.
+   */
+  public void setAttributeDictionary(AttributeDictionary attributeDictionary) {
+    this.attributeDictionary = attributeDictionary;
+  }
+
+  @Override
+  public void trainClassifier(File dir, String... args) throws Exception {
+    logger.log(Level.INFO, "Start learning CRF classifier");
+    CrfTrainer trainer = new CrfTrainer();
+    trainer.setArguments(args);
+    model = trainer.train(getTrainingDataFile(dir));
+    model.write(getModelFile(dir));
+    AttributeDictionary.write(getAttributeDictionaryFile(dir), model);
+    logger.log(Level.INFO, "Finished learning CRF classifier");
+  }
+
+  /**
+   * Writes only the manifest naming this builder, e.g. to switch a directory written by the
+   * CRFsuite data writer over to the Java trainer.
+   */
+  public void saveManifest(File dir) throws IOException {
+    OutputStream out = new FileOutputStream(new File(dir, "MANIFEST.MF"));
+    try {
+      manifest.write(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  @Override
+  protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+    super.packageClassifier(dir, modelStream);
+    JarStreams.putNextJarEntry(modelStream, MODEL_NAME, getModelFile(dir));
+  }
+
+  @Override
+  protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+    super.unpackageClassifier(modelStream);
+    JarStreams.getNextJarEntry(modelStream, MODEL_NAME);
+    if (attributeDictionary != null) {
+      model = CrfModel.read(modelStream, attributeDictionary);
+    } else if (attributeDictionaryFile != null) {
+      model = CrfModel.read(modelStream, AttributeDictionary.open(attributeDictionaryFile));
+    } else {
+      model = CrfModel.read(modelStream);
+    }
+  }
+
+  @Override
+  public CrfStringOutcomeClassifier loadClassifierFromTrainingDirectory(File dir)
+      throws IOException {
+    if (attributeDictionary == null && attributeDictionaryFile == null
+        && getAttributeDictionaryFile(dir).exists()) {
+      attributeDictionaryFile = getAttributeDictionaryFile(dir);
+    }
+    return super.loadClassifierFromTrainingDirectory(dir);
+  }
+
+  @Override
+  protected CrfStringOutcomeClassifier newClassifier() {
+    return new CrfStringOutcomeClassifier(featuresEncoder, outcomeEncoder, model);
+  }
+
+  /**
+   * Trains a model directory, e.g. one written with the CRFsuite data writer, with the Java
+   * trainer and packages it as model.jar.
+   *
+   * <pre>
+   * CrfStringOutcomeClassifierBuilder modelDirectory [-p name=value]...
+   * </pre>
+   */
+  public static void main(String... args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("USAGE: CrfStringOutcomeClassifierBuilder modelDirectory [-p name=value]...");
+      System.exit(1);
+    }
+    File dir = new File(args[0]);
+    String[] trainingArgs = new String[args.length - 1];
+    System.arraycopy(args, 1, trainingArgs, 0, trainingArgs.length);
+    CrfStringOutcomeClassifierBuilder builder = new CrfStringOutcomeClassifierBuilder();
+    builder.saveManifest(dir);
+    builder.trainClassifier(dir, trainingArgs);
+    builder.packageClassifier(dir);
+  }
+}
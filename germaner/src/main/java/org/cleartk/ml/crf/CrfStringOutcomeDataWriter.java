@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import org.cleartk.ml.encoder.features.BooleanEncoder;
+import org.cleartk.ml.encoder.features.NameNumber;
+import org.cleartk.ml.encoder.features.NameNumberFeaturesEncoder;
+import org.cleartk.ml.encoder.features.NumberEncoder;
+import org.cleartk.ml.encoder.features.StringEncoder;
+import org.cleartk.ml.encoder.outcome.StringToStringOutcomeEncoder;
+import org.cleartk.ml.jar.SequenceDataWriter_ImplBase;
+
+/**
+ * Writes the same training data as <code>CrfSuiteStringOutcomeDataWriter</code>, but registers the
+ * {@link CrfStringOutcomeClassifierBuilder} so that <code>Train</code> uses the Java trainer.
+ */
+public class CrfStringOutcomeDataWriter extends
+    SequenceDataWriter_ImplBase<CrfStringOutcomeClassifierBuilder, List<NameNumber>, String, String> {
+
+  private static final String FEATURE_SEPARATOR = "\t";
+
+  public CrfStringOutcomeDataWriter(File outputDirectory) throws FileNotFoundException {
+    super(outputDirectory);
+    NameNumberFeaturesEncoder featuresEncoder = new NameNumberFeaturesEncoder(false, false);
+    featuresEncoder.addEncoder(new NumberEncoder());
+    featuresEncoder.addEncoder(new BooleanEncoder());
+    featuresEncoder.addEncoder(new StringEncoder());
+    this.setFeaturesEncoder(featuresEncoder);
+    this.setOutcomeEncoder(new StringToStringOutcomeEncoder());
+  }
+
+  @Override
+  public void writeEncoded(List<NameNumber> features, String outcome) {
+    this.trainingDataWriter.print(outcome);
+    for (NameNumber nameNumber : features) {
+      this.trainingDataWriter.print(FEATURE_SEPARATOR);
+      this.trainingDataWriter.print(nameNumber.name);
+    }
+    this.trainingDataWriter.println();
+  }
+
+  @Override
+  public void writeEndSequence() {
+    this.trainingDataWriter.println();
+  }
+
+  @Override
+  protected CrfStringOutcomeClassifierBuilder newClassifierBuilder() {
+    return new CrfStringOutcomeClassifierBuilder();
+  }
+}
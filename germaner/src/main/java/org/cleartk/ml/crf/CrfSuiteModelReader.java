@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.crfsuite.CrfSuiteWrapper;
+
+/**
+ * Converts a CRFsuite 1st-order model into a {@link CrfModel} by parsing the output of
+ * <code>crfsuite dump</code>, so that CRFsuite models can be pruned, quantized and tagged
+ * in-process. The dump prints weights with six decimals, which is the only loss.
+ */
+public class CrfSuiteModelReader {
+
+  private static final String ARROW = " --> ";
+
+  public static CrfModel read(File crfsuiteModelFile) throws IOException {
+    return parseDump(new CrfSuiteWrapper().dumpModel(crfsuiteModelFile));
+  }
+
+  static CrfModel parseDump(List<String> lines) throws IOException {
+    List<String> labels = new ArrayList<String>();
+    Map<String, Integer> labelIndex = new LinkedHashMap<String, Integer>();
+    double[] transitions = null;
+    Map<String, List<double[]>> stateFeatures = new LinkedHashMap<String, List<double[]>>();
+    int numFeatures = 0;
+    String section = null;
+    for (String line : lines) {
+      String trimmed = line.trim();
+      if (trimmed.endsWith("= {")) {
+        section = trimmed.substring(0, trimmed.indexOf(' '));
+        if (section.equals("TRANSITIONS")) {
+          transitions = new double[labels.size() * labels.size()];
+        }
+        continue;
+      }
+      if (trimmed.equals("}") || trimmed.isEmpty() || section == null) {
+        continue;
+      }
+      if (section.equals("LABELS")) {
+        String label = trimmed.substring(trimmed.indexOf(": ") + 2);
+        labelIndex.put(label, labels.size());
+        labels.add(label);
+      } else if (section.equals("TRANSITIONS") || section.equals("STATE_FEATURES")) {
+        // (type) from --> to: weight
+        int colon = trimmed.lastIndexOf(": ");
+        int arrow = trimmed.lastIndexOf(ARROW, colon);
+        if (colon < 0 || arrow < 0) {
+          throw new IOException("unexpected line in the CRFsuite model dump: " + line);
+        }
+        String from = trimmed.substring(trimmed.indexOf(") ") + 2, arrow);
+        Integer to = labelIndex.get(trimmed.substring(arrow + ARROW.length(), colon));
+        double weight = Double.parseDouble(trimmed.substring(colon + 2));
+        if (to == null) {
+          throw new IOException("unknown label in the CRFsuite model dump: " + line);
+        }
+        if (section.equals("TRANSITIONS")) {
+          Integer previous = labelIndex.get(from);
+          if (previous == null || transitions == null) {
+            throw new IOException("unknown label in the CRFsuite model dump: " + line);
+          }
+          transitions[previous * labels.size() + to] = weight;
+        } else {
+          List<double[]> features = stateFeatures.get(from);
+          if (features == null) {
+            features = new ArrayList<double[]>();
+            stateFeatures.put(from, features);
+          }
+          features.add(new double[] { to, weight });
+          numFeatures++;
+        }
+      }
+    }
+    if (transitions == null) {
+      transitions = new double[labels.size() * labels.size()];
+    }
+
+    int numTransitions = transitions.length;
+    String[] attributes = new String[stateFeatures.size()];
+    int[] attributeOffsets = new int[attributes.length + 1];
+    int[] featureLabels = new int[numFeatures];
+    double[] weights = new double[numTransitions + numFeatures];
+    System.arraycopy(transitions, 0, weights, 0, numTransitions);
+    int a = 0;
+    int k = 0;
+    for (Map.Entry<String, List<double[]>> entry : stateFeatures.entrySet()) {
+      attributes[a] = entry.getKey();
+      attributeOffsets[a] = k;
+      for (double[] feature : entry.getValue()) {
+        featureLabels[k] = (int) feature[0];
+        weights[numTransitions + k] = feature[1];
+        k++;
+      }
+      a++;
+    }
+    attributeOffsets[attributes.length] = k;
+    return new CrfModel(
+        labels.toArray(new String[labels.size()]),
+        attributes,
+        attributeOffsets,
+        featureLabels,
+        weights);
+  }
+}
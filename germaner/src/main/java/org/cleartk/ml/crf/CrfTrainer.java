@@ -0,0 +1,728 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+/**
+ * Trains a {@link CrfModel} by maximizing the L1/L2-regularized conditional log-likelihood with
+ * L-BFGS (OWL-QN when <code>c1 &gt; 0</code>). The forward-backward pass that computes the
+ * gradient is run in parallel over the training sequences on a fork-join pool; every partition
+ * accumulates into its own gradient buffer and the buffers are summed afterwards.
+ * <p>
+ * Parameters are given in the CRFsuite syntax, e.g. <code>-p c2=1.0 -p max_iterations=100</code>.
+ * Supported are <code>c1</code>, <code>c2</code>, <code>max_iterations</code>,
+ * <code>num_memories</code>, <code>epsilon</code>, <code>period</code>, <code>delta</code>,
+ * <code>max_linesearch</code> and <code>threads</code>. Other CRFsuite options are ignored.
+ * <p>
+ * Training can also stop early. <code>holdout</code> names held-out data in the training data
+ * format. Every <code>holdout_period</code> iterations, the held-out sequences are tagged with the
+ * current weights and their entity F1 is computed. Training stops when the F1 has not improved
+ * for <code>holdout_patience</code> evaluations, and the model keeps the weights with the best F1.
+ * <code>max_seconds</code> stops training after that many seconds.
+ */
+public class CrfTrainer {
+
+  static Logger logger = UIMAFramework.getLogger(CrfTrainer.class);
+
+  private double c1 = 0;
+
+  private double c2 = 1.0;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  private final Lbfgs lbfgs = new Lbfgs();
+
+  private File holdoutFile;
+
+  private int holdoutPeriod = 5;
+
+  private int holdoutPatience = 3;
+
+  private double maxSeconds;
+
+  public void setArguments(String... args) {
+    for (int i = 0; i < args.length; i++) {
+      if ((args[i].equals("-p") || args[i].equals("--set")) && i + 1 < args.length) {
+        String[] parameter = args[++i].split("=", 2);
+        if (parameter.length == 2) {
+          setParameter(parameter[0].trim(), parameter[1].trim());
+        }
+      }
+    }
+  }
+
+  public void setParameter(String name, String value) {
+    if (name.equals("c1")) {
+      c1 = Double.parseDouble(value);
+    } else if (name.equals("c2")) {
+      c2 = Double.parseDouble(value);
+    } else if (name.equals("max_iterations")) {
+      lbfgs.setMaxIterations(Integer.parseInt(value));
+    } else if (name.equals("num_memories")) {
+      lbfgs.setNumMemories(Integer.parseInt(value));
+    } else if (name.equals("epsilon")) {
+      lbfgs.setEpsilon(Double.parseDouble(value));
+    } else if (name.equals("period")) {
+      lbfgs.setPeriod(Integer.parseInt(value));
+    } else if (name.equals("delta")) {
+      lbfgs.setDelta(Double.parseDouble(value));
+    } else if (name.equals("max_linesearch")) {
+      lbfgs.setMaxLinesearch(Integer.parseInt(value));
+    } else if (name.equals("threads")) {
+      threads = Math.max(1, Integer.parseInt(value));
+    } else if (name.equals("holdout")) {
+      holdoutFile = new File(value);
+    } else if (name.equals("holdout_period")) {
+      holdoutPeriod = Math.max(1, Integer.parseInt(value));
+    } else if (name.equals("holdout_patience")) {
+      holdoutPatience = Math.max(1, Integer.parseInt(value));
+    } else if (name.equals("max_seconds")) {
+      maxSeconds = Double.parseDouble(value);
+    } else {
+      logger.log(Level.WARNING, "Ignoring unsupported CRF parameter " + name);
+    }
+  }
+
+  public CrfModel train(File trainingFile) throws IOException {
+    return train(trainingFile, null);
+  }
+
+  /**
+   * Trains on a training file, starting from the weights of an initial model if one is given.
+   */
+  public CrfModel train(File trainingFile, CrfModel initial) throws IOException {
+    logger.log(Level.INFO, "Reading CRF training data from " + trainingFile.getAbsolutePath());
+    CrfTrainingData data = initial == null ? new CrfTrainingData() : CrfTrainingData
+        .startingFrom(initial);
+    data.addAll(trainingFile);
+    CrfTrainingData holdout = null;
+    if (holdoutFile != null) {
+      logger.log(Level.INFO, "Reading held-out data from " + holdoutFile.getAbsolutePath());
+      holdout = CrfTrainingData.read(holdoutFile);
+    }
+    return train(data, holdout, initial);
+  }
+
+  public CrfModel train(CrfTrainingData data) {
+    return train(data, null, null);
+  }
+
+  /**
+   * Trains on the data; if held-out data is given, training stops early when its F1 stops
+   * improving, and the best weights are kept.
+   *
+   * @param initial
+   *          a model to start from, or <code>null</code> to start from zero weights; the data must
+   *          have been created with {@link CrfTrainingData#startingFrom(CrfModel)}
+   */
+  public CrfModel train(CrfTrainingData data, CrfTrainingData holdout, CrfModel initial) {
+    final CrfModel structure = initial == null ? createStructure(data) : createStructure(
+        data,
+        initial);
+    logger.log(Level.INFO, "Training CRF on " + data.size() + " sequences (" + data.getNumTokens()
+        + " tokens), " + structure.getNumLabels() + " labels, " + structure.getNumAttributes()
+        + " attributes, " + structure.getNumFeatures() + " state features, " + threads
+        + " threads");
+    final double[] weights = structure.getWeights();
+    final Holdout heldOut = holdout == null ? null : new Holdout(holdout, structure);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      final long start = System.currentTimeMillis();
+      Objective objective = new Objective(data, structure, pool);
+      lbfgs.setC1(c1);
+      lbfgs.minimize(objective, weights, new Lbfgs.Progress() {
+        long last = start;
+
+        @Override
+        public boolean iteration(int k, double[] x, double fx, double xnorm, double gnorm,
+            double step, int evaluations) {
+          long now = System.currentTimeMillis();
+          int active = 0;
+          for (double w : x) {
+            if (w != 0) {
+              active++;
+            }
+          }
+          logger.log(Level.INFO, "***** Iteration #" + k + " ***** Loss: " + fx
+              + " Feature norm: " + xnorm + " Error norm: " + gnorm + " Active features: "
+              + active + " Line search trials: " + evaluations + " Line search step: " + step
+              + " Seconds required for this iteration: " + (now - last) / 1000.0);
+          last = now;
+          if (heldOut != null) {
+            heldOut.lastIteration = k;
+          }
+          if (heldOut != null && k % holdoutPeriod == 0 && !heldOut.evaluate(k, structure)) {
+            logger.log(Level.INFO, "Stopping: the held-out F1 has not improved for "
+                + holdoutPatience + " evaluations");
+            return false;
+          }
+          if (maxSeconds > 0 && now - start >= maxSeconds * 1000) {
+            logger.log(Level.INFO, "Stopping: the time budget of " + maxSeconds
+                + " seconds is used up");
+            return false;
+          }
+          return true;
+        }
+      });
+      if (heldOut != null) {
+        heldOut.keepBest(structure);
+      }
+      logger.log(Level.INFO, "CRF training finished in " + (System.currentTimeMillis() - start)
+          / 1000.0 + " seconds");
+    } finally {
+      pool.shutdown();
+    }
+    return structure;
+  }
+
+  /**
+   * Evaluates the training objective, the L2-regularized negative log-likelihood of the data, at
+   * the weights of a model trained on it, and stores its gradient in <code>gradient</code>.
+   */
+  public double evaluate(CrfTrainingData data, CrfModel model, double[] gradient) {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      return new Objective(data, model, pool).evaluate(model.getWeights(), gradient);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * The held-out sequences with the attribute indexes of the model being trained, and the best
+   * weights found so far.
+   */
+  private class Holdout {
+
+    private final int[][][] sequences;
+
+    private final List<List<String>> gold;
+
+    private double bestF1 = -1;
+
+    private int bestIteration;
+
+    private double[] bestWeights;
+
+    private int evaluated = -1;
+
+    private int stale;
+
+    int lastIteration;
+
+    Holdout(CrfTrainingData holdout, CrfModel structure) {
+      String[] attributeNames = holdout.getAttributeNames();
+      int[] attributes = new int[attributeNames.length];
+      for (int a = 0; a < attributes.length; a++) {
+        attributes[a] = structure.getAttributeIndex(attributeNames[a]);
+      }
+      String[] labelNames = holdout.getLabelNames();
+      sequences = new int[holdout.size()][][];
+      gold = new ArrayList<List<String>>(holdout.size());
+      for (int i = 0; i < sequences.length; i++) {
+        int[][] sequence = holdout.getSequence(i);
+        sequences[i] = new int[sequence.length][];
+        for (int t = 0; t < sequence.length; t++) {
+          int[] ids = new int[sequence[t].length];
+          int n = 0;
+          for (int a : sequence[t]) {
+            if (attributes[a] >= 0) {
+              ids[n++] = attributes[a];
+            }
+          }
+          sequences[i][t] = Arrays.copyOf(ids, n);
+        }
+        List<String> labels = new ArrayList<String>(sequence.length);
+        for (int label : holdout.getLabels(i)) {
+          labels.add(labelNames[label]);
+        }
+        gold.add(labels);
+      }
+      logger.log(Level.INFO, "Evaluating on " + sequences.length + " held-out sequences every "
+          + holdoutPeriod + " iterations");
+    }
+
+    /**
+     * Tags the held-out data with the current weights.
+     *
+     * @return false if the F1 has not improved for <code>holdout_patience</code> evaluations
+     */
+    boolean evaluate(int iteration, CrfModel model) {
+      long goldEntities = 0;
+      long predictedEntities = 0;
+      long correctEntities = 0;
+      for (int i = 0; i < sequences.length; i++) {
+        List<String> predicted = new ArrayList<String>(sequences[i].length);
+        for (int label : model.viterbi(sequences[i])) {
+          predicted.add(model.getLabel(label));
+        }
+        Set<String> goldChunks = chunks(gold.get(i));
+        Set<String> predictedChunks = chunks(predicted);
+        goldEntities += goldChunks.size();
+        predictedEntities += predictedChunks.size();
+        predictedChunks.retainAll(goldChunks);
+        correctEntities += predictedChunks.size();
+      }
+      double f1 = goldEntities + predictedEntities == 0 ? 0 : 2.0 * correctEntities
+          / (goldEntities + predictedEntities);
+      evaluated = iteration;
+      if (f1 > bestF1) {
+        bestF1 = f1;
+        bestIteration = iteration;
+        bestWeights = model.getWeights().clone();
+        stale = 0;
+      } else {
+        stale++;
+      }
+      logger.log(Level.INFO, "Held-out F1 after iteration #" + iteration + ": " + f1
+          + " (best " + bestF1 + " after iteration #" + bestIteration + ")");
+      return stale < holdoutPatience;
+    }
+
+    /**
+     * Evaluates the final weights if they have not been, and restores the best weights.
+     */
+    void keepBest(CrfModel model) {
+      if (evaluated != lastIteration) {
+        evaluate(lastIteration, model);
+      }
+      if (bestIteration != lastIteration) {
+        double[] weights = model.getWeights();
+        System.arraycopy(bestWeights, 0, weights, 0, weights.length);
+      }
+      logger.log(Level.INFO, "Keeping the weights of iteration #" + bestIteration
+          + " with the best held-out F1 " + bestF1);
+    }
+  }
+
+  /**
+   * Entities of BIO labels as "begin:end:type" strings, counted like the CoNLL script: I- after O
+   * or after an entity of another type starts a new entity.
+   */
+  static Set<String> chunks(List<String> labels) {
+    Set<String> chunks = new HashSet<String>();
+    int begin = -1;
+    String type = null;
+    for (int i = 0; i <= labels.size(); i++) {
+      String label = i < labels.size() ? labels.get(i) : "O";
+      boolean prefixed = label.length() > 1 && label.charAt(1) == '-';
+      String labelType = prefixed ? label.substring(2) : null;
+      boolean inside = prefixed && label.charAt(0) == 'I' && labelType.equals(type);
+      if (type != null && !inside) {
+        chunks.add(begin + ":" + i + ":" + type);
+        type = null;
+      }
+      if (labelType != null && !inside) {
+        begin = i;
+        type = labelType;
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Creates a zero-weight model with one state feature for every (attribute, label) pair seen in
+   * the training data.
+   */
+  static CrfModel createStructure(CrfTrainingData data) {
+    return createStructure(data, new BitSet[data.getNumAttributes()]);
+  }
+
+  /**
+   * Creates a model with the state features of the initial model and those observed in the data,
+   * starting from the weights of the initial model; new features start at zero.
+   */
+  static CrfModel createStructure(CrfTrainingData data, CrfModel initial) {
+    int[] initialOffsets = initial.getAttributeOffsets();
+    int[] initialLabels = initial.getFeatureLabels();
+    BitSet[] observed = new BitSet[data.getNumAttributes()];
+    for (int a = 0; a < initial.getNumAttributes(); a++) {
+      for (int k = initialOffsets[a]; k < initialOffsets[a + 1]; k++) {
+        if (observed[a] == null) {
+          observed[a] = new BitSet(data.getNumLabels());
+        }
+        observed[a].set(initialLabels[k]);
+      }
+    }
+    CrfModel structure = createStructure(data, observed);
+    int numLabels = structure.getNumLabels();
+    int initialNumLabels = initial.getNumLabels();
+    double[] weights = structure.getWeights();
+    double[] initialWeights = initial.getWeights();
+    for (int i = 0; i < initialNumLabels; i++) {
+      for (int j = 0; j < initialNumLabels; j++) {
+        weights[i * numLabels + j] = initial.getTransition(i, j);
+      }
+    }
+    int[] offsets = structure.getAttributeOffsets();
+    int[] featureLabels = structure.getFeatureLabels();
+    for (int a = 0; a < initial.getNumAttributes(); a++) {
+      for (int k = initialOffsets[a]; k < initialOffsets[a + 1]; k++) {
+        // the features of an attribute are ordered by label
+        int f = Arrays.binarySearch(featureLabels, offsets[a], offsets[a + 1], initialLabels[k]);
+        weights[numLabels * numLabels + f] = initialWeights[initialNumLabels * initialNumLabels
+            + k];
+      }
+    }
+    return structure;
+  }
+
+  /**
+   * @param observed
+   *          labels of each attribute that get a state feature in any case
+   */
+  private static CrfModel createStructure(CrfTrainingData data, BitSet[] observed) {
+    int numLabels = data.getNumLabels();
+    int numAttributes = data.getNumAttributes();
+    for (int i = 0; i < data.size(); i++) {
+      int[][] sequence = data.getSequence(i);
+      int[] labels = data.getLabels(i);
+      for (int t = 0; t < sequence.length; t++) {
+        for (int a : sequence[t]) {
+          if (observed[a] == null) {
+            observed[a] = new BitSet(numLabels);
+          }
+          observed[a].set(labels[t]);
+        }
+      }
+    }
+    int[] attributeOffsets = new int[numAttributes + 1];
+    int numFeatures = 0;
+    for (int a = 0; a < numAttributes; a++) {
+      attributeOffsets[a] = numFeatures;
+      numFeatures += observed[a] == null ? 0 : observed[a].cardinality();
+    }
+    attributeOffsets[numAttributes] = numFeatures;
+    int[] featureLabels = new int[numFeatures];
+    int k = 0;
+    for (int a = 0; a < numAttributes; a++) {
+      if (observed[a] != null) {
+        for (int y = observed[a].nextSetBit(0); y >= 0; y = observed[a].nextSetBit(y + 1)) {
+          featureLabels[k++] = y;
+        }
+      }
+    }
+    return new CrfModel(
+        data.getLabelNames(),
+        data.getAttributeNames(),
+        attributeOffsets,
+        featureLabels,
+        new double[numLabels * numLabels + numFeatures]);
+  }
+
+  /**
+   * The L2-regularized negative log-likelihood and its gradient.
+   */
+  private class Objective implements Lbfgs.Function {
+
+    private final CrfTrainingData data;
+
+    private final CrfModel model;
+
+    private final ForkJoinPool pool;
+
+    private final Partition[] partitions;
+
+    Objective(CrfTrainingData data, CrfModel model, ForkJoinPool pool) {
+      this.data = data;
+      this.model = model;
+      this.pool = pool;
+      int numPartitions = Math.max(1, Math.min(threads, data.size()));
+      this.partitions = new Partition[numPartitions];
+      int maxLength = 0;
+      for (int i = 0; i < data.size(); i++) {
+        maxLength = Math.max(maxLength, data.getSequence(i).length);
+      }
+      for (int p = 0; p < numPartitions; p++) {
+        partitions[p] = new Partition(
+            (int) ((long) data.size() * p / numPartitions),
+            (int) ((long) data.size() * (p + 1) / numPartitions),
+            model.getWeights().length,
+            maxLength,
+            model.getNumLabels());
+      }
+    }
+
+    @Override
+    public double evaluate(final double[] x, final double[] g) {
+      // the model shares its weight array with the optimizer, keep it in sync
+      double[] weights = model.getWeights();
+      if (weights != x) {
+        System.arraycopy(x, 0, weights, 0, x.length);
+      }
+      int numLabels = model.getNumLabels();
+      final double[] expTransitions = new double[numLabels * numLabels];
+      for (int i = 0; i < expTransitions.length; i++) {
+        expTransitions[i] = Math.exp(x[i]);
+      }
+      pool.invoke(new PartitionTask(0, partitions.length, expTransitions));
+      pool.invoke(new ReduceTask(g, 0, g.length));
+
+      double loss = 0;
+      for (Partition partition : partitions) {
+        loss += partition.loss;
+      }
+      double norm = 0;
+      for (int i = 0; i < x.length; i++) {
+        norm += x[i] * x[i];
+        g[i] += 2 * c2 * x[i];
+      }
+      return loss + c2 * norm;
+    }
+
+    private class PartitionTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final int from;
+
+      private final int to;
+
+      private final double[] expTransitions;
+
+      PartitionTask(int from, int to, double[] expTransitions) {
+        this.from = from;
+        this.to = to;
+        this.expTransitions = expTransitions;
+      }
+
+      @Override
+      protected void compute() {
+        if (to - from == 1) {
+          partitions[from].compute(data, model, expTransitions);
+        } else {
+          int middle = (from + to) >>> 1;
+          invokeAll(
+              new PartitionTask(from, middle, expTransitions),
+              new PartitionTask(middle, to, expTransitions));
+        }
+      }
+    }
+
+    private class ReduceTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private static final int THRESHOLD = 1 << 16;
+
+      private final double[] g;
+
+      private final int from;
+
+      private final int to;
+
+      ReduceTask(double[] g, int from, int to) {
+        this.g = g;
+        this.from = from;
+        this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+        if (to - from <= THRESHOLD) {
+          for (int i = from; i < to; i++) {
+            double sum = 0;
+            for (Partition partition : partitions) {
+              sum += partition.gradient[i];
+            }
+            g[i] = sum;
+          }
+        } else {
+          int middle = (from + to) >>> 1;
+          invokeAll(new ReduceTask(g, from, middle), new ReduceTask(g, middle, to));
+        }
+      }
+    }
+  }
+
+  /**
+   * A contiguous range of training sequences with its own gradient buffer and forward-backward
+   * workspace.
+   */
+  static class Partition {
+
+    final int from;
+
+    final int to;
+
+    final double[] gradient;
+
+    double loss;
+
+    private final double[][] state;
+
+    private final double[][] alpha;
+
+    private final double[][] beta;
+
+    private final double[] scale;
+
+    Partition(int from, int to, int numWeights, int maxLength, int numLabels) {
+      this.from = from;
+      this.to = to;
+      this.gradient = new double[numWeights];
+      this.state = new double[maxLength][numLabels];
+      this.alpha = new double[maxLength][numLabels];
+      this.beta = new double[maxLength][numLabels];
+      this.scale = new double[maxLength];
+    }
+
+    void compute(CrfTrainingData data, CrfModel model, double[] expTransitions) {
+      Arrays.fill(gradient, 0);
+      loss = 0;
+      for (int i = from; i < to; i++) {
+        loss += accumulate(data.getSequence(i), data.getLabels(i), model, expTransitions);
+      }
+    }
+
+    /**
+     * Runs a scaled forward-backward pass over one sequence, adds the model expectations minus the
+     * observed feature counts to the gradient buffer and returns the negative log-likelihood.
+     */
+    private double accumulate(int[][] sequence, int[] labels, CrfModel model,
+        double[] expTransitions) {
+      int length = sequence.length;
+      int numLabels = model.getNumLabels();
+      int offset = numLabels * numLabels;
+      double[] weights = model.getWeights();
+      int[] attributeOffsets = model.getAttributeOffsets();
+      int[] featureLabels = model.getFeatureLabels();
+
+      // state scores, shifted by their maximum per position before exponentiation
+      double logZ = 0;
+      for (int t = 0; t < length; t++) {
+        double[] s = state[t];
+        Arrays.fill(s, 0);
+        model.addStateScores(sequence[t], s);
+        double max = Double.NEGATIVE_INFINITY;
+        for (int y = 0; y < numLabels; y++) {
+          max = Math.max(max, s[y]);
+        }
+        for (int y = 0; y < numLabels; y++) {
+          s[y] = Math.exp(s[y] - max);
+        }
+        logZ += max;
+      }
+
+      // forward
+      for (int t = 0; t < length; t++) {
+        double[] a = alpha[t];
+        if (t == 0) {
+          System.arraycopy(state[0], 0, a, 0, numLabels);
+        } else {
+          double[] prev = alpha[t - 1];
+          Arrays.fill(a, 0);
+          for (int i = 0; i < numLabels; i++) {
+            double ai = prev[i];
+            int row = i * numLabels;
+            for (int j = 0; j < numLabels; j++) {
+              a[j] += ai * expTransitions[row + j];
+            }
+          }
+          for (int j = 0; j < numLabels; j++) {
+            a[j] *= state[t][j];
+          }
+        }
+        double sum = 0;
+        for (int j = 0; j < numLabels; j++) {
+          sum += a[j];
+        }
+        scale[t] = 1.0 / sum;
+        for (int j = 0; j < numLabels; j++) {
+          a[j] *= scale[t];
+        }
+        logZ -= Math.log(scale[t]);
+      }
+
+      // backward
+      Arrays.fill(beta[length - 1], scale[length - 1]);
+      for (int t = length - 2; t >= 0; t--) {
+        double[] b = beta[t];
+        double[] next = beta[t + 1];
+        double[] nextState = state[t + 1];
+        for (int i = 0; i < numLabels; i++) {
+          double sum = 0;
+          int row = i * numLabels;
+          for (int j = 0; j < numLabels; j++) {
+            sum += expTransitions[row + j] * nextState[j] * next[j];
+          }
+          b[i] = sum * scale[t];
+        }
+      }
+
+      // model expectations of the state features
+      double[] marginal = new double[numLabels];
+      for (int t = 0; t < length; t++) {
+        for (int y = 0; y < numLabels; y++) {
+          marginal[y] = alpha[t][y] * beta[t][y] / scale[t];
+        }
+        for (int a : sequence[t]) {
+          for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+            gradient[offset + k] += marginal[featureLabels[k]];
+          }
+        }
+      }
+
+      // model expectations of the transition features
+      for (int t = 1; t < length; t++) {
+        double[] prev = alpha[t - 1];
+        double[] b = beta[t];
+        double[] s = state[t];
+        for (int i = 0; i < numLabels; i++) {
+          int row = i * numLabels;
+          for (int j = 0; j < numLabels; j++) {
+            gradient[row + j] += prev[i] * expTransitions[row + j] * s[j] * b[j];
+          }
+        }
+      }
+
+      // observed feature counts and the score of the reference labels
+      double score = 0;
+      for (int t = 0; t < length; t++) {
+        int y = labels[t];
+        for (int a : sequence[t]) {
+          for (int k = attributeOffsets[a]; k < attributeOffsets[a + 1]; k++) {
+            if (featureLabels[k] == y) {
+              gradient[offset + k] -= 1;
+              score += weights[offset + k];
+              break;
+            }
+          }
+        }
+        if (t > 0) {
+          int transition = labels[t - 1] * numLabels + y;
+          gradient[transition] -= 1;
+          score += weights[transition];
+        }
+      }
+      return logZ - score;
+    }
+  }
+}
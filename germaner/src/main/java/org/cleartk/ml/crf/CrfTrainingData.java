@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Integer-encoded training sequences for the {@link CrfTrainer}. Sequences are either added one by
+ * one or read from a file in the CRFsuite training format, as written by
+ * <code>CrfSuiteStringOutcomeDataWriter</code>: one token per line, the label followed by the
+ * tab-separated attributes, and an empty line after each sequence.
+ */
+public class CrfTrainingData {
+
+  private final List<String> labels = new ArrayList<String>();
+
+  private final Map<String, Integer> labelIndex = new HashMap<String, Integer>();
+
+  private final List<String> attributes = new ArrayList<String>();
+
+  private final Map<String, Integer> attributeIndex = new HashMap<String, Integer>();
+
+  private final List<int[][]> sequences = new ArrayList<int[][]>();
+
+  private final List<int[]> sequenceLabels = new ArrayList<int[]>();
+
+  private int numTokens;
+
+  /**
+   * Creates empty training data that indexes the labels and attributes of a model like the model,
+   * so that training can start from its weights; new labels and attributes come after them.
+   */
+  public static CrfTrainingData startingFrom(CrfModel model) {
+    CrfTrainingData data = new CrfTrainingData();
+    for (String label : model.getLabels()) {
+      index(label, data.labels, data.labelIndex);
+    }
+    for (int a = 0; a < model.getNumAttributes(); a++) {
+      index(model.getAttribute(a), data.attributes, data.attributeIndex);
+    }
+    return data;
+  }
+
+  public static CrfTrainingData read(File trainingFile) throws IOException {
+    CrfTrainingData data = new CrfTrainingData();
+    data.addAll(trainingFile);
+    return data;
+  }
+
+  public void addAll(File trainingFile) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(trainingFile));
+    try {
+      List<String> tokenLabels = new ArrayList<String>();
+      List<String[]> tokenAttributes = new ArrayList<String[]>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          addSequence(tokenLabels, tokenAttributes);
+          tokenLabels.clear();
+          tokenAttributes.clear();
+          continue;
+        }
+        String[] columns = line.split("\t");
+        tokenLabels.add(columns[0]);
+        tokenAttributes.add(Arrays.copyOfRange(columns, 1, columns.length));
+      }
+      addSequence(tokenLabels, tokenAttributes);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Adds one labeled sequence. Empty sequences are ignored.
+   */
+  public void addSequence(List<String> tokenLabels, List<String[]> tokenAttributes) {
+    if (tokenLabels.size() != tokenAttributes.size()) {
+      throw new IllegalArgumentException("expected one label per token, found "
+          + tokenLabels.size() + " labels for " + tokenAttributes.size() + " tokens");
+    }
+    if (tokenLabels.isEmpty()) {
+      return;
+    }
+    int[][] sequence = new int[tokenAttributes.size()][];
+    int[] sequenceLabel = new int[tokenLabels.size()];
+    for (int t = 0; t < sequence.length; t++) {
+      String[] names = tokenAttributes.get(t);
+      int[] ids = new int[names.length];
+      int n = 0;
+      for (String name : names) {
+        if (!name.isEmpty()) {
+          ids[n++] = index(name, attributes, attributeIndex);
+        }
+      }
+      sequence[t] = n == ids.length ? ids : Arrays.copyOf(ids, n);
+      sequenceLabel[t] = index(tokenLabels.get(t), labels, labelIndex);
+    }
+    sequences.add(sequence);
+    sequenceLabels.add(sequenceLabel);
+    numTokens += sequence.length;
+  }
+
+  private static int index(String name, List<String> names, Map<String, Integer> index) {
+    Integer i = index.get(name);
+    if (i == null) {
+      i = names.size();
+      names.add(name);
+      index.put(name, i);
+    }
+    return i;
+  }
+
+  public int size() {
+    return sequences.size();
+  }
+
+  public int getNumTokens() {
+    return numTokens;
+  }
+
+  public int[][] getSequence(int i) {
+    return sequences.get(i);
+  }
+
+  public int[] getLabels(int i) {
+    return sequenceLabels.get(i);
+  }
+
+  public String[] getLabelNames() {
+    return labels.toArray(new String[labels.size()]);
+  }
+
+  public String[] getAttributeNames() {
+    return attributes.toArray(new String[attributes.size()]);
+  }
+
+  public int getNumLabels() {
+    return labels.size();
+  }
+
+  public int getNumAttributes() {
+    return attributes.size();
+  }
+}
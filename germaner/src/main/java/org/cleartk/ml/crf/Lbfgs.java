@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crf;
+
+/**
+ * Limited-memory BFGS minimizer with a backtracking line search. When an L1 coefficient is given
+ * the orthant-wise variant (OWL-QN) is used, which is what CRFsuite does for <code>c1 &gt; 0</code>
+ * .
+ */
+public class Lbfgs {
+
+  /**
+   * A differentiable function to minimize.
+   */
+  public interface Function {
+    /**
+     * Evaluates the function at <code>x</code> and stores the gradient in <code>g</code>.
+     */
+    double evaluate(double[] x, double[] g);
+  }
+
+  /**
+   * Notified after every iteration; returning false stops the optimization.
+   */
+  public interface Progress {
+    boolean iteration(int k, double[] x, double fx, double xnorm, double gnorm, double step,
+        int evaluations);
+  }
+
+  private int numMemories = 6;
+
+  private double epsilon = 1e-5;
+
+  private int period = 10;
+
+  private double delta = 1e-5;
+
+  private int maxIterations = Integer.MAX_VALUE;
+
+  private int maxLinesearch = 20;
+
+  private double ftol = 1e-4;
+
+  private double c1 = 0;
+
+  public void setNumMemories(int numMemories) {
+    this.numMemories = numMemories;
+  }
+
+  public void setEpsilon(double epsilon) {
+    this.epsilon = epsilon;
+  }
+
+  public void setPeriod(int period) {
+    this.period = period;
+  }
+
+  public void setDelta(double delta) {
+    this.delta = delta;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  public void setMaxLinesearch(int maxLinesearch) {
+    this.maxLinesearch = maxLinesearch;
+  }
+
+  /**
+   * Sets the L1 coefficient; the L1 term is added by the optimizer, not by the function.
+   */
+  public void setC1(double c1) {
+    this.c1 = c1;
+  }
+
+  /**
+   * Minimizes the function starting from <code>x</code>, which holds the solution on return.
+   *
+   * @return the final function value (including the L1 term)
+   */
+  public double minimize(Function function, double[] x, Progress progress) {
+    int n = x.length;
+    boolean orthantWise = c1 > 0;
+    double[] xp = new double[n];
+    double[] g = new double[n];
+    double[] gp = new double[n];
+    double[] pg = orthantWise ? new double[n] : g;
+    double[] d = new double[n];
+    double[][] s = new double[numMemories][n];
+    double[][] y = new double[numMemories][n];
+    double[] ys = new double[numMemories];
+    double[] alpha = new double[numMemories];
+    double[] history = new double[Math.max(period, 1)];
+
+    double fx = function.evaluate(x, g);
+    if (orthantWise) {
+      fx += c1 * norm1(x);
+      pseudoGradient(x, g, pg);
+    }
+    for (int i = 0; i < n; i++) {
+      d[i] = -pg[i];
+    }
+    double xnorm = Math.max(norm2(x), 1.0);
+    double gnorm = norm2(pg);
+    if (gnorm / xnorm <= epsilon) {
+      return fx;
+    }
+    double step = 1.0 / norm2(d);
+    int end = 0;
+    int bound = 0;
+    for (int k = 1; k <= maxIterations; k++) {
+      System.arraycopy(x, 0, xp, 0, n);
+      System.arraycopy(g, 0, gp, 0, n);
+      double fp = fx;
+
+      // backtracking line search along d
+      double dginit = dot(d, pg);
+      if (dginit >= 0) {
+        // not a descent direction, restart from the steepest descent
+        for (int i = 0; i < n; i++) {
+          d[i] = -pg[i];
+        }
+        dginit = dot(d, pg);
+        bound = 0;
+      }
+      int evaluations = 0;
+      while (true) {
+        for (int i = 0; i < n; i++) {
+          x[i] = xp[i] + step * d[i];
+        }
+        if (orthantWise) {
+          for (int i = 0; i < n; i++) {
+            double orthant = xp[i] != 0 ? xp[i] : -pg[i];
+            if (x[i] * orthant <= 0) {
+              x[i] = 0;
+            }
+          }
+        }
+        fx = function.evaluate(x, g);
+        evaluations++;
+        double dg = dginit * step;
+        if (orthantWise) {
+          fx += c1 * norm1(x);
+          dg = 0;
+          for (int i = 0; i < n; i++) {
+            dg += (x[i] - xp[i]) * pg[i];
+          }
+        }
+        if (fx <= fp + ftol * dg) {
+          break;
+        }
+        if (evaluations >= maxLinesearch) {
+          // give up and keep the previous point
+          System.arraycopy(xp, 0, x, 0, n);
+          System.arraycopy(gp, 0, g, 0, n);
+          return fp;
+        }
+        step *= 0.5;
+      }
+      if (orthantWise) {
+        pseudoGradient(x, g, pg);
+      }
+
+      xnorm = Math.max(norm2(x), 1.0);
+      gnorm = norm2(pg);
+      if (progress != null && !progress.iteration(k, x, fx, norm2(x), gnorm, step, evaluations)) {
+        return fx;
+      }
+      if (gnorm / xnorm <= epsilon) {
+        return fx;
+      }
+      if (period > 0) {
+        if (k > period) {
+          double rate = (history[k % period] - fx) / fx;
+          if (Math.abs(rate) < delta) {
+            return fx;
+          }
+        }
+        history[k % period] = fx;
+      }
+
+      // update the correction pairs
+      double[] sk = s[end];
+      double[] yk = y[end];
+      double yy = 0;
+      double sy = 0;
+      for (int i = 0; i < n; i++) {
+        sk[i] = x[i] - xp[i];
+        yk[i] = g[i] - gp[i];
+        sy += sk[i] * yk[i];
+        yy += yk[i] * yk[i];
+      }
+      ys[end] = sy;
+      bound = Math.min(bound + 1, numMemories);
+      end = (end + 1) % numMemories;
+
+      // two-loop recursion
+      for (int i = 0; i < n; i++) {
+        d[i] = -pg[i];
+      }
+      int j = end;
+      for (int i = 0; i < bound; i++) {
+        j = (j + numMemories - 1) % numMemories;
+        alpha[j] = dot(s[j], d) / ys[j];
+        axpy(-alpha[j], y[j], d);
+      }
+      if (sy > 0 && yy > 0) {
+        scale(sy / yy, d);
+      }
+      for (int i = 0; i < bound; i++) {
+        double beta = dot(y[j], d) / ys[j];
+        axpy(alpha[j] - beta, s[j], d);
+        j = (j + 1) % numMemories;
+      }
+      if (orthantWise) {
+        for (int i = 0; i < n; i++) {
+          if (d[i] * pg[i] >= 0) {
+            d[i] = 0;
+          }
+        }
+      }
+      step = 1.0;
+    }
+    return fx;
+  }
+
+  private void pseudoGradient(double[] x, double[] g, double[] pg) {
+    for (int i = 0; i < x.length; i++) {
+      if (x[i] < 0) {
+        pg[i] = g[i] - c1;
+      } else if (x[i] > 0) {
+        pg[i] = g[i] + c1;
+      } else if (g[i] < -c1) {
+        pg[i] = g[i] + c1;
+      } else if (g[i] > c1) {
+        pg[i] = g[i] - c1;
+      } else {
+        pg[i] = 0;
+      }
+    }
+  }
+
+  static double dot(double[] a, double[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  static double norm2(double[] a) {
+    return Math.sqrt(dot(a, a));
+  }
+
+  static double norm1(double[] a) {
+    double sum = 0;
+    for (double v : a) {
+      sum += Math.abs(v);
+    }
+    return sum;
+  }
+
+  private static void axpy(double a, double[] x, double[] y) {
+    for (int i = 0; i < x.length; i++) {
+      y[i] += a * x[i];
+    }
+  }
+
+  private static void scale(double a, double[] x) {
+    for (int i = 0; i < x.length; i++) {
+      x[i] *= a;
+    }
+  }
+}
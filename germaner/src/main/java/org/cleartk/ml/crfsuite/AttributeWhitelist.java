@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The attributes kept by the frequency cut-off of the {@link CrfSuiteFilteringDataWriter}, one per
+ * line. A {@link CrfSuiteStringOutcomeClassifier} given the whitelist of its training data only
+ * writes these attributes into the feature file it tags; CRFsuite ignores the others anyway.
+ */
+public class AttributeWhitelist {
+
+  public static final String FILE_NAME = "crfsuite.whitelist";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Set<String> attributes;
+
+  private AttributeWhitelist(Set<String> attributes) {
+    this.attributes = attributes;
+  }
+
+  public boolean contains(String attribute) {
+    return attributes.contains(attribute);
+  }
+
+  public int size() {
+    return attributes.size();
+  }
+
+  public static AttributeWhitelist read(File file) throws IOException {
+    return read(new FileInputStream(file));
+  }
+
+  /**
+   * Reads and closes the stream.
+   */
+  public static AttributeWhitelist read(InputStream in) throws IOException {
+    Set<String> attributes = new HashSet<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        attributes.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return new AttributeWhitelist(attributes);
+  }
+
+  public static void write(File file, Collection<String> attributes) throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+    try {
+      for (String attribute : attributes) {
+        out.write(attribute);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes the distinct attributes of the parts, UTF-8 files with one attribute per line in which
+   * an attribute may repeat. An attribute must not occur in two parts, so that only the
+   * attributes of one part are held in memory at a time.
+   * 
+   * @return the number of attributes written
+   */
+  public static int writeDistinct(File file, List<File> parts) throws IOException {
+    int written = 0;
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+    try {
+      for (File part : parts) {
+        Set<String> distinct = new HashSet<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(part),
+            UTF_8));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            if (distinct.add(line)) {
+              out.write(line);
+              out.write('\n');
+              written++;
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    } finally {
+      out.close();
+    }
+    return written;
+  }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+/**
+ * Approximate counts of strings in fixed memory. Each string increments one counter in each of
+ * <code>depth</code> rows, and its count is estimated by the smallest of these counters. Counters
+ * are only raised as far as needed for the new estimate (conservative update), and they stop at
+ * <code>maxCount</code>, so a byte suffices for each. Estimates are never too low; collisions can
+ * only make them too high.
+ */
+public class CountMinSketch {
+
+  private final int depth;
+
+  private final int width;
+
+  private final int maxCount;
+
+  private final byte[][] counters;
+
+  public CountMinSketch(int depth, int width, int maxCount) {
+    if (maxCount < 1 || maxCount > 255) {
+      throw new IllegalArgumentException("maxCount must be between 1 and 255, not " + maxCount);
+    }
+    this.depth = depth;
+    this.width = width;
+    this.maxCount = maxCount;
+    this.counters = new byte[depth][width];
+  }
+
+  /**
+   * A sketch with four rows using about the given number of megabytes.
+   */
+  public static CountMinSketch ofSize(int megabytes, int maxCount) {
+    return new CountMinSketch(4, Math.max(1, megabytes) << 18, maxCount);
+  }
+
+  /**
+   * Counts one occurrence of a string.
+   */
+  public void add(String s) {
+    int[] cells = cells(s);
+    int estimate = estimate(cells);
+    if (estimate == maxCount) {
+      return;
+    }
+    for (int i = 0; i < depth; i++) {
+      if ((counters[i][cells[i]] & 0xff) == estimate) {
+        counters[i][cells[i]] = (byte) (estimate + 1);
+      }
+    }
+  }
+
+  /**
+   * @return the estimated count of a string, at most <code>maxCount</code>
+   */
+  public int estimate(String s) {
+    return estimate(cells(s));
+  }
+
+  private int estimate(int[] cells) {
+    int estimate = maxCount;
+    for (int i = 0; i < depth; i++) {
+      estimate = Math.min(estimate, counters[i][cells[i]] & 0xff);
+    }
+    return estimate;
+  }
+
+  // the rows use the double hashing h1 + i * h2 of a 64 bit FNV-1a hash
+  private int[] cells(String s) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      hash ^= s.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    int[] cells = new int[depth];
+    for (int i = 0; i < depth; i++) {
+      cells[i] = ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+    }
+    return cells;
+  }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.encoder.features.NameNumber;
+
+/**
+ * Writes the training data of {@link CrfSuiteStringOutcomeDataWriter} without the attributes that
+ * occur less than <code>minFrequency</code> times. The sequences are first spooled to a temporary
+ * file while a {@link CountMinSketch} counts the attributes; when the writer is finished, the
+ * spooled data is written to the training data with the rare attributes dropped, and the kept
+ * attributes are saved as the {@link AttributeWhitelist} of the model directory. The kept
+ * attributes are spread over {@value #BUCKETS} files by their hash and deduplicated one file at a
+ * time, so the writer never holds all distinct attributes in memory. The sketch may
+ * overestimate counts, so a few rare attributes can be kept, but no frequent one is dropped. With
+ * a minimum frequency of 1 the writer writes the data directly, like its super class.
+ */
+public class CrfSuiteFilteringDataWriter extends CrfSuiteStringOutcomeDataWriter {
+
+  static Logger logger = UIMAFramework.getLogger(CrfSuiteFilteringDataWriter.class);
+
+  private static final String SPOOL_NAME = "crfsuite.training.unfiltered";
+
+  private static final String BUCKET_PREFIX = "crfsuite.whitelist.";
+
+  static final int BUCKETS = 64;
+
+  private final int minFrequency;
+
+  private CountMinSketch sketch;
+
+  private File spoolFile;
+
+  private PrintWriter spool;
+
+  public CrfSuiteFilteringDataWriter(File outputDirectory) throws IOException {
+    this(outputDirectory, 1, 0);
+  }
+
+  public CrfSuiteFilteringDataWriter(File outputDirectory, int minFrequency, int sketchMegabytes)
+      throws IOException {
+    super(outputDirectory);
+    this.minFrequency = minFrequency;
+    if (minFrequency > 1) {
+      sketch = CountMinSketch.ofSize(sketchMegabytes, minFrequency);
+      spoolFile = new File(outputDirectory, SPOOL_NAME);
+      spool = new PrintWriter(new BufferedWriter(new FileWriter(spoolFile)));
+    } else {
+      // left from an earlier training with a cut-off, it would filter the new model's attributes
+      new File(outputDirectory, AttributeWhitelist.FILE_NAME).delete();
+    }
+  }
+
+  @Override
+  public void writeEncoded(List<NameNumber> features, String outcome) {
+    if (spool == null) {
+      super.writeEncoded(features, outcome);
+      return;
+    }
+    spool.print(outcome);
+    for (NameNumber nameNumber : features) {
+      sketch.add(nameNumber.name);
+      spool.print('\t');
+      spool.print(nameNumber.name);
+    }
+    spool.println();
+  }
+
+  @Override
+  public void writeEndSequence() {
+    if (spool == null) {
+      super.writeEndSequence();
+    } else {
+      spool.println();
+    }
+  }
+
+  @Override
+  public void finish() throws CleartkProcessingException {
+    if (spool != null) {
+      try {
+        filter();
+      } catch (IOException e) {
+        throw new CleartkProcessingException(e);
+      }
+    }
+    super.finish();
+  }
+
+  private void filter() throws IOException {
+    spool.close();
+    if (spool.checkError()) {
+      throw new IOException("writing " + spoolFile + " failed");
+    }
+    List<File> bucketFiles = new ArrayList<File>(BUCKETS);
+    PrintWriter[] buckets = new PrintWriter[BUCKETS];
+    for (int b = 0; b < BUCKETS; b++) {
+      bucketFiles.add(new File(this.outputDirectory, BUCKET_PREFIX + b));
+      buckets[b] = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(bucketFiles.get(b)),
+          "UTF-8")));
+    }
+    long attributes = 0;
+    long dropped = 0;
+    BufferedReader reader = new BufferedReader(new FileReader(spoolFile));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          this.trainingDataWriter.println();
+          continue;
+        }
+        String[] columns = line.split("\t");
+        this.trainingDataWriter.print(columns[0]);
+        for (int i = 1; i < columns.length; i++) {
+          attributes++;
+          if (sketch.estimate(columns[i]) < minFrequency) {
+            dropped++;
+            continue;
+          }
+          buckets[(columns[i].hashCode() & Integer.MAX_VALUE) % BUCKETS].println(columns[i]);
+          this.trainingDataWriter.print('\t');
+          this.trainingDataWriter.print(columns[i]);
+        }
+        this.trainingDataWriter.println();
+      }
+    } finally {
+      reader.close();
+      for (PrintWriter bucket : buckets) {
+        bucket.close();
+      }
+    }
+    spoolFile.delete();
+    for (PrintWriter bucket : buckets) {
+      if (bucket.checkError()) {
+        throw new IOException("writing the attributes of the whitelist failed");
+      }
+    }
+    int kept = AttributeWhitelist.writeDistinct(
+        new File(this.outputDirectory, AttributeWhitelist.FILE_NAME),
+        bucketFiles);
+    for (File bucketFile : bucketFiles) {
+      bucketFile.delete();
+    }
+    logger.log(Level.INFO, "Kept " + kept + " attributes occurring at least "
+        + minFrequency + " times, dropped " + dropped + " of " + attributes
+        + " attribute occurrences");
+  }
+}
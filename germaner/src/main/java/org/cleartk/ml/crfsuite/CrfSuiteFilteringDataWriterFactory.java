@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+import java.io.IOException;
+
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.cleartk.ml.SequenceDataWriter;
+import org.cleartk.ml.SequenceDataWriterFactory;
+import org.cleartk.ml.jar.DirectoryDataWriterFactory;
+
+/**
+ * Creates a {@link CrfSuiteFilteringDataWriter} for the output directory.
+ */
+public class CrfSuiteFilteringDataWriterFactory extends DirectoryDataWriterFactory implements
+    SequenceDataWriterFactory<String> {
+
+  public static final String PARAM_MIN_ATTRIBUTE_FREQUENCY = "minAttributeFrequency";
+
+  /**
+   * how often an attribute must occur to be written, 1 to write all attributes
+   */
+  @ConfigurationParameter(
+      name = PARAM_MIN_ATTRIBUTE_FREQUENCY,
+      mandatory = false,
+      defaultValue = "1")
+  protected int minAttributeFrequency;
+
+  public static final String PARAM_ATTRIBUTE_SKETCH_MB = "attributeSketchMB";
+
+  /**
+   * the memory of the sketch counting the attributes
+   */
+  @ConfigurationParameter(name = PARAM_ATTRIBUTE_SKETCH_MB, mandatory = false, defaultValue = "32")
+  protected int attributeSketchMB;
+
+  @Override
+  public SequenceDataWriter<String> createDataWriter() throws IOException {
+    return new CrfSuiteFilteringDataWriter(
+        outputDirectory,
+        minAttributeFrequency,
+        attributeSketchMB);
+  }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import org.apache.commons.io.output.TeeOutputStream;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.CleartkProcessingException;
+
+/**
+ * Writes the same training data as {@link CrfSuiteStringOutcomeDataWriter}, but into the standard
+ * input of a <code>crfsuite learn</code> process started with the writer, so that CRFsuite reads
+ * the sequences while the features are still extracted and no training file is needed. With
+ * <code>tee</code> the training data is written to the usual training file as well. The model is
+ * trained when the writer is finished; <code>Train</code> must not train the directory again, only
+ * package it. A minimum attribute frequency above 1 is rejected: the data could only be streamed
+ * once all of it has been counted, which is no faster than training from the training file.
+ */
+public class CrfSuiteStreamingDataWriter extends CrfSuiteFilteringDataWriter {
+
+  static Logger logger = UIMAFramework.getLogger(CrfSuiteStreamingDataWriter.class);
+
+  public static final String MODEL_NAME = "crfsuite.model";
+
+  private CrfSuiteWrapper.Learner learner;
+
+  public CrfSuiteStreamingDataWriter(File outputDirectory) throws IOException {
+    this(outputDirectory, false);
+  }
+
+  public CrfSuiteStreamingDataWriter(File outputDirectory, boolean tee) throws IOException {
+    this(outputDirectory, tee, 1, 0);
+  }
+
+  public CrfSuiteStreamingDataWriter(
+      File outputDirectory,
+      boolean tee,
+      int minFrequency,
+      int sketchMegabytes) throws IOException {
+    this(outputDirectory, tee, minFrequency, sketchMegabytes, new String[0]);
+  }
+
+  /**
+   * @param trainingArguments
+   *          the arguments of <code>crfsuite learn</code>, as they are given to Train, e.g.
+   *          <code>-p max_iterations=50</code>
+   */
+  public CrfSuiteStreamingDataWriter(
+      File outputDirectory,
+      boolean tee,
+      int minFrequency,
+      int sketchMegabytes,
+      String[] trainingArguments) throws IOException {
+    super(outputDirectory, checkMinFrequency(minFrequency), sketchMegabytes);
+    // the super class has opened the training file
+    this.trainingDataWriter.close();
+    if (!tee) {
+      this.trainingDataFile.delete();
+    }
+    learner = new CrfSuiteWrapper().startTraining(
+        new File(outputDirectory, MODEL_NAME).getPath(),
+        trainingArguments);
+    OutputStream out = learner.getTrainingDataStream();
+    if (tee) {
+      out = new TeeOutputStream(out, new FileOutputStream(this.trainingDataFile));
+    }
+    this.trainingDataWriter = new PrintWriter(new OutputStreamWriter(new BufferedOutputStream(out)));
+    logger.log(Level.INFO, "Streaming the training data to CRFsuite"
+        + (tee ? " and to " + this.trainingDataFile : ""));
+  }
+
+  private static int checkMinFrequency(int minFrequency) {
+    if (minFrequency > 1) {
+      throw new IllegalArgumentException("cannot stream the training data with a minimum "
+          + "attribute frequency of " + minFrequency + ", use CrfSuiteFilteringDataWriter");
+    }
+    return minFrequency;
+  }
+
+  /**
+   * Closes the stream, which starts the training, and waits for the model.
+   */
+  @Override
+  public void finish() throws CleartkProcessingException {
+    super.finish();
+    if (this.trainingDataWriter.checkError()) {
+      learner.destroy();
+      throw new CleartkProcessingException(new IOException(
+          "writing the training data to CRFsuite failed"));
+    }
+    try {
+      logger.log(Level.INFO, "Start learning CRFsuite classifier");
+      learner.waitFor();
+      logger.log(Level.INFO, "Finished learning CRFsuite classifier");
+    } catch (IOException e) {
+      throw new CleartkProcessingException(e);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+import java.io.IOException;
+
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.cleartk.ml.SequenceDataWriter;
+
+/**
+ * Creates a {@link CrfSuiteStreamingDataWriter} for the output directory.
+ */
+public class CrfSuiteStreamingDataWriterFactory extends CrfSuiteFilteringDataWriterFactory {
+
+  public static final String PARAM_TEE = "tee";
+
+  /**
+   * whether the training data is also written to the training file, e.g. to train again with the
+   * same data
+   */
+  @ConfigurationParameter(name = PARAM_TEE, mandatory = false, defaultValue = "false")
+  private boolean tee;
+
+  public static final String PARAM_TRAINING_ARGUMENTS = "trainingArguments";
+
+  /**
+   * the arguments of <code>crfsuite learn</code>, as they are given to Train, e.g.
+   * <code>-p max_iterations=50</code>
+   */
+  @ConfigurationParameter(name = PARAM_TRAINING_ARGUMENTS, mandatory = false)
+  private String[] trainingArguments;
+
+  @Override
+  public SequenceDataWriter<String> createDataWriter() throws IOException {
+    return new CrfSuiteStreamingDataWriter(
+        outputDirectory,
+        tee,
+        minAttributeFrequency,
+        attributeSketchMB,
+        trainingArguments == null ? new String[0] : trainingArguments);
+  }
+}
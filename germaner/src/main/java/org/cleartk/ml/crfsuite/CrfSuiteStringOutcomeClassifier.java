@@ -34,11 +34,14 @@ package org.cleartk.ml.crfsuite;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.cleartk.ml.CleartkProcessingException;
 import org.cleartk.ml.Feature;
+import org.cleartk.ml.ScoredSequenceClassifier;
 import org.cleartk.ml.encoder.features.FeaturesEncoder;
 import org.cleartk.ml.encoder.features.NameNumber;
 import org.cleartk.ml.encoder.outcome.OutcomeEncoder;
@@ -54,7 +57,8 @@ import org.cleartk.ml.jar.SequenceClassifier_ImplBase;
  * @author Martin Riedl
  */
 public class CrfSuiteStringOutcomeClassifier extends
-    SequenceClassifier_ImplBase<List<NameNumber>, String, String> {
+    SequenceClassifier_ImplBase<List<NameNumber>, String, String> implements
+    ScoredSequenceClassifier<String> {
 
   private File modelFile;
 
@@ -69,6 +73,14 @@ public class CrfSuiteStringOutcomeClassifier extends
     this.wrapper = new CrfSuiteWrapper();
   }
 
+  /**
+   * Leaves the attributes dropped by the frequency cut-off of the training data out of the feature
+   * files.
+   */
+  public void setAttributeWhitelist(AttributeWhitelist attributeWhitelist) {
+    wrapper.setAttributeWhitelist(attributeWhitelist);
+  }
+
   @Override
   public List<String> classify(Map<Integer, List<List<Feature>>> features,File featureFile )
       throws CleartkProcessingException {
@@ -80,6 +92,14 @@ public class CrfSuiteStringOutcomeClassifier extends
     } catch (IOException e) {
       e.printStackTrace();
     }
+    if (posTags != null) {
+      // the empty lines between the sequences of the CRFsuite output
+      for (int i = 0; i < posTags.size(); i++) {
+        if (posTags.get(i).isEmpty()) {
+          posTags.set(i, null);
+        }
+      }
+    }
     return posTags;
   }
 
@@ -96,4 +116,71 @@ public class CrfSuiteStringOutcomeClassifier extends
     return posTags;
   }
 
+  /**
+   * Tags with the marginal probabilities of CRFsuite (<code>tag -i</code>) and adds the probability
+   * of each predicted label to <code>scores</code>.
+   */
+  @Override
+  public List<String> classify(
+      Map<Integer, List<List<Feature>>> features,
+      File featureFile,
+      List<Double> scores) throws CleartkProcessingException {
+    List<String> labels = null;
+    try {
+      labels = wrapper.classifyFeatures(
+          features,
+          outcomeEncoder,
+          featuresEncoder,
+          modelFile,
+          featureFile,
+          true);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return labels == null ? null : splitMarginals(labels, scores);
+  }
+
+  /**
+   * CRFsuite only reports the marginal probability of the predicted label, so every map holds a
+   * single entry.
+   */
+  @Override
+  public List<Map<String, Double>> score(List<List<Feature>> features)
+      throws CleartkProcessingException {
+    List<String> labels = null;
+    try {
+      labels = wrapper.classifyFeatures(features, outcomeEncoder, featuresEncoder, modelFile, true);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    if (labels == null) {
+      return null;
+    }
+    List<Double> scores = new ArrayList<Double>(labels.size());
+    List<String> outcomes = splitMarginals(labels, scores);
+    List<Map<String, Double>> result = new ArrayList<Map<String, Double>>(outcomes.size());
+    for (int i = 0; i < outcomes.size(); i++) {
+      result.add(Collections.singletonMap(outcomes.get(i), scores.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Splits <code>label:probability</code> lines at the last colon; empty lines separating
+   * sequences become <code>null</code> outcomes with a score of 0.
+   */
+  private static List<String> splitMarginals(List<String> lines, List<Double> scores) {
+    List<String> labels = new ArrayList<String>(lines.size());
+    for (String line : lines) {
+      int colon = line.lastIndexOf(':');
+      if (colon < 0) {
+        labels.add(line.isEmpty() ? null : line);
+        scores.add(0.0);
+      } else {
+        labels.add(line.substring(0, colon));
+        scores.add(Double.parseDouble(line.substring(colon + 1)));
+      }
+    }
+    return labels;
+  }
 }
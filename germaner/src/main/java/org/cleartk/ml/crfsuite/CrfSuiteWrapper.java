@@ -42,11 +42,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.util.Level;
@@ -73,8 +75,16 @@ import de.tudarmstadt.ukp.dkpro.core.api.resources.ResourceUtils;
 public class CrfSuiteWrapper {
   static Logger logger = UIMAFramework.getLogger(CrfSuiteWrapper.class);
 
+  // crfsuite tag reads the first field of a line as the label, like in the training data
+  private static final String NO_LABEL = "_";
+
+  private static final List<TrainingMetrics.Listener> trainingListeners =
+      new CopyOnWriteArrayList<TrainingMetrics.Listener>();
+
   private File executable;
 
+  private AttributeWhitelist attributeWhitelist;
+
   public CrfSuiteWrapper() {
     Executables exec = new Executables();
     if (exec.isInstalled()) {
@@ -93,6 +103,13 @@ public class CrfSuiteWrapper {
     }
   }
 
+  /**
+   * Makes the feature files written for tagging leave out the attributes not in the whitelist.
+   */
+  public void setAttributeWhitelist(AttributeWhitelist attributeWhitelist) {
+    this.attributeWhitelist = attributeWhitelist;
+  }
+
   class Executables {
     PlatformDetection pd = new PlatformDetection();
 
@@ -200,24 +217,120 @@ public class CrfSuiteWrapper {
     Process p = Runtime.getRuntime().exec(cmd.toString());
 
     InputStream stdIn = p.getInputStream();
-    InputStreamHandler<List<String>> ishIn = InputStreamHandler.getInputStreamAsList(stdIn);
+    TrainingOutputReader output = new TrainingOutputReader(p, logger);
+    output.start();
 
     InputStream stdErr = p.getErrorStream();
     InputStreamHandler<StringBuffer> ishErr = InputStreamHandler.getInputStreamAsBufferedString(stdErr);
 
     try {
       p.waitFor();
-      ishIn.join();
+      output.join();
       ishErr.join();
     } catch (InterruptedException e) {
       logger.log(Level.WARNING, e.getMessage());
     }
 
     logger.log(Level.WARNING, ishErr.getBuffer().toString().replaceAll("(^\\[)|([,])|(]$)", "\n"));
-    logger.log(Level.INFO, ishIn.getBuffer().toString().replaceAll("(^\\[)|([,])|(]$)", "\n"));
+    logger.log(Level.INFO, output.getOtherOutput());
     stdErr.close();
     stdIn.close();
+    if (output.isStopped()) {
+      throw new IOException("CRFsuite training was stopped by a training listener");
+    }
+  }
+
+  /**
+   * Registers a listener that receives the {@link TrainingMetrics} of every iteration of the
+   * CRFsuite trainings in this JVM while they run, and can stop them.
+   */
+  public static void addTrainingListener(TrainingMetrics.Listener listener) {
+    trainingListeners.add(listener);
+  }
+
+  public static void removeTrainingListener(TrainingMetrics.Listener listener) {
+    trainingListeners.remove(listener);
+  }
+
+  static List<TrainingMetrics.Listener> getTrainingListeners() {
+    return trainingListeners;
+  }
 
+  /**
+   * Starts <code>crfsuite learn</code> on training data that is written to the standard input of
+   * the returned learner while it runs, see {@link Learner#getTrainingDataStream()}.
+   */
+  public Learner startTraining(String model, String[] args) throws IOException {
+    List<String> cmd = new ArrayList<String>();
+    cmd.add(executable.getPath());
+    cmd.add("learn");
+    cmd.add("-m");
+    cmd.add(model);
+    for (String a : args) {
+      cmd.add(a);
+    }
+    // read the training data from standard input
+    cmd.add("-");
+    return new Learner(new ProcessBuilder(cmd).start());
+  }
+
+  /**
+   * A running <code>crfsuite learn</code> process that reads its training data from its standard
+   * input. CRFsuite reads and indexes the sequences while they are written and starts training when
+   * the stream is closed.
+   */
+  public static class Learner {
+    private final Process process;
+
+    private final TrainingOutputReader output;
+
+    private final InputStreamHandler<StringBuffer> ishErr;
+
+    Learner(Process process) {
+      this.process = process;
+      output = new TrainingOutputReader(process, logger);
+      output.start();
+      ishErr = InputStreamHandler.getInputStreamAsBufferedString(process.getErrorStream());
+    }
+
+    public OutputStream getTrainingDataStream() {
+      return process.getOutputStream();
+    }
+
+    /**
+     * Waits until the model is written; the training data stream has to be closed before.
+     */
+    public void waitFor() throws IOException {
+      int exitValue;
+      try {
+        exitValue = process.waitFor();
+        output.join();
+        ishErr.join();
+      } catch (InterruptedException e) {
+        process.destroy();
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while CRFsuite was training", e);
+      }
+      if (ishErr.getBuffer().length() > 0) {
+        logger.log(Level.WARNING, ishErr.getBuffer().toString());
+      }
+      logger.log(Level.INFO, output.getOtherOutput());
+      process.getInputStream().close();
+      process.getErrorStream().close();
+      if (output.isStopped()) {
+        throw new IOException("CRFsuite training was stopped by a training listener");
+      }
+      if (exitValue != 0) {
+        throw new IOException("CRFsuite training failed with exit value " + exitValue);
+      }
+    }
+
+    /**
+     * Stops the training, e.g. when writing the training data failed.
+     */
+    public void destroy() {
+      process.destroy();
+    }
   }
 
   public List<String> classifyFeatures(String featureFile, String modelFile, int featureSize)
@@ -227,8 +340,21 @@ public class CrfSuiteWrapper {
 
   public List<String> classifyFeatures(File featureFile, File modelFile, int featureSize)
       throws IOException {
+    return classifyFeatures(featureFile, modelFile, featureSize, false);
+  }
+
+  /**
+   * @param marginals
+   *          whether to tag with <code>-i</code>, so that every label is followed by a colon and
+   *          its marginal probability, e.g. <code>B-PER:0.982</code>
+   */
+  public List<String> classifyFeatures(
+      File featureFile,
+      File modelFile,
+      int featureSize,
+      boolean marginals) throws IOException {
     List<String> result = new ArrayList<String>();
-    result = classifyFeatures(modelFile, featureFile);
+    result = classifyFeatures(modelFile, featureFile, marginals);
     if (result.size() != featureSize) {
       throw new IllegalStateException(
           "The number of extracted classified labels is not equivalent with the number of instanzes ("
@@ -244,6 +370,15 @@ public class CrfSuiteWrapper {
       OutcomeEncoder<String, String> outcomeEncoder,
       FeaturesEncoder<List<NameNumber>> featuresEncoder,
       File modelFile) throws IOException {
+    return classifyFeatures(features, outcomeEncoder, featuresEncoder, modelFile, false);
+  }
+
+  public List<String> classifyFeatures(
+      List<List<Feature>> features,
+      OutcomeEncoder<String, String> outcomeEncoder,
+      FeaturesEncoder<List<NameNumber>> featuresEncoder,
+      File modelFile,
+      boolean marginals) throws IOException {
 
     File featureFile = File.createTempFile("features", ".crfsuite");
     featureFile.deleteOnExit();
@@ -253,15 +388,18 @@ public class CrfSuiteWrapper {
       for (List<Feature> f : features) {
         List<NameNumber> fe;
         fe = featuresEncoder.encodeAll(f);
+        out.append(NO_LABEL);
         for (NameNumber nn : fe) {
-          out.append(nn.name);
-          out.append("\t");
+          if (attributeWhitelist == null || attributeWhitelist.contains(nn.name)) {
+            out.append("\t");
+            out.append(nn.name);
+          }
         }
         out.append("\n");
       }
 
       out.close();
-      return classifyFeatures(featureFile, modelFile, features.size());
+      return classifyFeatures(featureFile, modelFile, features.size(), marginals);
     } catch (CleartkEncoderException e) {
       logger.log(Level.WARNING, e.getMessage());
     }
@@ -275,6 +413,16 @@ public class CrfSuiteWrapper {
       FeaturesEncoder<List<NameNumber>> featuresEncoder,
       File modelFile,
       File featureFile) throws IOException {
+    return classifyFeatures(features, outcomeEncoder, featuresEncoder, modelFile, featureFile, false);
+  }
+
+  public List<String> classifyFeatures(
+      Map<Integer, List<List<Feature>>> features,
+      OutcomeEncoder<String, String> outcomeEncoder,
+      FeaturesEncoder<List<NameNumber>> featuresEncoder,
+      File modelFile,
+      File featureFile,
+      boolean marginals) throws IOException {
 
     int featureSizes = features.size() - 1; // number of new lines separating new sentences
     if (featureFile == null) {
@@ -291,9 +439,12 @@ public class CrfSuiteWrapper {
         for (List<Feature> f : features.get(i)) {
           List<NameNumber> fe;
           fe = featuresEncoder.encodeAll(f);
+          out.append(NO_LABEL);
           for (NameNumber nn : fe) {
-            out.append(nn.name);
-            out.append("\t");
+            if (attributeWhitelist == null || attributeWhitelist.contains(nn.name)) {
+              out.append("\t");
+              out.append(nn.name);
+            }
           }
           out.append("\n");
         }
@@ -301,7 +452,7 @@ public class CrfSuiteWrapper {
       }
 
       out.close();
-      return classifyFeatures(featureFile, modelFile, featureSizes);
+      return classifyFeatures(featureFile, modelFile, featureSizes, marginals);
     } catch (CleartkEncoderException e) {
       logger.log(Level.WARNING, e.getMessage());
     }
@@ -309,12 +460,13 @@ public class CrfSuiteWrapper {
 
   }
 
-  private List<String> classifyFeatures(File modelFile, File featureFile) throws IOException {
+  private List<String> classifyFeatures(File modelFile, File featureFile, boolean marginals)
+      throws IOException {
     List<String> posTags = new ArrayList<String>();
     StringBuffer cmd = new StringBuffer();
 
     cmd.append(executable.getPath());
-    cmd.append(" tag -m ");
+    cmd.append(marginals ? " tag -i -m " : " tag -m ");
     cmd.append(modelFile.getAbsolutePath());
     cmd.append(" ");
     cmd.append(featureFile.getAbsolutePath());
@@ -346,4 +498,32 @@ public class CrfSuiteWrapper {
     return posTags;
   }
 
+  /**
+   * Returns the text dump of a CRFsuite model (<code>crfsuite dump</code>), line by line.
+   */
+  public List<String> dumpModel(File modelFile) throws IOException {
+    Process p = Runtime.getRuntime().exec(
+        new String[] { executable.getPath(), "dump", modelFile.getAbsolutePath() });
+
+    InputStream stdIn = p.getInputStream();
+    InputStreamHandler<List<String>> ishIn = InputStreamHandler.getInputStreamAsList(stdIn);
+
+    InputStream stdErr = p.getErrorStream();
+    InputStreamHandler<StringBuffer> ishErr = InputStreamHandler.getInputStreamAsBufferedString(stdErr);
+
+    try {
+      p.waitFor();
+      ishIn.join();
+      ishErr.join();
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, e.getMessage());
+    }
+    if (ishErr.getBuffer().length() > 0) {
+      logger.log(Level.WARNING, ishErr.getBuffer().toString());
+    }
+    stdErr.close();
+    stdIn.close();
+    return ishIn.getBuffer();
+  }
+
 }
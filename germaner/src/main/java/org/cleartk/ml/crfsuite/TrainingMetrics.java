@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+/**
+ * The progress of a CRFsuite training run after one iteration (L-BFGS) or epoch (SGD), as parsed
+ * from the output of <code>crfsuite learn</code> while it runs. Values CRFsuite does not print
+ * for the training algorithm are NaN, or -1 for counts.
+ */
+public class TrainingMetrics {
+
+  /**
+   * Receives the metrics of every iteration of a running training, see
+   * {@link CrfSuiteWrapper#addTrainingListener(Listener)}.
+   */
+  public interface Listener {
+    /**
+     * @return false to stop the training, e.g. because it diverges or stalls; no model is written
+     */
+    boolean iteration(TrainingMetrics metrics);
+  }
+
+  private final int iteration;
+
+  private final int maxIterations;
+
+  private final double loss;
+
+  private final double featureNorm;
+
+  private final double errorNorm;
+
+  private final int activeFeatures;
+
+  private final double seconds;
+
+  private final double elapsedSeconds;
+
+  private final double remainingSeconds;
+
+  TrainingMetrics(
+      int iteration,
+      int maxIterations,
+      double loss,
+      double featureNorm,
+      double errorNorm,
+      int activeFeatures,
+      double seconds,
+      double elapsedSeconds,
+      double remainingSeconds) {
+    this.iteration = iteration;
+    this.maxIterations = maxIterations;
+    this.loss = loss;
+    this.featureNorm = featureNorm;
+    this.errorNorm = errorNorm;
+    this.activeFeatures = activeFeatures;
+    this.seconds = seconds;
+    this.elapsedSeconds = elapsedSeconds;
+    this.remainingSeconds = remainingSeconds;
+  }
+
+  public int getIteration() {
+    return iteration;
+  }
+
+  /**
+   * @return the iteration limit of the training, or -1 if there is none
+   */
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public double getLoss() {
+    return loss;
+  }
+
+  public double getFeatureNorm() {
+    return featureNorm;
+  }
+
+  /**
+   * @return the gradient norm (L-BFGS only)
+   */
+  public double getErrorNorm() {
+    return errorNorm;
+  }
+
+  /**
+   * @return the number of non-zero weights (L-BFGS only)
+   */
+  public int getActiveFeatures() {
+    return activeFeatures;
+  }
+
+  /**
+   * @return the seconds CRFsuite reports for this iteration
+   */
+  public double getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * @return the wall-clock seconds since the optimization started
+   */
+  public double getElapsedSeconds() {
+    return elapsedSeconds;
+  }
+
+  /**
+   * @return the estimated seconds until the iteration limit is reached, or NaN if there is no
+   *         limit; training may converge earlier
+   */
+  public double getRemainingSeconds() {
+    return remainingSeconds;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("iteration ").append(iteration);
+    if (maxIterations > 0) {
+      s.append('/').append(maxIterations);
+    }
+    s.append(": loss ").append(loss).append(", feature norm ").append(featureNorm);
+    if (!Double.isNaN(errorNorm)) {
+      s.append(", error norm ").append(errorNorm);
+    }
+    if (activeFeatures >= 0) {
+      s.append(", active features ").append(activeFeatures);
+    }
+    s.append(", ").append(seconds).append(" s");
+    if (!Double.isNaN(remainingSeconds)) {
+      s.append(", about ").append(Math.round(remainingSeconds)).append(" s left");
+    }
+    return s.toString();
+  }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.crfsuite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+/**
+ * Reads the output of <code>crfsuite learn</code> while it runs. Every iteration block is parsed
+ * into {@link TrainingMetrics}, which are logged and passed to the training listeners right away;
+ * the other lines are kept for the log at the end of the training.
+ */
+class TrainingOutputReader extends Thread {
+
+  private static final String ITERATION = "***** Iteration #";
+
+  private static final String EPOCH = "***** Epoch #";
+
+  // the loss has to rise this many times in a row to be reported as diverging
+  private static final int RISES = 3;
+
+  private final InputStream in;
+
+  private final Process process;
+
+  private final Logger logger;
+
+  private final List<String> otherLines = new ArrayList<String>();
+
+  private int maxIterations = -1;
+
+  private int iteration = -1;
+
+  private double loss;
+
+  private double featureNorm;
+
+  private double errorNorm;
+
+  private int activeFeatures;
+
+  private long firstIterationTime;
+
+  private double previousLoss = Double.NaN;
+
+  private int rises;
+
+  private volatile boolean stopped;
+
+  TrainingOutputReader(Process process, Logger logger) {
+    super("crfsuite learn output");
+    setDaemon(true);
+    this.in = process.getInputStream();
+    this.process = process;
+    this.logger = logger;
+  }
+
+  @Override
+  public void run() {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          parse(line);
+        } catch (NumberFormatException e) {
+          otherLines.add(line);
+        }
+      }
+    } catch (IOException e) {
+      // the stream is closed when a listener stops the training
+      if (!stopped) {
+        logger.log(Level.WARNING, "reading the CRFsuite output failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private void parse(String line) {
+    if (line.startsWith(ITERATION) || line.startsWith(EPOCH)) {
+      String number = line.substring(line.indexOf('#') + 1).replace("*", "").trim();
+      iteration = Integer.parseInt(number);
+      loss = featureNorm = errorNorm = Double.NaN;
+      activeFeatures = -1;
+      return;
+    }
+    if (iteration < 0) {
+      if (line.startsWith("max_iterations: ")) {
+        int max = Integer.parseInt(value(line));
+        maxIterations = max == Integer.MAX_VALUE ? -1 : max;
+      }
+      // the empty lines between the iteration blocks are dropped
+      if (!line.isEmpty() || firstIterationTime == 0) {
+        otherLines.add(line);
+      }
+      return;
+    }
+    if (line.startsWith("Loss: ")) {
+      loss = Double.parseDouble(value(line));
+    } else if (line.startsWith("Feature norm: ") || line.startsWith("Feature L2-norm: ")) {
+      featureNorm = Double.parseDouble(value(line));
+    } else if (line.startsWith("Error norm: ")) {
+      errorNorm = Double.parseDouble(value(line));
+    } else if (line.startsWith("Active features: ")) {
+      activeFeatures = Integer.parseInt(value(line));
+    } else if (line.startsWith("Seconds required for this iteration: ")) {
+      publish(Double.parseDouble(value(line)));
+      iteration = -1;
+    }
+  }
+
+  private static String value(String line) {
+    return line.substring(line.indexOf(':') + 1).trim();
+  }
+
+  /**
+   * CRFsuite prints a block when its iteration has finished, so the wall-clock time from the
+   * first block on measures the following iterations.
+   */
+  private void publish(double seconds) {
+    long now = System.currentTimeMillis();
+    if (firstIterationTime == 0) {
+      firstIterationTime = now - (long) (seconds * 1000);
+    }
+    double elapsed = (now - firstIterationTime) / 1000.0;
+    double remaining = Double.NaN;
+    if (maxIterations > 0) {
+      remaining = Math.max(0, elapsed / iteration * (maxIterations - iteration));
+    }
+    TrainingMetrics metrics = new TrainingMetrics(iteration, maxIterations, loss, featureNorm,
+        errorNorm, activeFeatures, seconds, elapsed, remaining);
+    logger.log(Level.INFO, "CRFsuite " + metrics);
+    if (Double.isNaN(loss) || Double.isInfinite(loss)) {
+      logger.log(Level.WARNING, "CRFsuite training diverges: the loss is " + loss);
+    } else if (loss > previousLoss) {
+      if (++rises == RISES) {
+        logger.log(Level.WARNING, "CRFsuite training may diverge: the loss has risen " + RISES
+            + " times in a row");
+      }
+    } else {
+      rises = 0;
+    }
+    previousLoss = loss;
+    for (TrainingMetrics.Listener listener : CrfSuiteWrapper.getTrainingListeners()) {
+      if (!listener.iteration(metrics)) {
+        logger.log(Level.WARNING, "CRFsuite training stopped by " + listener + " after iteration "
+            + iteration);
+        stopped = true;
+        process.destroy();
+      }
+    }
+  }
+
+  /**
+   * @return whether a listener has stopped the training
+   */
+  boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * @return the output besides the iteration blocks, one line per line
+   */
+  String getOtherOutput() {
+    StringBuilder s = new StringBuilder();
+    for (String line : otherLines) {
+      s.append(line).append('\n');
+    }
+    return s.toString();
+  }
+}
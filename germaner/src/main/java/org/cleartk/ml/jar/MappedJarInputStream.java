@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.jar;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * A {@link JarInputStream} whose entries are served from byte buffers, e.g. sections of a
+ * memory-mapped file, instead of being inflated from a jar file. Builders read it like the stream
+ * of model.jar, so a classifier can be loaded without writing the jar to disk.
+ */
+public class MappedJarInputStream extends JarInputStream {
+
+  private final Manifest manifest;
+
+  private final Iterator<Map.Entry<String, ByteBuffer>> entries;
+
+  private ByteBuffer entry;
+
+  /**
+   * @param entries
+   *          the jar entries in the order the builder reads them
+   */
+  public MappedJarInputStream(Manifest manifest, Map<String, ByteBuffer> entries)
+      throws IOException {
+    super(new ByteArrayInputStream(new byte[0]));
+    this.manifest = manifest;
+    this.entries = entries.entrySet().iterator();
+  }
+
+  @Override
+  public Manifest getManifest() {
+    return manifest;
+  }
+
+  @Override
+  public ZipEntry getNextEntry() throws IOException {
+    if (!entries.hasNext()) {
+      entry = null;
+      return null;
+    }
+    Map.Entry<String, ByteBuffer> next = entries.next();
+    entry = next.getValue().duplicate();
+    JarEntry jarEntry = new JarEntry(next.getKey());
+    jarEntry.setSize(entry.remaining());
+    return jarEntry;
+  }
+
+  @Override
+  public JarEntry getNextJarEntry() throws IOException {
+    return (JarEntry) getNextEntry();
+  }
+
+  @Override
+  public void closeEntry() {
+    entry = null;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (entry == null || !entry.hasRemaining()) {
+      return -1;
+    }
+    return entry.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (entry == null || !entry.hasRemaining()) {
+      return -1;
+    }
+    int n = Math.min(len, entry.remaining());
+    entry.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (entry == null || n <= 0) {
+      return 0;
+    }
+    int skipped = (int) Math.min(n, entry.remaining());
+    entry.position(entry.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return entry == null ? 0 : entry.remaining();
+  }
+
+  /**
+   * Loads a classifier from the stream. {@link JarClassifierBuilder#loadClassifier} cannot be used,
+   * since it would read the stream as the bytes of a jar file.
+   */
+  public static <CLASSIFIER_TYPE> CLASSIFIER_TYPE loadClassifier(
+      JarClassifierBuilder<CLASSIFIER_TYPE> builder,
+      JarInputStream modelStream) throws IOException {
+    builder.unpackageClassifier(modelStream);
+    return builder.newClassifier();
+  }
+}
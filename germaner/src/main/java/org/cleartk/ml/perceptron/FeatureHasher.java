@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import org.cleartk.ml.Feature;
+
+/**
+ * Hashes features into the buckets of a {@link PerceptronModel} without building a feature
+ * dictionary or concatenating name and value, so that unseen features cost nothing to encode.
+ * Every feature is treated as an indicator of its name and value; the hash only depends on
+ * <code>String</code>, <code>Number</code> and <code>Boolean</code> hash codes, which are the same
+ * on every JVM.
+ */
+public final class FeatureHasher {
+
+  private FeatureHasher() {
+  }
+
+  public static int hash(Feature feature) {
+    return hash(feature.getName(), feature.getValue());
+  }
+
+  public static int hash(String name, Object value) {
+    int h = mix(name == null ? 0 : name.hashCode());
+    h ^= value == null ? 0 : value.hashCode();
+    return mix(h * 0x9E3779B1);
+  }
+
+  /**
+   * The finalization step of MurmurHash3, spreading all input bits over the low bits used as bucket
+   * index.
+   */
+  static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
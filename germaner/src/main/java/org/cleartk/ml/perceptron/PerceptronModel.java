@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.Feature;
+
+/**
+ * An averaged perceptron with hashed features and integer weights. Feature hashes are mapped to
+ * one of <code>2^bits</code> buckets, and the weights of a bucket for all labels are stored next
+ * to each other at <code>bucket * numLabels + label</code>, so scoring a feature reads one
+ * contiguous run of the table. The weights are the averaged weights multiplied by {@link #scale}.
+ */
+public class PerceptronModel {
+
+  private static final int MAGIC = 0x4A505243; // "JPRC"
+
+  private static final int VERSION = 1;
+
+  private final String[] labels;
+
+  private final int bits;
+
+  private final int mask;
+
+  private final int scale;
+
+  private final int[] weights;
+
+  private Map<String, Integer> labelIndex;
+
+  public PerceptronModel(String[] labels, int bits, int scale, int[] weights) {
+    this.labels = labels;
+    this.bits = bits;
+    this.mask = (1 << bits) - 1;
+    this.scale = scale;
+    this.weights = weights;
+    if (weights.length != (1 << bits) * labels.length) {
+      throw new IllegalArgumentException("inconsistent perceptron model dimensions");
+    }
+  }
+
+  public int getNumLabels() {
+    return labels.length;
+  }
+
+  public String getLabel(int label) {
+    return labels[label];
+  }
+
+  public String[] getLabels() {
+    return labels;
+  }
+
+  public int getLabelIndex(String label) {
+    if (labelIndex == null) {
+      Map<String, Integer> index = new HashMap<String, Integer>();
+      for (int i = 0; i < labels.length; i++) {
+        index.put(labels[i], i);
+      }
+      labelIndex = index;
+    }
+    Integer i = labelIndex.get(label);
+    return i == null ? -1 : i;
+  }
+
+  public int getBits() {
+    return bits;
+  }
+
+  public int getScale() {
+    return scale;
+  }
+
+  public int[] getWeights() {
+    return weights;
+  }
+
+  /**
+   * The offset of the weights of all labels for a feature hash.
+   */
+  public int offset(int hash) {
+    return (hash & mask) * labels.length;
+  }
+
+  public void addScores(int hash, int[] scores) {
+    int offset = offset(hash);
+    for (int y = 0; y < scores.length; y++) {
+      scores[y] += weights[offset + y];
+    }
+  }
+
+  public int[] score(List<Feature> features) {
+    int[] scores = new int[labels.length];
+    for (Feature feature : features) {
+      addScores(FeatureHasher.hash(feature), scores);
+    }
+    return scores;
+  }
+
+  public static int argmax(int[] scores) {
+    int best = 0;
+    for (int y = 1; y < scores.length; y++) {
+      if (scores[y] > scores[best]) {
+        best = y;
+      }
+    }
+    return best;
+  }
+
+  public void write(File modelFile) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(modelFile));
+    try {
+      write(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes the labels and the non-zero weights; most buckets are empty for all but a few labels.
+   */
+  public void write(OutputStream outputStream) throws IOException {
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(labels.length);
+    for (String label : labels) {
+      out.writeUTF(label);
+    }
+    out.writeInt(bits);
+    out.writeInt(scale);
+    int nonZero = 0;
+    for (int weight : weights) {
+      if (weight != 0) {
+        nonZero++;
+      }
+    }
+    out.writeInt(nonZero);
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] != 0) {
+        out.writeInt(i);
+        out.writeInt(weights[i]);
+      }
+    }
+    out.flush();
+  }
+
+  public static PerceptronModel read(File modelFile) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(modelFile));
+    try {
+      return read(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads a model from the stream without closing it, so that it can be used on a jar entry.
+   */
+  public static PerceptronModel read(InputStream inputStream) throws IOException {
+    DataInputStream in = new DataInputStream(inputStream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a perceptron model file");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("unsupported perceptron model version " + version);
+    }
+    String[] labels = new String[in.readInt()];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = in.readUTF();
+    }
+    int bits = in.readInt();
+    int scale = in.readInt();
+    int[] weights = new int[(1 << bits) * labels.length];
+    int nonZero = in.readInt();
+    for (int k = 0; k < nonZero; k++) {
+      int i = in.readInt();
+      weights[i] = in.readInt();
+    }
+    return new PerceptronModel(labels, bits, scale, weights);
+  }
+}
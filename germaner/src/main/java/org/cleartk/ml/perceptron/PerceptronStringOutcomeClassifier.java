@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.viterbi.EmissionScoringClassifier;
+
+/**
+ * Classifies a single token with a {@link PerceptronModel}. Sequences are tagged by wrapping it in
+ * a <code>ViterbiClassifier</code>, which adds the features of the previous outcomes.
+ */
+public class PerceptronStringOutcomeClassifier implements
+    EmissionScoringClassifier<String, int[]> {
+
+  protected PerceptronModel model;
+
+  public PerceptronStringOutcomeClassifier(PerceptronModel model) {
+    this.model = model;
+  }
+
+  public PerceptronModel getModel() {
+    return model;
+  }
+
+  @Override
+  public String classify(List<Feature> features) throws CleartkProcessingException {
+    return model.getLabel(PerceptronModel.argmax(model.score(features)));
+  }
+
+  /**
+   * Normalizes the perceptron scores with a softmax, so that the scores of a path can be multiplied
+   * as the <code>ViterbiClassifier</code> does by default.
+   */
+  @Override
+  public Map<String, Double> score(List<Feature> features) throws CleartkProcessingException {
+    return normalize(model.score(features));
+  }
+
+  /**
+   * The perceptron score is a sum over features, so the emission is the score of the token
+   * features alone.
+   */
+  @Override
+  public int[] scoreEmission(List<Feature> features) throws CleartkProcessingException {
+    return model.score(features);
+  }
+
+  @Override
+  public Map<String, Double> score(int[] emission, List<Feature> historyFeatures)
+      throws CleartkProcessingException {
+    int[] scores = emission.clone();
+    for (Feature feature : historyFeatures) {
+      model.addScores(FeatureHasher.hash(feature), scores);
+    }
+    return normalize(scores);
+  }
+
+  private Map<String, Double> normalize(int[] scores) {
+    int best = scores[PerceptronModel.argmax(scores)];
+    double[] exp = new double[scores.length];
+    double sum = 0;
+    for (int y = 0; y < scores.length; y++) {
+      exp[y] = Math.exp((double) (scores[y] - best) / model.getScale());
+      sum += exp[y];
+    }
+    Map<String, Double> scoredOutcomes = new HashMap<String, Double>();
+    for (int y = 0; y < scores.length; y++) {
+      scoredOutcomes.put(model.getLabel(y), exp[y] / sum);
+    }
+    return scoredOutcomes;
+  }
+}
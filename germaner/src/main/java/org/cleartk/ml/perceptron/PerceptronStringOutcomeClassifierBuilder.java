@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.cleartk.ml.jar.JarStreams;
+import org.cleartk.ml.viterbi.OutcomeFeatureExtractor;
+import org.cleartk.ml.viterbi.ViterbiClassifier;
+
+/**
+ * Trains and packages an averaged perceptron. The classifier is a <code>ViterbiClassifier</code>
+ * around a {@link PerceptronStringOutcomeClassifier}, so it decodes greedily by default and with a
+ * beam when <code>ViterbiClassifier.PARAM_STACK_SIZE</code> is larger than 1.
+ */
+public class PerceptronStringOutcomeClassifierBuilder extends
+    JarClassifierBuilder<ViterbiClassifier<String>> {
+
+  public static final String MODEL_NAME = "perceptron.model";
+
+  public static final String TRAINING_NAME = "perceptron.training";
+
+  static Logger logger = UIMAFramework.getLogger(PerceptronStringOutcomeClassifierBuilder.class);
+
+  private PerceptronModel model;
+
+  public File getTrainingDataFile(File dir) {
+    return new File(dir, TRAINING_NAME);
+  }
+
+  public File getModelFile(File dir) {
+    return new File(dir, MODEL_NAME);
+  }
+
+  public OutcomeFeatureExtractor[] getOutcomeFeatureExtractors() {
+    return new OutcomeFeatureExtractor[] { new PreviousOutcomesExtractor() };
+  }
+
+  @Override
+  public void trainClassifier(File dir, String... args) throws Exception {
+    logger.log(Level.INFO, "Start learning averaged perceptron");
+    PerceptronTrainer trainer = new PerceptronTrainer(getOutcomeFeatureExtractors()[0]);
+    trainer.setArguments(args);
+    model = trainer.train(getTrainingDataFile(dir));
+    model.write(getModelFile(dir));
+    logger.log(Level.INFO, "Finished learning averaged perceptron");
+  }
+
+  /**
+   * Writes only the manifest naming this builder.
+   */
+  public void saveManifest(File dir) throws IOException {
+    OutputStream out = new FileOutputStream(new File(dir, "MANIFEST.MF"));
+    try {
+      manifest.write(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  @Override
+  protected void packageClassifier(File dir, JarOutputStream modelStream) throws IOException {
+    super.packageClassifier(dir, modelStream);
+    JarStreams.putNextJarEntry(modelStream, MODEL_NAME, getModelFile(dir));
+  }
+
+  @Override
+  protected void unpackageClassifier(JarInputStream modelStream) throws IOException {
+    super.unpackageClassifier(modelStream);
+    JarStreams.getNextJarEntry(modelStream, MODEL_NAME);
+    model = PerceptronModel.read(modelStream);
+  }
+
+  @Override
+  protected ViterbiClassifier<String> newClassifier() {
+    return new ViterbiClassifier<String>(
+        new PerceptronStringOutcomeClassifier(model),
+        getOutcomeFeatureExtractors());
+  }
+
+  /**
+   * Retrains a model directory written by the {@link PerceptronStringOutcomeDataWriter}, e.g. with
+   * a different number of iterations, and packages it as model.jar.
+   *
+   * <pre>
+   * PerceptronStringOutcomeClassifierBuilder modelDirectory [-p name=value]...
+   * </pre>
+   */
+  public static void main(String... args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("USAGE: PerceptronStringOutcomeClassifierBuilder modelDirectory [-p name=value]...");
+      System.exit(1);
+    }
+    File dir = new File(args[0]);
+    String[] trainingArgs = new String[args.length - 1];
+    System.arraycopy(args, 1, trainingArgs, 0, trainingArgs.length);
+    PerceptronStringOutcomeClassifierBuilder builder = new PerceptronStringOutcomeClassifierBuilder();
+    builder.trainClassifier(dir, trainingArgs);
+    builder.packageClassifier(dir);
+  }
+}
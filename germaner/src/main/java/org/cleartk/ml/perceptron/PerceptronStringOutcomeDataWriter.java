@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Instance;
+import org.cleartk.ml.SequenceDataWriter;
+import org.cleartk.ml.jar.DirectoryDataWriter;
+import org.cleartk.ml.viterbi.ViterbiClassifier;
+
+/**
+ * Writes the NERAnnotator instances as hashed training sequences for the
+ * {@link PerceptronStringOutcomeClassifierBuilder}.
+ */
+public class PerceptronStringOutcomeDataWriter extends
+    DirectoryDataWriter<PerceptronStringOutcomeClassifierBuilder, ViterbiClassifier<String>>
+    implements SequenceDataWriter<String> {
+
+  private DataOutputStream trainingDataWriter;
+
+  public PerceptronStringOutcomeDataWriter(File outputDirectory) throws FileNotFoundException {
+    super(outputDirectory);
+    this.trainingDataWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+        classifierBuilder.getTrainingDataFile(outputDirectory))));
+  }
+
+  @Override
+  public void write(List<Instance<String>> instances) throws CleartkProcessingException {
+    try {
+      PerceptronTrainingData.writeSequence(trainingDataWriter, instances);
+    } catch (IOException e) {
+      throw new CleartkProcessingException(e);
+    }
+  }
+
+  @Override
+  public void finish() throws CleartkProcessingException {
+    try {
+      trainingDataWriter.close();
+    } catch (IOException e) {
+      throw new CleartkProcessingException(e);
+    }
+    super.finish();
+  }
+
+  @Override
+  protected PerceptronStringOutcomeClassifierBuilder newClassifierBuilder() {
+    return new PerceptronStringOutcomeClassifierBuilder();
+  }
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.viterbi.OutcomeFeatureExtractor;
+
+/**
+ * Trains a {@link PerceptronModel} with the averaged perceptron. Each token is tagged greedily with
+ * the features of its own predicted history, exactly as the <code>ViterbiClassifier</code> does
+ * with a stack size of 1, and the weights are updated on every mistake. Averaging uses the lazy
+ * timestamp trick, so an update costs the same as in the plain perceptron.
+ * <p>
+ * Parameters are given like CRFsuite parameters, <code>-p name=value</code>:
+ * <ul>
+ * <li><code>max_iterations</code>: number of passes over the data (10)</li>
+ * <li><code>bits</code>: log2 of the number of feature buckets (20)</li>
+ * <li><code>seed</code>: seed of the shuffle between passes (1)</li>
+ * </ul>
+ */
+public class PerceptronTrainer {
+
+  static Logger logger = UIMAFramework.getLogger(PerceptronTrainer.class);
+
+  /**
+   * Averaged weights are fractions of an update; they are stored multiplied by this factor.
+   */
+  public static final int SCALE = 1024;
+
+  private int maxIterations = 10;
+
+  private int bits = 20;
+
+  private long seed = 1;
+
+  private final OutcomeFeatureExtractor outcomeFeatureExtractor;
+
+  public PerceptronTrainer(OutcomeFeatureExtractor outcomeFeatureExtractor) {
+    this.outcomeFeatureExtractor = outcomeFeatureExtractor;
+  }
+
+  public void setArguments(String... args) {
+    for (int i = 0; i < args.length; i++) {
+      if ((args[i].equals("-p") || args[i].equals("--set")) && i + 1 < args.length) {
+        String[] parameter = args[++i].split("=", 2);
+        if (parameter.length == 2) {
+          setParameter(parameter[0].trim(), parameter[1].trim());
+        }
+      }
+    }
+  }
+
+  public void setParameter(String name, String value) {
+    if (name.equals("max_iterations")) {
+      maxIterations = Integer.parseInt(value);
+    } else if (name.equals("bits")) {
+      bits = Math.max(1, Math.min(26, Integer.parseInt(value)));
+    } else if (name.equals("seed")) {
+      seed = Long.parseLong(value);
+    } else {
+      logger.log(Level.WARNING, "Ignoring unsupported perceptron parameter " + name);
+    }
+  }
+
+  public PerceptronModel train(File trainingFile) throws IOException {
+    logger.log(Level.INFO, "Reading perceptron training data from "
+        + trainingFile.getAbsolutePath());
+    return train(PerceptronTrainingData.read(trainingFile));
+  }
+
+  public PerceptronModel train(PerceptronTrainingData data) {
+    String[] labels = data.getLabelNames();
+    int numLabels = labels.length;
+    int mask = (1 << bits) - 1;
+    int[] weights = new int[(mask + 1) * numLabels];
+    long[] totals = new long[weights.length];
+    int[] stamps = new int[weights.length];
+    int[][] history = historyHashes(labels);
+    int[] scores = new int[numLabels];
+
+    int[] order = new int[data.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Random random = new Random(seed);
+    int clock = 0;
+    for (int iteration = 1; iteration <= maxIterations; iteration++) {
+      long start = System.currentTimeMillis();
+      for (int i = order.length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int swap = order[i];
+        order[i] = order[j];
+        order[j] = swap;
+      }
+      int errors = 0;
+      for (int s : order) {
+        int[][] sequence = data.getSequence(s);
+        int[] gold = data.getLabels(s);
+        int previous = -1;
+        int secondPrevious = -1;
+        for (int t = 0; t < sequence.length; t++) {
+          clock++;
+          int[] historyHashes = history[(secondPrevious + 1) * (numLabels + 1) + previous + 1];
+          Arrays.fill(scores, 0);
+          addScores(weights, sequence[t], mask, scores);
+          addScores(weights, historyHashes, mask, scores);
+          int guess = PerceptronModel.argmax(scores);
+          if (guess != gold[t]) {
+            errors++;
+            update(weights, totals, stamps, clock, sequence[t], mask, numLabels, gold[t], guess);
+            update(weights, totals, stamps, clock, historyHashes, mask, numLabels, gold[t], guess);
+          }
+          secondPrevious = previous;
+          previous = guess;
+        }
+      }
+      logger.log(Level.INFO, String.format(
+          "***** Iteration #%d ***** Errors: %d of %d tokens (accuracy %.4f), "
+              + "Seconds required for this iteration: %.3f",
+          iteration,
+          errors,
+          data.getNumTokens(),
+          1.0 - (double) errors / Math.max(1, data.getNumTokens()),
+          (System.currentTimeMillis() - start) / 1000.0));
+    }
+
+    int[] averaged = new int[weights.length];
+    if (clock > 0) {
+      for (int i = 0; i < weights.length; i++) {
+        long total = totals[i] + (long) (clock - stamps[i]) * weights[i];
+        averaged[i] = (int) Math.round((double) total * SCALE / clock);
+      }
+    }
+    return new PerceptronModel(labels, bits, SCALE, averaged);
+  }
+
+  /**
+   * Hashes of the outcome features for every history, indexed by
+   * <code>(secondPrevious + 1) * (numLabels + 1) + previous + 1</code> where -1 stands for the
+   * start of the sequence. They are computed with the same extractor and hash function as at
+   * tagging time.
+   */
+  private int[][] historyHashes(String[] labels) {
+    int n = labels.length + 1;
+    int[][] history = new int[n * n][];
+    for (int secondPrevious = -1; secondPrevious < labels.length; secondPrevious++) {
+      for (int previous = -1; previous < labels.length; previous++) {
+        List<Object> outcomes = new ArrayList<Object>(2);
+        if (previous >= 0) {
+          if (secondPrevious >= 0) {
+            outcomes.add(labels[secondPrevious]);
+          }
+          outcomes.add(labels[previous]);
+        }
+        List<Feature> features = outcomeFeatureExtractor.extractFeatures(outcomes);
+        int[] hashes = new int[features.size()];
+        for (int i = 0; i < hashes.length; i++) {
+          hashes[i] = FeatureHasher.hash(features.get(i));
+        }
+        history[(secondPrevious + 1) * n + previous + 1] = hashes;
+      }
+    }
+    return history;
+  }
+
+  private static void addScores(int[] weights, int[] hashes, int mask, int[] scores) {
+    int numLabels = scores.length;
+    for (int hash : hashes) {
+      int offset = (hash & mask) * numLabels;
+      for (int y = 0; y < numLabels; y++) {
+        scores[y] += weights[offset + y];
+      }
+    }
+  }
+
+  private static void update(
+      int[] weights,
+      long[] totals,
+      int[] stamps,
+      int clock,
+      int[] hashes,
+      int mask,
+      int numLabels,
+      int gold,
+      int guess) {
+    for (int hash : hashes) {
+      int offset = (hash & mask) * numLabels;
+      add(weights, totals, stamps, clock, offset + gold, 1);
+      add(weights, totals, stamps, clock, offset + guess, -1);
+    }
+  }
+
+  private static void add(int[] weights, long[] totals, int[] stamps, int clock, int i, int delta) {
+    totals[i] += (long) (clock - stamps[i]) * weights[i];
+    stamps[i] = clock;
+    weights[i] += delta;
+  }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.Instance;
+
+/**
+ * Hashed training sequences for the {@link PerceptronTrainer}. The training file stores, for each
+ * sequence, the number of tokens followed by the label, the number of features and the feature
+ * hashes of every token. Hashing happens once while writing, so training never sees a feature
+ * string.
+ */
+public class PerceptronTrainingData {
+
+  private final List<String> labels = new ArrayList<String>();
+
+  private final Map<String, Integer> labelIndex = new HashMap<String, Integer>();
+
+  private final List<int[][]> sequences = new ArrayList<int[][]>();
+
+  private final List<int[]> sequenceLabels = new ArrayList<int[]>();
+
+  private int numTokens;
+
+  public static void writeSequence(DataOutputStream out, List<Instance<String>> instances)
+      throws IOException {
+    if (instances.isEmpty()) {
+      return;
+    }
+    out.writeInt(instances.size());
+    for (Instance<String> instance : instances) {
+      out.writeUTF(instance.getOutcome());
+      List<Feature> features = instance.getFeatures();
+      out.writeInt(features.size());
+      for (Feature feature : features) {
+        out.writeInt(FeatureHasher.hash(feature));
+      }
+    }
+  }
+
+  public static PerceptronTrainingData read(File trainingFile) throws IOException {
+    PerceptronTrainingData data = new PerceptronTrainingData();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+        trainingFile)));
+    try {
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        int[][] sequence = new int[length][];
+        int[] sequenceLabel = new int[length];
+        for (int t = 0; t < length; t++) {
+          sequenceLabel[t] = data.index(in.readUTF());
+          int[] hashes = new int[in.readInt()];
+          for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = in.readInt();
+          }
+          sequence[t] = hashes;
+        }
+        data.sequences.add(sequence);
+        data.sequenceLabels.add(sequenceLabel);
+        data.numTokens += length;
+      }
+    } finally {
+      in.close();
+    }
+    return data;
+  }
+
+  private int index(String label) {
+    Integer i = labelIndex.get(label);
+    if (i == null) {
+      i = labels.size();
+      labels.add(label);
+      labelIndex.put(label, i);
+    }
+    return i;
+  }
+
+  public int size() {
+    return sequences.size();
+  }
+
+  public int getNumTokens() {
+    return numTokens;
+  }
+
+  public int[][] getSequence(int i) {
+    return sequences.get(i);
+  }
+
+  public int[] getLabels(int i) {
+    return sequenceLabels.get(i);
+  }
+
+  public String[] getLabelNames() {
+    return labels.toArray(new String[labels.size()]);
+  }
+
+  public int getNumLabels() {
+    return labels.size();
+  }
+}
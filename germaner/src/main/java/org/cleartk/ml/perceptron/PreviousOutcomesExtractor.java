@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.perceptron;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.viterbi.OutcomeFeatureExtractor;
+
+/**
+ * Adds the previous and the second previous outcome, and their combination, as features. Unlike
+ * <code>DefaultOutcomeFeatureExtractor</code> it needs no configuration and marks positions before
+ * the start of the sequence with {@link #START}, which lets the perceptron learn what may start a
+ * sentence.
+ */
+public class PreviousOutcomesExtractor implements OutcomeFeatureExtractor {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String START = "<S>";
+
+  @Override
+  public void initialize(UimaContext context) throws ResourceInitializationException {
+  }
+
+  @Override
+  public List<Feature> extractFeatures(List<Object> previousOutcomes) {
+    int n = previousOutcomes.size();
+    String previous = n > 0 ? previousOutcomes.get(n - 1).toString() : START;
+    String secondPrevious = n > 1 ? previousOutcomes.get(n - 2).toString() : START;
+    List<Feature> features = new ArrayList<Feature>(3);
+    features.add(new Feature("PreviousOutcome_1", previous));
+    features.add(new Feature("PreviousOutcome_2", secondPrevious));
+    features.add(new Feature("PreviousOutcomes_2_1", secondPrevious + "_" + previous));
+    return features;
+  }
+}
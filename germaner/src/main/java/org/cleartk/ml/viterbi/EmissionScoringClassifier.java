@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.cleartk.ml.viterbi;
+
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.Classifier;
+import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.Feature;
+
+/**
+ * A classifier whose score splits into a part that only depends on the features of the element
+ * itself (the emission) and a part for the features added by the {@link OutcomeFeatureExtractor}s.
+ * The {@link ViterbiClassifier} computes the emission once per element and only adds the history
+ * part for each path in the beam.
+ * <p>
+ * <code>score(emission, historyFeatures)</code> must return the same scores as
+ * <code>score(features + historyFeatures)</code>, where <code>emission</code> was computed from
+ * <code>features</code>.
+ * 
+ * @param <EMISSION_TYPE>
+ *          the classifier-specific representation of the emission scores
+ */
+public interface EmissionScoringClassifier<OUTCOME_TYPE, EMISSION_TYPE> extends
+    Classifier<OUTCOME_TYPE> {
+
+  public EMISSION_TYPE scoreEmission(List<Feature> features) throws CleartkProcessingException;
+
+  public Map<OUTCOME_TYPE, Double> score(EMISSION_TYPE emission, List<Feature> historyFeatures)
+      throws CleartkProcessingException;
+}
@@ -25,9 +25,11 @@ package org.cleartk.ml.viterbi;
 
 import java.io.File;
 import java.lang.reflect.Type;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,27 +40,23 @@ import org.apache.uima.fit.factory.initializable.Initializable;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.cleartk.ml.Classifier;
 import org.cleartk.ml.CleartkProcessingException;
+import org.cleartk.ml.ConstrainedSequenceClassifier;
 import org.cleartk.ml.Feature;
+import org.cleartk.ml.ScoredSequenceClassifier;
 import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.SequenceConstraints;
 import org.cleartk.util.CleartkInitializationException;
 import org.cleartk.util.ReflectionUtil;
 import org.cleartk.util.ReflectionUtil.TypeArgumentDelegator;
 
-import com.google.common.base.Functions;
-import com.google.common.base.Objects;
-import com.google.common.base.Objects.ToStringHelper;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Ordering;
-import com.google.common.primitives.Doubles;
-
 /**
  * <br>
  * Copyright (c) 2007-2008, Regents of the University of Colorado <br>
  * All rights reserved.
  */
 
-public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCOME_TYPE>,
+public class ViterbiClassifier<OUTCOME_TYPE> implements
+    ConstrainedSequenceClassifier<OUTCOME_TYPE>, ScoredSequenceClassifier<OUTCOME_TYPE>,
     Initializable, TypeArgumentDelegator {
 
   protected Classifier<OUTCOME_TYPE> delegatedClassifier;
@@ -90,6 +88,32 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
       defaultValue = "false")
   protected boolean addScores = false;
 
+  public static final String PARAM_MIN_OUTCOME_SCORE = "minOutcomeScore";
+
+  @ConfigurationParameter(
+      name = PARAM_MIN_OUTCOME_SCORE,
+      mandatory = false,
+      description = "specifies the lowest classification score with which a candidate path is "
+          + "extended by an outcome. The best outcome of each path is always kept, so on confident "
+          + "elements the beam narrows to fewer than stackSize paths. When scores are multiplied "
+          + "they are usually probabilities, e.g. 0.01. By default no outcome is dropped.")
+  protected float minOutcomeScore = Float.NEGATIVE_INFINITY;
+
+  public static final String PARAM_BEAM_MARGIN = "beamMargin";
+
+  @ConfigurationParameter(
+      name = PARAM_BEAM_MARGIN,
+      mandatory = false,
+      description = "specifies how far the score of a candidate path may fall below the best path "
+          + "at the same element before it is dropped. When scores are multiplied, the margin is "
+          + "a difference of log scores, e.g. 5 keeps paths at least exp(-5) times as likely as "
+          + "the best one. By default no path is dropped.")
+  protected float beamMargin = Float.POSITIVE_INFINITY;
+
+  private long decodedElements;
+
+  private long beamStates;
+
   public ViterbiClassifier(
       Classifier<OUTCOME_TYPE> delegatedClassifier,
       OutcomeFeatureExtractor[] outcomeFeatureExtractors) {
@@ -102,6 +126,21 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
     if (stackSize < 1) {
       throw CleartkInitializationException.parameterLessThan(PARAM_STACK_SIZE, 1, stackSize);
     }
+    if (beamMargin < 0) {
+      throw CleartkInitializationException.parameterLessThan(PARAM_BEAM_MARGIN, 0, beamMargin);
+    }
+  }
+
+  /**
+   * @return the average number of candidate paths kept per element since the classifier was
+   *         created, 1 for greedy decoding.
+   */
+  public double getAverageBeamWidth() {
+    return decodedElements == 0 ? 0 : (double) beamStates / decodedElements;
+  }
+
+  public long getDecodedElements() {
+    return decodedElements;
   }
 
   public List<OUTCOME_TYPE> classify(List<List<Feature>> features)
@@ -117,6 +156,8 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
         outcomes.add(outcome);
         returnValues.add(outcome);
       }
+      decodedElements += returnValues.size();
+      beamStates += returnValues.size();
       return returnValues;
     } else {
       try {
@@ -133,9 +174,55 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
 
   }
 
+  /**
+   * Like {@link #classify(List)}, but only chooses outcomes allowed by the constraints. This
+   * requires Classifier.score even for a stack size of 1.
+   */
+  public List<OUTCOME_TYPE> classify(List<List<Feature>> features, SequenceConstraints constraints)
+      throws CleartkProcessingException {
+    try {
+      if (stackSize > 1) {
+        return viterbi(features, constraints);
+      }
+      List<Object> outcomes = new ArrayList<Object>();
+      List<OUTCOME_TYPE> returnValues = new ArrayList<OUTCOME_TYPE>();
+      for (List<Feature> instanceFeatures : features) {
+        Map<OUTCOME_TYPE, Double> scoredOutcomes = this.constrain(
+            this.getScoredOutcomes(instanceFeatures, outcomes),
+            constraints,
+            outcomes.size(),
+            outcomes.isEmpty() ? null : outcomes.get(outcomes.size() - 1));
+        OUTCOME_TYPE outcome = null;
+        for (Map.Entry<OUTCOME_TYPE, Double> entry : scoredOutcomes.entrySet()) {
+          if (outcome == null || entry.getValue() > scoredOutcomes.get(outcome)) {
+            outcome = entry.getKey();
+          }
+        }
+        outcomes.add(outcome);
+        returnValues.add(outcome);
+      }
+      decodedElements += returnValues.size();
+      beamStates += returnValues.size();
+      return returnValues;
+    } catch (UnsupportedOperationException uoe) {
+      throw CleartkProcessingException.unsupportedOperationSetParameter(
+          uoe,
+          delegatedClassifier,
+          "score",
+          PARAM_STACK_SIZE,
+          1);
+    }
+  }
+
   /**
    * This implementation of Viterbi requires at most stackSize * sequenceLength calls to the
-   * classifier. If this proves to be too expensive, then consider using a smaller stack size.
+   * classifier. If this proves to be too expensive, then consider using a smaller stack size. If
+   * the classifier is an {@link EmissionScoringClassifier}, the features of each element are only
+   * scored once, and each path only adds the score of its outcome features.
+   * <p>
+   * The lattice is kept as one row of path scores and one row of back-pointers per element,
+   * indexed by outcome, and the best path is read off with a single backtrack at the end. Path
+   * scores are summed or multiplied as the scores of the delegated classifier come.
    * 
    * @param featureLists
    *          a sequence-worth of features. Each List<Feature> in features should corresond to all
@@ -147,50 +234,193 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
    */
   public List<OUTCOME_TYPE> viterbi(List<List<Feature>> featureLists)
       throws CleartkProcessingException {
+    return viterbi(featureLists, null);
+  }
+
+  /**
+   * Like {@link #viterbi(List)}, but paths are only extended by outcomes allowed by the
+   * constraints, if any.
+   */
+  public List<OUTCOME_TYPE> viterbi(
+      List<List<Feature>> featureLists,
+      SequenceConstraints constraints) throws CleartkProcessingException {
 
     if (featureLists == null || featureLists.size() == 0) {
       return Collections.emptyList();
     }
+    return this.decode(featureLists, constraints, false).backtrack();
+  }
 
-    // find the best paths through the outcome lattice
-    Collection<Path> paths = null;
-    for (List<Feature> features : featureLists) {
+  /**
+   * Fills the lattice of {@link #viterbi(List, SequenceConstraints)}, keeping the scored outcomes
+   * of every path if <code>keepScores</code> is set.
+   */
+  private Lattice decode(
+      List<List<Feature>> featureLists,
+      SequenceConstraints constraints,
+      boolean keepScores) throws CleartkProcessingException {
+    int length = featureLists.size();
+    Lattice lattice = new Lattice(length, keepScores);
+    EmissionScoringClassifier<OUTCOME_TYPE, Object> emissionClassifier = null;
+    if (this.delegatedClassifier instanceof EmissionScoringClassifier) {
+      emissionClassifier = ReflectionUtil.uncheckedCast(this.delegatedClassifier);
+    }
 
-      // if this is the first instance, start new paths for each outcome
-      if (paths == null) {
-        paths = Lists.newArrayList();
-        Map<OUTCOME_TYPE, Double> scoredOutcomes = this.getScoredOutcomes(features, null);
-        for (OUTCOME_TYPE outcome : this.getTopOutcomes(scoredOutcomes)) {
-          paths.add(new Path(outcome, scoredOutcomes.get(outcome), null));
+    // if this is the first instance, start new paths for each outcome; an emission scoring
+    // classifier is trained with the outcome features of the empty history, other classifiers get
+    // no outcome features here
+    Object emission = null;
+    Map<OUTCOME_TYPE, Double> scoredOutcomes;
+    if (emissionClassifier != null) {
+      emission = emissionClassifier.scoreEmission(featureLists.get(0));
+      scoredOutcomes = this.getScoredOutcomes(
+          emissionClassifier,
+          emission,
+          Collections.<Object> emptyList());
+    } else {
+      scoredOutcomes = this.getScoredOutcomes(featureLists.get(0), null);
+    }
+    double[] topScores = new double[this.stackSize];
+    lattice.startRow(0);
+    lattice.keepScores(0, 0, scoredOutcomes);
+    scoredOutcomes = this.constrain(scoredOutcomes, constraints, 0, null);
+    List<OUTCOME_TYPE> topOutcomes = this.getTopOutcomes(scoredOutcomes, topScores);
+    for (int k = 0; k < topOutcomes.size(); k++) {
+      lattice.relax(0, lattice.index(topOutcomes.get(k)), topScores[k], 0);
+    }
+    beamStates += lattice.prune(0, this.beamMargin);
+
+    // for later instances, find the best previous path for each outcome
+    for (int t = 1; t < length; t++) {
+      List<Feature> features = featureLists.get(t);
+      if (emissionClassifier != null) {
+        emission = emissionClassifier.scoreEmission(features);
+      }
+      lattice.startRow(t);
+      int[] previousBackPointers = lattice.backPointers[t - 1];
+      double[] previousScores = lattice.scores[t - 1];
+      for (int previous = 0; previous < previousBackPointers.length; previous++) {
+        if (previousBackPointers[previous] < 0) {
+          continue;
+        }
+        List<Object> previousOutcomes = lattice.path(t - 1, previous);
+        if (emissionClassifier != null) {
+          scoredOutcomes = this.getScoredOutcomes(emissionClassifier, emission, previousOutcomes);
+        } else {
+          scoredOutcomes = this.getScoredOutcomes(features, previousOutcomes);
+        }
+        lattice.keepScores(t, previous, scoredOutcomes);
+        scoredOutcomes = this.constrain(
+            scoredOutcomes,
+            constraints,
+            t,
+            previousOutcomes.get(t - 1));
+        topOutcomes = this.getTopOutcomes(scoredOutcomes, topScores);
+        for (int k = 0; k < topOutcomes.size(); k++) {
+          double score = this.pathScore(previousScores[previous], topScores[k]);
+          lattice.relax(t, lattice.index(topOutcomes.get(k)), score, previous);
         }
       }
+      beamStates += lattice.prune(t, this.beamMargin);
+    }
+    decodedElements += length;
+    return lattice;
+  }
 
-      // for later instances, find the best previous path for each outcome
-      else {
-        Map<OUTCOME_TYPE, Path> maxPaths = Maps.newHashMap();
-        for (Path path : paths) {
-          Map<OUTCOME_TYPE, Double> scoredOutcomes = this.getScoredOutcomes(features, path);
-          for (OUTCOME_TYPE outcome : this.getTopOutcomes(scoredOutcomes)) {
-            double outcomeScore = scoredOutcomes.get(outcome);
-            double score = this.addScores ? path.score + outcomeScore : path.score * outcomeScore;
-            Path maxPath = maxPaths.get(outcome);
-            if (maxPath == null || score > maxPath.score) {
-              maxPaths.put(outcome, new Path(outcome, score, path));
-            }
-          }
+  /**
+   * Removes the outcomes that the constraints do not allow after the previous outcome. If none is
+   * left, only the transition constraints are applied, and if still none is left, none at all.
+   */
+  private Map<OUTCOME_TYPE, Double> constrain(
+      Map<OUTCOME_TYPE, Double> scoredOutcomes,
+      SequenceConstraints constraints,
+      int t,
+      Object previousOutcome) {
+    if (constraints == null) {
+      return scoredOutcomes;
+    }
+    Map<OUTCOME_TYPE, Double> allowed = new HashMap<OUTCOME_TYPE, Double>();
+    Map<OUTCOME_TYPE, Double> transitionAllowed = new HashMap<OUTCOME_TYPE, Double>();
+    for (Map.Entry<OUTCOME_TYPE, Double> entry : scoredOutcomes.entrySet()) {
+      String outcome = entry.getKey().toString();
+      boolean validTransition = previousOutcome == null
+          ? constraints.isAllowedStart(outcome)
+          : constraints.isAllowedTransition(previousOutcome.toString(), outcome);
+      if (validTransition) {
+        transitionAllowed.put(entry.getKey(), entry.getValue());
+        if (constraints.isAllowed(t, outcome)) {
+          allowed.put(entry.getKey(), entry.getValue());
         }
-        paths = maxPaths.values();
       }
     }
+    if (!allowed.isEmpty()) {
+      return allowed;
+    }
+    return transitionAllowed.isEmpty() ? scoredOutcomes : transitionAllowed;
+  }
 
-    // take the maximum of the final paths
-    return Collections.max(paths).outcomes;
+  private double pathScore(double pathScore, double outcomeScore) {
+    return this.addScores ? pathScore + outcomeScore : pathScore * outcomeScore;
   }
 
+  /**
+   * Decodes the sequence and returns, for each member, the scores of the delegated classifier
+   * given the decoded outcomes before it. These are local scores of the decoded path, not
+   * marginals over all paths; they require Classifier.score.
+   */
   @Override
   public List<Map<OUTCOME_TYPE, Double>> score(List<List<Feature>> features)
       throws CleartkProcessingException {
-    throw new UnsupportedOperationException();
+    List<Map<OUTCOME_TYPE, Double>> scores = new ArrayList<Map<OUTCOME_TYPE, Double>>(
+        features.size());
+    this.classify(features, scores);
+    return scores;
+  }
+
+  /**
+   * Classifies the sequence and adds the scores of each member given the decoded outcomes before
+   * it to <code>scores</code>. With a stack size above 1 these are the scores the lattice was built
+   * with; a stack size of 1 decodes with Classifier.classify, so the path is scored afterwards.
+   */
+  private List<OUTCOME_TYPE> classify(
+      List<List<Feature>> features,
+      List<Map<OUTCOME_TYPE, Double>> scores) throws CleartkProcessingException {
+    if (features.isEmpty()) {
+      return Collections.emptyList();
+    }
+    try {
+      if (this.stackSize > 1) {
+        Lattice lattice = this.decode(features, null, true);
+        int[] path = lattice.bestPath();
+        scores.addAll(lattice.scoresOf(path));
+        return lattice.outcomesOf(path);
+      }
+      List<OUTCOME_TYPE> outcomes = this.classify(copy(features));
+      List<Object> previousOutcomes = new ArrayList<Object>(outcomes);
+      for (int t = 0; t < features.size(); t++) {
+        scores.add(this.getScoredOutcomes(features.get(t), previousOutcomes.subList(0, t)));
+      }
+      return outcomes;
+    } catch (UnsupportedOperationException uoe) {
+      throw CleartkProcessingException.unsupportedOperationSetParameter(
+          uoe,
+          delegatedClassifier,
+          "score",
+          PARAM_STACK_SIZE,
+          1);
+    }
+  }
+
+  /**
+   * Copies the feature lists, which {@link #classify(List)} extends with outcome features for a
+   * stack size of 1.
+   */
+  private static List<List<Feature>> copy(List<List<Feature>> features) {
+    List<List<Feature>> copy = new ArrayList<List<Feature>>(features.size());
+    for (List<Feature> instanceFeatures : features) {
+      copy.add(new ArrayList<Feature>(instanceFeatures));
+    }
+    return copy;
   }
 
   public Map<String, Type> getTypeArguments(Class<?> genericType) {
@@ -200,13 +430,13 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
     return ReflectionUtil.getTypeArguments(genericType, this.delegatedClassifier);
   }
 
-  private Map<OUTCOME_TYPE, Double> getScoredOutcomes(List<Feature> features, Path path)
-      throws CleartkProcessingException {
+  private Map<OUTCOME_TYPE, Double> getScoredOutcomes(
+      List<Feature> features,
+      List<Object> previousOutcomes) throws CleartkProcessingException {
 
     // add the features from preceding outcomes
-    features = Lists.newArrayList(features);
-    if (path != null) {
-      List<Object> previousOutcomes = new ArrayList<Object>(path.outcomes);
+    features = new ArrayList<Feature>(features);
+    if (previousOutcomes != null) {
       for (OutcomeFeatureExtractor outcomeFeatureExtractor : this.outcomeFeatureExtractors) {
         features.addAll(outcomeFeatureExtractor.extractFeatures(previousOutcomes));
       }
@@ -221,51 +451,280 @@ public class ViterbiClassifier<OUTCOME_TYPE> implements SequenceClassifier<OUTCO
     return scoredOutcomes;
   }
 
-  private List<OUTCOME_TYPE> getTopOutcomes(Map<OUTCOME_TYPE, Double> scoredOutcomes) {
-    // get just the outcomes that fit within the stack
-    Ordering<OUTCOME_TYPE> ordering = Ordering.natural().onResultOf(
-        Functions.forMap(scoredOutcomes));
-    return ordering.greatestOf(scoredOutcomes.keySet(), this.stackSize);
+  /**
+   * Like {@link #getScoredOutcomes(List, List)}, but reuses the emission scores of the element and
+   * only scores the features from preceding outcomes.
+   */
+  private Map<OUTCOME_TYPE, Double> getScoredOutcomes(
+      EmissionScoringClassifier<OUTCOME_TYPE, Object> emissionClassifier,
+      Object emission,
+      List<Object> previousOutcomes) throws CleartkProcessingException {
+    List<Feature> historyFeatures = new ArrayList<Feature>();
+    for (OutcomeFeatureExtractor outcomeFeatureExtractor : this.outcomeFeatureExtractors) {
+      historyFeatures.addAll(outcomeFeatureExtractor.extractFeatures(previousOutcomes));
+    }
+    Map<OUTCOME_TYPE, Double> scoredOutcomes = emissionClassifier.score(emission, historyFeatures);
+    if (scoredOutcomes.isEmpty()) {
+      throw new IllegalStateException("expected at least one scored outcome, found "
+          + scoredOutcomes);
+    }
+    return scoredOutcomes;
+  }
+
+  /**
+   * Selects the stackSize best outcomes, best first, and stores their scores in topScores.
+   */
+  private List<OUTCOME_TYPE> getTopOutcomes(
+      Map<OUTCOME_TYPE, Double> scoredOutcomes,
+      double[] topScores) {
+    List<OUTCOME_TYPE> topOutcomes = new ArrayList<OUTCOME_TYPE>(this.stackSize);
+    for (Map.Entry<OUTCOME_TYPE, Double> entry : scoredOutcomes.entrySet()) {
+      double score = entry.getValue();
+      int size = topOutcomes.size();
+      if (size == this.stackSize && score <= topScores[size - 1]) {
+        continue;
+      }
+      int k = size < this.stackSize ? size : size - 1;
+      if (size < this.stackSize) {
+        topOutcomes.add(null);
+      }
+      for (; k > 0 && topScores[k - 1] < score; k--) {
+        topScores[k] = topScores[k - 1];
+        topOutcomes.set(k, topOutcomes.get(k - 1));
+      }
+      topScores[k] = score;
+      topOutcomes.set(k, entry.getKey());
+    }
+    // keep the best outcome, but drop the others below the minimum score
+    int size = topOutcomes.size();
+    while (size > 1 && topScores[size - 1] < this.minOutcomeScore) {
+      topOutcomes.remove(--size);
+    }
+    return topOutcomes;
   }
 
-  private class Path implements Comparable<Path> {
-    public OUTCOME_TYPE outcome;
+  /**
+   * The Viterbi lattice: per element a row of best path scores and back-pointers indexed by
+   * outcome. A back-pointer of -1 marks an outcome that no path reaches. Outcomes are numbered in
+   * the order the classifier first returns them, so rows can grow while decoding. If asked to, the
+   * lattice also keeps the scored outcomes of each element after each path, indexed like the
+   * back-pointers of the previous element.
+   */
+  private class Lattice {
+
+    private final List<OUTCOME_TYPE> outcomes = new ArrayList<OUTCOME_TYPE>();
+
+    private final Map<OUTCOME_TYPE, Integer> outcomeIndex = new HashMap<OUTCOME_TYPE, Integer>();
+
+    private final double[][] scores;
+
+    private final int[][] backPointers;
+
+    private final List<List<Map<OUTCOME_TYPE, Double>>> scoredOutcomes;
+
+    public Lattice(int length, boolean keepScores) {
+      this.scores = new double[length][];
+      this.backPointers = new int[length][];
+      this.scoredOutcomes = keepScores
+          ? new ArrayList<List<Map<OUTCOME_TYPE, Double>>>(length)
+          : null;
+    }
+
+    public int index(OUTCOME_TYPE outcome) {
+      Integer index = this.outcomeIndex.get(outcome);
+      if (index == null) {
+        index = this.outcomes.size();
+        this.outcomes.add(outcome);
+        this.outcomeIndex.put(outcome, index);
+      }
+      return index;
+    }
+
+    public void startRow(int t) {
+      this.scores[t] = new double[Math.max(1, this.outcomes.size())];
+      this.backPointers[t] = new int[this.scores[t].length];
+      Arrays.fill(this.backPointers[t], -1);
+      if (this.scoredOutcomes != null) {
+        this.scoredOutcomes.add(new ArrayList<Map<OUTCOME_TYPE, Double>>());
+      }
+    }
+
+    /**
+     * Keeps the scored outcomes of element t after the path ending in previous, if asked to.
+     */
+    public void keepScores(int t, int previous, Map<OUTCOME_TYPE, Double> scored) {
+      if (this.scoredOutcomes == null) {
+        return;
+      }
+      List<Map<OUTCOME_TYPE, Double>> row = this.scoredOutcomes.get(t);
+      while (row.size() <= previous) {
+        row.add(null);
+      }
+      row.set(previous, scored);
+    }
+
+    /**
+     * Keeps the path through previous if it is the first or the best one found for the outcome.
+     */
+    public void relax(int t, int outcome, double score, int previous) {
+      if (outcome >= this.scores[t].length) {
+        int oldLength = this.scores[t].length;
+        int newLength = Math.max(outcome + 1, 2 * oldLength);
+        this.scores[t] = Arrays.copyOf(this.scores[t], newLength);
+        this.backPointers[t] = Arrays.copyOf(this.backPointers[t], newLength);
+        Arrays.fill(this.backPointers[t], oldLength, newLength, -1);
+      }
+      if (this.backPointers[t][outcome] < 0 || score > this.scores[t][outcome]) {
+        this.scores[t][outcome] = score;
+        this.backPointers[t][outcome] = previous;
+      }
+    }
 
-    public double score;
+    /**
+     * Drops the paths at element t that score more than margin below the best one, or less than
+     * exp(-margin) times the best one when scores are multiplied.
+     * 
+     * @return the number of paths kept
+     */
+    public int prune(int t, double margin) {
+      double best = Double.NEGATIVE_INFINITY;
+      for (int outcome = 0; outcome < this.scores[t].length; outcome++) {
+        if (this.backPointers[t][outcome] >= 0 && this.scores[t][outcome] > best) {
+          best = this.scores[t][outcome];
+        }
+      }
+      double min = Double.NEGATIVE_INFINITY;
+      if (!Double.isInfinite(margin)) {
+        min = addScores ? best - margin : best * Math.exp(-margin);
+      }
+      int kept = 0;
+      for (int outcome = 0; outcome < this.scores[t].length; outcome++) {
+        if (this.backPointers[t][outcome] >= 0) {
+          if (this.scores[t][outcome] < min) {
+            this.backPointers[t][outcome] = -1;
+          } else {
+            kept++;
+          }
+        }
+      }
+      return kept;
+    }
 
-    public Path parent;
+    /**
+     * The outcomes of the best path ending in the given outcome at element t, as a list view that
+     * walks the back-pointers on access. Outcome feature extractors usually only look at the last
+     * few outcomes, so nothing is copied.
+     */
+    public List<Object> path(final int t, final int outcome) {
+      return new AbstractList<Object>() {
+        @Override
+        public Object get(int i) {
+          if (i < 0 || i > t) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + (t + 1));
+          }
+          int current = outcome;
+          for (int position = t; position > i; position--) {
+            current = backPointers[position][current];
+          }
+          return outcomes.get(current);
+        }
 
-    public List<OUTCOME_TYPE> outcomes;
+        @Override
+        public int size() {
+          return t + 1;
+        }
+      };
+    }
 
-    public Path(OUTCOME_TYPE outcome, double score, Path parent) {
-      this.outcome = outcome;
-      this.score = score;
-      this.parent = parent;
-      this.outcomes = Lists.newArrayList();
-      if (this.parent != null) {
-        this.outcomes.addAll(this.parent.outcomes);
+    public List<OUTCOME_TYPE> backtrack() {
+      return this.outcomesOf(this.bestPath());
+    }
+
+    /**
+     * The outcome indexes of the best path, taking the maximum of the final paths.
+     */
+    public int[] bestPath() {
+      int last = this.scores.length - 1;
+      int best = -1;
+      for (int outcome = 0; outcome < this.scores[last].length; outcome++) {
+        if (this.backPointers[last][outcome] >= 0
+            && (best < 0 || this.scores[last][outcome] > this.scores[last][best])) {
+          best = outcome;
+        }
       }
-      this.outcomes.add(this.outcome);
+      int[] path = new int[this.scores.length];
+      for (int t = last; t >= 0; t--) {
+        path[t] = best;
+        best = this.backPointers[t][best];
+      }
+      return path;
     }
 
-    @Override
-    public String toString() {
-      ToStringHelper helper = Objects.toStringHelper(this);
-      helper.add("outcome", this.outcome);
-      helper.add("score", this.score);
-      helper.add("parent", this.parent);
-      return helper.toString();
+    public List<OUTCOME_TYPE> outcomesOf(int[] path) {
+      List<OUTCOME_TYPE> outcomes = new ArrayList<OUTCOME_TYPE>(path.length);
+      for (int outcome : path) {
+        outcomes.add(this.outcomes.get(outcome));
+      }
+      return outcomes;
     }
 
-    @Override
-    public int compareTo(Path that) {
-      return Doubles.compare(this.score, that.score);
+    /**
+     * The kept scored outcomes of each element after the path before it.
+     */
+    public List<Map<OUTCOME_TYPE, Double>> scoresOf(int[] path) {
+      List<Map<OUTCOME_TYPE, Double>> scores = new ArrayList<Map<OUTCOME_TYPE, Double>>(
+          path.length);
+      for (int t = 0; t < path.length; t++) {
+        scores.add(this.scoredOutcomes.get(t).get(t == 0 ? 0 : path[t - 1]));
+      }
+      return scores;
     }
   }
 
+  /**
+   * Classifies each sequence on its own; the outcomes of consecutive sequences are separated by a
+   * <code>null</code> outcome, see {@link SequenceClassifier#classify(Map, File)}. The feature file
+   * is not used.
+   */
   public List<OUTCOME_TYPE> classify(Map<Integer, List<List<Feature>>> features, File featureFile)
       throws CleartkProcessingException {
-    // TODO Auto-generated method stub
-    return null;
+    List<OUTCOME_TYPE> outcomes = new ArrayList<OUTCOME_TYPE>();
+    boolean first = true;
+    for (List<List<Feature>> sequence : features.values()) {
+      if (!first) {
+        outcomes.add(null);
+      }
+      outcomes.addAll(this.classify(sequence));
+      first = false;
+    }
+    return outcomes;
+  }
+
+  /**
+   * Like {@link #classify(Map, File)}, and adds the score of each decoded outcome given the decoded
+   * outcomes before it, see {@link #score(List)}.
+   */
+  public List<OUTCOME_TYPE> classify(
+      Map<Integer, List<List<Feature>>> features,
+      File featureFile,
+      List<Double> scores) throws CleartkProcessingException {
+    List<OUTCOME_TYPE> outcomes = new ArrayList<OUTCOME_TYPE>();
+    boolean first = true;
+    for (List<List<Feature>> sequence : features.values()) {
+      if (!first) {
+        outcomes.add(null);
+        scores.add(0.0);
+      }
+      List<Map<OUTCOME_TYPE, Double>> sequenceScores = new ArrayList<Map<OUTCOME_TYPE, Double>>(
+          sequence.size());
+      List<OUTCOME_TYPE> sequenceOutcomes = this.classify(sequence, sequenceScores);
+      for (int t = 0; t < sequenceOutcomes.size(); t++) {
+        Double score = sequenceScores.get(t).get(sequenceOutcomes.get(t));
+        scores.add(score == null ? 0.0 : score);
+      }
+      outcomes.addAll(sequenceOutcomes);
+      first = false;
+    }
+    return outcomes;
   }
 }
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.cleartk.ml.crf.AttributeDictionary;
+import org.cleartk.ml.crf.CrfModel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes the attribute dictionary of a CRF model and reads it back, mapped from a file and from a
+ * buffer, and with the model.
+ */
+public class TestAttributeDictionary
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip()
+        throws Exception
+    {
+        CrfModel model = createModel(5000);
+        File file = folder.newFile("crf.attributes");
+        AttributeDictionary.write(file, model);
+
+        AttributeDictionary dictionary = AttributeDictionary.open(file);
+        assertLookups(model, dictionary);
+
+        // a dictionary within a larger buffer, as in a model bundle
+        byte[] bytes = FileUtils.readFileToByteArray(file);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 16);
+        buffer.position(16);
+        buffer.put(bytes);
+        buffer.position(16);
+        assertLookups(model, AttributeDictionary.map(buffer));
+
+        File modelFile = folder.newFile("crf.model");
+        model.write(modelFile);
+        InputStream in = new FileInputStream(modelFile);
+        CrfModel read;
+        try {
+            read = CrfModel.read(in, dictionary);
+        }
+        finally {
+            in.close();
+        }
+        assertEquals(model.getNumAttributes(), read.getNumAttributes());
+        for (int a = 0; a < model.getNumAttributes(); a++) {
+            assertEquals(a, read.getAttributeIndex(model.getAttribute(a)));
+        }
+        assertArrayEquals(model.getWeights(), read.getWeights(), 0);
+    }
+
+    @Test
+    public void emptyDictionary()
+        throws Exception
+    {
+        File file = folder.newFile("crf.attributes");
+        AttributeDictionary.write(file, createModel(0));
+        AttributeDictionary dictionary = AttributeDictionary.open(file);
+        assertEquals(0, dictionary.size());
+        assertEquals(-1, dictionary.getIndex("w=Berlin"));
+    }
+
+    private static void assertLookups(CrfModel model, AttributeDictionary dictionary)
+    {
+        assertEquals(model.getNumAttributes(), dictionary.size());
+        for (int a = 0; a < model.getNumAttributes(); a++) {
+            String name = model.getAttribute(a);
+            assertEquals(name, a, dictionary.getIndex(name));
+            assertEquals(name, dictionary.getName(a));
+        }
+        assertEquals(-1, dictionary.getIndex("unknown"));
+        assertEquals(-1, dictionary.getIndex(""));
+        assertEquals(-1, dictionary.getIndex(model.getNumAttributes() > 0 ? model.getAttribute(0)
+                + "x" : "x"));
+    }
+
+    /**
+     * A model with one state feature per attribute, whose names include non-ASCII characters and
+     * all lengths of the hash tail.
+     */
+    private static CrfModel createModel(int numAttributes)
+    {
+        Random random = new Random(7);
+        Set<String> names = new LinkedHashSet<String>();
+        String[] fixed = { "w=M\u00fcnchen", "w=Stra\u00dfe", "w=\u65e5\u672c", "w=\ud83d\ude00",
+                "a", "ab", "abc", "abcd" };
+        for (int i = 0; i < fixed.length && names.size() < numAttributes; i++) {
+            names.add(fixed[i]);
+        }
+        while (names.size() < numAttributes) {
+            names.add("w[" + random.nextInt(5) + "]=" + Long.toString(random.nextLong(), 36));
+        }
+        String[] attributes = names.toArray(new String[names.size()]);
+        String[] labels = { "O", "B-PER", "I-PER" };
+        int[] attributeOffsets = new int[numAttributes + 1];
+        int[] featureLabels = new int[numAttributes];
+        double[] weights = new double[labels.length * labels.length + numAttributes];
+        for (int a = 0; a < numAttributes; a++) {
+            attributeOffsets[a + 1] = a + 1;
+            featureLabels[a] = a % labels.length;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = random.nextGaussian();
+        }
+        return new CrfModel(labels, attributes, attributeOffsets, featureLabels, weights);
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cleartk.ml.crf.CrfModel;
+import org.cleartk.ml.crf.CrfTrainer;
+import org.cleartk.ml.crf.CrfTrainingData;
+import org.junit.Test;
+
+/**
+ * Compares the gradient of the CRF training objective with central differences of the objective.
+ */
+public class TestCrfGradient
+{
+    private static final String[] LABELS = { "O", "B-PER", "I-PER", "B-LOC" };
+
+    @Test
+    public void gradientMatchesFiniteDifferences()
+    {
+        Random random = new Random(42);
+        CrfTrainingData data = new CrfTrainingData();
+        for (int s = 0; s < 20; s++) {
+            List<String> labels = new ArrayList<String>();
+            List<String[]> attributes = new ArrayList<String[]>();
+            for (int t = 1 + random.nextInt(6); t > 0; t--) {
+                labels.add(LABELS[random.nextInt(LABELS.length)]);
+                attributes.add(new String[] { "w=" + random.nextInt(8), "s=" + random.nextInt(3) });
+            }
+            data.addSequence(labels, attributes);
+        }
+
+        CrfTrainer trainer = new CrfTrainer();
+        trainer.setParameter("c2", "0.5");
+        trainer.setParameter("max_iterations", "3");
+        trainer.setParameter("threads", "3");
+        CrfModel model = trainer.train(data);
+        double[] weights = model.getWeights();
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] += random.nextGaussian() * 0.5;
+        }
+
+        double[] gradient = new double[weights.length];
+        trainer.evaluate(data, model, gradient);
+        double[] scratch = new double[weights.length];
+        double h = 1e-5;
+        for (int i = 0; i < weights.length; i++) {
+            double w = weights[i];
+            weights[i] = w + h;
+            double plus = trainer.evaluate(data, model, scratch);
+            weights[i] = w - h;
+            double minus = trainer.evaluate(data, model, scratch);
+            weights[i] = w;
+            assertEquals("weight " + i, (plus - minus) / (2 * h), gradient[i], 1e-5);
+        }
+    }
+}
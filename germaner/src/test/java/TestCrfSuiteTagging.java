@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.crf.CrfModel;
+import org.cleartk.ml.crf.CrfSuiteModelReader;
+import org.cleartk.ml.crfsuite.CrfSuiteWrapper;
+import org.cleartk.ml.encoder.features.BooleanEncoder;
+import org.cleartk.ml.encoder.features.NameNumberFeaturesEncoder;
+import org.cleartk.ml.encoder.features.NumberEncoder;
+import org.cleartk.ml.encoder.features.StringEncoder;
+import org.cleartk.ml.encoder.outcome.StringToStringOutcomeEncoder;
+import org.junit.Test;
+
+/**
+ * Tags with a fixed CRFsuite model whose tokens have a single attribute each, so that the tags
+ * only come out right if <code>crfsuite tag</code> sees the first attribute of every line as an
+ * attribute and not as the label. The tags are compared with fixed labels and with the same model
+ * decoded in Java.
+ */
+public class TestCrfSuiteTagging
+{
+    private static final String[][] SENTENCES = { { "Hans", "wohnt", "in", "Berlin" },
+            { "in", "Wien", "Anna", "lebt" }, { "nach", "Hamburg" } };
+
+    private static final String[][] LABELS = { { "B-PER", "O", "O", "B-LOC" },
+            { "O", "B-LOC", "B-PER", "O" }, { "O", "B-LOC" } };
+
+    @Test
+    public void tagsWithEveryAttribute()
+        throws Exception
+    {
+        File modelFile = new File(TestCrfSuiteTagging.class.getResource(
+                "/crfsuite/tagging.model").toURI());
+        CrfSuiteWrapper wrapper = new CrfSuiteWrapper();
+        CrfModel model = CrfSuiteModelReader.read(modelFile);
+        NameNumberFeaturesEncoder featuresEncoder = new NameNumberFeaturesEncoder(false, false);
+        featuresEncoder.addEncoder(new NumberEncoder());
+        featuresEncoder.addEncoder(new BooleanEncoder());
+        featuresEncoder.addEncoder(new StringEncoder());
+
+        Map<Integer, List<List<Feature>>> batch = new LinkedHashMap<Integer, List<List<Feature>>>();
+        List<String> expected = new ArrayList<String>();
+        for (int s = 0; s < SENTENCES.length; s++) {
+            List<List<Feature>> features = features(SENTENCES[s]);
+            List<String> tags = wrapper.classifyFeatures(features,
+                    new StringToStringOutcomeEncoder(), featuresEncoder, modelFile);
+            assertEquals(Arrays.asList(LABELS[s]), tags);
+            assertEquals(tags, decode(model, SENTENCES[s]));
+
+            batch.put(s, features);
+            if (s > 0) {
+                expected.add("");
+            }
+            expected.addAll(tags);
+        }
+        File featureFile = File.createTempFile("tagging", ".crfsuite");
+        try {
+            assertEquals(expected, wrapper.classifyFeatures(batch,
+                    new StringToStringOutcomeEncoder(), featuresEncoder, modelFile, featureFile));
+        }
+        finally {
+            featureFile.delete();
+        }
+    }
+
+    private static List<String> decode(CrfModel model, String[] sentence)
+    {
+        int[][] sequence = new int[sentence.length][];
+        for (int t = 0; t < sentence.length; t++) {
+            int attribute = model.getAttributeIndex("w_" + sentence[t]);
+            sequence[t] = attribute < 0 ? new int[0] : new int[] { attribute };
+        }
+        List<String> labels = new ArrayList<String>();
+        for (int label : model.viterbi(sequence)) {
+            labels.add(model.getLabel(label));
+        }
+        return labels;
+    }
+
+    private static List<List<Feature>> features(String[] sentence)
+    {
+        List<List<Feature>> features = new ArrayList<List<Feature>>();
+        for (String word : sentence) {
+            features.add(new ArrayList<Feature>(Collections.singletonList(new Feature("w",
+                    word))));
+        }
+        return features;
+    }
+}
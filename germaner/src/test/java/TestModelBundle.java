@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.Instance;
+import org.cleartk.ml.SequenceClassifier;
+import org.cleartk.ml.crf.CrfStringOutcomeClassifierBuilder;
+import org.cleartk.ml.crf.CrfStringOutcomeDataWriter;
+import org.cleartk.ml.jar.JarClassifierBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tu.darmstadt.lt.ner.preprocessing.GermaNERMain;
+import de.tu.darmstadt.lt.ner.preprocessing.ModelBundle;
+import de.tu.darmstadt.lt.ner.preprocessing.TagDictionary;
+
+/**
+ * Bundles a small Java CRF model with its configuration, tag dictionary and lexicons, and checks
+ * that every section reads back as written and that the bundled classifier tags like the model
+ * directory.
+ */
+public class TestModelBundle
+{
+    private static final String[][] SENTENCES = { { "Hans", "wohnt", "in", "Berlin" },
+            { "Anna", "f\u00e4hrt", "nach", "K\u00f6ln" }, { "Berlin", "ist", "gro\u00df" } };
+
+    private static final String[][] LABELS = { { "B-PER", "O", "O", "B-LOC" },
+            { "B-PER", "O", "O", "B-LOC" }, { "B-LOC", "O", "O" } };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip()
+        throws Exception
+    {
+        File modelDir = folder.newFolder("model");
+        CrfStringOutcomeDataWriter dataWriter = new CrfStringOutcomeDataWriter(modelDir);
+        for (int s = 0; s < SENTENCES.length; s++) {
+            List<Instance<String>> instances = new ArrayList<Instance<String>>();
+            for (List<Feature> features : features(SENTENCES[s])) {
+                instances.add(new Instance<String>(LABELS[s][instances.size()], features));
+            }
+            dataWriter.write(instances);
+        }
+        dataWriter.finish();
+        JarClassifierBuilder.trainAndPackage(modelDir, "-p", "max_iterations=20");
+
+        Properties configuration = new Properties();
+        configuration.setProperty("classifier", "crf");
+        configuration.setProperty("useWordFeature", "1");
+        OutputStream out = new FileOutputStream(new File(modelDir, GermaNERMain.MODEL_CONFIG));
+        try {
+            configuration.store(out, null);
+        }
+        finally {
+            out.close();
+        }
+        FileUtils.writeStringToFile(new File(modelDir, TagDictionary.FILE_NAME),
+                "Berlin\tB-LOC\t2\n", "UTF-8");
+        File dataZip = folder.newFile("data.zip");
+        FileUtils.writeStringToFile(dataZip, "lexicons", "UTF-8");
+
+        File bundleFile = new File(folder.getRoot(), "model.bundle");
+        ModelBundle.write(modelDir, dataZip, bundleFile, 42);
+        ModelBundle bundle = ModelBundle.open(bundleFile);
+
+        assertEquals(ModelBundle.FORMAT_VERSION, bundle.getFormatVersion());
+        assertEquals(42, bundle.getModelVersion());
+        assertEquals(0, bundleFile.length() % ModelBundle.PAGE_SIZE);
+        assertEquals(configuration, bundle.getConfiguration());
+        for (String name : Arrays.asList(CrfStringOutcomeClassifierBuilder.ATTRIBUTES_NAME,
+                GermaNERMain.MODEL_CONFIG, TagDictionary.FILE_NAME)) {
+            assertSection(FileUtils.readFileToByteArray(new File(modelDir, name)), bundle, name);
+        }
+        assertSection(FileUtils.readFileToByteArray(dataZip), bundle,
+                ModelBundle.DATA_ZIP_SECTION);
+        assertTrue(bundle.hasSection(ModelBundle.MANIFEST_SECTION));
+        assertTrue(bundle.hasSection(ModelBundle.JAR_PREFIX
+                + CrfStringOutcomeClassifierBuilder.MODEL_NAME));
+
+        SequenceClassifier<String> fromDirectory = load(JarClassifierBuilder
+                .fromTrainingDirectory(modelDir).loadClassifierFromTrainingDirectory(modelDir));
+        SequenceClassifier<String> fromBundle = load(bundle.loadClassifier());
+        for (String[] sentence : SENTENCES) {
+            assertEquals(fromDirectory.classify(features(sentence)),
+                    fromBundle.classify(features(sentence)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles()
+        throws Exception
+    {
+        File file = folder.newFile("model.jar");
+        FileUtils.writeStringToFile(file, "not a bundle", "UTF-8");
+        ModelBundle.open(file);
+    }
+
+    private static void assertSection(byte[] expected, ModelBundle bundle, String name)
+        throws IOException
+    {
+        assertArrayEquals(name, expected, IOUtils.toByteArray(bundle.openSection(name)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SequenceClassifier<String> load(Object classifier)
+    {
+        return (SequenceClassifier<String>) classifier;
+    }
+
+    private static List<List<Feature>> features(String[] sentence)
+    {
+        List<List<Feature>> features = new ArrayList<List<Feature>>();
+        for (String word : sentence) {
+            features.add(new ArrayList<Feature>(Arrays.asList(new Feature("word", word),
+                    new Feature("upper", Character.isUpperCase(word.charAt(0))))));
+        }
+        return features;
+    }
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright 2014
+ * FG Language Technology
+ * Technische Universität Darmstadt
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.uima.UimaContext;
+import org.cleartk.ml.Classifier;
+import org.cleartk.ml.Feature;
+import org.cleartk.ml.viterbi.OutcomeFeatureExtractor;
+import org.cleartk.ml.viterbi.ViterbiClassifier;
+import org.junit.Test;
+
+/**
+ * Decodes random sequences with the lattice based {@link ViterbiClassifier} and with a copy of the
+ * path based beam search it replaced, and checks that both choose the same outcomes, and that the
+ * scores kept from the lattice are those of the decoded path.
+ */
+public class TestViterbiEquivalence
+{
+    private static final String[] OUTCOMES = { "O", "B-PER", "I-PER", "B-LOC", "I-LOC", "B-ORG",
+            "I-ORG" };
+
+    private static final int SEQUENCES = 200;
+
+    @Test
+    public void addedScores()
+        throws Exception
+    {
+        for (int stackSize = 2; stackSize <= 5; stackSize++) {
+            assertEquivalent(stackSize, true, Scores.GAUSSIAN);
+        }
+    }
+
+    @Test
+    public void multipliedScores()
+        throws Exception
+    {
+        for (int stackSize = 2; stackSize <= 5; stackSize++) {
+            assertEquivalent(stackSize, false, Scores.PROBABILITIES);
+        }
+    }
+
+    @Test
+    public void multipliedSignedScores()
+        throws Exception
+    {
+        for (int stackSize = 2; stackSize <= 5; stackSize++) {
+            assertEquivalent(stackSize, false, Scores.SIGNED);
+        }
+    }
+
+    @Test
+    public void decodedPathScores()
+        throws Exception
+    {
+        for (int stackSize = 1; stackSize <= 5; stackSize++) {
+            Random random = new Random(stackSize);
+            StubClassifier classifier = new StubClassifier(Scores.GAUSSIAN);
+            OutcomeFeatureExtractor[] extractors = { new HistoryExtractor() };
+            BeamClassifier viterbi = new BeamClassifier(classifier, extractors, stackSize, true);
+            Map<Integer, List<List<Feature>>> batch =
+                    new LinkedHashMap<Integer, List<List<Feature>>>();
+            for (int i = 0; i < SEQUENCES; i++) {
+                List<List<Feature>> features = randomSequence(random);
+                batch.put(i, features);
+                List<String> outcomes = viterbi.classify(copy(features));
+                List<Map<String, Double>> scores = viterbi.score(features);
+                assertEquals(features.size(), scores.size());
+                for (int t = 0; t < features.size(); t++) {
+                    // a stack size of 1 classifies with the outcome features of the empty history
+                    List<Feature> extended = new ArrayList<Feature>(features.get(t));
+                    if (t > 0 || stackSize == 1) {
+                        extended.addAll(extractors[0].extractFeatures(new ArrayList<Object>(
+                                outcomes.subList(0, t))));
+                    }
+                    assertEquals("stack size " + stackSize + ", sequence " + i + ", element " + t,
+                            classifier.score(extended), scores.get(t));
+                }
+            }
+
+            // one null outcome with a score of 0 between sequences
+            List<Double> batchScores = new ArrayList<Double>();
+            List<String> batchOutcomes = viterbi.classify(batch, null, batchScores);
+            assertEquals(batchOutcomes.size(), batchScores.size());
+            int i = 0;
+            for (List<List<Feature>> features : batch.values()) {
+                if (i > 0) {
+                    assertNull(batchOutcomes.get(i - 1));
+                    assertEquals(0.0, batchScores.get(i - 1), 0.0);
+                }
+                List<String> outcomes = viterbi.classify(copy(features));
+                List<Map<String, Double>> scores = viterbi.score(features);
+                for (int t = 0; t < outcomes.size(); t++) {
+                    assertEquals(outcomes.get(t), batchOutcomes.get(i + t));
+                    assertEquals(scores.get(t).get(outcomes.get(t)), batchScores.get(i + t));
+                }
+                i += outcomes.size() + 1;
+            }
+        }
+    }
+
+    /**
+     * A stack size of 1 adds the outcome features to the feature lists it classifies.
+     */
+    private static List<List<Feature>> copy(List<List<Feature>> features)
+    {
+        List<List<Feature>> copy = new ArrayList<List<Feature>>();
+        for (List<Feature> instance : features) {
+            copy.add(new ArrayList<Feature>(instance));
+        }
+        return copy;
+    }
+
+    private static List<List<Feature>> randomSequence(Random random)
+    {
+        List<List<Feature>> features = new ArrayList<List<Feature>>();
+        int length = 1 + random.nextInt(12);
+        for (int t = 0; t < length; t++) {
+            List<Feature> instance = new ArrayList<Feature>();
+            instance.add(new Feature("w", "w" + random.nextInt(20)));
+            instance.add(new Feature("s", "s" + random.nextInt(4)));
+            features.add(instance);
+        }
+        return features;
+    }
+
+    private static void assertEquivalent(int stackSize, boolean addScores, Scores scores)
+        throws Exception
+    {
+        Random random = new Random(stackSize * 31 + scores.ordinal());
+        StubClassifier classifier = new StubClassifier(scores);
+        OutcomeFeatureExtractor[] extractors = { new HistoryExtractor() };
+        BeamClassifier viterbi = new BeamClassifier(classifier, extractors, stackSize, addScores);
+        for (int i = 0; i < SEQUENCES; i++) {
+            List<List<Feature>> features = randomSequence(random);
+            List<String> expected = baseline(classifier, extractors, stackSize, addScores,
+                    features);
+            assertEquals("stack size " + stackSize + ", sequence " + i, expected,
+                    viterbi.classify(features));
+        }
+    }
+
+    /**
+     * The beam search of the previous implementation: one path per outcome, the first element
+     * without outcome features.
+     */
+    private static List<String> baseline(Classifier<String> classifier,
+            OutcomeFeatureExtractor[] extractors, int stackSize, boolean addScores,
+            List<List<Feature>> featureLists)
+        throws Exception
+    {
+        List<Path> paths = new ArrayList<Path>();
+        for (List<Feature> features : featureLists) {
+            if (paths.isEmpty()) {
+                Map<String, Double> scoredOutcomes = classifier.score(features);
+                for (String outcome : top(scoredOutcomes, stackSize)) {
+                    paths.add(new Path(outcome, scoredOutcomes.get(outcome), null));
+                }
+            }
+            else {
+                Map<String, Path> maxPaths = new HashMap<String, Path>();
+                for (Path path : paths) {
+                    List<Feature> extended = new ArrayList<Feature>(features);
+                    for (OutcomeFeatureExtractor extractor : extractors) {
+                        extended.addAll(extractor.extractFeatures(new ArrayList<Object>(
+                                path.outcomes)));
+                    }
+                    Map<String, Double> scoredOutcomes = classifier.score(extended);
+                    for (String outcome : top(scoredOutcomes, stackSize)) {
+                        double outcomeScore = scoredOutcomes.get(outcome);
+                        double score = addScores ? path.score + outcomeScore : path.score
+                                * outcomeScore;
+                        Path maxPath = maxPaths.get(outcome);
+                        if (maxPath == null || score > maxPath.score) {
+                            maxPaths.put(outcome, new Path(outcome, score, path));
+                        }
+                    }
+                }
+                paths = new ArrayList<Path>(maxPaths.values());
+            }
+        }
+        Path best = null;
+        for (Path path : paths) {
+            if (best == null || path.score > best.score) {
+                best = path;
+            }
+        }
+        return best.outcomes;
+    }
+
+    private static List<String> top(final Map<String, Double> scoredOutcomes, int stackSize)
+    {
+        List<String> outcomes = new ArrayList<String>(scoredOutcomes.keySet());
+        Collections.sort(outcomes, new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                return Double.compare(scoredOutcomes.get(b), scoredOutcomes.get(a));
+            }
+        });
+        return outcomes.subList(0, Math.min(stackSize, outcomes.size()));
+    }
+
+    private static class Path
+    {
+        double score;
+
+        List<String> outcomes = new ArrayList<String>();
+
+        Path(String outcome, double score, Path parent)
+        {
+            this.score = score;
+            if (parent != null) {
+                outcomes.addAll(parent.outcomes);
+            }
+            outcomes.add(outcome);
+        }
+    }
+
+    private enum Scores
+    {
+        GAUSSIAN, PROBABILITIES, SIGNED
+    }
+
+    /**
+     * Scores each outcome with a value drawn from the features and the outcome, so that the same
+     * instance always gets the same scores.
+     */
+    private static class StubClassifier
+        implements Classifier<String>
+    {
+        private final Scores scores;
+
+        StubClassifier(Scores scores)
+        {
+            this.scores = scores;
+        }
+
+        @Override
+        public String classify(List<Feature> features)
+        {
+            Map<String, Double> scoredOutcomes = score(features);
+            return top(scoredOutcomes, 1).get(0);
+        }
+
+        @Override
+        public Map<String, Double> score(List<Feature> features)
+        {
+            StringBuilder key = new StringBuilder();
+            for (Feature feature : features) {
+                key.append(feature.getName()).append('=').append(feature.getValue()).append(' ');
+            }
+            Map<String, Double> scoredOutcomes = new LinkedHashMap<String, Double>();
+            for (String outcome : OUTCOMES) {
+                Random random = new Random((key + outcome).hashCode());
+                random.nextInt();
+                double score;
+                switch (scores) {
+                case GAUSSIAN:
+                    score = random.nextGaussian();
+                    break;
+                case PROBABILITIES:
+                    score = 1 - random.nextDouble();
+                    break;
+                default:
+                    score = 2 * random.nextDouble() - 1;
+                }
+                scoredOutcomes.put(outcome, score);
+            }
+            return scoredOutcomes;
+        }
+    }
+
+    /**
+     * Emits the last two outcomes, so that the scores depend on more than the previous outcome.
+     */
+    private static class HistoryExtractor
+        implements OutcomeFeatureExtractor
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void initialize(UimaContext context)
+        {
+        }
+
+        @Override
+        public List<Feature> extractFeatures(List<Object> previousOutcomes)
+        {
+            List<Feature> features = new ArrayList<Feature>();
+            int size = previousOutcomes.size();
+            features.add(new Feature("prev1", size > 0 ? previousOutcomes.get(size - 1) : "<S>"));
+            features.add(new Feature("prev2", size > 1 ? previousOutcomes.get(size - 2) : "<S>"));
+            return features;
+        }
+    }
+
+    private static class BeamClassifier
+        extends ViterbiClassifier<String>
+    {
+        BeamClassifier(Classifier<String> classifier, OutcomeFeatureExtractor[] extractors,
+                int stackSize, boolean addScores)
+        {
+            super(classifier, extractors);
+            this.stackSize = stackSize;
+            this.addScores = addScores;
+        }
+    }
+}